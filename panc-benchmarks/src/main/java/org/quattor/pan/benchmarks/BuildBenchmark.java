@@ -0,0 +1,77 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.tasks.BuildResult;
+import org.quattor.pan.tasks.BuildTask;
+
+/**
+ * Measures the execution of <code>BuildTask</code> for the generated object
+ * templates. The compiled templates and the configurations of the other
+ * objects (the cluster heads) are cached by the compiler during the warmup,
+ * so each invocation measures only the execution of the object's templates.
+ * Successive invocations cycle through all of the objects.
+ *
+ * @author loomis
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildBenchmark {
+
+	private TemplateTreeState tree;
+
+	private Compiler compiler;
+
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void createCompiler(TemplateTreeState tree) throws Exception {
+		this.tree = tree;
+		compiler = tree.createCompiler();
+		counter = 0;
+	}
+
+	@Benchmark
+	public BuildResult build() throws Exception {
+		String objectName = tree.objectName(counter);
+		counter = (counter + 1) % tree.objects;
+		BuildTask task = new BuildTask(compiler, objectName);
+		task.run();
+		return task.get();
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quattor.ant.DependencyChecker;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerResults;
+import org.quattor.pan.output.Formatter;
+
+/**
+ * Measures <code>DependencyChecker.isOutdated</code> on a tree for which all
+ * of the output and dependency files are up to date, which is the common
+ * case for an incremental build. The outputs are written by a full
+ * compilation during the setup.
+ *
+ * The <code>isOutdated</code> benchmark reuses one checker, so the
+ * dependency entries of the shared templates are cached after the first
+ * objects; <code>isOutdatedFreshChecker</code> measures a checker without
+ * any cached entries. The <code>filterForOutdatedFiles</code> benchmark checks
+ * the whole tree.
+ *
+ * @author loomis
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DependencyCheckerBenchmark {
+
+	private static final String FORMATS = "pan,dep";
+
+	private TemplateTreeState tree;
+
+	private List<File> includeDirectories;
+
+	private Set<Formatter> formatters;
+
+	private DependencyChecker checker;
+
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void writeOutputs(TemplateTreeState tree) throws Exception {
+
+		this.tree = tree;
+
+		CompilerOptions options = tree.createOptions(FORMATS);
+		CompilerResults results = Compiler.run(options, tree.objectNames,
+				Collections.<File> emptyList());
+		if (!results.getErrors().isEmpty()) {
+			throw new IllegalStateException(results.formatErrors());
+		}
+
+		// Output timestamps are truncated on some file systems; ensure that
+		// the templates are strictly older than the outputs.
+		long past = System.currentTimeMillis() - 60000L;
+		setLastModified(tree.templateDirectory, past);
+
+		includeDirectories = Collections.singletonList(tree.templateDirectory);
+		formatters = CompilerOptions.getFormatters(FORMATS);
+		if (!createChecker().filterForOutdatedFiles(tree.objectFiles).isEmpty()) {
+			throw new IllegalStateException("outputs are not up to date");
+		}
+
+		checker = createChecker();
+
+		counter = 0;
+	}
+
+	@Benchmark
+	public boolean isOutdated() {
+		return checker.isOutdated(nextObjectFile());
+	}
+
+	@Benchmark
+	public boolean isOutdatedFreshChecker() {
+		return createChecker().isOutdated(nextObjectFile());
+	}
+
+	@Benchmark
+	public List<File> filterForOutdatedFiles() {
+		return createChecker().filterForOutdatedFiles(tree.objectFiles);
+	}
+
+	private DependencyChecker createChecker() {
+		return new DependencyChecker(includeDirectories,
+				tree.outputDirectory, formatters, null, 1);
+	}
+
+	private File nextObjectFile() {
+		File objectFile = tree.objectFiles.get(counter);
+		counter = (counter + 1) % tree.objectFiles.size();
+		return objectFile;
+	}
+
+	private static void setLastModified(File file, long time) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				setLastModified(child, time);
+			}
+		} else {
+			file.setLastModified(time);
+		}
+	}
+
+}
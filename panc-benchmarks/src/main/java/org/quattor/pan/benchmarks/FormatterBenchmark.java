@@ -0,0 +1,103 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.output.FormatterUtils;
+import org.quattor.pan.tasks.FinalResult;
+
+/**
+ * Measures <code>Formatter.write</code> for each of the output formats. The
+ * final results of all of the generated objects are calculated during the
+ * setup; each invocation writes the output file of one object, cycling
+ * through all of the objects.
+ *
+ * @author loomis
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatterBenchmark {
+
+	/**
+	 * Key of the output format, as given to the compiler's formats option.
+	 */
+	@Param({ "pan", "pan.gz", "xml", "xml.gz", "json", "json.gz",
+			"json-compact", "json-compact.gz", "text", "dot", "dep", "dep.gz" })
+	public String format;
+
+	private Formatter formatter;
+
+	private List<FinalResult> results;
+
+	private List<URI> outputURIs;
+
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void buildObjects(TemplateTreeState tree) throws Exception {
+
+		formatter = CompilerOptions.getFormatters(format).iterator().next();
+
+		Compiler compiler = tree.createCompiler();
+
+		results = new ArrayList<FinalResult>(tree.objects);
+		outputURIs = new ArrayList<URI>(tree.objects);
+		for (String objectName : tree.objectNames) {
+			results.add(compiler.getFinalCache().waitForResult(objectName));
+
+			URI outputURI = tree.outputDirectory.toURI().resolve(
+					formatter.getResultURI(objectName));
+			FormatterUtils.createParentDirectories(new File(outputURI));
+			outputURIs.add(outputURI);
+		}
+
+		counter = 0;
+	}
+
+	@Benchmark
+	public void write() throws Exception {
+		formatter.write(results.get(counter), outputURIs.get(counter));
+		counter = (counter + 1) % results.size();
+	}
+
+}
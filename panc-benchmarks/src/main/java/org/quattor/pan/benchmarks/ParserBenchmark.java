@@ -0,0 +1,103 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.parser.ASTTemplate;
+import org.quattor.pan.parser.PanParserAstUtils;
+import org.quattor.pan.tasks.CompileTask;
+import org.quattor.pan.ttemplate.Template;
+
+/**
+ * Measures the two steps of compiling a template: parsing the source into a
+ * syntax tree (<code>PanParser.ttemplate</code>) and converting the syntax
+ * tree into a <code>Template</code>. The template contents are read once, so
+ * the file system is not part of the measurement.
+ *
+ * @author loomis
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+	/**
+	 * Generated template to compile: a declaration template with the types,
+	 * a large unique template with package assignments, a service template,
+	 * and an object template.
+	 */
+	@Param({ "schema/types", "os/os-0", "services/svc-0",
+			"profiles/node-00000" })
+	public String template;
+
+	private File file;
+
+	private byte[] contents;
+
+	private CompilerOptions options;
+
+	private ASTTemplate ast;
+
+	@Setup(Level.Trial)
+	public void readTemplate(TemplateTreeState tree) throws Exception {
+		file = new File(tree.templateDirectory, template + ".pan");
+		contents = Files.readAllBytes(file.toPath());
+		options = tree.createOptions(null);
+		ast = CompileTask.CallImpl.compile(file, contents, options);
+	}
+
+	@Benchmark
+	public ASTTemplate parse() throws Exception {
+		return CompileTask.CallImpl.compile(file, contents, options);
+	}
+
+	@Benchmark
+	public Template convertAstToTemplate() throws Exception {
+		return PanParserAstUtils.convertAstToTemplate(file, ast,
+				options.compileFunctions);
+	}
+
+	@Benchmark
+	public Template parseAndConvert() throws Exception {
+		ASTTemplate parsed = CompileTask.CallImpl.compile(file, contents,
+				options);
+		return PanParserAstUtils.convertAstToTemplate(file, parsed,
+				options.compileFunctions);
+	}
+
+}
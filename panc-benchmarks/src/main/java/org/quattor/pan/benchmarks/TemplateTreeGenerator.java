@@ -0,0 +1,441 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic tree of pan templates resembling a site
+ * configuration. Every object template includes a common set of schema,
+ * site, and operating system templates, a subset of the service templates,
+ * and the template of its cluster. The first object of each cluster is the
+ * cluster head; the other members of the cluster reference its configuration
+ * with the <code>value</code> function, so the objects also depend on each
+ * other without creating cycles.
+ *
+ * The generated tree is entirely determined by the parameters and the seed,
+ * so that benchmark runs are comparable.
+ *
+ * @author loomis
+ *
+ */
+public class TemplateTreeGenerator {
+
+	/**
+	 * Namespace of the generated object templates.
+	 */
+	public static final String OBJECT_NAMESPACE = "profiles";
+
+	private final int objects;
+
+	private int services = 50;
+
+	private int servicesPerObject = 8;
+
+	private int clusters = 20;
+
+	private int osVariants = 4;
+
+	private int packagesPerOs = 200;
+
+	private long seed = 42L;
+
+	/**
+	 * Creates a generator for the given number of object templates. The other
+	 * parameters have defaults which can be changed with the setters.
+	 *
+	 * @param objects
+	 *            number of object templates to generate
+	 */
+	public TemplateTreeGenerator(int objects) {
+		if (objects <= 0) {
+			throw new IllegalArgumentException(
+					"number of objects must be positive");
+		}
+		this.objects = objects;
+	}
+
+	public void setServices(int services) {
+		this.services = Math.max(1, services);
+	}
+
+	public void setServicesPerObject(int servicesPerObject) {
+		this.servicesPerObject = Math.max(0, servicesPerObject);
+	}
+
+	public void setClusters(int clusters) {
+		this.clusters = Math.max(1, clusters);
+	}
+
+	public void setOsVariants(int osVariants) {
+		this.osVariants = Math.max(1, osVariants);
+	}
+
+	public void setPackagesPerOs(int packagesPerOs) {
+		this.packagesPerOs = Math.max(0, packagesPerOs);
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the name of the object template with the given index.
+	 *
+	 * @param index
+	 *            index of the object
+	 *
+	 * @return name of the object template
+	 */
+	public static String objectName(int index) {
+		return String.format("%s/node-%05d", OBJECT_NAMESPACE, index);
+	}
+
+	/**
+	 * Returns the names of all of the object templates which will be written
+	 * by this generator.
+	 *
+	 * @return list of object template names
+	 */
+	public List<String> getObjectNames() {
+		List<String> names = new ArrayList<String>(objects);
+		for (int i = 0; i < objects; i++) {
+			names.add(objectName(i));
+		}
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Writes the template tree into the given directory, which is created if
+	 * necessary. The directory can be used directly as an include directory
+	 * for the compiler.
+	 *
+	 * @param root
+	 *            directory in which to write the templates
+	 *
+	 * @return list of the generated object template files
+	 *
+	 * @throws IOException
+	 *             if a template cannot be written
+	 */
+	public List<File> generate(File root) throws IOException {
+
+		Random random = new Random(seed);
+
+		writeTypes(root);
+		writeFunctions(root);
+		writeSiteDefaults(root);
+
+		for (int os = 0; os < osVariants; os++) {
+			writeOs(root, os, random);
+		}
+
+		writeCommonServices(root);
+		for (int svc = 0; svc < services; svc++) {
+			writeService(root, svc, random);
+		}
+
+		int activeClusters = Math.min(clusters, objects);
+		for (int cluster = 0; cluster < activeClusters; cluster++) {
+			writeCluster(root, cluster);
+		}
+
+		List<File> files = new ArrayList<File>(objects);
+		for (int i = 0; i < objects; i++) {
+			files.add(writeObject(root, i, activeClusters, random));
+		}
+		return files;
+	}
+
+	private void writeTypes(File root) throws IOException {
+
+		PrintWriter pw = open(root, "schema/types");
+		try {
+			pw.println("declaration template schema/types;");
+			pw.println();
+			pw.println("type port = long(1..65535);");
+			pw.println();
+			pw.println("type hostname_string = string with match(SELF, '^[a-z0-9][a-z0-9.-]*$');");
+			pw.println();
+			pw.println("type option_map = string{};");
+			pw.println();
+			pw.println("type net_interface = {");
+			pw.println("    'device' : string");
+			pw.println("    'ip' ? string with match(SELF, '^\\d+\\.\\d+\\.\\d+\\.\\d+$')");
+			pw.println("    'netmask' : string = '255.255.0.0'");
+			pw.println("    'mtu' : long(576..9000) = 1500");
+			pw.println("};");
+			pw.println();
+			pw.println("type interface_map = net_interface{};");
+			pw.println();
+			pw.println("type service_entry = {");
+			pw.println("    'enabled' : boolean = true");
+			pw.println("    'port' ? port");
+			pw.println("    'options' ? option_map");
+			pw.println("    'peers' ? string[]");
+			pw.println("};");
+			pw.println();
+			pw.println("type service_map = service_entry{};");
+			pw.println();
+			pw.println("type package_entry = {");
+			pw.println("    'version' : string");
+			pw.println("    'arch' : string with SELF == 'x86_64' || SELF == 'noarch'");
+			pw.println("};");
+			pw.println();
+			pw.println("type package_map = package_entry{};");
+			pw.println();
+			pw.println("type host_system = {");
+			pw.println("    'hostname' : hostname_string");
+			pw.println("    'domain' : string");
+			pw.println("    'index' : long(0..)");
+			pw.println("    'os' : string");
+			pw.println("    'cluster' : string");
+			pw.println("    'head' : hostname_string");
+			pw.println("    'network' : interface_map");
+			pw.println("};");
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeFunctions(File root) throws IOException {
+
+		PrintWriter pw = open(root, "schema/functions");
+		try {
+			pw.println("declaration template schema/functions;");
+			pw.println();
+			pw.println("function network_address = {");
+			pw.println("    n = ARGV[0];");
+			pw.println("    format('10.%d.%d.%d', (n / 65536) % 256, (n / 256) % 256, n % 256);");
+			pw.println("};");
+			pw.println();
+			pw.println("function merge_options = {");
+			pw.println("    result = dict();");
+			pw.println("    foreach (i; options; ARGV) {");
+			pw.println("        foreach (k; v; options) {");
+			pw.println("            result[k] = v;");
+			pw.println("        };");
+			pw.println("    };");
+			pw.println("    result;");
+			pw.println("};");
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeSiteDefaults(File root) throws IOException {
+
+		PrintWriter pw = open(root, "site/defaults");
+		try {
+			pw.println("unique template site/defaults;");
+			pw.println();
+			pw.println("include 'schema/types';");
+			pw.println("include 'schema/functions';");
+			pw.println();
+			pw.println("variable SITE_DOMAIN ?= 'example.org';");
+			pw.println("variable NTP_SERVERS ?= list('ntp1.example.org', 'ntp2.example.org');");
+			pw.println();
+			pw.println("bind '/system' = host_system;");
+			pw.println("bind '/services' = service_map;");
+			pw.println("bind '/packages' = package_map;");
+			pw.println();
+			pw.println("'/system/domain' = SITE_DOMAIN;");
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeOs(File root, int os, Random random) throws IOException {
+
+		String name = "os/os-" + os;
+		PrintWriter pw = open(root, name);
+		try {
+			pw.println("unique template " + name + ";");
+			pw.println();
+			pw.println("'/system/os' = 'os-" + os + "';");
+			pw.println();
+			pw.println("prefix '/packages';");
+			pw.println();
+			for (int p = 0; p < packagesPerOs; p++) {
+				String arch = random.nextInt(4) == 0 ? "noarch" : "x86_64";
+				pw.format("'pkg-%04d' = dict('version', '%d.%d.%d-%d', 'arch', '%s');%n",
+						p, random.nextInt(5), random.nextInt(20),
+						random.nextInt(100), 1 + os, arch);
+			}
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeCommonServices(File root) throws IOException {
+
+		PrintWriter pw = open(root, "services/common");
+		try {
+			pw.println("unique template services/common;");
+			pw.println();
+			pw.println("prefix '/services';");
+			pw.println();
+			pw.println("'sshd/port' = 22;");
+			pw.println("'sshd/options' = dict('PermitRootLogin', 'no');");
+			pw.println("'ntpd/peers' = NTP_SERVERS;");
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeService(File root, int svc, Random random)
+			throws IOException {
+
+		String name = "services/svc-" + svc;
+		PrintWriter pw = open(root, name);
+		try {
+			pw.println("unique template " + name + ";");
+			pw.println();
+			pw.println("prefix '/services/svc-" + svc + "';");
+			pw.println();
+			pw.println("'enabled' = true;");
+			pw.println("'port' = " + (8000 + svc) + ";");
+			pw.format("'options' = merge_options(dict('log', 'info', 'workers', '%d'), dict('listen', format('%%s.%%s', HOSTNAME, SITE_DOMAIN)));%n",
+					1 + random.nextInt(16));
+			if (random.nextBoolean()) {
+				pw.println("'peers' = list(HOSTNAME, value('/system/head'));");
+			}
+		} finally {
+			close(pw);
+		}
+	}
+
+	private void writeCluster(File root, int cluster) throws IOException {
+
+		String name = "clusters/cluster-" + cluster;
+		PrintWriter pw = open(root, name);
+		try {
+			pw.println("unique template " + name + ";");
+			pw.println();
+			pw.println("variable CLUSTER_HEAD = '" + objectName(cluster) + "';");
+			pw.println();
+			pw.println("'/system/cluster' = 'cluster-" + cluster + "';");
+			pw.println("'/system/head' = if (OBJECT == CLUSTER_HEAD) {");
+			pw.println("    HOSTNAME;");
+			pw.println("} else {");
+			pw.println("    value(CLUSTER_HEAD + ':/system/hostname');");
+			pw.println("};");
+		} finally {
+			close(pw);
+		}
+	}
+
+	private File writeObject(File root, int index, int activeClusters,
+			Random random) throws IOException {
+
+		String name = objectName(index);
+		PrintWriter pw = open(root, name);
+		try {
+			pw.println("object template " + name + ";");
+			pw.println();
+			pw.format("variable HOSTNAME = 'node-%05d';%n", index);
+			pw.println("variable INDEX = " + index + ";");
+			pw.println();
+			pw.println("include 'site/defaults';");
+			pw.println("include 'os/os-" + (index % osVariants) + "';");
+			pw.println("include 'clusters/cluster-" + (index % activeClusters)
+					+ "';");
+			pw.println("include 'services/common';");
+
+			// The services are included in a random order, so that different
+			// objects build their configuration trees differently.
+			int count = Math.min(servicesPerObject, services);
+			List<Integer> chosen = new ArrayList<Integer>(services);
+			for (int svc = 0; svc < services; svc++) {
+				chosen.add(svc);
+			}
+			Collections.shuffle(chosen, random);
+			for (int svc : chosen.subList(0, count)) {
+				pw.println("include 'services/svc-" + svc + "';");
+			}
+
+			pw.println();
+			pw.println("'/system/hostname' = HOSTNAME;");
+			pw.println("'/system/index' = INDEX;");
+			pw.println("'/system/network/eth0' = dict('device', 'eth0', 'ip', network_address(INDEX));");
+			pw.println("'/system/network/eth1/device' = 'eth1';");
+			pw.println("'/system/network/eth1/mtu' = 9000;");
+		} finally {
+			close(pw);
+		}
+		return new File(root, name + ".pan");
+	}
+
+	private static PrintWriter open(File root, String name) throws IOException {
+
+		File file = new File(root, name + ".pan");
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("cannot create directory " + parent);
+		}
+		return new PrintWriter(new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8"));
+	}
+
+	private static void close(PrintWriter pw) throws IOException {
+		pw.close();
+		if (pw.checkError()) {
+			throw new IOException("error writing template");
+		}
+	}
+
+	/**
+	 * Writes a template tree from the command line. The arguments are the
+	 * output directory and, optionally, the number of objects and the number
+	 * of service templates.
+	 *
+	 * @param args
+	 *            command line arguments
+	 *
+	 * @throws IOException
+	 *             if a template cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1 || args.length > 3) {
+			System.err.println("usage: "
+					+ TemplateTreeGenerator.class.getName()
+					+ " <directory> [objects] [services]");
+			System.exit(1);
+		}
+
+		int objects = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		TemplateTreeGenerator generator = new TemplateTreeGenerator(objects);
+		if (args.length > 2) {
+			generator.setServices(Integer.parseInt(args[2]));
+		}
+
+		List<File> files = generator.generate(new File(args[0]));
+		System.out.println("wrote " + files.size() + " object templates to "
+				+ args[0]);
+	}
+
+}
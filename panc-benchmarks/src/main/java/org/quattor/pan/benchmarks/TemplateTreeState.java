@@ -0,0 +1,170 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerOptions.DeprecationWarnings;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.repository.ParameterList;
+
+/**
+ * Benchmark state holding a generated template tree. The tree is written to a
+ * temporary directory once per trial and deleted afterwards. The number of
+ * object templates can be changed with the JMH parameter
+ * <code>objects</code> and the storage used for dicts and lists with
+ * <code>persistentResources</code>.
+ *
+ * @author loomis
+ *
+ */
+@State(Scope.Benchmark)
+public class TemplateTreeState {
+
+	@Param({ "2000" })
+	public int objects;
+
+	@Param({ "false", "true" })
+	public boolean persistentResources;
+
+	/**
+	 * Directory holding the generated templates; this is the only include
+	 * directory of the compiler.
+	 */
+	public File templateDirectory;
+
+	/**
+	 * Empty directory for output files.
+	 */
+	public File outputDirectory;
+
+	public List<String> objectNames;
+
+	public List<File> objectFiles;
+
+	private File root;
+
+	@Setup(Level.Trial)
+	public void generateTree() throws IOException {
+
+		root = File.createTempFile("panc-benchmarks", "");
+		if (!root.delete() || !root.mkdir()) {
+			throw new IOException("cannot create directory " + root);
+		}
+
+		templateDirectory = new File(root, "templates");
+		outputDirectory = new File(root, "output");
+		if (!outputDirectory.mkdir()) {
+			throw new IOException("cannot create directory " + outputDirectory);
+		}
+
+		TemplateTreeGenerator generator = new TemplateTreeGenerator(objects);
+		objectFiles = generator.generate(templateDirectory);
+		objectNames = generator.getObjectNames();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTree() {
+		delete(root);
+	}
+
+	/**
+	 * Returns the name of an object, cycling through all of the generated
+	 * objects as the counter increases.
+	 *
+	 * @param counter
+	 *            non-negative counter
+	 *
+	 * @return name of an object template
+	 */
+	public String objectName(int counter) {
+		return objectNames.get(counter % objectNames.size());
+	}
+
+	/**
+	 * Creates compiler options for the generated tree which use a single
+	 * thread for each stage, so that tasks run inline in the benchmark thread
+	 * are not disturbed by other work.
+	 *
+	 * @param formats
+	 *            comma-separated list of output formats; may be null for no
+	 *            output
+	 *
+	 * @return compiler options
+	 *
+	 * @throws SyntaxException
+	 *             never; the options do not define a root element
+	 */
+	public CompilerOptions createOptions(String formats) throws SyntaxException {
+
+		Set<Formatter> formatters = (formats != null) ? CompilerOptions
+				.getFormatters(formats) : new HashSet<Formatter>();
+
+		ParameterList parameters = new ParameterList();
+		parameters.append("persistentResources",
+				Boolean.toString(persistentResources));
+
+		return new CompilerOptions(null, null, 0, 0, formatters,
+				outputDirectory, Collections.singletonList(templateDirectory),
+				DeprecationWarnings.OFF, null, null, null, 1, parameters);
+	}
+
+	/**
+	 * Creates a compiler for the generated tree which does not produce any
+	 * output. Nothing is submitted to the compiler's task queues: the results
+	 * are only calculated when requested from the caches, in the calling
+	 * thread.
+	 *
+	 * @return compiler without output formats
+	 *
+	 * @throws SyntaxException
+	 *             never; the options do not define a root element
+	 */
+	public Compiler createCompiler() throws SyntaxException {
+		return new Compiler(createOptions(null), objectNames,
+				Collections.<File> emptyList());
+	}
+
+	private static void delete(File file) {
+		if (file == null) {
+			return;
+		}
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.tasks.Valid1Result;
+import org.quattor.pan.tasks.Valid1Task;
+import org.quattor.pan.tasks.Valid2Result;
+import org.quattor.pan.tasks.Valid2Task;
+
+/**
+ * Measures the two validation phases of the generated objects. The build
+ * results (for <code>Valid1Task</code>) and the first validation results (for
+ * <code>Valid2Task</code>) of all of the objects are calculated during the
+ * setup and kept in the compiler's caches, so each invocation measures only
+ * the type checks of one object. Result eviction is disabled in the generated
+ * options, so the cached results stay available.
+ *
+ * @author loomis
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+	private TemplateTreeState tree;
+
+	private Compiler compiler;
+
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void buildObjects(TemplateTreeState tree) throws Exception {
+		this.tree = tree;
+		compiler = tree.createCompiler();
+		for (String objectName : tree.objectNames) {
+			compiler.getValid1Cache().waitForResult(objectName);
+		}
+		counter = 0;
+	}
+
+	@Benchmark
+	public Valid1Result valid1() throws Exception {
+		Valid1Task task = new Valid1Task(compiler, nextObjectName());
+		task.run();
+		return task.get();
+	}
+
+	@Benchmark
+	public Valid2Result valid2() throws Exception {
+		Valid2Task task = new Valid2Task(compiler, nextObjectName());
+		task.run();
+		return task.get();
+	}
+
+	private String nextObjectName() {
+		String objectName = tree.objectName(counter);
+		counter = (counter + 1) % tree.objects;
+		return objectName;
+	}
+
+}
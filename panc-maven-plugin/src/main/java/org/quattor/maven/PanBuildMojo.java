@@ -1,17 +1,20 @@
 package org.quattor.maven;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecutionException;
-import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging;
 import org.quattor.pan.CompilerOptions;
 import org.quattor.pan.CompilerResults;
+import org.quattor.pan.CompilerSession;
 import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.output.Formatter;
+import org.quattor.pan.repository.ParameterList;
 
 /**
  * perform a full build of pan language templates
@@ -104,6 +107,112 @@ public class PanBuildMojo extends AbstractPanMojo {
      */
     private File logFile = null;
 
+    /**
+     * evict build and validation results as soon as they are no longer needed
+     *
+     * @parameter property="panc.evictResults" default-value=false
+     */
+    private boolean evictResults = false;
+
+    /**
+     * share the storage of dicts and lists between copies
+     *
+     * @parameter property="panc.persistentResources" default-value=false
+     */
+    private boolean persistentResources = false;
+
+    /**
+     * share identical values between the generated machine profiles
+     *
+     * @parameter property="panc.deduplicateValues" default-value=false
+     */
+    private boolean deduplicateValues = false;
+
+    /**
+     * translate function bodies to use slots for local variables
+     *
+     * @parameter property="panc.compileFunctions" default-value=false
+     */
+    private boolean compileFunctions = false;
+
+    /**
+     * compile included templates ahead of the builds
+     *
+     * @parameter property="panc.prefetchIncludes" default-value=false
+     */
+    private boolean prefetchIncludes = false;
+
+    /**
+     * run the leading includes shared by object templates only once
+     *
+     * @parameter property="panc.snapshotPrefixes" default-value=false
+     */
+    private boolean snapshotPrefixes = false;
+
+    /**
+     * look up templates in an index of the include directories
+     *
+     * @parameter property="panc.indexSources" default-value=false
+     */
+    private boolean indexSources = false;
+
+    /**
+     * directory for compiled templates kept between builds
+     *
+     * @parameter property="panc.templateCacheDir"
+     */
+    private File templateCacheDir = null;
+
+    /**
+     * zip archive from which the templates are read
+     *
+     * @parameter property="panc.sourceArchive"
+     */
+    private File sourceArchive = null;
+
+    /**
+     * file recording the build costs used to order the builds
+     *
+     * @parameter property="panc.buildSchedule"
+     */
+    private File buildSchedule = null;
+
+    /**
+     * write a JSON/CSV telemetry report next to the profiles
+     *
+     * @parameter property="panc.telemetry" default-value=false
+     */
+    private boolean telemetry = false;
+
+    /**
+     * telemetry sampling interval in milliseconds
+     *
+     * @parameter property="panc.telemetryInterval" default-value=100
+     */
+    private int telemetryInterval = 100;
+
+    /**
+     * write flame graph, trace and summary profiles of the builds next to the
+     * profiles
+     *
+     * @parameter property="panc.profile" default-value=false
+     */
+    private boolean profile = false;
+
+    /**
+     * validate the subtrees shared between profiles only once
+     *
+     * @parameter property="panc.cacheValidation" default-value=false
+     */
+    private boolean cacheValidation = false;
+
+    /**
+     * number of object templates to build in each batch (0 = all at once)
+     *
+     * @parameter property="panc.batchSize" default-value=0
+     */
+    private int batchSize = 0;
+
     private Set<Formatter> formatters;
 
     public void execute() throws MojoExecutionException {
@@ -123,9 +232,19 @@ public class PanBuildMojo extends AbstractPanMojo {
 
         Set<File> objects = PluginUtils.collectPanSources(profileDirectory);
 
-        CompilerResults results = Compiler.run(options, null, objects);
+        // All batches share a single session so that templates common to the
+        // batches are only compiled once.
+        CompilerSession session = new CompilerSession(options);
 
-        boolean hadError = results.print(verbose);
+        boolean hadError = false;
+        for (List<File> batch : batchObjects(objects)) {
+
+            CompilerResults results = session.run(null, batch);
+
+            if (results.print(verbose)) {
+                hadError = true;
+            }
+        }
 
         if (hadError) {
             throw new MojoExecutionException("pan language syntax check failed");
@@ -133,6 +252,21 @@ public class PanBuildMojo extends AbstractPanMojo {
 
     }
 
+    private List<List<File>> batchObjects(Set<File> objects) {
+
+        List<File> files = new ArrayList<File>(objects);
+        List<List<File>> batches = new LinkedList<List<File>>();
+
+        int total = files.size();
+        int size = (batchSize <= 0) ? total : batchSize;
+
+        for (int start = 0; start < total; start += size) {
+            batches.add(files.subList(start, Math.min(start + size, total)));
+        }
+
+        return batches;
+    }
+
     private void setFormatters() throws MojoExecutionException {
         formatters = CompilerOptions.getFormatters(formats);
     }
@@ -151,11 +285,46 @@ public class PanBuildMojo extends AbstractPanMojo {
         LinkedList<File> includeDirectories = new LinkedList<File>();
         includeDirectories.add(sourceDirectory);
 
+        ParameterList parameters = new ParameterList();
+        parameters.append("evictResults", Boolean.toString(evictResults));
+        parameters.append("persistentResources",
+                Boolean.toString(persistentResources));
+        parameters.append("deduplicateValues",
+                Boolean.toString(deduplicateValues));
+        parameters.append("compileFunctions",
+                Boolean.toString(compileFunctions));
+        parameters.append("prefetchIncludes",
+                Boolean.toString(prefetchIncludes));
+        parameters.append("snapshotPrefixes",
+                Boolean.toString(snapshotPrefixes));
+        parameters.append("indexSources",
+                Boolean.toString(indexSources));
+        parameters.append("telemetryReport",
+                Boolean.toString(telemetry));
+        parameters.append("telemetryInterval",
+                Integer.toString(telemetryInterval));
+        parameters.append("profile", Boolean.toString(profile));
+        parameters.append("cacheValidation",
+                Boolean.toString(cacheValidation));
+        if (templateCacheDir != null) {
+            parameters.append("templateCacheDirectory",
+                    templateCacheDir.getAbsolutePath());
+        }
+        if (sourceArchive != null) {
+            parameters.append("sourceArchive",
+                    sourceArchive.getAbsolutePath());
+        }
+        if (buildSchedule != null) {
+            parameters.append("buildScheduleFile",
+                    buildSchedule.getAbsolutePath());
+        }
+
         try {
             return new CompilerOptions(Pattern.compile(debugNsInclude),
                     Pattern.compile(debugNsExclude), maxIteration,
                     maxRecursion, formatters, outputDir, includeDirectories,
-                    warningsFromString(warnings), null, null, initialData, nthread);
+                    warningsFromString(warnings), null, null, initialData, nthread,
+                    parameters);
 
         } catch (SyntaxException e) {
             throw new MojoExecutionException(
@@ -5,6 +5,8 @@
   (:import [org.quattor.pan.output TxtFormatter
             JsonFormatter
             JsonGzipFormatter
+            JsonCompactFormatter
+            JsonCompactGzipFormatter
             DotFormatter
             PanFormatter
             PanGzipFormatter
@@ -32,6 +34,8 @@
             "text" (conj v (TxtFormatter/getInstance))
             "json" (conj v (JsonFormatter/getInstance))
             "json.gz" (conj v (JsonGzipFormatter/getInstance))
+            "json-compact" (conj v (JsonCompactFormatter/getInstance))
+            "json-compact.gz" (conj v (JsonCompactGzipFormatter/getInstance))
             "dot" (conj v (DotFormatter/getInstance))
             "pan" (conj v (PanFormatter/getInstance))
             "pan.gz" (conj v (PanGzipFormatter/getInstance))
@@ -104,10 +108,22 @@
            [[k v]]
   (utils/positive-integer (keyword k) v))
 
+(defmethod process :telemetry-interval
+           [[k v]]
+  (utils/positive-integer (keyword k) v))
+
 (defmethod process :nthread
            [[k v]]
   (utils/non-negative-integer (keyword k) v))
 
+(defmethod process :template-cache-dir
+           [[k v]]
+  {(keyword k) (utils/absolute-file v)})
+
+(defmethod process :build-schedule
+           [[k v]]
+  {(keyword k) (utils/absolute-file v)})
+
 (defmethod process :logging
            [[k v]]
   {(keyword k) (utils/split-on-commas v)})
@@ -6,7 +6,8 @@
             [org.quattor.pan.cmd-option :refer [to-settings]]
             [org.quattor.pan.settings :as settings]
             [clojure.string :as str])
-  (:import [org.quattor.pan CompilerOptions CompilerResults]
+  (:import [org.quattor.pan CompilerOptions CompilerResults CompilerDaemon]
+           [org.quattor.pan.repository ParameterList]
            [clojure.lang ExceptionInfo]))
 
 (def ^:const bug-report-msg
@@ -23,6 +24,34 @@ Please file a bug report including the stack trace.
         (.toUpperCase)
         (str " ERROR: " msg))))
 
+(defn compiler-parameters
+  "Returns a ParameterList with the settings that do not have a
+   dedicated CompilerOptions constructor argument."
+  [{:keys [evict-results persistent-resources deduplicate-values
+           compile-functions prefetch-includes snapshot-prefixes
+           index-sources source-archive template-cache-dir build-schedule
+           telemetry telemetry-interval profile cache-validation]}]
+  (let [parameters (ParameterList.)]
+    (.append parameters "evictResults" (str (boolean evict-results)))
+    (.append parameters "persistentResources" (str (boolean persistent-resources)))
+    (.append parameters "deduplicateValues" (str (boolean deduplicate-values)))
+    (.append parameters "compileFunctions" (str (boolean compile-functions)))
+    (.append parameters "prefetchIncludes" (str (boolean prefetch-includes)))
+    (.append parameters "snapshotPrefixes" (str (boolean snapshot-prefixes)))
+    (.append parameters "indexSources" (str (boolean index-sources)))
+    (.append parameters "telemetryReport" (str (boolean telemetry)))
+    (when telemetry-interval
+      (.append parameters "telemetryInterval" (str telemetry-interval)))
+    (.append parameters "profile" (str (boolean profile)))
+    (.append parameters "cacheValidation" (str (boolean cache-validation)))
+    (when source-archive
+      (.append parameters "sourceArchive" (str (.getAbsoluteFile (io/file source-archive)))))
+    (when template-cache-dir
+      (.append parameters "templateCacheDirectory" (str template-cache-dir)))
+    (when build-schedule
+      (.append parameters "buildScheduleFile" (str build-schedule)))
+    parameters))
+
 (defn create-compiler-options []
   (let [{:keys [debug-ns-include
                 debug-ns-exclude
@@ -35,7 +64,8 @@ Please file a bug report including the stack trace.
                 annotationDirectory
                 annotationBaseDirectory
                 initial-data
-                nthread]} settings/*settings*]
+                nthread]
+         :as settings} settings/*settings*]
     (CompilerOptions. debug-ns-include
                       debug-ns-exclude
                       max-iteration
@@ -47,7 +77,8 @@ Please file a bug report including the stack trace.
                       annotationDirectory
                       annotationBaseDirectory
                       initial-data
-                      nthread)))
+                      nthread
+                      (compiler-parameters settings))))
 
 (defn default-compiler-options []
   (let [{:keys [debug-ns-include
@@ -61,7 +92,8 @@ Please file a bug report including the stack trace.
                 annotationDirectory
                 annotationBaseDirectory
                 initial-data
-                nthread]} (settings/defaults)]
+                nthread]
+         :as settings} (settings/defaults)]
     (CompilerOptions. debug-ns-include
                       debug-ns-exclude
                       max-iteration
@@ -73,7 +105,8 @@ Please file a bug report including the stack trace.
                       annotationDirectory
                       annotationBaseDirectory
                       initial-data
-                      nthread)))
+                      nthread
+                      (compiler-parameters settings))))
 
 (defn parse-int
   [^String s]
@@ -94,6 +127,24 @@ Please file a bug report including the stack trace.
    [nil "--max-iteration LIMIT" "set max. no. of iterations" :default "10000"]
    [nil "--max-recursion LIMIT" "set max. depth of recursion" :default "50"]
    [nil "--nthread NUM" "no. of executor threads (0=no. CPU)" :default "0"]
+   [nil "--evict-results" "evict results that are no longer needed" :default false]
+   [nil "--persistent-resources" "share dict and list storage between copies" :default false]
+   [nil "--deduplicate-values" "share identical values between profiles" :default false]
+   [nil "--compile-functions" "use slots for local variables of functions" :default false]
+   [nil "--prefetch-includes" "compile included templates ahead of the builds" :default false]
+   [nil "--snapshot-prefixes" "run includes shared by object templates once" :default false]
+   [nil "--index-sources" "look up templates in an index of the include path" :default false]
+   [nil "--source-archive FILE" "read templates from a zip archive"]
+   [nil "--template-cache-dir DIR" "directory for compiled templates"]
+   [nil "--build-schedule FILE" "order builds using costs of earlier runs"]
+   [nil "--telemetry" "write JSON/CSV telemetry report to output dir" :default false]
+   [nil "--telemetry-interval MS" "telemetry sampling interval" :default "100"]
+   [nil "--profile" "write flame graph/trace profile of builds to output dir" :default false]
+   [nil "--cache-validation" "validate shared subtrees only once" :default false]
+   [nil "--daemon" "serve builds from a long-running compiler" :default false]
+   [nil "--daemon-port PORT" "local port of the compiler daemon" :default "7683"]
+   [nil "--daemon-token FILE" "file holding the secret of the compiler daemon"
+    :default (str (System/getProperty "user.home") "/.panc-daemon-token")]
    [nil "--logging LOG_TYPES" "set logging types"]
    [nil "--log-file FILE" "specify log file"]
    [nil "--warnings FLAG" "off, on, fatal" :default "on"]
@@ -143,6 +194,20 @@ Please file a bug report including the stack trace.
         (println (.formatStats results)))
       (System/exit rc))))
 
+(defn run-daemon
+  [options arguments]
+  (settings/with-settings
+    (to-settings options)
+
+    (let [port (parse-int (:daemon-port options))
+          daemon (CompilerDaemon. (create-compiler-options)
+                                  (:include-path settings/*settings*)
+                                  (map io/file arguments)
+                                  (io/file (:daemon-token options)))]
+      (println "pan compiler daemon listening on port" port)
+      (.serve daemon port)
+      (System/exit 0))))
+
 (defn -main [& args]
   (try
     (let [{:keys [options arguments errors summary]} (cli/parse-opts args cli-args)]
@@ -150,6 +215,7 @@ Please file a bug report including the stack trace.
         (:help options) (banner-and-exit summary)
         (:version options) (compiler-version)
         errors (error-message errors)
+        (:daemon options) (run-daemon options arguments)
         :else (run-compiler options arguments)))
     (catch ExceptionInfo e
       (error-and-exit e))
@@ -29,7 +29,21 @@
    :annotationDirectory nil
    :annotationBaseDirectory nil
    :initial-data nil
-   :nthread 0})
+   :nthread 0
+   :evict-results false
+   :persistent-resources false
+   :deduplicate-values false
+   :compile-functions false
+   :prefetch-includes false
+   :snapshot-prefixes false
+   :index-sources false
+   :source-archive nil
+   :template-cache-dir nil
+   :build-schedule nil
+   :telemetry false
+   :telemetry-interval 100
+   :profile false
+   :cache-validation false})
 
 (def ^:dynamic *settings* (defaults))
 
@@ -15,10 +15,11 @@
  */
 package org.quattor.ant;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.URI;
@@ -26,6 +27,8 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +44,7 @@ import org.quattor.pan.output.DepFormatter;
 import org.quattor.pan.output.DepGzipFormatter;
 import org.quattor.pan.output.Formatter;
 import org.quattor.pan.parser.ASTTemplate;
+import org.quattor.pan.repository.ArchiveSourceRepositoryImpl;
 import org.quattor.pan.repository.SourceType;
 import org.quattor.pan.tasks.CompileTask;
 import org.quattor.pan.utils.FileStatCache;
@@ -50,6 +54,10 @@ public class DependencyChecker {
 
 	private final List<File> includeDirectories;
 
+	// Repository reading the templates from source archives or null if
+	// the templates are in the include directories.
+	private final ArchiveSourceRepositoryImpl archiveRepository;
+
 	private final Pattern ignoreDependencyPattern;
 
 	private final FileStatCache statCache = new FileStatCache();
@@ -68,16 +76,50 @@ public class DependencyChecker {
     private static boolean depGzip = false;
 	private Formatter depFormatter;
 
-    // ConcurrentHashMap is ok for depOutdatedCache
-    //  2 threads will get the same result,
-    //  so it's not an issue if they add the file
+	// Size of the buffers used when reading the dependency files.
+	private final static int BUFFER_SIZE = 65536;
+
+	// Number of object files checked by a single task when checking in
+	// parallel.
+	private final static int BATCH_SIZE = 16;
+
+	private final int nthread;
+
+    // The same dependency lines appear in many dependency files. Each
+    // distinct line is parsed only once and shared by all of the objects
+    // that reference it. ConcurrentHashMap is ok here: 2 threads will
+    // create equivalent entries, so it's not an issue if both add one.
     // No static Map, due to eg include directories
     // Very high initial number of expected dependencies
-    protected Map<String, Boolean> depOutdatedCache = new ConcurrentHashMap<String, Boolean>(50000);
+    protected Map<String, DependencyEntry> dependencyEntries = new ConcurrentHashMap<String, DependencyEntry>(50000);
 
 	public DependencyChecker(List<File> includeDirectories,
 			File outputDirectory, Set<Formatter> formatters,
 			Pattern ignoredDependencyPattern) {
+		this(includeDirectories, outputDirectory, formatters,
+				ignoredDependencyPattern, 0);
+	}
+
+	public DependencyChecker(List<File> includeDirectories,
+			File outputDirectory, Set<Formatter> formatters,
+			Pattern ignoredDependencyPattern, int nthread) {
+		this(includeDirectories, outputDirectory, formatters,
+				ignoredDependencyPattern, nthread, null);
+	}
+
+	/**
+	 * Creates a checker for templates read from source archives. The
+	 * dependencies are looked up in the archives instead of the include
+	 * directories, and the archive entries are compared with the checksums
+	 * recorded in the dependency files.
+	 */
+	public DependencyChecker(List<File> includeDirectories,
+			File outputDirectory, Set<Formatter> formatters,
+			Pattern ignoredDependencyPattern, int nthread,
+			ArchiveSourceRepositoryImpl archiveRepository) {
+
+		this.nthread = (nthread > 0) ? nthread : 0;
+		this.archiveRepository = archiveRepository;
 
         // if dep.gz is formatter, assume gzipped deps
         for (Formatter formatter : formatters) {
@@ -126,11 +168,25 @@ public class DependencyChecker {
 
 	public List<File> filterForOutdatedFiles(List<File> objectFiles) {
 
+		// The checks for each object are independent of one another, so
+		// they are done in parallel. The results are collected in the
+		// original order of the object files.
+		File[] files = objectFiles.toArray(new File[objectFiles.size()]);
+		boolean[] flags = new boolean[files.length];
+
+		ForkJoinPool pool = (nthread > 0) ? new ForkJoinPool(nthread)
+				: new ForkJoinPool();
+		try {
+			pool.invoke(new OutdatedCheck(files, flags, 0, files.length));
+		} finally {
+			pool.shutdown();
+		}
+
 		LinkedList<File> outdated = new LinkedList<File>();
 
-		for (File objectFile : objectFiles) {
-			if (isOutdated(objectFile)) {
-				outdated.add(objectFile);
+		for (int i = 0; i < files.length; i++) {
+			if (flags[i]) {
+				outdated.add(files[i]);
 			}
 		}
 
@@ -183,10 +239,18 @@ public class DependencyChecker {
 	public static String extractLocalizedTemplateName(File sourceFile,
 			CompilerOptions options) {
 
+		// Only the name is needed, so try to read it from the template's
+		// header first. A full parse is only done if the header can't be
+		// scanned unambiguously.
+		String name = TemplateHeaderScanner.scanTemplateName(sourceFile);
+		if (name != null) {
+			return FileUtils.localizeFilename(name);
+		}
+
 		try {
 
 			ASTTemplate ast = CompileTask.CallImpl.compile(sourceFile, options);
-			String name = ast.getIdentifier();
+			name = ast.getIdentifier();
 			return FileUtils.localizeFilename(name);
 
 		} catch (Exception e) {
@@ -203,19 +267,15 @@ public class DependencyChecker {
         String line;
 
         try {
+            // The file is decoded as it is read, so that reading can stop
+            // at the first outdated dependency.
+            InputStream is = new FileInputStream(dependencyFile);
             if (depGzip) {
-                in = new BufferedReader(
-                    new InputStreamReader(
-                        new GZIPInputStream(
-                            new FileInputStream(dependencyFile)
-                            )
-                        )
-                    );
+                is = new GZIPInputStream(is, BUFFER_SIZE);
             } else {
-                in = new BufferedReader(
-                    new FileReader(dependencyFile)
-                    );
+                is = new BufferedInputStream(is, BUFFER_SIZE);
             }
+            in = new BufferedReader(new InputStreamReader(is), BUFFER_SIZE);
 
             while (((line = in.readLine()) != null) && !outdated) {
 				if (isDependencyOutdated(line, targetTime)) {
@@ -253,74 +313,16 @@ public class DependencyChecker {
 
 	public boolean isDependencyOutdated(String line, Long targetTime) {
 
-        // there's typically one targetTime for all object profiles
-        //   but to be fully correct, add it to the cacheKey
-        String cacheKey =  targetTime.toString() + ((String) " ") + line;
-        Boolean cachedResult = depOutdatedCache.get(cacheKey);
-        if (cachedResult != null) {
-            return cachedResult;
-        }
-
-		DependencyInfo info = new DependencyInfo(line);
-
-		if (ignoreDependencyPattern.matcher(info.name).matches()) {
-            depOutdatedCache.put(cacheKey, false);
-			return false;
-		}
-
-        // default outdated; but switch default is to throw exception,
-        //  so doesn't matter much
-        boolean result = true;
-        switch (info.type) {
-
-		case TPL:
-			result = isSourceDependencyOutdated(info, targetTime);
-            break;
-		case PAN:
-			result = isSourceDependencyOutdated(info, targetTime);
-            break;
-		case TEXT:
-			result = isTextDependencyOutdated(info, targetTime);
-            break;
-		case ABSENT_SOURCE:
-			result = (lookupSourceFile(info.name) != null);
-            break;
-		case ABSENT_TEXT:
-			result = (lookupTextFile(info.name) != null);
-            break;
-		default:
-			throw new BuildException("unknown file type: " + info.type);
-		}
-
-        depOutdatedCache.put(cacheKey, result);
-        return result;
-	}
-
-	public boolean isSourceDependencyOutdated(DependencyInfo info,
-			long targetTime) {
-
-		if (isSingleDependencyOutdated(info.file, targetTime)) {
-			return true;
-		}
-
-		// Check that the location hasn't changed in the path. If it has
-		// changed, then profile isn't current.
-		File foundFile = lookupSourceFile(info.name);
-		return isSingleDependencyDifferent(info.file, foundFile);
-
-	}
-
-	public boolean isTextDependencyOutdated(DependencyInfo info, long targetTime) {
-
-		if (isSingleDependencyOutdated(info.file, targetTime)) {
-			return true;
+		DependencyEntry entry = dependencyEntries.get(line);
+		if (entry == null) {
+			DependencyEntry newEntry = new DependencyEntry(new DependencyInfo(line));
+			entry = dependencyEntries.putIfAbsent(line, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
 		}
 
-		// Check that the location hasn't changed in the path. If it has
-		// changed, then profile isn't current.
-		File foundFile = lookupTextFile(info.name);
-		return isSingleDependencyDifferent(info.file, foundFile);
-
+		return entry.isOutdated(targetTime);
 	}
 
 	public boolean isSingleDependencyOutdated(File dep, long targetTime) {
@@ -335,6 +337,10 @@ public class DependencyChecker {
 
 	public File lookupSourceFile(String tplName) {
 
+		if (archiveRepository != null) {
+			return archiveRepository.lookupSource(tplName);
+		}
+
 		String localTplName = FileUtils.localizeFilename(tplName);
 
 		List<String> sourceFiles = new ArrayList<String>();
@@ -357,6 +363,10 @@ public class DependencyChecker {
 
 	public File lookupTextFile(String tplName) {
 
+		if (archiveRepository != null) {
+			return archiveRepository.lookupText(tplName);
+		}
+
 		String localTplName = FileUtils.localizeFilename(tplName);
 
 		for (File pathdir : includeDirectories) {
@@ -455,6 +465,136 @@ public class DependencyChecker {
 
 	}
 
+	/**
+	 * Holds the parsed form of a single dependency line along with the parts
+	 * of the check which do not depend on the modification time of the
+	 * object's output. The modification times themselves come from the stat
+	 * cache, so each file is checked only once.
+	 */
+	protected class DependencyEntry {
+
+		private final DependencyInfo info;
+
+		private final boolean ignored;
+
+		// Whether the file would now be found in a different location. This
+		// is only calculated when needed; 2 threads calculating it at the
+		// same time will get the same result.
+		private volatile Boolean relocated = null;
+
+		public DependencyEntry(DependencyInfo info) {
+			this.info = info;
+			this.ignored = ignoreDependencyPattern.matcher(info.name).matches();
+		}
+
+		public boolean isOutdated(long targetTime) {
+
+			if (ignored) {
+				return false;
+			}
+
+			switch (info.type) {
+
+			case TPL:
+			case PAN:
+			case TEXT:
+				if (info.checksum != null) {
+					if (isArchiveEntryChanged()) {
+						return true;
+					}
+				} else if (isSingleDependencyOutdated(info.file, targetTime)) {
+					return true;
+				}
+				return isRelocated();
+			case ABSENT_SOURCE:
+			case ABSENT_TEXT:
+				return isRelocated();
+			default:
+				throw new BuildException("unknown file type: " + info.type);
+			}
+		}
+
+		/**
+		 * Compares the checksum of an archive entry with the one recorded
+		 * when the object was built. A missing entry has no checksum.
+		 */
+		private boolean isArchiveEntryChanged() {
+			if (archiveRepository == null) {
+				return true;
+			}
+			return !info.checksum.equals(archiveRepository
+					.getChecksum(info.file));
+		}
+
+		private boolean isRelocated() {
+
+			Boolean result = relocated;
+			if (result == null) {
+
+				switch (info.type) {
+
+				case TPL:
+				case PAN:
+					result = isSingleDependencyDifferent(info.file,
+							lookupSourceFile(info.name));
+					break;
+				case TEXT:
+					result = isSingleDependencyDifferent(info.file,
+							lookupTextFile(info.name));
+					break;
+				case ABSENT_SOURCE:
+					result = (lookupSourceFile(info.name) != null);
+					break;
+				default:
+					result = (lookupTextFile(info.name) != null);
+					break;
+				}
+
+				relocated = result;
+			}
+			return result.booleanValue();
+		}
+
+	}
+
+	/**
+	 * Checks a range of object files, splitting the range into smaller tasks
+	 * until each task has only a few files to check.
+	 */
+	private class OutdatedCheck extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File[] files;
+
+		private final boolean[] flags;
+
+		private final int start;
+
+		private final int end;
+
+		public OutdatedCheck(File[] files, boolean[] flags, int start, int end) {
+			this.files = files;
+			this.flags = flags;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= BATCH_SIZE) {
+				for (int i = start; i < end; i++) {
+					flags[i] = isOutdated(files[i]);
+				}
+			} else {
+				int middle = (start + end) >>> 1;
+				invokeAll(new OutdatedCheck(files, flags, start, middle),
+						new OutdatedCheck(files, flags, middle, end));
+			}
+		}
+
+	}
+
 	public static class DependencyInfo {
 
 		public final String name;
@@ -463,22 +603,25 @@ public class DependencyChecker {
 
 		public final File file;
 
+		public final String checksum;
+
 		public DependencyInfo(String dependencyLine) {
 
 			// Format is a whitespace-separated line. The items are 1)
-			// template name (or full file name), 2) file type, and 3) full
-			// URI for parent directory. The third element is only there if
-			// the file wasn't absent.
+			// template name (or full file name), 2) file type, 3) full
+			// URI for parent directory, and 4) checksum of the contents. The
+			// third element is only there if the file wasn't absent; the
+			// fourth only for files read from a source archive.
 			String[] fields = whitespace.split(dependencyLine);
 
-			if (fields.length != 2 && fields.length != 3) {
+			if (fields.length < 2 || fields.length > 4) {
 				throw new BuildException("malformed dependency line");
 			}
 
 			name = fields[0];
 			type = SourceType.valueOf(fields[1]);
 
-			if (fields.length == 3) {
+			if (fields.length >= 3) {
 
 				try {
 					file = reconstructSingleDependency(fields[2], name, type);
@@ -490,6 +633,8 @@ public class DependencyChecker {
 				file = null;
 			}
 
+			checksum = (fields.length == 4) ? fields[3] : null;
+
 			validate();
 
 		}
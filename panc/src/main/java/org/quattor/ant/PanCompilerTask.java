@@ -17,6 +17,7 @@
 package org.quattor.ant;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -29,12 +30,15 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.DirSet;
 import org.apache.tools.ant.types.FileSet;
 import org.apache.tools.ant.types.Path;
-import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging;
 import org.quattor.pan.CompilerOptions;
 import org.quattor.pan.CompilerResults;
+import org.quattor.pan.CompilerSession;
+import org.quattor.pan.exceptions.ConfigurationException;
 import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.output.Formatter;
+import org.quattor.pan.repository.ArchiveSourceRepositoryImpl;
+import org.quattor.pan.repository.ParameterList;
 import org.quattor.pan.repository.SourceType;
 
 /**
@@ -79,6 +83,34 @@ public class PanCompilerTask extends Task {
 
     private boolean failOnWarn = false;
 
+    private boolean evictResults = false;
+
+    private boolean persistentResources = false;
+
+    private boolean deduplicateValues = false;
+
+    private boolean compileFunctions = false;
+
+    private boolean prefetchIncludes = false;
+
+    private boolean snapshotPrefixes = false;
+
+    private boolean indexSources = false;
+
+    private File templateCacheDir = null;
+
+    private File sourceArchive = null;
+
+    private File buildSchedule = null;
+
+    private boolean telemetry = false;
+
+    private int telemetryInterval = 100;
+
+    private boolean profile = false;
+
+    private boolean cacheValidation = false;
+
     final protected static String debugIndent = "    ";
 
     private String logging = "none";
@@ -136,7 +168,8 @@ public class PanCompilerTask extends Task {
         try {
             options = new CompilerOptions(debugNsInclude, debugNsExclude,
                     maxIteration, maxRecursion, formatters, outputDir, includeDirectories,
-                    deprecationWarnings, null, null, initialData, nthread);
+                    deprecationWarnings, null, null, initialData, nthread,
+                    createParameters());
         } catch (SyntaxException e) {
             throw new BuildException("invalid root element: " + e.getMessage());
         }
@@ -159,9 +192,20 @@ public class PanCompilerTask extends Task {
         List<File> outdatedFiles = objectFiles;
         if (outputDir != null && checkDependencies) {
 
+            ArchiveSourceRepositoryImpl archiveRepository = null;
+            if (sourceArchive != null) {
+                try {
+                    archiveRepository = new ArchiveSourceRepositoryImpl(
+                            Collections.singletonList(sourceArchive
+                                    .getAbsoluteFile()));
+                } catch (ConfigurationException e) {
+                    throw new BuildException(e.getMessage());
+                }
+            }
+
             DependencyChecker checker = new DependencyChecker(
                     includeDirectories, outputDir, formatters,
-                    ignoreDependencyPattern);
+                    ignoreDependencyPattern, nthread, archiveRepository);
 
             outdatedFiles = checker.filterForOutdatedFiles(objectFiles);
 
@@ -188,10 +232,14 @@ public class PanCompilerTask extends Task {
         // Batch the files to process, if requested.
         List<List<File>> batches = batchOutdatedFiles(outdatedFiles);
 
+        // All batches share a single session so that templates common to the
+        // batches are only compiled once.
+        CompilerSession session = new CompilerSession(options);
+
         boolean hadError = false;
         for (List<File> batch : batches) {
 
-            CompilerResults results = Compiler.run(options, null, batch);
+            CompilerResults results = session.run(null, batch);
 
             boolean batchHadError = results.print(verbose);
 
@@ -448,6 +496,158 @@ public class PanCompilerTask extends Task {
         this.verbose = verbose;
     }
 
+    /**
+     * Flag to indicate that build and validation results should be evicted
+     * from the compiler's caches as soon as no remaining task references them.
+     * This reduces the memory needed for large builds.
+     *
+     * @param evictResults if true, evict results which are no longer referenced
+     */
+    public void setEvictResults(boolean evictResults) {
+        this.evictResults = evictResults;
+    }
+
+    /**
+     * Flag to indicate that dicts and lists should use persistent collections
+     * which are shared between copies rather than copied eagerly.
+     *
+     * @param persistentResources if true, use persistent collections
+     */
+    public void setPersistentResources(boolean persistentResources) {
+        this.persistentResources = persistentResources;
+    }
+
+    /**
+     * Flag to indicate that identical values (strings, numbers and complete
+     * subtrees) should be shared between the generated machine
+     * configurations. This reduces the memory needed for large builds with
+     * many similar profiles.
+     *
+     * @param deduplicateValues if true, share identical values
+     */
+    public void setDeduplicateValues(boolean deduplicateValues) {
+        this.deduplicateValues = deduplicateValues;
+    }
+
+    /**
+     * Flag to indicate that the bodies of user-defined functions should be
+     * translated when the templates are compiled, so that local variables are
+     * accessed through slots instead of by name.
+     *
+     * @param compileFunctions if true, translate function bodies
+     */
+    public void setCompileFunctions(boolean compileFunctions) {
+        this.compileFunctions = compileFunctions;
+    }
+
+    /**
+     * Flag to indicate that templates included with a constant name should be
+     * compiled ahead of time, so that the builds do not have to wait for their
+     * compilation.
+     *
+     * @param prefetchIncludes if true, compile included templates ahead of time
+     */
+    public void setPrefetchIncludes(boolean prefetchIncludes) {
+        this.prefetchIncludes = prefetchIncludes;
+    }
+
+    /**
+     * Flag to indicate that the includes at the beginning of object templates
+     * which are shared by several of them should be run only once, with the
+     * builds starting from a copy of the resulting state.
+     *
+     * @param snapshotPrefixes if true, run shared leading includes once
+     */
+    public void setSnapshotPrefixes(boolean snapshotPrefixes) {
+        this.snapshotPrefixes = snapshotPrefixes;
+    }
+
+    /**
+     * Flag to indicate that the include directories should be indexed once
+     * when the compiler starts, so that the templates are looked up in memory
+     * rather than on the file system.
+     *
+     * @param indexSources if true, look up templates in an index
+     */
+    public void setIndexSources(boolean indexSources) {
+        this.indexSources = indexSources;
+    }
+
+    /**
+     * Directory in which compiled templates are kept between builds. Templates
+     * which have not changed since they were stored are not parsed again. The
+     * directory is created if necessary.
+     *
+     * @param templateCacheDir directory for compiled templates
+     */
+    public void setTemplateCacheDir(File templateCacheDir) {
+        this.templateCacheDir = templateCacheDir;
+    }
+
+    /**
+     * Zip archive from which the templates are read instead of the include
+     * directories. The templates are read without extracting the archive.
+     *
+     * @param sourceArchive archive containing the templates
+     */
+    public void setSourceArchive(File sourceArchive) {
+        this.sourceArchive = sourceArchive;
+    }
+
+    /**
+     * File recording the build cost and object dependencies of each object.
+     * The objects on which many others depend are built first; the file is
+     * updated at the end of each build.
+     *
+     * @param buildSchedule file holding the record of earlier builds
+     */
+    public void setBuildSchedule(File buildSchedule) {
+        this.buildSchedule = buildSchedule;
+    }
+
+    /**
+     * Flag to indicate that a JSON and a CSV report with the timings of the
+     * tasks, the depths of the queues, the memory usage and the garbage
+     * collections should be written to the output directory.
+     *
+     * @param telemetry if true, write the telemetry report
+     */
+    public void setTelemetry(boolean telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Interval at which the memory usage and the queues are sampled.
+     *
+     * @param telemetryInterval sampling interval in milliseconds
+     */
+    public void setTelemetryInterval(int telemetryInterval) {
+        this.telemetryInterval = telemetryInterval;
+    }
+
+    /**
+     * Flag to indicate that the time and memory allocated by each included
+     * template, function call and type validation should be profiled. The
+     * collapsed stacks, the trace events and a summary are written to the
+     * output directory.
+     *
+     * @param profile if true, profile the builds
+     */
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Flag to indicate that the dicts and lists found valid against a type
+     * should not be validated again when they are shared between object
+     * templates. Types with validation functions are always validated.
+     *
+     * @param cacheValidation if true, cache the successful validations
+     */
+    public void setCacheValidation(boolean cacheValidation) {
+        this.cacheValidation = cacheValidation;
+    }
+
     /**
      * This any task can check machine profile dependencies to avoid processing
      * machine profiles which are already up-to-date. Setting this flag allows
@@ -520,4 +720,47 @@ public class PanCompilerTask extends Task {
         return batches;
     }
 
+    /**
+     * Collects the additional compiler parameters which do not have a
+     * dedicated argument in the <code>CompilerOptions</code> constructor.
+     *
+     * @return list of compiler parameters
+     */
+    private ParameterList createParameters() {
+        ParameterList parameters = new ParameterList();
+        parameters.append("evictResults", Boolean.toString(evictResults));
+        parameters.append("persistentResources",
+                Boolean.toString(persistentResources));
+        parameters.append("deduplicateValues",
+                Boolean.toString(deduplicateValues));
+        parameters.append("compileFunctions",
+                Boolean.toString(compileFunctions));
+        parameters.append("prefetchIncludes",
+                Boolean.toString(prefetchIncludes));
+        parameters.append("snapshotPrefixes",
+                Boolean.toString(snapshotPrefixes));
+        parameters.append("indexSources",
+                Boolean.toString(indexSources));
+        parameters.append("telemetryReport",
+                Boolean.toString(telemetry));
+        parameters.append("telemetryInterval",
+                Integer.toString(telemetryInterval));
+        parameters.append("profile", Boolean.toString(profile));
+        parameters.append("cacheValidation",
+                Boolean.toString(cacheValidation));
+        if (templateCacheDir != null) {
+            parameters.append("templateCacheDirectory",
+                    templateCacheDir.getAbsolutePath());
+        }
+        if (sourceArchive != null) {
+            parameters.append("sourceArchive",
+                    sourceArchive.getAbsolutePath());
+        }
+        if (buildSchedule != null) {
+            parameters.append("buildScheduleFile",
+                    buildSchedule.getAbsolutePath());
+        }
+        return parameters;
+    }
+
 }
@@ -0,0 +1,235 @@
+/*
+ Copyright (c) 2006-2012 Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.quattor.ant;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Extracts the name of a template from its declaration without parsing the
+ * full template. Only the beginning of the file is read: whitespace, comments,
+ * and annotations followed by the template declaration (e.g.
+ * <code>object template name;</code>). Checking whether an object is up to
+ * date only requires the name, so this avoids a full parse of every object
+ * template.
+ *
+ * The scanner follows the lexical rules of the parser for the header. If it
+ * finds anything it does not expect, it gives up and returns null; the caller
+ * must then fall back to the full parser, which will also report any errors.
+ *
+ * @author loomis
+ *
+ */
+public class TemplateHeaderScanner {
+
+	private static final int EOF = -1;
+
+	private final Reader reader;
+
+	private int c;
+
+	private TemplateHeaderScanner(Reader reader) throws IOException {
+		this.reader = reader;
+		this.c = reader.read();
+	}
+
+	/**
+	 * Returns the name declared in the header of the given template file or
+	 * null if the name cannot be determined unambiguously.
+	 *
+	 * @param sourceFile
+	 *            template file to scan
+	 *
+	 * @return template name or null
+	 */
+	public static String scanTemplateName(File sourceFile) {
+
+		Reader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(sourceFile), "UTF-8"));
+			return scanTemplateName(reader);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException consumed) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the name declared in the template header read from the given
+	 * reader or null if the name cannot be determined unambiguously. Reading
+	 * stops at the end of the declaration.
+	 *
+	 * @param reader
+	 *            reader positioned at the beginning of the template
+	 *
+	 * @return template name or null
+	 *
+	 * @throws IOException
+	 *             if there is a problem reading the template
+	 */
+	public static String scanTemplateName(Reader reader) throws IOException {
+		return (new TemplateHeaderScanner(reader)).scan();
+	}
+
+	private String scan() throws IOException {
+
+		skipIgnored();
+		String word = readWord();
+
+		// The template type is optional.
+		if ("object".equals(word) || "structure".equals(word)
+				|| "declaration".equals(word) || "unique".equals(word)) {
+			skipIgnored();
+			word = readWord();
+		}
+
+		if (!"template".equals(word)) {
+			return null;
+		}
+
+		skipIgnored();
+		String name = readName();
+		if (name == null) {
+			return null;
+		}
+
+		skipIgnored();
+		return (c == ';') ? name : null;
+	}
+
+	private void next() throws IOException {
+		c = reader.read();
+	}
+
+	/**
+	 * Skips whitespace, comments, and annotations. If an annotation is
+	 * malformed, scanning stops at the offending character, which will then
+	 * cause the scan to fail.
+	 */
+	private void skipIgnored() throws IOException {
+		while (true) {
+			if (isWhitespace(c)) {
+				next();
+			} else if (c == '#') {
+				while (c != EOF && c != '\n' && c != '\r') {
+					next();
+				}
+			} else if (c == '@') {
+				if (!skipAnnotation()) {
+					return;
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	private boolean skipAnnotation() throws IOException {
+
+		next();
+		while (isWhitespace(c)) {
+			next();
+		}
+		while (isAnnotationNameChar(c)) {
+			next();
+		}
+		while (isWhitespace(c)) {
+			next();
+		}
+
+		int close;
+		switch (c) {
+		case '(':
+			close = ')';
+			break;
+		case '[':
+			close = ']';
+			break;
+		case '{':
+			close = '}';
+			break;
+		default:
+			return false;
+		}
+
+		next();
+		while (c != close) {
+			if (c == EOF) {
+				return false;
+			}
+			next();
+		}
+		next();
+
+		return true;
+	}
+
+	private String readWord() throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+		while (isIdentifierChar(c)) {
+			sb.append((char) c);
+			next();
+		}
+		return sb.toString();
+	}
+
+	private String readName() throws IOException {
+
+		StringBuilder sb = new StringBuilder();
+		while (isNameChar(c)) {
+			sb.append((char) c);
+			next();
+		}
+		return (sb.length() > 0) ? sb.toString() : null;
+	}
+
+	private static boolean isWhitespace(int c) {
+		return (c == ' ' || c == '\t' || c == '\f' || c == '\n' || c == '\r');
+	}
+
+	private static boolean isLetter(int c) {
+		return ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_');
+	}
+
+	private static boolean isDigit(int c) {
+		return (c >= '0' && c <= '9');
+	}
+
+	private static boolean isIdentifierChar(int c) {
+		return (isLetter(c) || isDigit(c));
+	}
+
+	private static boolean isAnnotationNameChar(int c) {
+		return (isIdentifierChar(c) || c == '-' || c == '.');
+	}
+
+	private static boolean isNameChar(int c) {
+		return (isIdentifierChar(c) || c == '-' || c == '+' || c == '.' || c == '/');
+	}
+
+}
@@ -0,0 +1,355 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.quattor.pan;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.quattor.pan.tasks.Task;
+
+/**
+ * The build cost and object dependencies of each object built by earlier compiler runs. The record is read from a file
+ * when the compiler starts and is used to order the work so that the objects on which many others depend are built
+ * first: the objects are ordered by the cost of the longest chain of builds which waits for them (their own cost
+ * included) and then by the number of objects which reference them directly. Objects which are not in the record are
+ * given the average cost.
+ *
+ * The objects built by a run replace their entries in the record, which is written back when the run finishes. The
+ * file contains one line per object with the object name, the build cost in milliseconds, the comma-separated names of
+ * the objects it references and the absolute path of the object template, separated by tabs.
+ *
+ * @author loomis
+ */
+public class BuildSchedule {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    /**
+     * The entries read from the file; these are not modified.
+     */
+    private final Map<String, Entry> previous;
+
+    /**
+     * The entries of the objects built by the current run.
+     */
+    private final ConcurrentHashMap<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Cost of the longest chain of builds waiting for each object in the previous record.
+     */
+    private final Map<String, Long> levels = new HashMap<String, Long>();
+
+    /**
+     * Number of objects directly referencing each object in the previous record.
+     */
+    private final Map<String, Integer> references = new HashMap<String, Integer>();
+
+    /**
+     * Object names of the templates in the previous record, keyed by their absolute path.
+     */
+    private final Map<String, String> names = new HashMap<String, String>();
+
+    private final long defaultCost;
+
+    /**
+     * Creates a schedule from the record in the given file. A file which does not exist gives an empty record;
+     * malformed lines are ignored.
+     *
+     * @param file file holding the record
+     * @throws IOException if the file exists but cannot be read
+     */
+    public BuildSchedule(File file) throws IOException {
+
+        this.file = file;
+        this.previous = read(file);
+
+        long total = 0L;
+        for (Entry e : previous.values()) {
+            total += e.cost;
+            names.put(e.path, e.name);
+            for (String dependency : e.dependencies) {
+                Integer count = references.get(dependency);
+                references.put(dependency, (count == null) ? 1 : count + 1);
+            }
+        }
+        defaultCost = (previous.isEmpty()) ? 0L : total / previous.size();
+
+        Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+        for (Entry e : previous.values()) {
+            for (String dependency : e.dependencies) {
+                Set<String> s = dependents.get(dependency);
+                if (s == null) {
+                    s = new HashSet<String>();
+                    dependents.put(dependency, s);
+                }
+                s.add(e.name);
+            }
+        }
+        for (String name : previous.keySet()) {
+            computeLevel(name, dependents, new HashSet<String>());
+        }
+    }
+
+    /**
+     * Records the build of an object for the next run.
+     *
+     * @param name         name of the object
+     * @param tplFile      object template
+     * @param cost         time spent building the object (excluding the other objects) in milliseconds
+     * @param dependencies names of the objects referenced by the object
+     */
+    public void record(String name, File tplFile, long cost, Collection<String> dependencies) {
+        Set<String> deps = new TreeSet<String>(dependencies);
+        deps.remove(name);
+        current.put(name, new Entry(name, Math.max(cost, 0L), deps, tplFile.getAbsolutePath()));
+    }
+
+    /**
+     * Returns the cost of the longest chain of builds which waits for the given object, including the object itself.
+     *
+     * @param name name of the object
+     * @return cost in milliseconds
+     */
+    public long getLevel(String name) {
+        Long level = (name != null) ? levels.get(name) : null;
+        return (level != null) ? level : defaultCost;
+    }
+
+    /**
+     * Returns the number of objects which referenced the given object in the previous record.
+     *
+     * @param name name of the object
+     * @return number of referencing objects
+     */
+    public int getReferences(String name) {
+        Integer count = (name != null) ? references.get(name) : null;
+        return (count != null) ? count : 0;
+    }
+
+    /**
+     * Returns a comparator which puts the object templates to build first at the beginning. Templates which are not
+     * in the record are treated as objects with the average cost.
+     *
+     * @return comparator for object template files
+     */
+    public Comparator<File> fileComparator() {
+        return new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                int result = compareNames(names.get(f1.getAbsolutePath()), names.get(f2.getAbsolutePath()));
+                return (result != 0) ? result : f1.compareTo(f2);
+            }
+        };
+    }
+
+    /**
+     * Returns a comparator for the queue of an executor which puts the tasks of the objects to build first at the
+     * beginning. Tasks are identified by the object name given as their information. Anything else is run after the
+     * tasks.
+     *
+     * @return comparator for queued tasks
+     */
+    public Comparator<Runnable> taskComparator() {
+        return new Comparator<Runnable>() {
+            public int compare(Runnable r1, Runnable r2) {
+                boolean t1 = r1 instanceof Task;
+                boolean t2 = r2 instanceof Task;
+                if (t1 && t2) {
+                    String n1 = ((Task<?>) r1).info;
+                    String n2 = ((Task<?>) r2).info;
+                    int result = compareNames(n1, n2);
+                    return (result != 0) ? result : n1.compareTo(n2);
+                } else {
+                    return (t1 == t2) ? 0 : (t1 ? -1 : 1);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the record back to the file. The entries of the objects built by this run replace the previous ones;
+     * the entries of the other objects are kept. The file is replaced atomically where the platform allows it.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void save() throws IOException {
+
+        Map<String, Entry> entries = new TreeMap<String, Entry>(previous);
+        entries.putAll(current);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF8));
+        try {
+            for (Entry e : entries.values()) {
+                writer.write(e.toString());
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("cannot rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    private int compareNames(String n1, String n2) {
+        int result = Long.compare(getLevel(n2), getLevel(n1));
+        if (result == 0) {
+            result = Integer.compare(getReferences(n2), getReferences(n1));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the level of the given object from the levels of the objects which depend on it. Cycles can only come
+     * from records of different runs; the object starting a cycle is ignored when computing the levels of the others.
+     */
+    private long computeLevel(String name, Map<String, Set<String>> dependents, Set<String> visiting) {
+
+        Long level = levels.get(name);
+        if (level != null) {
+            return level;
+        }
+        if (!visiting.add(name)) {
+            return 0L;
+        }
+
+        long max = 0L;
+        Set<String> s = dependents.get(name);
+        if (s != null) {
+            for (String dependent : s) {
+                max = Math.max(max, computeLevel(dependent, dependents, visiting));
+            }
+        }
+
+        Entry e = previous.get(name);
+        long result = ((e != null) ? e.cost : defaultCost) + max;
+
+        visiting.remove(name);
+        levels.put(name, result);
+        return result;
+    }
+
+    private static Map<String, Entry> read(File file) throws IOException {
+
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        if (!file.exists()) {
+            return entries;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry e = Entry.parse(line);
+                if (e != null) {
+                    entries.put(e.name, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    private static final class Entry {
+
+        final String name;
+
+        final long cost;
+
+        final Set<String> dependencies;
+
+        final String path;
+
+        Entry(String name, long cost, Set<String> dependencies, String path) {
+            this.name = name;
+            this.cost = cost;
+            this.dependencies = Collections.unmodifiableSet(dependencies);
+            this.path = path;
+        }
+
+        static Entry parse(String line) {
+
+            String[] fields = line.split("\t", 4);
+            if (fields.length != 4 || "".equals(fields[0])) {
+                return null;
+            }
+
+            long cost;
+            try {
+                cost = Long.parseLong(fields[1]);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+
+            Set<String> dependencies = new TreeSet<String>();
+            for (String dependency : fields[2].split(",")) {
+                if (!"".equals(dependency)) {
+                    dependencies.add(dependency);
+                }
+            }
+
+            return new Entry(fields[0], Math.max(cost, 0L), dependencies, fields[3]);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append('\t').append(cost).append('\t');
+            boolean first = true;
+            for (String dependency : dependencies) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append(dependency);
+                first = false;
+            }
+            sb.append('\t').append(path);
+            return sb.toString();
+        }
+    }
+
+}
@@ -22,17 +22,24 @@ package org.quattor.pan;
 
 import org.quattor.pan.cache.BuildCache;
 import org.quattor.pan.cache.CompileCache;
+import org.quattor.pan.cache.FinalCache;
+import org.quattor.pan.cache.PrefixCache;
+import org.quattor.pan.cache.ReferenceTracker;
 import org.quattor.pan.cache.Valid1Cache;
 import org.quattor.pan.cache.Valid2Cache;
+import org.quattor.pan.dml.data.ValueInterner;
 import org.quattor.pan.repository.SourceRepository;
 import org.quattor.pan.tasks.Task;
 import org.quattor.pan.tasks.TaskResult;
+import org.quattor.pan.type.ValidationCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
@@ -42,10 +49,12 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -103,18 +112,16 @@ public class Compiler {
     private final AtomicInteger remainingTasks = new AtomicInteger(0);
 
     /**
-     * This queue holds the results from all tasks. All tasks must be submitted to this queue.
+     * Indicates that the compiler is still processing its templates. Speculative tasks which have not yet started when
+     * the processing ends are not run.
      */
-    private final BlockingQueue<Future<? extends TaskResult>> resultsQueue = new LinkedBlockingQueue<Future<? extends
-            TaskResult>>();
+    private volatile boolean processing = true;
 
     /**
-     * Build queue thread limit. The build queue must be treated specially because object dependencies can deadlock the
-     * compiler. The number of concurrent threads must be at least equal to the number of outstanding object
-     * dependencies during the build.
+     * This queue holds the results from all tasks. All tasks must be submitted to this queue.
      */
-    private final AtomicInteger buildThreadLimit;
-    private final Object buildThreadLock = new Object();
+    private final BlockingQueue<Future<? extends TaskResult>> resultsQueue = new LinkedBlockingQueue<Future<? extends
+            TaskResult>>();
 
     /**
      * The initialization of this must be done when the instance is constructed to avoid nasty questions about when the
@@ -122,6 +129,27 @@ public class Compiler {
      */
     private final CompilerStatistics stats;
 
+    /**
+     * Samples the memory usage and the queues during the run and collects the timings of the tasks if a report is
+     * requested.
+     */
+    private final CompilerTelemetry telemetry;
+
+    /**
+     * Profiler recording the calls made by the builds or null if the builds are not profiled.
+     */
+    private final CompilerProfiler profiler;
+
+    /**
+     * Cache of the successful validations or null if validations are not cached.
+     */
+    private final ValidationCache validationCache;
+
+    /**
+     * Interner sharing identical values between the configurations or null if values are not shared.
+     */
+    private final ValueInterner valueInterner;
+
     /**
      * This holds a reference to the compiler options. The options are immutable and hence visible to all threads.
      */
@@ -140,6 +168,22 @@ public class Compiler {
 
     private final Valid2Cache v2cache;
 
+    private final FinalCache fcache;
+
+    private final PrefixCache pcache;
+
+    private final ReferenceTracker tracker;
+
+    /**
+     * The session to which this compiler belongs or null if it is standalone.
+     */
+    private final CompilerSession session;
+
+    /**
+     * The record of earlier builds used to order the work or null if the work is done in the order of the files.
+     */
+    private final BuildSchedule schedule;
+
     /**
      * Create a compiler object with the given options and that will process the given templates (either by name or
      * absolute path).
@@ -149,6 +193,20 @@ public class Compiler {
      * @param tplFiles    absolute file names of templates to process
      */
     public Compiler(CompilerOptions options, List<String> objectNames, Collection<File> tplFiles) {
+        this(options, objectNames, tplFiles, null);
+    }
+
+    /**
+     * Create a compiler object which belongs to the given session. Templates already compiled within the session are
+     * reused rather than compiled again.
+     *
+     * @param options     compiler options to use for the created compiler
+     * @param objectNames template names to compile/build; these will be looked-up on the load path
+     * @param tplFiles    absolute file names of templates to process
+     * @param session     session sharing compiled templates between compilers; may be null
+     */
+    public Compiler(CompilerOptions options, List<String> objectNames, Collection<File> tplFiles,
+            CompilerSession session) {
 
         // Sanity check.
         assert (options != null);
@@ -160,10 +218,15 @@ public class Compiler {
 
         // Initialize the statistics.
         stats = new CompilerStatistics();
+        telemetry = new CompilerTelemetry(stats, options.telemetryInterval, options.telemetryReport);
+        profiler = (options.profile) ? new CompilerProfiler() : null;
+        validationCache = (options.cacheValidation) ? new ValidationCache() : null;
+        valueInterner = (options.deduplicateValues) ? new ValueInterner() : null;
 
         // All parameter checking is done as part of the CompilerOptions
         // object.
         this.options = options;
+        this.session = session;
 
         // Create the final set of files to build.
         files = options.resolveFileList(objectNames, tplFiles);
@@ -173,21 +236,43 @@ public class Compiler {
         bcache = new BuildCache(this);
         v1cache = new Valid1Cache(this);
         v2cache = new Valid2Cache(this);
+        fcache = new FinalCache(this);
+        pcache = new PrefixCache(this);
+        tracker = new ReferenceTracker(this, options.evictResults);
+
+        // Read the record of the earlier builds. The work is simply done in
+        // the order of the files if the record cannot be read.
+        BuildSchedule bs = null;
+        if (options.buildScheduleFile != null) {
+            try {
+                bs = new BuildSchedule(options.buildScheduleFile);
+            } catch (IOException ioe) {
+                System.err.println("WARNING: cannot read build schedule: " + ioe.getMessage());
+            }
+        }
+        schedule = bs;
 
         // Setup the executors for the build. There is one for each stage of the
-        // processing.
+        // processing. The size of the build queue is also fixed: a build which
+        // needs another object either runs that build inline, if it has not yet
+        // started, or waits for the thread already running it.
         int nprocs = Runtime.getRuntime().availableProcessors();
         if (options.nthread > 0 && options.nthread < nprocs) {
             nprocs = options.nthread;
         }
 
+        // The output tasks pull each object through its build and validation,
+        // so their queue decides in which order the objects are built.
         executors = new TreeMap<TaskResult.ResultType, ThreadPoolExecutor>();
         for (TaskResult.ResultType t : TaskResult.ResultType.values()) {
-            executors.put(t, (ThreadPoolExecutor) Executors.newFixedThreadPool(nprocs));
+            BlockingQueue<Runnable> queue;
+            if (t == TaskResult.ResultType.XML && schedule != null) {
+                queue = new PriorityBlockingQueue<Runnable>(11, schedule.taskComparator());
+            } else {
+                queue = new LinkedBlockingQueue<Runnable>();
+            }
+            executors.put(t, new ThreadPoolExecutor(nprocs, nprocs, 0L, TimeUnit.MILLISECONDS, queue));
         }
-
-        // Must initialize the build thread limit to the number used above.
-        buildThreadLimit = new AtomicInteger(nprocs);
     }
 
     /**
@@ -216,28 +301,6 @@ public class Compiler {
         // (http://www.apache.org/licenses/LICENSE-2.0)");
     }
 
-    /**
-     * Ensures that the number of threads in the build pool is at least as large as the number given. Because object
-     * templates can have dependencies on each other, it is possible to deadlock the compilation with a rigidly fixed
-     * build queue. To avoid this, allow the build queue limit to be increased.
-     *
-     * @param minLimit minimum build queue limit
-     */
-    public void ensureMinimumBuildThreadLimit(int minLimit) {
-        if (buildThreadLimit.get() < minLimit) {
-            synchronized (buildThreadLock) {
-                buildThreadLimit.set(minLimit);
-                ThreadPoolExecutor buildExecutor = executors.get(TaskResult.ResultType.BUILD);
-
-                // Must set both the maximum and the core limits. If the core is
-                // not set, then the thread pool will not be forced to expand to
-                // the minimum number of threads required.
-                buildExecutor.setMaximumPoolSize(minLimit);
-                buildExecutor.setCorePoolSize(minLimit);
-            }
-        }
-    }
-
     /**
      * Process the templates referenced by the CompilerOptions object used to initialize this instance. This will run
      * through the complete compiling, building, and validation stages as requested. This method should only be invoked
@@ -253,18 +316,25 @@ public class Compiler {
         long start = new Date().getTime();
 
         stats.setFileCount(files.size());
+        telemetry.start(executors);
+
+        // Start with the objects on which the others depend most.
+        List<File> ordered = new ArrayList<File>(files);
+        if (schedule != null) {
+            Collections.sort(ordered, schedule.fileComparator());
+        }
 
         // Trigger the compilation of the templates via the template cache. If
         // no building is going on, then the compile() method is used which
         // doesn't actually save the templates. This reduces drastically the
         // memory requirements.
         if (options.formatters.size() > 0) {
-            for (File f : files) {
+            for (File f : ordered) {
                 ccache.retrieve(f.getAbsolutePath(), false);
             }
         } else {
             // FIXME: Determine if this does the correct thing (nothing) for a syntax check.
-            for (File f : files) {
+            for (File f : ordered) {
                 if (!f.isAbsolute() && options.annotationBaseDirectory != null) {
                     f = new File(options.annotationBaseDirectory, f.getPath());
                 }
@@ -283,11 +353,15 @@ public class Compiler {
                     exceptions.add(ee.getCause());
                 }
                 remainingTasks.decrementAndGet();
-                stats.updateMemoryInfo();
             } catch (InterruptedException consumed) {
             }
         }
 
+        // All of the requested work has been done. Any speculative tasks still
+        // queued are no longer useful.
+        processing = false;
+        telemetry.stop();
+
         // Shutdown the executors. In certain environments (e.g. eclipse) the
         // required "modifyThread" permission may not have been granted. Not
         // having this permission may cause a thread leak.
@@ -310,9 +384,46 @@ public class Compiler {
 
         }
 
+        // Keep the costs and dependencies of the objects built by this run
+        // for the next one.
+        if (schedule != null) {
+            try {
+                schedule.save();
+            } catch (IOException ioe) {
+                System.err.println("WARNING: cannot write build schedule: " + ioe.getMessage());
+            }
+        }
+
         // Finalize the statistics.
         long end = new Date().getTime();
         stats.setBuildTime(end - start);
+        if (validationCache != null) {
+            stats.setValidationCounts(validationCache.getHits(), validationCache.getMisses());
+        }
+        if (valueInterner != null) {
+            stats.setDeduplicationCounts(valueInterner.getPropertyLookups(),
+                    valueInterner.getPropertyHits(),
+                    valueInterner.getResourceLookups(),
+                    valueInterner.getResourceHits());
+        }
+
+        // Write the telemetry next to the generated files.
+        if (options.telemetryReport && options.outputDirectory != null) {
+            try {
+                telemetry.writeReport(options.outputDirectory, end - start);
+            } catch (IOException ioe) {
+                System.err.println("WARNING: cannot write telemetry report: " + ioe.getMessage());
+            }
+        }
+
+        // Write the profile of the builds next to the generated files.
+        if (profiler != null && options.outputDirectory != null) {
+            try {
+                profiler.writeReport(options.outputDirectory);
+            } catch (IOException ioe) {
+                System.err.println("WARNING: cannot write profile: " + ioe.getMessage());
+            }
+        }
 
         return new CompilerResults(stats, exceptions);
     }
@@ -344,6 +455,51 @@ public class Compiler {
         return v2cache;
     }
 
+    /**
+     * Returns a reference to the final results of objects, which are shared by all of the output files of an object.
+     *
+     * @return reference to final cache
+     */
+    public FinalCache getFinalCache() {
+        return fcache;
+    }
+
+    /**
+     * Returns a reference to the build prefixes shared between object templates.
+     *
+     * @return reference to prefix cache
+     */
+    public PrefixCache getPrefixCache() {
+        return pcache;
+    }
+
+    /**
+     * Returns the tracker used to evict build and validation results which are no longer referenced.
+     *
+     * @return reference tracker
+     */
+    public ReferenceTracker getReferenceTracker() {
+        return tracker;
+    }
+
+    /**
+     * Returns the session to which this compiler belongs.
+     *
+     * @return session or null if this compiler is standalone
+     */
+    public CompilerSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns the record of earlier builds used to order the work.
+     *
+     * @return build schedule or null if none is used
+     */
+    public BuildSchedule getBuildSchedule() {
+        return schedule;
+    }
+
     public SourceRepository getSourceRepository() {
         return options.sourceRepository;
     }
@@ -363,11 +519,87 @@ public class Compiler {
 
         // Increment the statistics and put the task on the correct queue.
         stats.incrementStartedTasks(task.resultType);
-        executors.get(task.resultType).submit(task);
+        telemetry.monitor(task, true);
+        // The task itself is queued, so that queues ordering their tasks can
+        // identify it.
+        executors.get(task.resultType).execute(task);
 
         // Make sure that the task gets added to the results queue.
         resultsQueue.add(task);
-        stats.updateMemoryInfo();
+    }
+
+    /**
+     * Submits a task to one of the compiler's task queues without waiting for its result. Unlike <code>submit</code>,
+     * the task is not counted as outstanding work and any exception it throws is not reported directly; the exception
+     * is seen by the clients which later retrieve the task's result. The task is skipped if the processing has ended
+     * before it starts. A task which is never run is run inline by the first client waiting for it.
+     *
+     * @param task task to run on one of the compiler's task queues
+     */
+    public void submitSpeculatively(final Task<? extends TaskResult> task) {
+
+        if (!processing) {
+            return;
+        }
+
+        telemetry.monitor(task, true);
+        try {
+            executors.get(task.resultType).execute(new Runnable() {
+                public void run() {
+                    if (processing) {
+                        task.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException consumed) {
+            // The executors have already been shut down.
+        }
+    }
+
+    /**
+     * Returns the statistics which are collected during the run of this compiler.
+     *
+     * @return statistics of this compiler
+     */
+    public CompilerStatistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Returns the telemetry which samples this compiler's run.
+     *
+     * @return telemetry of this compiler
+     */
+    public CompilerTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Returns the profiler which records the calls made by the builds of this compiler.
+     *
+     * @return profiler of this compiler or null if the builds are not profiled
+     */
+    public CompilerProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Returns the cache of the successful validations of this compiler's run.
+     *
+     * @return validation cache or null if validations are not cached
+     */
+    public ValidationCache getValidationCache() {
+        return validationCache;
+    }
+
+    /**
+     * Returns the interner sharing identical values between the
+     * configurations of this compiler's run.
+     *
+     * @return value interner or null if values are not shared
+     */
+    public ValueInterner getValueInterner() {
+        return valueInterner;
     }
 
     /**
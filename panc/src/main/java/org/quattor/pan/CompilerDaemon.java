@@ -0,0 +1,451 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.quattor.pan;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.quattor.pan.repository.ArchiveSourceRepositoryImpl;
+import org.quattor.pan.repository.SourceRepository;
+
+/**
+ * Keeps a compiler session alive between builds, so that repeated builds of the same templates only redo the work
+ * affected by the files changed in between. The include directories and the profile directories, which hold the
+ * object templates, are watched for changes. Before each build, the changed files are invalidated in the session,
+ * which drops the compiled templates and the records of all objects depending on them. Only the requested objects
+ * which are not up to date are then built; the output files of the others are already those of a clean run. The
+ * modification times of the files on which these objects depend are checked again, in case a change was not
+ * reported by the watch service. Output files which are modified or removed by other means are not noticed. Only the
+ * object templates within the include and profile directories can be built. If the templates are read from source
+ * archives, the archive files are watched as well; any change to one of them drops the whole session, as the changed
+ * entries are not reported individually.
+ *
+ * The daemon serves requests on a socket bound to the loopback interface. As the socket is reachable by all local
+ * users, the daemon writes a random secret to a token file which only its owner can read; each request must start
+ * with a line containing this secret. A request is then a line containing a command followed, for the build
+ * commands, by the absolute paths of the object templates (one per line) and an empty line:
+ *
+ * <ul>
+ * <li><code>build</code> builds the given templates and returns any errors</li>
+ * <li><code>build-verbose</code> also returns the statistics of the build</li>
+ * <li><code>stop</code> stops the daemon</li>
+ * </ul>
+ *
+ * The response contains the output of the build followed by a line <code>exit N</code> with the exit code that
+ * <code>panc</code> would have returned.
+ *
+ * @author loomis
+ */
+public class CompilerDaemon {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The session holding the compiled templates and the dependencies of the objects built so far.
+     */
+    public final CompilerSession session;
+
+    private final WatchService watcher;
+
+    /**
+     * The canonical paths of the directories holding the templates which may be built.
+     */
+    private final List<File> allowedDirectories = new ArrayList<File>();
+
+    /**
+     * The file holding the secret which the clients must send.
+     */
+    private final File tokenFile;
+
+    private final String token;
+
+    /**
+     * The watched directories, keyed by their watch key.
+     */
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+    /**
+     * The absolute paths of the source archives from which the templates are read, if any.
+     */
+    private final Set<Path> archiveFiles = new HashSet<Path>();
+
+    /**
+     * Create a daemon which builds with the given options and watches the given include and profile directories. A
+     * new secret is written to the token file, replacing any earlier one.
+     *
+     * @param options            compiler options to use for all builds
+     * @param includeDirectories directories to watch for changes
+     * @param profileDirectories directories holding the object templates
+     * @param tokenFile          file to which the secret of the daemon is written
+     * @throws IOException if the directories cannot be watched or the token file cannot be written
+     */
+    public CompilerDaemon(CompilerOptions options, Collection<File> includeDirectories,
+            Collection<File> profileDirectories, File tokenFile) throws IOException {
+
+        session = new CompilerSession(options);
+        watcher = FileSystems.getDefault().newWatchService();
+
+        List<File> dirs = new ArrayList<File>(includeDirectories);
+        dirs.addAll(profileDirectories);
+        for (File d : dirs) {
+            registerAll(d.getAbsoluteFile().toPath());
+            allowedDirectories.add(d.getCanonicalFile());
+        }
+
+        // Only the directories holding the archives are watched; the events
+        // for the other files in them are ignored.
+        SourceRepository repository = options.sourceRepository;
+        if (repository instanceof ArchiveSourceRepositoryImpl) {
+            Set<Path> parents = new HashSet<Path>();
+            for (File f : ((ArchiveSourceRepositoryImpl) repository).getArchiveFiles()) {
+                Path archive = f.toPath();
+                archiveFiles.add(archive);
+                if (parents.add(archive.getParent())) {
+                    register(archive.getParent());
+                }
+            }
+        }
+
+        this.tokenFile = tokenFile.getAbsoluteFile();
+        this.token = writeToken(this.tokenFile);
+    }
+
+    /**
+     * Builds the given object templates. The changes to the watched files are taken into account first; only the
+     * templates which are not up to date are then built. If the build fails, none of the given templates are
+     * considered up to date, so that the errors are reported again by the next build.
+     *
+     * @param tplFiles absolute file names of the object templates to build
+     * @return results from the build
+     * @throws IllegalArgumentException if a template is not within the include or profile directories
+     */
+    public synchronized CompilerResults build(Collection<File> tplFiles) {
+
+        List<File> files = new ArrayList<File>();
+        for (File f : tplFiles) {
+            File file = f.getAbsoluteFile();
+            if (!isAllowed(file)) {
+                throw new IllegalArgumentException("template outside of the include and profile directories: "
+                        + file);
+            }
+            files.add(file);
+        }
+
+        processChanges();
+
+        List<File> outdated = new ArrayList<File>();
+        for (File f : files) {
+            if (!session.isUpToDate(f)) {
+                outdated.add(f);
+            }
+        }
+
+        CompilerResults results;
+        if (outdated.isEmpty()) {
+            CompilerStatistics stats = new CompilerStatistics();
+            stats.setBuildTime(0L);
+            results = new CompilerResults(stats, new TreeSet<Throwable>(new Compiler.ThrowableComparator()));
+        } else {
+            results = session.run(null, outdated);
+            if (results.formatErrors() != null) {
+                for (File f : outdated) {
+                    session.forget(f);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Serves requests on the given port of the loopback interface until a <code>stop</code> request is received.
+     * Requests are handled one at a time.
+     *
+     * @param port port on which to listen
+     * @throws IOException if the socket cannot be opened
+     */
+    public void serve(int port) throws IOException {
+
+        ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        try {
+            boolean running = true;
+            while (running) {
+                Socket socket = server.accept();
+                try {
+                    running = handle(socket);
+                } catch (IOException consumed) {
+                    // The client has gone away; wait for the next one.
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            server.close();
+            watcher.close();
+            Files.deleteIfExists(tokenFile.toPath());
+        }
+    }
+
+    /**
+     * Handles a single request. Returns false if the daemon must stop.
+     */
+    private boolean handle(Socket socket) throws IOException {
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF8));
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF8)));
+
+        String secret = in.readLine();
+        if (secret == null) {
+            return true;
+        }
+        if (!MessageDigest.isEqual(token.getBytes(UTF8), secret.trim().getBytes(UTF8))) {
+            out.println("invalid daemon token");
+            out.println("exit 1");
+            out.flush();
+            return true;
+        }
+
+        String command = in.readLine();
+        if (command == null) {
+            return true;
+        }
+        command = command.trim();
+
+        if ("stop".equals(command)) {
+            out.println("exit 0");
+            out.flush();
+            return false;
+
+        } else if ("build".equals(command) || "build-verbose".equals(command)) {
+
+            List<File> files = new ArrayList<File>();
+            String line;
+            while ((line = in.readLine()) != null && !"".equals(line)) {
+                files.add(new File(line));
+            }
+
+            int rc;
+            try {
+                CompilerResults results = build(files);
+                String errors = results.formatErrors();
+                if (errors != null) {
+                    out.println(errors);
+                }
+                if ("build-verbose".equals(command)) {
+                    out.println(results.formatStats());
+                }
+                rc = (errors != null) ? 1 : 0;
+            } catch (RuntimeException e) {
+                out.println(e.getMessage());
+                rc = 1;
+            }
+            out.println("exit " + rc);
+
+        } else {
+            out.println("unknown command: " + command);
+            out.println("exit 1");
+        }
+
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Invalidates all of the files changed since the last call. If some events have been lost, everything is
+     * invalidated. The source repository is refreshed if files may have been created or deleted, as it may keep the
+     * results of earlier lookups.
+     */
+    private void processChanges() {
+
+        boolean refresh = false;
+        boolean archiveChanged = false;
+
+        WatchKey key;
+        while ((key = watcher.poll()) != null) {
+
+            Path dir = directories.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind != ENTRY_MODIFY) {
+                    refresh = true;
+                }
+
+                if (kind == OVERFLOW || dir == null) {
+                    session.invalidateAll();
+                    continue;
+                }
+
+                Path path = dir.resolve((Path) event.context());
+                if (archiveFiles.contains(path)) {
+                    archiveChanged = true;
+                    continue;
+                }
+                session.invalidate(path.toFile());
+
+                // A new directory must be watched as well. Files may already
+                // have been created in it before it is registered.
+                if (kind == ENTRY_CREATE && Files.isDirectory(path)) {
+                    try {
+                        registerAll(path);
+                        invalidateAll(path);
+                    } catch (IOException consumed) {
+                        session.invalidateAll();
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+
+        // The central directory of a changed archive must be read again and
+        // none of the compiled templates or records can be trusted.
+        if (archiveChanged) {
+            session.options.sourceRepository.refresh();
+            session.invalidateAll();
+        } else if (refresh) {
+            session.options.sourceRepository.refresh();
+        }
+    }
+
+    /**
+     * Indicates whether the given template is within one of the include or profile directories. Links and relative
+     * components of the path are resolved first.
+     */
+    private boolean isAllowed(File file) {
+
+        File canonical;
+        try {
+            canonical = file.getCanonicalFile();
+        } catch (IOException e) {
+            return false;
+        }
+
+        for (File d : allowedDirectories) {
+            for (File f = canonical.getParentFile(); f != null; f = f.getParentFile()) {
+                if (f.equals(d)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a new random secret to the token file and returns it. The file is only readable by its owner; it is
+     * written under a temporary name and then renamed, so that it never exists with other permissions.
+     */
+    private static String writeToken(File tokenFile) throws IOException {
+
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        String secret = sb.toString();
+
+        Path target = tokenFile.toPath();
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(target.getParent(), ".panc-token", null,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; temporary files are private to their owner there.
+            tmp = Files.createTempFile(target.getParent(), ".panc-token", null);
+        }
+
+        try {
+            Files.write(tmp, secret.getBytes(UTF8));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        return secret;
+    }
+
+    /**
+     * Registers the given directory and all of its subdirectories with the watch service.
+     */
+    private void registerAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        directories.put(key, dir);
+    }
+
+    /**
+     * Invalidates all of the files below the given directory.
+     */
+    private void invalidateAll(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                session.invalidate(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -46,6 +46,8 @@ import org.quattor.pan.output.DepFormatter;
 import org.quattor.pan.output.DepGzipFormatter;
 import org.quattor.pan.output.DotFormatter;
 import org.quattor.pan.output.Formatter;
+import org.quattor.pan.output.JsonCompactFormatter;
+import org.quattor.pan.output.JsonCompactGzipFormatter;
 import org.quattor.pan.output.JsonFormatter;
 import org.quattor.pan.output.JsonGzipFormatter;
 import org.quattor.pan.output.NullFormatter;
@@ -57,6 +59,7 @@ import org.quattor.pan.output.XmlGzipFormatter;
 import org.quattor.pan.parser.ASTOperation;
 import org.quattor.pan.parser.PanParser;
 import org.quattor.pan.parser.PanParserAstUtils;
+import org.quattor.pan.repository.Parameter;
 import org.quattor.pan.repository.ParameterList;
 import org.quattor.pan.repository.SourceFile;
 import org.quattor.pan.repository.SourceRepository;
@@ -138,6 +141,92 @@ public class CompilerOptions {
 
     public final int nthread;
 
+    /**
+     * Flag indicating that the results of the build and validation stages
+     * should be dropped from the caches as soon as no other task needs them.
+     * Only a summary of the object dependencies is kept. This bounds the
+     * memory used by large compilations at the cost of possibly rebuilding an
+     * object that is referenced after it has been evicted.
+     */
+    public final boolean evictResults;
+
+    /**
+     * Flag indicating that dicts and lists should keep their children in
+     * persistent (structurally shared) collections. Copies of such resources
+     * share their children rather than copying them eagerly.
+     */
+    public final boolean persistentResources;
+
+    /**
+     * Flag indicating that identical values should be shared between
+     * machine configurations. Equal strings and numbers are then represented
+     * by a single instance and the finished configuration trees share their
+     * identical subtrees.
+     */
+    public final boolean deduplicateValues;
+
+    /**
+     * Flag indicating that the bodies of user-defined functions should be
+     * translated into specialized operations when templates are compiled.
+     * Local variables of these functions are then accessed through slots
+     * rather than by name.
+     */
+    public final boolean compileFunctions;
+
+    /**
+     * Flag indicating that the templates included with a constant name should
+     * be compiled ahead of time, as soon as the including template has been
+     * compiled, rather than when a build first reaches the include.
+     */
+    public final boolean prefetchIncludes;
+
+    /**
+     * Flag indicating that the leading includes shared by several object
+     * templates should be run only once. The builds of these object templates
+     * then start from a copy of the resulting state.
+     */
+    public final boolean snapshotPrefixes;
+
+    /**
+     * Directory in which compiled templates are kept between compiler runs. If
+     * null, templates are always compiled from their sources.
+     */
+    public final File templateCacheDirectory;
+
+    /**
+     * File holding the build cost and object dependencies of the objects built
+     * by earlier runs. If not null, the objects are built in the order given
+     * by this record and the record is updated at the end of each run.
+     */
+    public final File buildScheduleFile;
+
+    /**
+     * Flag to indicate that a report of the telemetry of the run (task
+     * timings, queue depths, memory and garbage collections) must be written
+     * to the output directory.
+     */
+    public final boolean telemetryReport;
+
+    /**
+     * Interval (in milliseconds) at which the memory usage and the queues are
+     * sampled.
+     */
+    public final int telemetryInterval;
+
+    /**
+     * Flag to indicate that the time and memory allocated by each included
+     * template, function call and type validation must be profiled. The
+     * profile is written to the output directory.
+     */
+    public final boolean profile;
+
+    /**
+     * Flag to indicate that the dicts and lists found valid against a type
+     * should be remembered, so that they are not validated again when shared
+     * between object templates. Types with validation blocks are not cached.
+     */
+    public final boolean cacheValidation;
+
     /**
      * Construct a CompilerOptions instance to drive a Compiler run. Instances
      * of this class are immutable.
@@ -179,6 +268,58 @@ public class CompilerOptions {
                            File outputDirectory, List<File> includeDirectories, DeprecationWarnings deprecationWarnings, File annotationDirectory,
                            File annotationBaseDirectory, String rootElement, int nthread)
             throws SyntaxException {
+        this(debugNsInclude, debugNsExclude, maxIteration, maxRecursion, formatters, outputDirectory,
+                includeDirectories, deprecationWarnings, annotationDirectory, annotationBaseDirectory,
+                rootElement, nthread, null);
+    }
+
+    /**
+     * Construct a CompilerOptions instance to drive a Compiler run with
+     * additional tuning parameters. The parameters are also passed to the
+     * source repository factory. Instances of this class are immutable.
+     *
+     * @param debugNsInclude
+     *            patterns to use to turn on debugging for matching templates
+     * @param debugNsExclude
+     *            patterns to use to turn off debugging for matching templates
+     * @param maxIteration
+     *            maximum number of iterations (non-positive value is unlimited)
+     * @param maxRecursion
+     *            maximum call depth (non-positive value is unlimited)
+     * @param formatters
+     *            formats for machine configuration files
+     * @param outputDirectory
+     *            output directory for machine configuration and dependency
+     *            files
+     * @param includeDirectories
+     *            list of directories to check for template files; directories
+     *            must exist and be absolute
+     * @param deprecationWarnings
+     *            level for deprecation warnings (ON, OFF, or FATAL)
+     * @param annotationDirectory
+     *            directory that will contain annotation output files
+     * @param annotationBaseDirectory
+     *            base directory of source files for annotation output
+     * @param rootElement
+     *            string containing description of root element to use; if null
+     *            or empty string, this defaults to an empty dict
+     * @param nthread
+     *            number of threads to use for each executor queue; 0 uses number
+     *            of CPU cores on the machine
+     * @param parameters
+     *            additional named parameters (e.g. evictResults); may be null
+     * @throws SyntaxException
+     *             if the expression for the rootElement is invalid
+     */
+    public CompilerOptions(Pattern debugNsInclude, Pattern debugNsExclude, int maxIteration, int maxRecursion, Set
+            <Formatter> formatters,
+                           File outputDirectory, List<File> includeDirectories, DeprecationWarnings deprecationWarnings, File annotationDirectory,
+                           File annotationBaseDirectory, String rootElement, int nthread, ParameterList parameters)
+            throws SyntaxException {
+
+        if (parameters == null) {
+            parameters = new ParameterList();
+        }
 
         // Check that the iteration and call depth limits are sensible. If
         // negative or zero set these effectively to infinity.
@@ -230,14 +371,17 @@ public class CompilerOptions {
         this.debugNsInclude = debugNsInclude;
         this.debugNsExclude = debugNsExclude;
 
-        ParameterList parameters = new ParameterList();
+        ParameterList repositoryParameters = new ParameterList();
         for (File f : includeDirectories) {
-            parameters.append("includeDirectory", f.toString());
+            repositoryParameters.append("includeDirectory", f.toString());
+        }
+        for (Parameter parameter : parameters) {
+            repositoryParameters.append(parameter);
         }
 
         SourceRepository value = null;
         try {
-            value = SourceRepositoryFactory.create(parameters);
+            value = SourceRepositoryFactory.create(repositoryParameters);
         } catch (ConfigurationException ce) {
             throw new RuntimeException(ce.getMessage());
             // TODO: Add correct behavior.
@@ -262,6 +406,63 @@ public class CompilerOptions {
         } else {
             this.nthread = nthread;
         }
+
+        this.evictResults = Boolean.parseBoolean(parameters.getValue("evictResults"));
+
+        this.persistentResources = Boolean.parseBoolean(parameters
+                .getValue("persistentResources"));
+
+        this.deduplicateValues = Boolean.parseBoolean(parameters
+                .getValue("deduplicateValues"));
+
+        this.compileFunctions = Boolean.parseBoolean(parameters
+                .getValue("compileFunctions"));
+
+        this.prefetchIncludes = Boolean.parseBoolean(parameters
+                .getValue("prefetchIncludes"));
+
+        this.snapshotPrefixes = Boolean.parseBoolean(parameters
+                .getValue("snapshotPrefixes"));
+
+        String cacheDirectory = parameters.getValue("templateCacheDirectory");
+        if (cacheDirectory != null && !"".equals(cacheDirectory)) {
+            this.templateCacheDirectory = new File(cacheDirectory).getAbsoluteFile();
+            this.templateCacheDirectory.mkdirs();
+            checkDirectory(this.templateCacheDirectory, "template cache");
+        } else {
+            this.templateCacheDirectory = null;
+        }
+
+        String scheduleFile = parameters.getValue("buildScheduleFile");
+        if (scheduleFile != null && !"".equals(scheduleFile)) {
+            this.buildScheduleFile = new File(scheduleFile).getAbsoluteFile();
+        } else {
+            this.buildScheduleFile = null;
+        }
+
+        this.telemetryReport = Boolean.parseBoolean(parameters
+                .getValue("telemetryReport"));
+
+        String interval = parameters.getValue("telemetryInterval");
+        if (interval != null && !"".equals(interval)) {
+            try {
+                this.telemetryInterval = Integer.parseInt(interval.trim());
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException(
+                        "telemetry interval must be an integer (" + interval + ")");
+            }
+            if (this.telemetryInterval <= 0) {
+                throw new IllegalArgumentException(
+                        "telemetry interval must be positive (" + interval + ")");
+            }
+        } else {
+            this.telemetryInterval = 100;
+        }
+
+        this.profile = Boolean.parseBoolean(parameters.getValue("profile"));
+
+        this.cacheValidation = Boolean.parseBoolean(parameters
+                .getValue("cacheValidation"));
     }
 
     // Utility method to turn old options into new deprecation flag.
@@ -458,6 +659,27 @@ public class CompilerOptions {
         return false;
     }
 
+    /**
+     * Returns a string identifying the compiler version and all of the options
+     * which change the result of compiling a template. Compiled templates
+     * stored with a different key must not be reused.
+     *
+     * @return key describing the compilation settings
+     */
+    public String getCompileKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Compiler.version);
+        sb.append("|");
+        sb.append(deprecationWarnings);
+        sb.append("|");
+        sb.append((debugNsInclude != null) ? debugNsInclude.pattern() : "");
+        sb.append("|");
+        sb.append((debugNsExclude != null) ? debugNsExclude.pattern() : "");
+        sb.append("|");
+        sb.append(compileFunctions);
+        return sb.toString();
+    }
+
     // FIXME: This code duplicates code that is also in clojure. The clojure
     // code should eventually be used for generating the list of formatters to
     // be used for a compilation.
@@ -473,6 +695,10 @@ public class CompilerOptions {
                 formatters.add(JsonFormatter.getInstance());
             } else if ("json.gz".equals(fname)) {
                 formatters.add(JsonGzipFormatter.getInstance());
+            } else if ("json-compact".equals(fname)) {
+                formatters.add(JsonCompactFormatter.getInstance());
+            } else if ("json-compact.gz".equals(fname)) {
+                formatters.add(JsonCompactGzipFormatter.getInstance());
             } else if ("dot".equals(fname)) {
                 formatters.add(DotFormatter.getInstance());
             } else if ("pan".equals(fname)) {
@@ -560,6 +786,54 @@ public class CompilerOptions {
         sb.append(deprecationWarnings);
         sb.append("\n");
 
+        sb.append("evict results: ");
+        sb.append(evictResults);
+        sb.append("\n");
+
+        sb.append("persistent resources: ");
+        sb.append(persistentResources);
+        sb.append("\n");
+
+        sb.append("deduplicate values: ");
+        sb.append(deduplicateValues);
+        sb.append("\n");
+
+        sb.append("compile functions: ");
+        sb.append(compileFunctions);
+        sb.append("\n");
+
+        sb.append("prefetch includes: ");
+        sb.append(prefetchIncludes);
+        sb.append("\n");
+
+        sb.append("snapshot prefixes: ");
+        sb.append(snapshotPrefixes);
+        sb.append("\n");
+
+        sb.append("template cache directory: ");
+        sb.append(templateCacheDirectory);
+        sb.append("\n");
+
+        sb.append("build schedule file: ");
+        sb.append(buildScheduleFile);
+        sb.append("\n");
+
+        sb.append("telemetry report: ");
+        sb.append(telemetryReport);
+        sb.append("\n");
+
+        sb.append("telemetry interval: ");
+        sb.append(telemetryInterval);
+        sb.append("\n");
+
+        sb.append("profile: ");
+        sb.append(profile);
+        sb.append("\n");
+
+        sb.append("cache validation: ");
+        sb.append(cacheValidation);
+        sb.append("\n");
+
         return sb.toString();
     }
 
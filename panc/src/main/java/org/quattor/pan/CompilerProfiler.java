@@ -0,0 +1,491 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Profiles the builds of a compiler run. The time and the memory allocated
+ * are recorded for each included template, user-defined function call,
+ * structure template created with <code>create()</code> and validation of a
+ * named type, under the build and validation phases of each object.
+ *
+ * The frames are aggregated into a call tree per object as they are exited,
+ * so the cost of a frame does not depend on the length of the run. The
+ * allocations are those of the running thread and are only available if the
+ * JVM supports measuring them. Frames which last at least a millisecond are
+ * also kept as trace events.
+ *
+ * At the end of the run, three reports can be written: the collapsed stacks
+ * of the self times (in microseconds) for flame graphs, the trace events in
+ * the Chrome trace-event format and a CSV summary of each frame for the
+ * whole run.
+ *
+ * @author loomis
+ *
+ */
+public class CompilerProfiler {
+
+	public static final String FOLDED_REPORT = "panc-profile.folded";
+
+	public static final String TRACE_REPORT = "panc-profile.trace.json";
+
+	public static final String SUMMARY_REPORT = "panc-profile.csv";
+
+	/**
+	 * Minimum duration (in nanoseconds) of the frames kept as trace events.
+	 */
+	private static final long MIN_TRACE_DURATION = 1000000L;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+
+	private final long startTime = System.nanoTime();
+
+	private final List<ObjectProfile> profiles = new ArrayList<ObjectProfile>();
+
+	/**
+	 * Creates the profile of an object. The profile must only be used by one
+	 * thread at a time.
+	 *
+	 * @param objectName
+	 *            name of the object
+	 *
+	 * @return new profile attached to this profiler
+	 */
+	public ObjectProfile createProfile(String objectName) {
+		ObjectProfile profile = new ObjectProfile(objectName, startTime);
+		synchronized (profiles) {
+			profiles.add(profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Writes the collapsed stacks, the trace events and the summary to the
+	 * given directory. This must only be called once all of the profiled
+	 * tasks have finished.
+	 *
+	 * @param directory
+	 *            directory in which to write the reports
+	 *
+	 * @throws IOException
+	 *             if a report cannot be written
+	 */
+	public void writeReport(File directory) throws IOException {
+
+		List<ObjectProfile> copy;
+		synchronized (profiles) {
+			copy = new ArrayList<ObjectProfile>(profiles);
+		}
+
+		writeFolded(new File(directory, FOLDED_REPORT), copy);
+		writeTrace(new File(directory, TRACE_REPORT), copy);
+		writeSummary(new File(directory, SUMMARY_REPORT), copy);
+	}
+
+	private static void writeFolded(File file, List<ObjectProfile> copy)
+			throws IOException {
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), UTF8));
+		try {
+			for (ObjectProfile profile : copy) {
+				for (CallNode node : profile.root.children) {
+					writeFolded(writer, node, new StringBuilder());
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeFolded(Writer writer, CallNode node,
+			StringBuilder stack) throws IOException {
+
+		int length = stack.length();
+		if (length > 0) {
+			stack.append(';');
+		}
+		stack.append(node.label());
+
+		long self = (node.totalTime - node.childTime) / 1000L;
+		if (self > 0) {
+			writer.write(stack.toString());
+			writer.write(' ');
+			writer.write(Long.toString(self));
+			writer.write('\n');
+		}
+
+		for (CallNode child : node.children) {
+			writeFolded(writer, child, stack);
+		}
+
+		stack.setLength(length);
+	}
+
+	private static void writeTrace(File file, List<ObjectProfile> copy)
+			throws IOException {
+
+		JsonWriter json = new JsonWriter(new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), UTF8)));
+		try {
+			json.beginObject();
+			json.name("displayTimeUnit").value("ms");
+			json.name("traceEvents").beginArray();
+			for (ObjectProfile profile : copy) {
+				for (TraceEvent event : profile.events) {
+					json.beginObject();
+					json.name("name").value(event.node.label());
+					json.name("cat").value(event.node.category());
+					json.name("ph").value("X");
+					json.name("ts").value(event.start / 1000L);
+					json.name("dur").value(event.duration / 1000L);
+					json.name("pid").value(1);
+					json.name("tid").value(event.thread);
+					json.name("args").beginObject();
+					json.name("object").value(profile.objectName);
+					json.name("alloc").value(event.allocated);
+					json.endObject();
+					json.endObject();
+				}
+			}
+			json.endArray();
+			json.endObject();
+		} finally {
+			json.close();
+		}
+	}
+
+	private static void writeSummary(File file, List<ObjectProfile> copy)
+			throws IOException {
+
+		Map<String, long[]> totals = new TreeMap<String, long[]>();
+		for (ObjectProfile profile : copy) {
+			for (CallNode node : profile.root.children) {
+				summarize(node, totals, new HashSet<String>());
+			}
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), UTF8));
+		try {
+			writer.write("kind,name,calls,total_us,self_us,alloc_bytes,self_alloc_bytes\n");
+			for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+				long[] t = entry.getValue();
+				writer.write(entry.getKey());
+				writer.write(',');
+				writer.write(Long.toString(t[0]));
+				writer.write(',');
+				writer.write(Long.toString(t[1] / 1000L));
+				writer.write(',');
+				writer.write(Long.toString(t[2] / 1000L));
+				writer.write(',');
+				writer.write(Long.toString(t[3]));
+				writer.write(',');
+				writer.write(Long.toString(t[4]));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Adds the given node and its children to the totals. The total time and
+	 * allocation are only counted for the outermost frame of recursive calls.
+	 */
+	private static void summarize(CallNode node, Map<String, long[]> totals,
+			Set<String> active) {
+
+		String key = node.category() + "," + node.name();
+		long[] t = totals.get(key);
+		if (t == null) {
+			t = new long[5];
+			totals.put(key, t);
+		}
+
+		boolean outermost = active.add(key);
+		t[0] += node.calls;
+		if (outermost) {
+			t[1] += node.totalTime;
+			t[3] += node.allocated;
+		}
+		t[2] += node.totalTime - node.childTime;
+		t[4] += node.allocated - node.childAllocated;
+
+		for (CallNode child : node.children) {
+			summarize(child, totals, active);
+		}
+
+		if (outermost) {
+			active.remove(key);
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+			if (bean.isThreadAllocatedMemorySupported()
+					&& bean.isThreadAllocatedMemoryEnabled()) {
+				return bean;
+			}
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		if (allocationBean != null) {
+			return allocationBean.getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+		} else {
+			return 0L;
+		}
+	}
+
+	/**
+	 * The frames of one object. Entering and exiting a frame only updates the
+	 * call tree of the object; no objects are created unless the frame is
+	 * entered for the first time from its parent or is kept as a trace event.
+	 */
+	public static class ObjectProfile {
+
+		private final String objectName;
+
+		private final long startTime;
+
+		private final CallNode root = new CallNode("OBJECT", null);
+
+		private final List<TraceEvent> events = new ArrayList<TraceEvent>();
+
+		private CallNode[] nodes = new CallNode[32];
+
+		private long[] starts = new long[32];
+
+		private long[] allocations = new long[32];
+
+		private int depth = 0;
+
+		private ObjectProfile(String objectName, long startTime) {
+			this.objectName = objectName;
+			this.startTime = startTime;
+			nodes[0] = root;
+		}
+
+		/**
+		 * Enters a frame. The kind describes the frame (for example
+		 * <code>UNIQUE</code>, <code>STRUCTURE</code> or <code>TYPE</code>); if
+		 * it contains a space, like <code>FUNCTION name</code>, the name is
+		 * that of the template defining it.
+		 *
+		 * @param kind
+		 *            kind of frame
+		 * @param name
+		 *            template or type name
+		 *
+		 * @return depth before entering the frame, to be passed to
+		 *         <code>exitTo</code>
+		 */
+		public int enter(String kind, String name) {
+
+			CallNode node = nodes[depth].child(kind, name);
+
+			int mark = depth;
+			depth++;
+			if (depth == nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2 * depth);
+				starts = Arrays.copyOf(starts, 2 * depth);
+				allocations = Arrays.copyOf(allocations, 2 * depth);
+			}
+
+			nodes[depth] = node;
+			allocations[depth] = allocatedBytes();
+			starts[depth] = System.nanoTime();
+
+			return mark;
+		}
+
+		/**
+		 * Exits the innermost frame.
+		 */
+		public void exit() {
+
+			if (depth == 0) {
+				return;
+			}
+
+			long end = System.nanoTime();
+			long elapsed = end - starts[depth];
+			long allocated = allocatedBytes() - allocations[depth];
+
+			CallNode node = nodes[depth];
+			node.calls++;
+			node.totalTime += elapsed;
+			node.allocated += allocated;
+
+			CallNode parent = nodes[depth - 1];
+			parent.childTime += elapsed;
+			parent.childAllocated += allocated;
+
+			if (elapsed >= MIN_TRACE_DURATION) {
+				events.add(new TraceEvent(node, starts[depth] - startTime,
+						elapsed, allocated, Thread.currentThread().getId()));
+			}
+
+			nodes[depth] = null;
+			depth--;
+		}
+
+		/**
+		 * Exits all of the frames entered since the given depth. This closes
+		 * the frames left open when an evaluation is interrupted by an
+		 * exception.
+		 *
+		 * @param mark
+		 *            depth returned by <code>enter</code>
+		 */
+		public void exitTo(int mark) {
+			while (depth > mark) {
+				exit();
+			}
+		}
+
+	}
+
+	/**
+	 * Aggregated frames with the same kind, name and parent. Times are in
+	 * nanoseconds.
+	 */
+	private static final class CallNode {
+
+		final String kind;
+
+		final String name;
+
+		final List<CallNode> children = new ArrayList<CallNode>(4);
+
+		long calls = 0L;
+
+		long totalTime = 0L;
+
+		long childTime = 0L;
+
+		long allocated = 0L;
+
+		long childAllocated = 0L;
+
+		private CallNode lastChild = null;
+
+		CallNode(String kind, String name) {
+			this.kind = kind;
+			this.name = name;
+		}
+
+		CallNode child(String childKind, String childName) {
+
+			CallNode last = lastChild;
+			if (last != null && last.matches(childKind, childName)) {
+				return last;
+			}
+
+			for (CallNode child : children) {
+				if (child.matches(childKind, childName)) {
+					lastChild = child;
+					return child;
+				}
+			}
+
+			CallNode child = new CallNode(childKind, childName);
+			children.add(child);
+			lastChild = child;
+			return child;
+		}
+
+		private boolean matches(String childKind, String childName) {
+			return kind.equals(childKind)
+					&& ((name == null) ? childName == null : name
+							.equals(childName));
+		}
+
+		/**
+		 * Returns the kind without the name of a function.
+		 */
+		String category() {
+			int i = kind.indexOf(' ');
+			return (i < 0) ? kind : kind.substring(0, i);
+		}
+
+		/**
+		 * Returns the name of the template, type or function.
+		 */
+		String name() {
+			int i = kind.indexOf(' ');
+			return (i < 0) ? name : kind.substring(i + 1);
+		}
+
+		String label() {
+			if (kind.indexOf(' ') >= 0) {
+				return kind + " (" + name + ")";
+			} else {
+				return kind + " " + name;
+			}
+		}
+	}
+
+	private static final class TraceEvent {
+
+		final CallNode node;
+
+		final long start;
+
+		final long duration;
+
+		final long allocated;
+
+		final long thread;
+
+		TraceEvent(CallNode node, long start, long duration, long allocated,
+				long thread) {
+			this.node = node;
+			this.start = start;
+			this.duration = duration;
+			this.allocated = allocated;
+			this.thread = thread;
+		}
+	}
+
+}
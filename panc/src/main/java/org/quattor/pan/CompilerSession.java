@@ -0,0 +1,259 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.quattor.pan;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.quattor.pan.repository.SourceFile;
+import org.quattor.pan.ttemplate.Template;
+
+/**
+ * A sequence of compiler runs which share the compiled templates. Each call to <code>run</code> creates a new
+ * <code>Compiler</code>, so the build and validation results of one run are released when it finishes. Templates
+ * compiled successfully by any run are kept by the session and reused by the later runs instead of being parsed
+ * again. This allows large builds to be split into batches without multiplying the time spent parsing the templates
+ * shared by all of the objects.
+ *
+ * The session also records the files on which each object built by its runs depends. If template sources change
+ * while the session is in use, the changed files must be passed to <code>invalidate</code>; this drops the compiled
+ * template and the records of all of the objects which depend on the file. Instances are thread-safe.
+ *
+ * @author loomis
+ */
+public class CompilerSession {
+
+    /**
+     * The options used for every compiler run in this session.
+     */
+    public final CompilerOptions options;
+
+    /**
+     * Compiled templates keyed by the absolute path of their source file.
+     */
+    private final ConcurrentHashMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
+    /**
+     * Prefix of the keys used for files which were looked up but not found.
+     */
+    private static final String ABSENT_PREFIX = "?";
+
+    /**
+     * Absolute paths of the files on which each object depends, keyed by the absolute path of the object template.
+     * This includes the files of other objects referenced by the object. Files which were not found are recorded by
+     * their name with the prefix <code>ABSENT_PREFIX</code>. The value of each file identifies its version when the
+     * object was recorded: the checksum given by the source repository or, for plain files, the modification time.
+     */
+    private final ConcurrentHashMap<String, Map<String, String>> dependencies = new ConcurrentHashMap<String, Map<String, String>>();
+
+    /**
+     * Create a session that will run the compiler with the given options.
+     *
+     * @param options compiler options to use for all runs
+     */
+    public CompilerSession(CompilerOptions options) {
+
+        // Sanity check.
+        assert (options != null);
+
+        this.options = options;
+    }
+
+    /**
+     * Creates a compiler within this session and then invokes its <code>process</code> method.
+     *
+     * @param objectNames object template names to compile/build; these will be looked-up on the load path
+     * @param tplFiles    absolute file names of templates to process
+     * @return results from the compilation/build
+     */
+    public CompilerResults run(List<String> objectNames, Collection<File> tplFiles) {
+        return (new Compiler(options, objectNames, tplFiles, this)).process();
+    }
+
+    /**
+     * Returns the compiled template for the given file, if it has been compiled by an earlier run.
+     *
+     * @param tplfile absolute path of the template file
+     * @return compiled template or null if the template has not yet been compiled
+     */
+    public Template getTemplate(File tplfile) {
+        return templates.get(tplfile.getAbsolutePath());
+    }
+
+    /**
+     * Keeps the compiled template for the given file for later runs.
+     *
+     * @param tplfile  absolute path of the template file
+     * @param template compiled template
+     */
+    public void putTemplate(File tplfile, Template template) {
+        templates.putIfAbsent(tplfile.getAbsolutePath(), template);
+    }
+
+    /**
+     * Returns the number of compiled templates held by this session.
+     *
+     * @return number of compiled templates
+     */
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    /**
+     * Records the files on which an object built successfully depends. The record is kept until one of the files is
+     * invalidated or modified. Templates and text files which were looked up but not found are recorded by name, so
+     * that the object is also invalidated if a matching file is created later.
+     *
+     * @param objectFile   absolute path of the object template
+     * @param sourceFiles  files on which the object depends
+     */
+    public void recordDependencies(File objectFile, Collection<SourceFile> sourceFiles) {
+        Map<String, String> keys = new HashMap<String, String>();
+        for (SourceFile sourceFile : sourceFiles) {
+            if (sourceFile.isAbsent()) {
+                keys.put(ABSENT_PREFIX + sourceFile.getName(), "");
+            } else {
+                File path = sourceFile.getPath().getAbsoluteFile();
+                String checksum = sourceFile.getChecksum();
+                keys.put(path.getPath(), (checksum != null) ? checksum : Long.toString(path.lastModified()));
+            }
+        }
+        dependencies.put(objectFile.getAbsolutePath(), keys);
+    }
+
+    /**
+     * Indicates whether the given object has been built by an earlier run and none of the files on which it depends
+     * have been invalidated since. The versions of the files are checked as well, as changes may not have been
+     * reported through <code>invalidate</code>; the record of the object is dropped if any of them has changed.
+     * Files read from archives are checked through their checksum, as they have no modification time.
+     *
+     * @param objectFile absolute path of the object template
+     * @return true if the result of the earlier build is still valid
+     */
+    public boolean isUpToDate(File objectFile) {
+
+        String path = objectFile.getAbsolutePath();
+        Map<String, String> keys = dependencies.get(path);
+        if (keys == null) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(ABSENT_PREFIX) && !getVersion(new File(key)).equals(entry.getValue())) {
+                dependencies.remove(path, keys);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the record of the given object, so that it is considered out of date.
+     *
+     * @param objectFile absolute path of the object template
+     */
+    public void forget(File objectFile) {
+        dependencies.remove(objectFile.getAbsolutePath());
+    }
+
+    /**
+     * Drops the compiled template for the given file along with the records of all of the objects which depend on
+     * it. This must be called when a file is created, modified, or deleted. If the file is a source archive, the
+     * templates and records of all of its entries are dropped.
+     *
+     * @param file absolute path of the changed file
+     * @return number of objects which are no longer up to date
+     */
+    public int invalidate(File file) {
+
+        String path = file.getAbsolutePath();
+        String prefix = path + File.separator;
+        templates.remove(path);
+        Iterator<String> tplfiles = templates.keySet().iterator();
+        while (tplfiles.hasNext()) {
+            if (tplfiles.next().startsWith(prefix)) {
+                tplfiles.remove();
+            }
+        }
+
+        // The file may be one which was looked up by name and not found. The
+        // name is relative to an include directory and to an entry of the load
+        // path, neither of which are known here, so every trailing part of the
+        // path (with and without the extension) is a candidate.
+        Set<String> keys = new HashSet<String>();
+        keys.add(path);
+        String[] parts = path.split(Pattern.quote(File.separator));
+        String name = "";
+        for (int i = parts.length - 1; i >= 0 && !"".equals(parts[i]); i--) {
+            name = ("".equals(name)) ? parts[i] : parts[i] + "/" + name;
+            keys.add(ABSENT_PREFIX + name);
+            int dot = name.lastIndexOf('.');
+            if (dot > name.lastIndexOf('/')) {
+                keys.add(ABSENT_PREFIX + name.substring(0, dot));
+            }
+        }
+
+        int count = 0;
+        Iterator<Map.Entry<String, Map<String, String>>> entries = dependencies.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Map<String, String>> entry = entries.next();
+            if (entry.getKey().equals(path) || !Collections.disjoint(entry.getValue().keySet(), keys)
+                    || containsPrefix(entry.getValue().keySet(), prefix)) {
+                entries.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops all of the compiled templates and object records held by this session.
+     */
+    public void invalidateAll() {
+        templates.clear();
+        dependencies.clear();
+    }
+
+    /**
+     * Returns the current version of the given file: the checksum given by the source repository or the
+     * modification time of the file if there is none.
+     */
+    private String getVersion(File path) {
+        String checksum = options.sourceRepository.getChecksum(path);
+        return (checksum != null) ? checksum : Long.toString(path.lastModified());
+    }
+
+    private static boolean containsPrefix(Set<String> keys, String prefix) {
+        for (String key : keys) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
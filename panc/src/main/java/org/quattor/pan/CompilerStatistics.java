@@ -5,7 +5,10 @@ import static org.quattor.pan.tasks.TaskResult.ResultType.ANNOTATION;
 import static org.quattor.pan.tasks.TaskResult.ResultType.COMPILED;
 import static org.quattor.pan.tasks.TaskResult.ResultType.DEP;
 import static org.quattor.pan.tasks.TaskResult.ResultType.XML;
+import static org.quattor.pan.utils.MessageUtils.MSG_STATISTICS_DEDUPLICATION;
+import static org.quattor.pan.utils.MessageUtils.MSG_STATISTICS_PREFETCH;
 import static org.quattor.pan.utils.MessageUtils.MSG_STATISTICS_TEMPLATE;
+import static org.quattor.pan.utils.MessageUtils.MSG_STATISTICS_VALIDATION_CACHE;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
@@ -34,6 +37,10 @@ public class CompilerStatistics {
 
 	private long fileCount;
 
+	private long validationHits;
+
+	private long validationMisses;
+
 	private final AtomicLong heapUsed;
 
 	private final AtomicLong heapTotal;
@@ -46,6 +53,18 @@ public class CompilerStatistics {
 
 	private final Map<ResultType, AtomicLong> doneTasks;
 
+	private final AtomicLong prefetchedTemplates;
+
+	private final AtomicLong avoidedCompilations;
+
+	private long propertyLookups;
+
+	private long propertyHits;
+
+	private long resourceLookups;
+
+	private long resourceHits;
+
 	/**
 	 * Creates an object to keep track of statistics during the run of the pan
 	 * compiler.
@@ -63,6 +82,9 @@ public class CompilerStatistics {
 			doneTasks.put(t, new AtomicLong(0));
 		}
 
+		prefetchedTemplates = new AtomicLong(0);
+		avoidedCompilations = new AtomicLong(0);
+
 		heapUsed = new AtomicLong(-1);
 		heapTotal = new AtomicLong(-1);
 		nonHeapUsed = new AtomicLong(-1);
@@ -93,6 +115,41 @@ public class CompilerStatistics {
 		this.fileCount = fileCount;
 	}
 
+	/**
+	 * The number of validations which were skipped (hits) or done (misses)
+	 * with the validation cache.
+	 * 
+	 * @param hits
+	 *            number of skipped validations
+	 * @param misses
+	 *            number of validations done against cacheable types
+	 */
+	public void setValidationCounts(long hits, long misses) {
+		this.validationHits = hits;
+		this.validationMisses = misses;
+	}
+
+	/**
+	 * The number of lookups made by the value interner and the number of them
+	 * which returned an existing instance, for properties and for resources.
+	 * 
+	 * @param plookups
+	 *            number of property lookups
+	 * @param phits
+	 *            number of property hits
+	 * @param rlookups
+	 *            number of resource lookups
+	 * @param rhits
+	 *            number of resource hits
+	 */
+	public void setDeduplicationCounts(long plookups, long phits,
+			long rlookups, long rhits) {
+		this.propertyLookups = plookups;
+		this.propertyHits = phits;
+		this.resourceLookups = rlookups;
+		this.resourceHits = rhits;
+	}
+
 	/**
 	 * Increase the count of the number of tasks of the given type that have
 	 * been started.
@@ -115,6 +172,22 @@ public class CompilerStatistics {
 		doneTasks.get(type).incrementAndGet();
 	}
 
+	/**
+	 * Increase the count of the number of templates which were compiled ahead
+	 * of time.
+	 */
+	public void incrementPrefetchedTemplates() {
+		prefetchedTemplates.incrementAndGet();
+	}
+
+	/**
+	 * Increase the count of the number of inline compilations which were
+	 * avoided because the template had already been compiled ahead of time.
+	 */
+	public void incrementAvoidedCompilations() {
+		avoidedCompilations.incrementAndGet();
+	}
+
 	/**
 	 * Take a snapshot of the current memory usage of the JVM and update the
 	 * high-water marks.
@@ -176,7 +249,41 @@ public class CompilerStatistics {
 				convertToMB(heapUsed.get()), convertToMB(heapTotal.get()),
 				convertToMB(nonHeapUsed.get()), convertToMB(nonHeapTotal.get()) };
 
-		return MessageUtils.format(MSG_STATISTICS_TEMPLATE, info);
+		String results = MessageUtils.format(MSG_STATISTICS_TEMPLATE, info);
+
+		// Add the deduplication hit rates if values are shared.
+		long plookups = propertyLookups;
+		long rlookups = resourceLookups;
+		if (plookups + rlookups > 0) {
+			long phits = propertyHits;
+			long rhits = resourceHits;
+
+			Object[] dedup = { phits, plookups, percent(phits, plookups),
+					rhits, rlookups, percent(rhits, rlookups) };
+			results += MessageUtils.format(MSG_STATISTICS_DEDUPLICATION, dedup);
+		}
+
+		// Add the number of inline compilations avoided by prefetching.
+		long prefetched = prefetchedTemplates.get();
+		if (prefetched > 0) {
+			Object[] prefetch = { avoidedCompilations.get(), prefetched };
+			results += MessageUtils.format(MSG_STATISTICS_PREFETCH, prefetch);
+		}
+
+		// Add the hit rate of the validation cache if it was used.
+		long vlookups = validationHits + validationMisses;
+		if (vlookups > 0) {
+			Object[] validation = { validationHits, vlookups,
+					percent(validationHits, vlookups) };
+			results += MessageUtils.format(MSG_STATISTICS_VALIDATION_CACHE,
+					validation);
+		}
+
+		return results;
+	}
+
+	private static Long percent(long hits, long lookups) {
+		return Long.valueOf((lookups > 0) ? (100 * hits) / lookups : 0L);
 	}
 
 	private static Long convertToMB(long value) {
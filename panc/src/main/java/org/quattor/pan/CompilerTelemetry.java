@@ -0,0 +1,511 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.quattor.pan.tasks.Task;
+import org.quattor.pan.tasks.TaskResult.ResultType;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Samples the state of a compiler run in the background instead of querying
+ * the JVM each time a task is submitted or finishes. At each interval, the
+ * memory high-water marks of the statistics are updated. If a report is
+ * requested, each sample also records the heap usage, the bytes allocated,
+ * the garbage collections and the depth of the queue and number of active
+ * threads of each stage. The run and queue wait times of the tasks are then
+ * collected for each stage and the run times of the tasks of each object are
+ * collected for each object.
+ *
+ * The run time of a task includes the time spent running other tasks
+ * inline; for example, the time of an output task includes the build and
+ * validation of the object if these were not yet done.
+ *
+ * The report is written as a JSON file with the totals and a CSV file with
+ * the samples.
+ *
+ * @author loomis
+ *
+ */
+public class CompilerTelemetry {
+
+	public static final String JSON_REPORT = "panc-telemetry.json";
+
+	public static final String CSV_REPORT = "panc-telemetry.csv";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Stages whose tasks are identified by the name of an object.
+	 */
+	private static final Set<ResultType> objectStages = EnumSet.of(
+			ResultType.BUILD, ResultType.VALID1, ResultType.VALID2,
+			ResultType.FINAL, ResultType.XML, ResultType.DEP);
+
+	private final CompilerStatistics stats;
+
+	private final long interval;
+
+	private final boolean detailed;
+
+	private final long startTime;
+
+	private final Map<ResultType, Stage> stages;
+
+	private final ConcurrentHashMap<String, AtomicLongArray> objects;
+
+	private final List<Sample> samples;
+
+	private final long initialAllocated;
+
+	private final long initialGcCount;
+
+	private final long initialGcTime;
+
+	private volatile Map<ResultType, ThreadPoolExecutor> executors = null;
+
+	private ScheduledExecutorService sampler = null;
+
+	/**
+	 * Creates the telemetry of a compiler run.
+	 *
+	 * @param stats
+	 *            statistics whose memory information is updated by the
+	 *            samples
+	 * @param interval
+	 *            sampling interval in milliseconds
+	 * @param detailed
+	 *            true if the timings of the tasks and the samples must be kept
+	 *            for a report
+	 */
+	public CompilerTelemetry(CompilerStatistics stats, long interval,
+			boolean detailed) {
+
+		assert (interval > 0);
+
+		this.stats = stats;
+		this.interval = interval;
+		this.detailed = detailed;
+
+		stages = new EnumMap<ResultType, Stage>(ResultType.class);
+		for (ResultType t : ResultType.values()) {
+			stages.put(t, new Stage());
+		}
+		objects = new ConcurrentHashMap<String, AtomicLongArray>();
+		samples = new ArrayList<Sample>();
+
+		startTime = System.nanoTime();
+		initialAllocated = (detailed) ? allocatedBytes() : -1L;
+		initialGcCount = gcCount();
+		initialGcTime = gcTime();
+	}
+
+	/**
+	 * Starts sampling in the background.
+	 *
+	 * @param executors
+	 *            executors of the stages, whose queues are sampled
+	 */
+	public synchronized void start(Map<ResultType, ThreadPoolExecutor> executors) {
+
+		this.executors = executors;
+
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "panc-telemetry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		sampler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				sample();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background sampling and takes a last sample.
+	 */
+	public synchronized void stop() {
+		if (sampler != null) {
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		sample();
+	}
+
+	/**
+	 * Arranges for the run of the given task to be reported to this telemetry
+	 * if a report is requested.
+	 *
+	 * @param task
+	 *            task to monitor
+	 * @param queued
+	 *            true if the task is being put on an executor queue
+	 */
+	public void monitor(Task<?> task, boolean queued) {
+		if (detailed) {
+			task.monitor(this, queued);
+		}
+	}
+
+	/**
+	 * Records the timings of a finished task. This is called by the monitored
+	 * tasks themselves.
+	 *
+	 * @param task
+	 *            task which finished
+	 * @param queuedTime
+	 *            time at which the task was queued or zero if it was not
+	 * @param start
+	 *            time at which the task started
+	 * @param end
+	 *            time at which the task finished
+	 */
+	public void taskFinished(Task<?> task, long queuedTime, long start,
+			long end) {
+
+		Stage stage = stages.get(task.resultType);
+		long runTime = end - start;
+		stage.tasks.incrementAndGet();
+		stage.runTime.addAndGet(runTime);
+		updateMaximum(stage.maxRunTime, runTime);
+
+		if (queuedTime != 0L) {
+			long waitTime = Math.max(start - queuedTime, 0L);
+			stage.queuedTasks.incrementAndGet();
+			stage.waitTime.addAndGet(waitTime);
+			updateMaximum(stage.maxWaitTime, waitTime);
+		}
+
+		if (objectStages.contains(task.resultType) && task.info != null) {
+			AtomicLongArray times = objects.get(task.info);
+			if (times == null) {
+				AtomicLongArray newTimes = new AtomicLongArray(
+						ResultType.values().length);
+				times = objects.putIfAbsent(task.info, newTimes);
+				if (times == null) {
+					times = newTimes;
+				}
+			}
+			times.addAndGet(task.resultType.ordinal(), runTime);
+		}
+	}
+
+	/**
+	 * Takes a sample. Only the memory information of the statistics is
+	 * updated if no report is requested.
+	 */
+	private void sample() {
+
+		stats.updateMemoryInfo();
+
+		if (!detailed) {
+			return;
+		}
+
+		Sample s = new Sample();
+		s.time = System.nanoTime() - startTime;
+		s.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+				.getUsed();
+
+		long allocated = allocatedBytes();
+		s.allocated = (allocated >= 0) ? allocated - initialAllocated : -1L;
+
+		s.gcCount = gcCount() - initialGcCount;
+		s.gcTime = gcTime() - initialGcTime;
+
+		int n = ResultType.values().length;
+		s.queueDepth = new int[n];
+		s.activeThreads = new int[n];
+		Map<ResultType, ThreadPoolExecutor> e = executors;
+		if (e != null) {
+			for (ResultType t : ResultType.values()) {
+				ThreadPoolExecutor executor = e.get(t);
+				s.queueDepth[t.ordinal()] = executor.getQueue().size();
+				s.activeThreads[t.ordinal()] = executor.getActiveCount();
+				updateMaximum(stages.get(t).maxQueueDepth,
+						s.queueDepth[t.ordinal()]);
+			}
+		}
+
+		synchronized (samples) {
+			samples.add(s);
+		}
+	}
+
+	/**
+	 * Writes the JSON and CSV reports to the given directory.
+	 *
+	 * @param directory
+	 *            directory in which to write the reports
+	 * @param buildTime
+	 *            wall-clock time of the run in milliseconds
+	 *
+	 * @throws IOException
+	 *             if a report cannot be written
+	 */
+	public void writeReport(File directory, long buildTime) throws IOException {
+
+		List<Sample> copy;
+		synchronized (samples) {
+			copy = new ArrayList<Sample>(samples);
+		}
+
+		writeJson(new File(directory, JSON_REPORT), buildTime, copy);
+		writeCsv(new File(directory, CSV_REPORT), copy);
+	}
+
+	private void writeJson(File file, long buildTime, List<Sample> copy)
+			throws IOException {
+
+		Sample last = (copy.isEmpty()) ? new Sample() : copy
+				.get(copy.size() - 1);
+
+		long peakHeap = 0L;
+		for (Sample s : copy) {
+			peakHeap = Math.max(peakHeap, s.heapUsed);
+		}
+
+		JsonWriter json = new JsonWriter(new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), UTF8)));
+		json.setIndent("  ");
+		try {
+			json.beginObject();
+			json.name("buildTime").value(buildTime);
+			json.name("interval").value(interval);
+			json.name("samples").value(copy.size());
+			json.name("peakHeapUsed").value(peakHeap);
+
+			json.name("gc").beginObject();
+			json.name("collections").value(last.gcCount);
+			json.name("time").value(last.gcTime);
+			json.endObject();
+
+			json.name("allocation").beginObject();
+			json.name("bytes").value(last.allocated);
+			json.name("rate").value(
+					(last.allocated >= 0 && last.time > 0) ? (long) (last.allocated
+							/ (last.time / 1.0e9)) : -1L);
+			json.endObject();
+
+			json.name("stages").beginObject();
+			for (ResultType t : ResultType.values()) {
+				Stage stage = stages.get(t);
+				json.name(t.name().toLowerCase()).beginObject();
+				json.name("tasks").value(stage.tasks.get());
+				json.name("runTime").value(toMillis(stage.runTime.get()));
+				json.name("maxRunTime").value(toMillis(stage.maxRunTime.get()));
+				json.name("queuedTasks").value(stage.queuedTasks.get());
+				json.name("waitTime").value(toMillis(stage.waitTime.get()));
+				json.name("maxWaitTime").value(
+						toMillis(stage.maxWaitTime.get()));
+				json.name("maxQueueDepth").value(stage.maxQueueDepth.get());
+				json.endObject();
+			}
+			json.endObject();
+
+			json.name("objects").beginObject();
+			for (Map.Entry<String, AtomicLongArray> entry : new TreeMap<String, AtomicLongArray>(
+					objects).entrySet()) {
+				json.name(entry.getKey()).beginObject();
+				for (ResultType t : objectStages) {
+					json.name(t.name().toLowerCase()).value(
+							toMillis(entry.getValue().get(t.ordinal())));
+				}
+				json.endObject();
+			}
+			json.endObject();
+
+			json.endObject();
+		} finally {
+			json.close();
+		}
+	}
+
+	private void writeCsv(File file, List<Sample> copy) throws IOException {
+
+		Writer csv = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), UTF8));
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append("time,heapUsed,allocated,gcCount,gcTime");
+			for (ResultType t : ResultType.values()) {
+				sb.append(",queue_").append(t.name().toLowerCase());
+			}
+			for (ResultType t : ResultType.values()) {
+				sb.append(",active_").append(t.name().toLowerCase());
+			}
+			sb.append('\n');
+			csv.write(sb.toString());
+
+			for (Sample s : copy) {
+				sb.setLength(0);
+				sb.append(toMillis(s.time)).append(',').append(s.heapUsed)
+						.append(',').append(s.allocated).append(',')
+						.append(s.gcCount).append(',').append(s.gcTime);
+				for (int depth : s.queueDepth) {
+					sb.append(',').append(depth);
+				}
+				for (int active : s.activeThreads) {
+					sb.append(',').append(active);
+				}
+				sb.append('\n');
+				csv.write(sb.toString());
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated by all live threads or -1 if the
+	 * JVM does not provide this information.
+	 */
+	private static long allocatedBytes() {
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1L;
+		}
+
+		com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported()
+				|| !sunThreads.isThreadAllocatedMemoryEnabled()) {
+			return -1L;
+		}
+
+		long total = 0L;
+		for (long bytes : sunThreads.getThreadAllocatedBytes(threads
+				.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the total number of garbage collections of all collectors.
+	 */
+	private static long gcCount() {
+		long total = 0L;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			total += Math.max(gc.getCollectionCount(), 0L);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the total time (in milliseconds) spent in garbage collections.
+	 */
+	private static long gcTime() {
+		long total = 0L;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			total += Math.max(gc.getCollectionTime(), 0L);
+		}
+		return total;
+	}
+
+	private static long toMillis(long nanos) {
+		return nanos / 1000000L;
+	}
+
+	private static void updateMaximum(AtomicLong counter, long currentValue) {
+		long counterValue = counter.get();
+		while (currentValue > counterValue
+				&& !counter.compareAndSet(counterValue, currentValue)) {
+			counterValue = counter.get();
+		}
+	}
+
+	/**
+	 * Counters of the tasks of one stage. Times are in nanoseconds.
+	 */
+	private static final class Stage {
+
+		final AtomicLong tasks = new AtomicLong(0L);
+
+		final AtomicLong runTime = new AtomicLong(0L);
+
+		final AtomicLong maxRunTime = new AtomicLong(0L);
+
+		final AtomicLong queuedTasks = new AtomicLong(0L);
+
+		final AtomicLong waitTime = new AtomicLong(0L);
+
+		final AtomicLong maxWaitTime = new AtomicLong(0L);
+
+		final AtomicLong maxQueueDepth = new AtomicLong(0L);
+
+	}
+
+	/**
+	 * State of the run at one point in time. The time is in nanoseconds since
+	 * the start of the run; the garbage collection time is in milliseconds.
+	 * The allocations and collections are counted from the start of the run.
+	 */
+	private static final class Sample {
+
+		long time = 0L;
+
+		long heapUsed = 0L;
+
+		long allocated = -1L;
+
+		long gcCount = 0L;
+
+		long gcTime = 0L;
+
+		int[] queueDepth = new int[0];
+
+		int[] activeThreads = new int[0];
+
+	}
+
+}
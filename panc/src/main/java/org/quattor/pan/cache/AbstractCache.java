@@ -23,6 +23,7 @@ package org.quattor.pan.cache;
 import static org.quattor.pan.utils.MessageUtils.MSG_CANCELLED_THREAD;
 import static org.quattor.pan.utils.MessageUtils.MSG_INTERRUPTED_THREAD;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -109,6 +110,7 @@ public abstract class AbstractCache<T extends TaskResult> {
 
 			// Create a new task for the given object.
 			Task<T> newTask = createTask(key);
+			compiler.getTelemetry().monitor(newTask, false);
 
 			// Atomically insert this into the cache.
 			Task<T> existingEntry = cache.putIfAbsent(key, newTask);
@@ -149,6 +151,38 @@ public abstract class AbstractCache<T extends TaskResult> {
 		return task;
 	}
 
+	/**
+	 * Creates the task associated with the key if it does not yet exist and
+	 * submits it speculatively, so that the result may already be available
+	 * when a client asks for it. Exceptions thrown by a prefetched task are
+	 * only seen by the clients which retrieve its result.
+	 * 
+	 * @param key
+	 *            key to use for the lookup, typically an object or template
+	 *            name
+	 * 
+	 * @return true if a new task was created and submitted
+	 */
+	public boolean prefetch(String key) {
+
+		// Sanity checks.
+		assert (key != null);
+
+		// Avoid creating a task if the entry already exists.
+		if (cache.containsKey(key)) {
+			return false;
+		}
+
+		Task<T> newTask = createTask(key);
+		compiler.getTelemetry().monitor(newTask, false);
+		if (cache.putIfAbsent(key, newTask) == null) {
+			compiler.submitSpeculatively(newTask);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
 	/**
 	 * A convenience method that will retrieve (or create) the task associated
 	 * with the key, wait for a result to be ready, and process any thrown
@@ -201,6 +235,122 @@ public abstract class AbstractCache<T extends TaskResult> {
 		return cache.get(key);
 	}
 
+	/**
+	 * Returns the result associated with the key if the task has already
+	 * finished normally or null otherwise. This method will neither create a
+	 * task nor wait for a running one to finish.
+	 * 
+	 * @param key
+	 *            Key to use for the entity lookup.
+	 * 
+	 * @return result or null if one is not yet available
+	 */
+	public T getFinishedResult(String key) {
+		assert (key != null);
+		return finishedResult(cache.get(key));
+	}
+
+	/**
+	 * Replaces a finished entry with a summary of its result, allowing the
+	 * memory held by the full result to be reclaimed. Entries which have not
+	 * yet finished or which finished with an exception are left untouched.
+	 * 
+	 * @param key
+	 *            key of the entry to compact
+	 */
+	public void compact(String key) {
+
+		Task<T> task = cache.get(key);
+		T result = finishedResult(task);
+
+		if (result != null) {
+			T summary = summarize(result);
+			if (summary != result) {
+				cache.replace(key, task, completedTask(key, summary));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the result of a finished entry with the given one. Entries
+	 * which have not yet finished or which finished with an exception are left
+	 * untouched.
+	 *
+	 * @param key
+	 *            key of the entry to replace
+	 * @param result
+	 *            new result for the entry
+	 */
+	public void replace(String key, T result) {
+
+		Task<T> task = cache.get(key);
+
+		if (finishedResult(task) != null) {
+			cache.replace(key, task, completedTask(key, result));
+		}
+	}
+
+	/**
+	 * Removes a finished entry from the cache. Any later request for the key
+	 * will create (and run) a new task. Entries which have not yet finished
+	 * or which finished with an exception are left untouched.
+	 * 
+	 * @param key
+	 *            key of the entry to remove
+	 */
+	public void remove(String key) {
+
+		Task<T> task = cache.get(key);
+
+		if (finishedResult(task) != null) {
+			cache.remove(key, task);
+		}
+	}
+
+	/**
+	 * Returns a reduced version of the given result that is kept in the cache
+	 * when the entry is compacted. The default implementation returns the
+	 * result itself, indicating that no compaction is possible.
+	 * 
+	 * @param result
+	 *            full result of a finished task
+	 * 
+	 * @return summary of the result or the result itself
+	 */
+	protected T summarize(T result) {
+		return result;
+	}
+
+	/**
+	 * Returns the result of the given task if it has finished normally or null
+	 * otherwise. This method never blocks.
+	 */
+	private T finishedResult(Task<T> task) {
+		if (task != null && task.isDone()) {
+			try {
+				return task.get();
+			} catch (InterruptedException consumed) {
+			} catch (CancellationException consumed) {
+			} catch (ExecutionException consumed) {
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a task that has already been run and returns the given result.
+	 */
+	private Task<T> completedTask(String key, final T result) {
+		Task<T> task = new Task<T>(result.type, key, new Callable<T>() {
+			public T call() {
+				return result;
+			}
+		}) {
+		};
+		task.run();
+		return task;
+	}
+
 	/**
 	 * Creates a new task to be put into the cache, if necessary. Concrete
 	 * implementations must supply a method that generates a task that will
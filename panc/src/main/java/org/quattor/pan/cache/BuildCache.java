@@ -22,8 +22,9 @@ package org.quattor.pan.cache;
 
 import static org.quattor.pan.utils.MessageUtils.MSG_CIRCULAR_OBJECT_DEPENDENCY;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.quattor.pan.Compiler;
 import org.quattor.pan.exceptions.EvaluationException;
@@ -45,15 +46,15 @@ public class BuildCache extends AbstractCache<BuildResult> {
 
 	/**
 	 * This map contains dependencies between objects. This map must be
-	 * consulted (by the setDependency() method) before queuing a new object
-	 * template for a build. This will prevent deadlock from object templates
-	 * which have cyclic dependencies.
+	 * consulted (by the setDependency() method) before waiting for the result
+	 * of another object. This will prevent deadlock from object templates which
+	 * have cyclic dependencies.
 	 * 
-	 * Reference to this map must never leak out of this class. Equally
-	 * important, all read and write access to the map must be done from
-	 * synchronized methods.
+	 * Reference to this map must never leak out of this class. An object
+	 * waits for at most one other object at a time, so each object has at most
+	 * one entry that changes while the object is waiting.
 	 */
-	private final Map<String, String> dependencies = new HashMap<String, String>();
+	private final ConcurrentHashMap<String, String> dependencies = new ConcurrentHashMap<String, String>();
 
 	/**
 	 * Creates a <code>BuildCache</code> with a default, initial size of 1000.
@@ -79,14 +80,33 @@ public class BuildCache extends AbstractCache<BuildResult> {
 		return TaskResult.ResultType.BUILD;
 	}
 
+	/**
+	 * Drops the build context, keeping only the root of the configuration for
+	 * references from other objects.
+	 */
+	@Override
+	protected BuildResult summarize(BuildResult result) {
+		if (result.getObjectContext() != null) {
+			return new BuildResult(result.getRoot(), null);
+		} else {
+			return result;
+		}
+	}
+
 	/**
 	 * This method will set the given dependency in the map which holds them.
 	 * This method will throw an exception if the specified dependency would
-	 * create a cycle in the dependency map. In this case, the dependency will
-	 * not be inserted.
+	 * create a cycle in the dependency map. In this case, the previous
+	 * dependency of the object is restored.
 	 * 
-	 * Note: This method MUST be synchronized to ensure that the entire cycle
-	 * calculation occurs with the dependency map in a consistent state.
+	 * The dependency is inserted before the chain is checked. If two objects
+	 * close a cycle concurrently, the check of at least one of them sees the
+	 * other's dependency, so the cycle is always detected without locking the
+	 * whole map.
+	 * 
+	 * No build thread is added for the dependency. The object is either
+	 * already being built by another thread or it is built inline by the
+	 * waiting thread, so the build queue keeps its fixed number of threads.
 	 * 
 	 * @param objectName
 	 *            name of the object which has the dependency
@@ -95,57 +115,62 @@ public class BuildCache extends AbstractCache<BuildResult> {
 	 * 
 	 * @throws EvaluationException when an error occurs during the evaluation of the dependency
 	 */
-	synchronized public void setDependency(String objectName,
-			String dependencyName) throws EvaluationException {
-
-		// Determine if adding this dependency will create a cycle.
-		String nextObjectName = dependencies.get(dependencyName);
-		while (nextObjectName != null) {
-			if (objectName.equals(nextObjectName)) {
-				throw EvaluationException.create(
-						MSG_CIRCULAR_OBJECT_DEPENDENCY, getCycle(objectName,
-								dependencyName));
+	public void setDependency(String objectName, String dependencyName)
+			throws EvaluationException {
+
+		String previous = dependencies.put(objectName, dependencyName);
+
+		// Determine if adding this dependency has created a cycle.
+		String cycle = getCycle(objectName, dependencyName);
+		if (cycle != null) {
+			if (previous != null) {
+				dependencies.replace(objectName, dependencyName, previous);
+			} else {
+				dependencies.remove(objectName, dependencyName);
 			}
-			nextObjectName = dependencies.get(nextObjectName);
+			throw EvaluationException.create(MSG_CIRCULAR_OBJECT_DEPENDENCY,
+					cycle);
 		}
-
-		// If we get to here, then we reached the end of the chain without
-		// creating a cycle. It is OK to add this to the dependencies.
-		dependencies.put(objectName, dependencyName);
-
-		// To avoid deadlock, ensure that the number of available threads is
-		// larger than number of entries in the dependencies.
-		compiler.ensureMinimumBuildThreadLimit(dependencies.size() + 1);
 	}
 
 	/**
-	 * This method creates a string describing a cycle which has been detected.
-	 * It should only be called if a cycle with the specified dependency has
-	 * actually been detected.
+	 * This method creates a string describing the cycle created by the
+	 * specified dependency or returns null if the chain of dependencies
+	 * starting with it does not lead back to the object. A chain which runs
+	 * into a cycle not containing the object is left for the objects in that
+	 * cycle to report.
 	 * 
 	 * @param objectName
 	 *            name of the object which has the dependency
 	 * @param dependencyName
 	 *            name of the object objectName depends on
 	 * 
-	 * @return String describing the cyclic dependency
+	 * @return String describing the cyclic dependency or null
 	 */
-	synchronized private String getCycle(String objectName,
-			String dependencyName) {
+	private String getCycle(String objectName, String dependencyName) {
 
-		// Determine if adding this dependency will create a cycle.
 		StringBuilder sb = new StringBuilder();
 		sb.append(objectName);
 		sb.append(" -> ");
 		sb.append(dependencyName);
 
+		Set<String> visited = new HashSet<String>();
+		visited.add(dependencyName);
+
 		String nextObjectName = dependencies.get(dependencyName);
 		while (nextObjectName != null && !objectName.equals(nextObjectName)) {
+			if (!visited.add(nextObjectName)) {
+				return null;
+			}
 			sb.append(" -> ");
 			sb.append(nextObjectName);
 			nextObjectName = dependencies.get(nextObjectName);
 		}
 
+		if (nextObjectName == null) {
+			return null;
+		}
+
 		sb.append(" -> ");
 		sb.append(objectName);
 
@@ -22,12 +22,22 @@ package org.quattor.pan.cache;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerSession;
+import org.quattor.pan.exceptions.ValidationException;
 import org.quattor.pan.output.Formatter;
+import org.quattor.pan.output.MultiFormatWriter;
 import org.quattor.pan.parser.ASTTemplate;
+import org.quattor.pan.repository.SourceFile;
+import org.quattor.pan.repository.SourceRepository;
 import org.quattor.pan.tasks.CompileResult;
 import org.quattor.pan.tasks.CompileTask;
 import org.quattor.pan.tasks.Task;
@@ -48,6 +58,25 @@ public class CompileCache extends AbstractCache<CompileResult> {
 
 	private final CompileCache.PostCompileProcessor postCompileProcessor;
 
+	/**
+	 * Store for compiled templates which persists between compiler runs. This
+	 * is null if the store is disabled.
+	 */
+	private final TemplateStore templateStore;
+
+	/**
+	 * Session sharing compiled templates with other compilers. This is null
+	 * if the compiler is standalone.
+	 */
+	private final CompilerSession session;
+
+	/**
+	 * Templates which have been compiled ahead of time and which have not yet
+	 * been requested by a build.
+	 */
+	private final Set<String> prefetched = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 	/**
 	 * Creates a new <code>CompileCache</code> with a default, initial size of
 	 * 1000 entries.
@@ -64,6 +93,16 @@ public class CompileCache extends AbstractCache<CompileResult> {
 
 		// Setup the post compilation processor.
 		postCompileProcessor = new CompileCache.PostCompileProcessor(compiler);
+
+		// Annotation output is generated from the syntax tree, which is not
+		// kept in the store. Always compile from source in this case.
+		if (compiler.options.annotationDirectory == null) {
+			templateStore = TemplateStore.create(compiler.options);
+			session = compiler.getSession();
+		} else {
+			templateStore = null;
+			session = null;
+		}
 	}
 
 	/**
@@ -82,10 +121,38 @@ public class CompileCache extends AbstractCache<CompileResult> {
 		return task;
 	}
 
+	@Override
+	public boolean prefetch(String tplfile) {
+		boolean created = super.prefetch(tplfile);
+		if (created) {
+			prefetched.add(tplfile);
+			compiler.getStatistics().incrementPrefetchedTemplates();
+		}
+		return created;
+	}
+
+	@Override
+	public CompileResult waitForResult(String tplfile)
+			throws RuntimeException, ValidationException {
+
+		// The first request for a prefetched template avoided an inline
+		// compilation if the template has already been compiled.
+		if (prefetched.remove(tplfile)) {
+			Future<CompileResult> future = retrieve(tplfile);
+			if (future != null && future.isDone()) {
+				compiler.getStatistics().incrementAvoidedCompilations();
+			}
+		}
+
+		return super.waitForResult(tplfile);
+	}
+
 	/**
 	 * This class encapsulates the post compilation behavior of the cache. If
 	 * output is requested, then the processor will submit object templates
-	 * discovered during the build process to also be built.
+	 * discovered during the build process to also be built. If requested, the
+	 * templates included with a constant name are compiled ahead of time, so
+	 * that the builds do not have to compile them inline.
 	 * 
 	 * @author loomis
 	 * 
@@ -107,11 +174,29 @@ public class CompileCache extends AbstractCache<CompileResult> {
 			if (template.type == TemplateType.OBJECT) {
 
 				String objectName = template.name;
+				ReferenceTracker tracker = compiler.getReferenceTracker();
+				File outputDirectory = options.outputDirectory;
+
+				// All of the output files which can be written together are
+				// handled by a single task, so that the configuration is
+				// traversed only once. Any others get their own task.
+				List<Formatter> combined = new ArrayList<Formatter>();
 
 				for (Formatter formatter : options.formatters) {
-					File outputDirectory = options.outputDirectory;
-					task = new WriteOutputTask(formatter, compiler,
-							objectName, outputDirectory);
+					if (MultiFormatWriter.supports(formatter)) {
+						combined.add(formatter);
+					} else {
+						task = new WriteOutputTask(formatter, compiler,
+								objectName, outputDirectory);
+						tracker.retain(objectName);
+						compiler.submit(task);
+					}
+				}
+
+				if (!combined.isEmpty()) {
+					task = new WriteOutputTask(combined, compiler, objectName,
+							outputDirectory);
+					tracker.retain(objectName);
 					compiler.submit(task);
 				}
 
@@ -133,12 +218,39 @@ public class CompileCache extends AbstractCache<CompileResult> {
 				compiler.submit(task);
 			}
 
+			// Nothing is built without output, so there is no need to prefetch
+			// anything in that case.
+			if (options.prefetchIncludes && !options.formatters.isEmpty()) {
+				prefetchIncludes(template);
+			}
+
+		}
+
+		/**
+		 * Submits the compilation of all templates statically included by the
+		 * given template. The included templates are in turn processed when
+		 * compiled, so the complete tree of static includes is prefetched. The
+		 * templates are located with the default load path; if a build uses a
+		 * different one, it will simply compile the correct template inline.
+		 */
+		private void prefetchIncludes(Template template) {
+
+			SourceRepository repository = compiler.getSourceRepository();
+			CompileCache ccache = compiler.getCompileCache();
+
+			for (String name : template.getStaticIncludes()) {
+				SourceFile source = repository.retrievePanSource(name);
+				if (!source.isAbsent()) {
+					ccache.prefetch(source.getPath().getAbsolutePath());
+				}
+			}
 		}
 	}
 
 	@Override
 	protected CompileTask createTask(String tplfile) {
-		return new CompileTask(tplfile, postCompileProcessor, compiler.options);
+		return new CompileTask(tplfile, postCompileProcessor, compiler.options,
+				templateStore, session);
 	}
 
 	@Override
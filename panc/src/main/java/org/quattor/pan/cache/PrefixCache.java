@@ -0,0 +1,147 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.quattor.pan.Compiler;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.tasks.PrefixResult;
+import org.quattor.pan.tasks.PrefixTask;
+import org.quattor.pan.tasks.Task;
+import org.quattor.pan.tasks.TaskResult;
+import org.quattor.pan.ttemplate.Template;
+
+/**
+ * Contains the build prefixes of a compiler run. A build prefix is a sequence
+ * of static includes at the beginning of an object template. When the same
+ * sequence starts at least two object templates, it is run once and the
+ * resulting state is used as the starting point of the builds of all object
+ * templates which start with it.
+ * 
+ * The key of an entry is the list of included template names, separated by
+ * spaces.
+ * 
+ * @author loomis
+ * 
+ */
+public class PrefixCache extends AbstractCache<PrefixResult> {
+
+	/**
+	 * Number of object templates seen so far which start with a given
+	 * sequence of includes.
+	 */
+	private final ConcurrentHashMap<String, AtomicInteger> counts;
+
+	/**
+	 * Templates containing only the includes of the shared prefixes. These are
+	 * used to create the tasks which run the prefixes.
+	 */
+	private final ConcurrentHashMap<String, Template> prefixes;
+
+	/**
+	 * Creates a new <code>PrefixCache</code> that has a default, initial size
+	 * of 100 entries.
+	 * 
+	 * @param compiler
+	 *            associated compiler for this cache
+	 */
+	public PrefixCache(Compiler compiler) {
+		this(compiler, 100);
+	}
+
+	public PrefixCache(Compiler compiler, int size) {
+		super(compiler, size);
+		counts = new ConcurrentHashMap<String, AtomicInteger>(size);
+		prefixes = new ConcurrentHashMap<String, Template>(size);
+	}
+
+	/**
+	 * Returns the longest build prefix which the given object template shares
+	 * with an object template seen before and which can be reused. The prefix
+	 * is run if this has not yet been done. Null is returned if there is no
+	 * such prefix.
+	 * 
+	 * @param template
+	 *            object template to build
+	 * 
+	 * @return result of the build prefix or null
+	 */
+	public PrefixResult lookup(Template template) {
+
+		List<String> includes = template.getLeadingStaticIncludes();
+		int n = includes.size();
+
+		// Count this object template for all of its prefixes.
+		String[] keys = new String[n];
+		int[] uses = new int[n];
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(includes.get(i));
+			keys[i] = sb.toString();
+
+			AtomicInteger count = counts.get(keys[i]);
+			if (count == null) {
+				AtomicInteger newCount = new AtomicInteger(0);
+				count = counts.putIfAbsent(keys[i], newCount);
+				if (count == null) {
+					count = newCount;
+				}
+			}
+			uses[i] = count.incrementAndGet();
+		}
+
+		// Use the longest shared prefix which can be reused. Shorter prefixes
+		// are tried if a longer one depends on the object.
+		for (int i = n - 1; i >= 0; i--) {
+			if (uses[i] > 1) {
+				if (!prefixes.containsKey(keys[i])) {
+					try {
+						prefixes.putIfAbsent(keys[i], template.getPrefix(i + 1));
+					} catch (SyntaxException consumed) {
+						continue;
+					}
+				}
+				PrefixResult result = waitForResult(keys[i]);
+				if (result.getContext() != null) {
+					return result;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	protected Task<PrefixResult> createTask(String key) {
+		Template prefix = prefixes.get(key);
+		return new PrefixTask(compiler, key, prefix, prefix
+				.getLeadingStaticIncludes().size());
+	}
+
+	@Override
+	protected TaskResult.ResultType getExecutorQueueType() {
+		return TaskResult.ResultType.PREFIX;
+	}
+
+}
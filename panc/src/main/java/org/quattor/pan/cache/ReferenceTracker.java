@@ -0,0 +1,191 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.quattor.pan.Compiler;
+
+/**
+ * Keeps a count of the outstanding consumers of each object's build and
+ * validation results. Consumers are the output tasks for the object itself
+ * and any other object which has referenced the object's configuration. When
+ * the count for an object drops to zero, the object's build result is removed
+ * from the build cache and the validation and final results are replaced by
+ * summaries which no longer reference the configuration tree. This allows the memory
+ * used by large builds to be reclaimed as soon as each object is written
+ * rather than at the end of the compilation.
+ *
+ * If an evicted object is referenced again, its build result is simply
+ * recalculated. All methods are no-ops if eviction has not been enabled in the
+ * compiler options.
+ *
+ * @author loomis
+ *
+ */
+public class ReferenceTracker {
+
+	private final Compiler compiler;
+
+	private final boolean enabled;
+
+	private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * The objects referenced by each object, for which a reference has been
+	 * counted. All access must be done from synchronized methods.
+	 */
+	private final Map<String, Set<String>> pins = new HashMap<String, Set<String>>();
+
+	/**
+	 * Creates a tracker for the given compiler.
+	 *
+	 * @param compiler
+	 *            compiler owning the caches to evict entries from
+	 * @param enabled
+	 *            flag indicating whether results should be evicted
+	 */
+	public ReferenceTracker(Compiler compiler, boolean enabled) {
+		this.compiler = compiler;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Indicates whether this tracker will evict results.
+	 *
+	 * @return true if eviction is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Adds a reference to the named object's results.
+	 *
+	 * @param objectName
+	 *            name of the referenced object
+	 */
+	public void retain(String objectName) {
+		if (enabled) {
+			AtomicInteger count = counts.get(objectName);
+			if (count == null) {
+				AtomicInteger newCount = new AtomicInteger();
+				count = counts.putIfAbsent(objectName, newCount);
+				if (count == null) {
+					count = newCount;
+				}
+			}
+			count.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a reference from one object to another. The reference is counted
+	 * only once for each pair of objects and is held until the referencing
+	 * object itself is evicted.
+	 *
+	 * @param objectName
+	 *            name of the object containing the reference
+	 * @param dependencyName
+	 *            name of the referenced object
+	 */
+	public void retain(String objectName, String dependencyName) {
+		if (enabled && !objectName.equals(dependencyName)) {
+			if (pin(objectName, dependencyName)) {
+				retain(dependencyName);
+			}
+		}
+	}
+
+	/**
+	 * Removes a reference to the named object's results. If this was the last
+	 * reference, the results are evicted from the caches.
+	 *
+	 * @param objectName
+	 *            name of the referenced object
+	 */
+	public void release(String objectName) {
+		if (enabled) {
+			AtomicInteger count = counts.get(objectName);
+			if (count != null && count.decrementAndGet() == 0) {
+				evict(objectName);
+			}
+		}
+	}
+
+	/**
+	 * Indicates that the first validation phase for the object has finished.
+	 * The build context is no longer needed and is dropped from the cache.
+	 *
+	 * @param objectName
+	 *            name of the validated object
+	 */
+	public void finishedValid1(String objectName) {
+		if (enabled) {
+			compiler.getBuildCache().compact(objectName);
+		}
+	}
+
+	/**
+	 * Indicates that the second validation phase for the object has finished.
+	 * The context kept by the first validation phase is no longer needed and
+	 * is dropped from the cache.
+	 *
+	 * @param objectName
+	 *            name of the validated object
+	 */
+	public void finishedValid2(String objectName) {
+		if (enabled) {
+			compiler.getValid1Cache().compact(objectName);
+		}
+	}
+
+	private void evict(String objectName) {
+
+		// The first validation result is only compacted once the second
+		// validation phase has finished (see finishedValid2) because that
+		// phase still needs the full context.
+		compiler.getBuildCache().remove(objectName);
+		compiler.getValid2Cache().compact(objectName);
+		compiler.getFinalCache().compact(objectName);
+
+		for (String dependencyName : unpin(objectName)) {
+			release(dependencyName);
+		}
+	}
+
+	synchronized private boolean pin(String objectName, String dependencyName) {
+		Set<String> dependencies = pins.get(objectName);
+		if (dependencies == null) {
+			dependencies = new TreeSet<String>();
+			pins.put(objectName, dependencies);
+		}
+		return dependencies.add(dependencyName);
+	}
+
+	synchronized private Set<String> unpin(String objectName) {
+		Set<String> dependencies = pins.remove(objectName);
+		return (dependencies != null) ? dependencies : new TreeSet<String>();
+	}
+
+}
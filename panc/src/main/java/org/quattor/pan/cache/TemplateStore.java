@@ -0,0 +1,269 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import static org.quattor.pan.utils.MessageUtils.MSG_FILE_BUG_REPORT;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.exceptions.CompilerError;
+import org.quattor.pan.ttemplate.Template;
+
+/**
+ * Keeps compiled templates on disk so that they can be reused by later
+ * compiler runs. Each entry is keyed by the absolute path of the template
+ * file, a digest of the file's contents, and the compiler version and options
+ * which affect the compiled result. An entry is only used if all of these
+ * match; otherwise the template must be compiled from its source and the entry
+ * replaced.
+ *
+ * Problems reading or writing entries are never fatal. An unreadable entry is
+ * treated as missing and a failed write simply leaves no entry behind.
+ *
+ * @author loomis
+ *
+ */
+public class TemplateStore {
+
+	private static final Logger taskLogger = LoggingType.TASK.logger();
+
+	private static final int MAGIC = 0x50414e43;
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private final File directory;
+
+	private final String compileKey;
+
+	/**
+	 * Creates a store which keeps its entries in the given directory.
+	 *
+	 * @param directory
+	 *            existing directory to hold the compiled templates
+	 * @param options
+	 *            compiler options used to compile the stored templates
+	 */
+	public TemplateStore(File directory, CompilerOptions options) {
+		this.directory = directory;
+		this.compileKey = options.getCompileKey();
+	}
+
+	/**
+	 * Creates a store for the given options or returns null if the options
+	 * do not specify a template cache directory.
+	 *
+	 * @param options
+	 *            compiler options
+	 *
+	 * @return store or null if disabled
+	 */
+	public static TemplateStore create(CompilerOptions options) {
+		if (options.templateCacheDirectory != null) {
+			return new TemplateStore(options.templateCacheDirectory, options);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Calculates the digest of the contents of a template file.
+	 *
+	 * @param contents
+	 *            raw bytes of the template file
+	 *
+	 * @return digest of the contents
+	 */
+	public static byte[] digest(byte[] contents) {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(contents);
+		} catch (NoSuchAlgorithmException nsae) {
+			throw CompilerError.create(MSG_FILE_BUG_REPORT);
+		}
+	}
+
+	/**
+	 * Returns the compiled template for the given file if an entry exists
+	 * which matches the file's current contents. Returns null otherwise.
+	 *
+	 * @param tplfile
+	 *            absolute path of the template file
+	 * @param digest
+	 *            digest of the file's current contents
+	 *
+	 * @return compiled template or null if there is no usable entry
+	 */
+	public Template load(File tplfile, byte[] digest) {
+
+		File entry = entryFile(tplfile);
+		if (!entry.isFile()) {
+			return null;
+		}
+
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(entry)));
+
+			if (readHeader(dis, tplfile, digest)) {
+				return (Template) new ObjectInputStream(dis).readObject();
+			}
+
+		} catch (IOException ioe) {
+			taskLogger.log(Level.FINE, "unreadable template cache entry",
+					entry.getAbsolutePath());
+		} catch (ClassNotFoundException cnfe) {
+			taskLogger.log(Level.FINE, "incompatible template cache entry",
+					entry.getAbsolutePath());
+		} catch (ClassCastException cce) {
+			taskLogger.log(Level.FINE, "incompatible template cache entry",
+					entry.getAbsolutePath());
+		} finally {
+			if (dis != null) {
+				try {
+					dis.close();
+				} catch (IOException consumed) {
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Writes the compiled template for the given file into the store,
+	 * replacing any existing entry. The entry is written to a temporary file
+	 * first so that concurrent readers never see a partial entry.
+	 *
+	 * @param tplfile
+	 *            absolute path of the template file
+	 * @param digest
+	 *            digest of the contents from which the template was compiled
+	 * @param template
+	 *            compiled template
+	 */
+	public void store(File tplfile, byte[] digest, Template template) {
+
+		File entry = entryFile(tplfile);
+		File tmp = null;
+		DataOutputStream dos = null;
+		try {
+			tmp = File.createTempFile(entry.getName(), ".tmp", directory);
+
+			dos = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			writeHeader(dos, tplfile, digest);
+
+			ObjectOutputStream oos = new ObjectOutputStream(dos);
+			oos.writeObject(template);
+			oos.flush();
+
+			dos.close();
+			dos = null;
+
+			// Renaming fails on some platforms if the target exists.
+			if (!tmp.renameTo(entry)) {
+				entry.delete();
+				tmp.renameTo(entry);
+			}
+
+		} catch (IOException ioe) {
+			taskLogger.log(Level.FINE, "cannot write template cache entry",
+					entry.getAbsolutePath());
+		} finally {
+			if (dos != null) {
+				try {
+					dos.close();
+				} catch (IOException consumed) {
+				}
+			}
+			if (tmp != null && tmp.exists()) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns the file holding the entry for the given template. The name is
+	 * derived from the template's absolute path so that templates with the
+	 * same name in different include directories do not collide.
+	 */
+	File entryFile(File tplfile) {
+
+		byte[] hash = digest(tplfile.getAbsolutePath().getBytes(
+				Charset.forName("UTF-8")));
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : hash) {
+			sb.append(Integer.toHexString((b >>> 4) & 0xF));
+			sb.append(Integer.toHexString(b & 0xF));
+		}
+		sb.append(".tpl");
+
+		return new File(directory, sb.toString());
+	}
+
+	private void writeHeader(DataOutputStream dos, File tplfile, byte[] digest)
+			throws IOException {
+		dos.writeInt(MAGIC);
+		dos.writeUTF(compileKey);
+		dos.writeUTF(tplfile.getAbsolutePath());
+		dos.writeInt(digest.length);
+		dos.write(digest);
+	}
+
+	private boolean readHeader(DataInputStream dis, File tplfile, byte[] digest)
+			throws IOException {
+
+		if (dis.readInt() != MAGIC) {
+			return false;
+		}
+		if (!compileKey.equals(dis.readUTF())) {
+			return false;
+		}
+		if (!tplfile.getAbsolutePath().equals(dis.readUTF())) {
+			return false;
+		}
+
+		int length = dis.readInt();
+		if (length != digest.length) {
+			return false;
+		}
+		byte[] stored = new byte[length];
+		dis.readFully(stored);
+
+		return Arrays.equals(stored, digest);
+	}
+
+}
@@ -59,4 +59,13 @@ public class Valid1Cache extends AbstractCache<Valid1Result> {
 		return TaskResult.ResultType.COMPILED;
 	}
 
+	/**
+	 * Drops the object context, keeping only the object dependencies needed
+	 * for the second validation phase of other objects.
+	 */
+	@Override
+	protected Valid1Result summarize(Valid1Result result) {
+		return result.summarize();
+	}
+
 }
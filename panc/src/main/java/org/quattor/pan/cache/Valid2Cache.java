@@ -60,4 +60,13 @@ public class Valid2Cache extends AbstractCache<Valid2Result> {
 		return TaskResult.ResultType.COMPILED;
 	}
 
+	/**
+	 * Drops the configuration tree, keeping only the dependency information
+	 * needed to write the dependency files of other objects.
+	 */
+	@Override
+	protected Valid2Result summarize(Valid2Result result) {
+		return result.summarize();
+	}
+
 }
@@ -20,9 +20,8 @@
 
 package org.quattor.pan.dml;
 
-import clojure.lang.AFn;
-import clojure.lang.IObj;
-import clojure.lang.IPersistentMap;
+import static org.quattor.pan.utils.MessageUtils.MSG_CLONE_NOT_SUPPORTED;
+
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.exceptions.CompilerError;
 import org.quattor.pan.exceptions.EvaluationException;
@@ -32,10 +31,6 @@ import org.quattor.pan.ttemplate.SourceRange;
 import org.quattor.pan.utils.Term;
 import org.quattor.pan.utils.TermFactory;
 
-import java.util.concurrent.atomic.AtomicReference;
-
-import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
-
 /**
  * Abstract class which implements the Operation interface and provides some
  * functionality common to all DML components.
@@ -43,7 +38,7 @@ import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
  * @author loomis
  *
  */
-abstract public class AbstractOperation extends AFn implements Operation {
+abstract public class AbstractOperation implements Operation, Cloneable {
 
 	/**
 	 * Source location of this operation and its arguments.
@@ -51,13 +46,13 @@ abstract public class AbstractOperation extends AFn implements Operation {
 	final protected SourceRange sourceRange;
 
 	/**
-	 * Array of arguments (as operations) for this operation.
+	 * Array of arguments (as operations) for this operation. This is only
+	 * replaced when a copy of the operation is made with
+	 * <code>copyWithOperations</code>.
 	 */
-	final protected Operation[] ops;
+	protected Operation[] ops;
 
-    private final AtomicReference<IPersistentMap> metadataRef = new AtomicReference<IPersistentMap>();
-
-    /**
+	/**
 	 * Set the source location information and arguments for this operation.
 	 *
 	 * @param sourceRange
@@ -70,26 +65,7 @@ abstract public class AbstractOperation extends AFn implements Operation {
 		this.ops = operations.clone();
 	}
 
-    @Override
-    public IPersistentMap meta() {
-        return metadataRef.get();
-    }
-
-    public IObj withMeta(IPersistentMap iPersistentMap) {
-        metadataRef.set(iPersistentMap);
-        return this;
-    }
-
-    public Object invoke(Object o1) {
-        try {
-            return execute((Context) o1);
-        } catch (ClassCastException ex) {
-            throw CompilerError.create(MSG_OPERATION_WITHOUT_CONTEXT);
-        }
-    }
-
-
-    // Description will be taken from interface.
+	// Description will be taken from interface.
 	abstract public Element execute(Context context) throws EvaluationException;
 
 	/**
@@ -182,6 +158,28 @@ abstract public class AbstractOperation extends AFn implements Operation {
 		return ops.clone();
 	}
 
+	/**
+	 * Creates a shallow copy of this operation which uses the given arguments
+	 * instead of the original ones. The new arguments must be equivalent to
+	 * the original ones; this is used to replace arguments with specialized
+	 * versions of the same operations.
+	 *
+	 * @param operations
+	 *            new arguments for the copy
+	 *
+	 * @return copy of this operation with the given arguments
+	 */
+	AbstractOperation copyWithOperations(Operation[] operations) {
+		assert (operations.length == ops.length);
+		try {
+			AbstractOperation copy = (AbstractOperation) clone();
+			copy.ops = operations.clone();
+			return copy;
+		} catch (CloneNotSupportedException cnse) {
+			throw CompilerError.create(MSG_CLONE_NOT_SUPPORTED);
+		}
+	}
+
 	/**
 	 * Default string representation of an operation is the class' simple name.
 	 *
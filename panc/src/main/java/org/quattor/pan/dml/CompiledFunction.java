@@ -0,0 +1,76 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.exceptions.EvaluationException;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.Context;
+import org.quattor.pan.ttemplate.LocalVariableMap;
+
+/**
+ * The body of a user-defined function as produced by the
+ * <code>FunctionCompiler</code>. It holds the specialized operations of the
+ * body and the layout of the local variables which are kept in slots. A
+ * function call should install a local variable map with this layout before
+ * executing the body; the body still runs correctly (but more slowly) with any
+ * other local variable map.
+ *
+ * @author loomis
+ *
+ */
+public final class CompiledFunction implements Operation {
+
+	private final Operation body;
+
+	private final LocalVariableMap.Layout layout;
+
+	CompiledFunction(Operation body, LocalVariableMap.Layout layout) {
+		assert (body != null);
+		assert (layout != null);
+		this.body = body;
+		this.layout = layout;
+	}
+
+	/**
+	 * Returns the layout of the local variables used by the function body.
+	 *
+	 * @return layout of the local variables
+	 */
+	public LocalVariableMap.Layout getLayout() {
+		return layout;
+	}
+
+	public Element execute(Context context) throws EvaluationException {
+		return body.execute(context);
+	}
+
+	public void checkRestrictedContext() throws SyntaxException {
+		body.checkRestrictedContext();
+	}
+
+	public void checkInvalidSelfContext() throws SyntaxException {
+		body.checkInvalidSelfContext();
+	}
+
+	@Override
+	public String toString() {
+		return body.toString();
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.quattor.pan.dml.operators.SetValue;
+import org.quattor.pan.dml.operators.SimpleVariable;
+import org.quattor.pan.dml.operators.SlotSetValue;
+import org.quattor.pan.dml.operators.SlotVariable;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.LocalVariableMap;
+
+/**
+ * Translates the body of a user-defined function into a specialized version
+ * of the same operations. All variables assigned within the body (and the
+ * automatic ARGV and ARGC variables) are given a slot in the local variable
+ * map of the function call, and the simple reads and writes of these variables
+ * are replaced by operations which access the slots directly instead of
+ * looking up the variables by name.
+ *
+ * Operations that are not specialized are kept as they are and are run by the
+ * normal interpreter; they see the same variables through the name-based
+ * methods of the local variable map. The specialized operations keep the
+ * source ranges of the original ones, so error messages are unchanged.
+ *
+ * The translation is done once when the template defining the function is
+ * parsed, so the result is cached with the compiled template.
+ *
+ * @author loomis
+ *
+ */
+public final class FunctionCompiler {
+
+	private FunctionCompiler() {
+	}
+
+	/**
+	 * Translate the given function body. The caller decides whether function
+	 * bodies are translated (see <code>CompilerOptions.compileFunctions</code>).
+	 *
+	 * @param body
+	 *            DML block of the function
+	 *
+	 * @return translated function (a <code>CompiledFunction</code>) or null if
+	 *         the body is null
+	 */
+	public static Operation compile(Operation body) {
+
+		if (body == null) {
+			return body;
+		}
+
+		Set<String> names = new LinkedHashSet<String>();
+		names.add("ARGV");
+		names.add("ARGC");
+		collectLocalVariables(body, names);
+
+		LocalVariableMap.Layout layout = new LocalVariableMap.Layout(
+				names.toArray(new String[names.size()]));
+
+		return new CompiledFunction(specialize(body, layout), layout);
+	}
+
+	/**
+	 * Collects the names of all variables which are assigned in the given
+	 * operation tree. SELF is never a local variable.
+	 */
+	private static void collectLocalVariables(Operation op, Set<String> names) {
+
+		if (op instanceof SetValue) {
+			String identifier = ((SetValue) op).getIdentifier();
+			if (!"SELF".equals(identifier)) {
+				names.add(identifier);
+			}
+		}
+
+		if (op instanceof AbstractOperation) {
+			for (Operation child : ((AbstractOperation) op).ops) {
+				collectLocalVariables(child, names);
+			}
+		}
+	}
+
+	/**
+	 * Returns a specialized version of the given operation tree or the
+	 * operation itself if nothing in the tree can be specialized.
+	 */
+	private static Operation specialize(Operation op,
+			LocalVariableMap.Layout layout) {
+
+		if (op.getClass() == SimpleVariable.class) {
+			SimpleVariable variable = (SimpleVariable) op;
+			int slot = layout.indexOf(variable.getIdentifier());
+			return (slot >= 0) ? new SlotVariable(variable, layout, slot) : op;
+
+		} else if (op.getClass() == SetValue.class
+				&& ((SetValue) op).getOperations().length == 0) {
+			SetValue setValue = (SetValue) op;
+			int slot = layout.indexOf(setValue.getIdentifier());
+			try {
+				return new SlotSetValue(setValue, layout, slot);
+			} catch (SyntaxException se) {
+				// Cannot happen for a valid assignment; fall back to the
+				// original operation.
+				return op;
+			}
+
+		} else if (op instanceof AbstractOperation) {
+
+			AbstractOperation aop = (AbstractOperation) op;
+			Operation[] children = aop.ops.clone();
+			boolean changed = false;
+			for (int i = 0; i < children.length; i++) {
+				Operation child = specialize(children[i], layout);
+				if (child != children[i]) {
+					children[i] = child;
+					changed = true;
+				}
+			}
+			return (changed) ? aop.copyWithOperations(children) : op;
+
+		} else {
+			return op;
+		}
+	}
+
+}
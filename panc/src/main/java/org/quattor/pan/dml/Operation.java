@@ -20,8 +20,8 @@
 
 package org.quattor.pan.dml;
 
-import clojure.lang.IFn;
-import clojure.lang.IObj;
+import java.io.Serializable;
+
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.SyntaxException;
@@ -34,7 +34,7 @@ import org.quattor.pan.ttemplate.Context;
  * @author loomis
  *
  */
-public interface Operation extends IFn, IObj {
+public interface Operation extends Serializable {
 
 	/**
 	 * Execute this operation within the given context. If an error occurs, an
@@ -0,0 +1,90 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml;
+
+import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
+
+import org.quattor.pan.exceptions.CompilerError;
+import org.quattor.pan.ttemplate.Context;
+
+import clojure.lang.AFn;
+import clojure.lang.IObj;
+import clojure.lang.IPersistentMap;
+
+/**
+ * Allows an operation (including data elements and statements) to be used as
+ * a Clojure function. Invoking the function with a <code>Context</code>
+ * executes the operation in that context. Metadata is attached to the adapter
+ * and not to the operation itself, so that operations do not carry any
+ * Clojure state. Adapters are only created when needed by Clojure code; the
+ * compiler itself never uses them.
+ *
+ * Like all Clojure objects, an adapter is immutable: <code>withMeta</code>
+ * returns a new adapter for the same operation.
+ *
+ * @author loomis
+ *
+ */
+public class OperationFn extends AFn implements IObj {
+
+	private final Operation operation;
+
+	private final IPersistentMap metadata;
+
+	/**
+	 * Creates an adapter for the given operation without any metadata.
+	 *
+	 * @param operation
+	 *            operation to wrap; may not be null
+	 */
+	public OperationFn(Operation operation) {
+		this(operation, null);
+	}
+
+	private OperationFn(Operation operation, IPersistentMap metadata) {
+		assert (operation != null);
+		this.operation = operation;
+		this.metadata = metadata;
+	}
+
+	/**
+	 * Returns the wrapped operation.
+	 *
+	 * @return wrapped operation
+	 */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public IPersistentMap meta() {
+		return metadata;
+	}
+
+	public IObj withMeta(IPersistentMap meta) {
+		return new OperationFn(operation, meta);
+	}
+
+	@Override
+	public Object invoke(Object context) {
+		if (!(context instanceof Context)) {
+			throw CompilerError.create(MSG_OPERATION_WITHOUT_CONTEXT);
+		}
+		return operation.execute((Context) context);
+	}
+
+}
@@ -38,10 +38,20 @@ import org.quattor.pan.utils.Range;
 import org.quattor.pan.utils.Term;
 import org.quattor.pan.utils.TermFactory;
 
+import clojure.lang.PersistentTreeMap;
+
 /**
  * Represents an dict (nlist or hash) that associates a string value (key) to
  * another element. The key must be a string the is a valid term in a pan path.
  *
+ * The children are kept either in a <code>TreeMap</code> or, if persistent
+ * storage is selected when the dict is created (see
+ * <code>Resource.isPersistent</code>), in a <code>PersistentTreeMap</code>. In both cases the keys are kept in their
+ * natural order. A persistent map is never modified; the field is replaced
+ * with an updated version instead. Copies of the dict share the map and
+ * treat all of the existing children as protected, so that
+ * <code>duplicate</code> and <code>writableCopy</code> take constant time.
+ *
  * @author loomis
  *
  */
@@ -49,8 +59,25 @@ public class HashResource extends Resource {
 
 	private Map<String, Element> map;
 
+	/**
+	 * Generation of the children owned by this dict if the children are kept
+	 * in a persistent map. This is replaced whenever the map is shared with a
+	 * copy and is created lazily.
+	 */
+	private transient Object generation;
+
 	public HashResource() {
-		map = new TreeMap<String, Element>();
+		this(false);
+	}
+
+	/**
+	 * Creates an empty dict with the given storage.
+	 * 
+	 * @param persistent
+	 *            true to keep the children in persistent storage
+	 */
+	public HashResource(boolean persistent) {
+		map = createMap(persistent);
 	}
 
 	private HashResource(Map<String, Element> childrenMap) {
@@ -59,9 +86,9 @@ public class HashResource extends Resource {
 		// with something from another machine configuration tree that is
 		// frozen. Consequently, this cloning shouldn't need to be synchronized.
 		try {
-			map = new TreeMap<String, Element>();
+			map = createMap(false);
 			for (Map.Entry<String, Element> entry : childrenMap.entrySet()) {
-				map.put(entry.getKey(), entry.getValue().duplicate());
+				store(entry.getKey(), entry.getValue().duplicate());
 			}
 		} catch (StackOverflowError e) {
 			throw new EvaluationException(
@@ -72,26 +99,44 @@ public class HashResource extends Resource {
 	/**
 	 * This constructor creates a shallow copy of the given HashResource. The
 	 * children of the referenced HashResource are not cloned, but they are
-	 * protected.
+	 * protected. A persistent map is shared with the copy; none of its
+	 * children are owned by the new dict.
 	 *
 	 * @param source
 	 *            HashResource to copy
 	 */
 	protected HashResource(HashResource source) {
-		map = new TreeMap<String, Element>();
-		for (Map.Entry<String, Element> entry : source.map.entrySet()) {
-			map.put(entry.getKey(), entry.getValue().protect());
+		if (source.map instanceof PersistentTreeMap) {
+
+			// The children are now shared with the copy, so neither may modify
+			// them in place any longer.
+			source.generation = null;
+			map = source.map;
+
+		} else {
+			map = createMap(false);
+			for (Map.Entry<String, Element> entry : source.map.entrySet()) {
+				store(entry.getKey(), entry.getValue().protect());
+			}
 		}
 	}
 
 	@Override
 	public Element duplicate() {
-		return new HashResource(map);
+		if (map instanceof PersistentTreeMap) {
+			return new HashResource(this);
+		} else {
+			return new HashResource(map);
+		}
 	}
 
 	@Override
 	public Element get(Term term) throws InvalidTermException {
-		return map.get(term.getKey());
+		Element value = map.get(term.getKey());
+		if (map instanceof PersistentTreeMap) {
+			value = unshared(value, generation);
+		}
+		return value;
 	}
 
 	@Override
@@ -100,16 +145,59 @@ public class HashResource extends Resource {
 		Element oldValue = null;
 
 		if ((newValue != null) && !(newValue instanceof Null)) {
-			oldValue = map.put(term.getKey(), newValue);
+			oldValue = store(term.getKey(), newValue);
 			if (oldValue != null) {
 				oldValue.checkValidReplacement(newValue);
 			}
+		} else if (map instanceof PersistentTreeMap) {
+			PersistentTreeMap pmap = (PersistentTreeMap) map;
+			oldValue = (Element) pmap.valAt(term.getKey());
+			if (oldValue != null) {
+				map = asMap(pmap.without(term.getKey()));
+			}
 		} else {
 			oldValue = map.remove(term.getKey());
 		}
 		return oldValue;
 	}
 
+	/**
+	 * Associates the key with the given value in the backing map, returning
+	 * the previous value.
+	 */
+	private Element store(String key, Element value) {
+		if (map instanceof PersistentTreeMap) {
+			PersistentTreeMap pmap = (PersistentTreeMap) map;
+			Element oldValue = (Element) pmap.valAt(key);
+			map = asMap(pmap.assoc(key, value));
+			if (generation == null) {
+				generation = new Object();
+			}
+			claim(value, generation);
+			return oldValue;
+		} else {
+			return map.put(key, value);
+		}
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return (map instanceof PersistentTreeMap);
+	}
+
+	private static Map<String, Element> createMap(boolean persistent) {
+		if (persistent) {
+			return asMap(PersistentTreeMap.EMPTY);
+		} else {
+			return new TreeMap<String, Element>();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Element> asMap(PersistentTreeMap pmap) {
+		return (Map<String, Element>) pmap;
+	}
+
 	@Override
 	public int size() {
 		return map.size();
@@ -153,6 +241,11 @@ public class HashResource extends Resource {
 		return new ProtectedHashResource(this);
 	}
 
+	@Override
+	public Object getFrozenIdentity() {
+		return (map instanceof PersistentTreeMap) ? map : this;
+	}
+
 	@Override
 	public String getTypeAsString() {
 		// This must remain as "nlist" until we decide to change the
@@ -209,11 +302,21 @@ public class HashResource extends Resource {
 
 	@Override
 	public Resource.Iterator iterator() {
-		return new HashResourceIterator(map, false);
+		if (map instanceof PersistentTreeMap) {
+			return new PersistentHashResourceIterator(
+					(PersistentTreeMap) map, generation, false);
+		} else {
+			return new HashResourceIterator(map, false);
+		}
 	}
 
 	public Resource.Iterator protectedIterator() {
-		return new HashResourceIterator(map, true);
+		if (map instanceof PersistentTreeMap) {
+			return new PersistentHashResourceIterator(
+					(PersistentTreeMap) map, generation, true);
+		} else {
+			return new HashResourceIterator(map, true);
+		}
 	}
 
 	private static class HashResourceIterator implements Resource.Iterator {
@@ -264,6 +367,51 @@ public class HashResource extends Resource {
 
 	}
 
+	/**
+	 * Iterates over a persistent map. The map is never modified, so the
+	 * iterator cannot be affected by concurrent modifications of the dict.
+	 */
+	private static class PersistentHashResourceIterator implements
+			Resource.Iterator {
+
+		private final java.util.Iterator<?> iterator;
+
+		private final Object generation;
+
+		private final boolean isProtected;
+
+		public PersistentHashResourceIterator(PersistentTreeMap backingHash,
+				Object generation, boolean isProtected) {
+			assert (backingHash != null);
+			this.iterator = backingHash.iterator();
+			this.generation = generation;
+			this.isProtected = isProtected;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"HashResourceIterator does not support remove()");
+		}
+
+		public boolean hasNext() {
+			return iterator.hasNext();
+		}
+
+		public Resource.Entry next() {
+			Map.Entry<?, ?> mapEntry = (Map.Entry<?, ?>) iterator.next();
+			StringProperty key = StringProperty.getInstance((String) mapEntry
+					.getKey());
+			Element value = (Element) mapEntry.getValue();
+			if (isProtected) {
+				value = value.protect();
+			} else {
+				value = unshared(value, generation);
+			}
+			return new HashResourceEntry(key, value);
+		}
+
+	}
+
 	private static class HashResourceEntry implements Resource.Entry {
 
 		private final Property key;
@@ -39,9 +39,20 @@ import org.quattor.pan.utils.MessageUtils;
 import org.quattor.pan.utils.Range;
 import org.quattor.pan.utils.Term;
 
+import clojure.lang.PersistentVector;
+
 /**
  * Represents an ordered list of elements.
  *
+ * The children are kept either in an <code>ArrayList</code> or, if
+ * persistent storage is selected when the list is created (see
+ * <code>Resource.isPersistent</code>), in a <code>PersistentVector</code>. A persistent vector is never modified; the
+ * field is replaced with an updated version instead. Copies of the list share
+ * the vector and treat all of the existing children as protected, so that
+ * <code>duplicate</code> and <code>writableCopy</code> take constant time.
+ * Appending and replacing elements take logarithmic time; prepending and
+ * removing elements other than the last one copy the vector.
+ *
  * @author loomis
  *
  */
@@ -49,16 +60,50 @@ public class ListResource extends Resource {
 
 	private List<Element> list;
 
+	/**
+	 * Generation of the children owned by this list if the children are kept
+	 * in a persistent vector. This is replaced whenever the vector is shared
+	 * with a copy and is created lazily.
+	 */
+	private transient Object generation;
+
 	public ListResource() {
-		list = new ArrayList<Element>();
+		this(false);
+	}
+
+	/**
+	 * Creates an empty list with the given storage.
+	 *
+	 * @param persistent
+	 *            true to keep the children in persistent storage
+	 */
+	public ListResource(boolean persistent) {
+		if (persistent) {
+			list = asList(PersistentVector.EMPTY);
+		} else {
+			list = new ArrayList<Element>();
+		}
 	}
 
 	public ListResource(Element[] args) {
+		this(args, false);
+	}
 
-		list = new ArrayList<Element>();
+	/**
+	 * Creates a list holding the given elements with the given storage.
+	 *
+	 * @param args
+	 *            children of the list
+	 * @param persistent
+	 *            true to keep the children in persistent storage
+	 */
+	public ListResource(Element[] args, boolean persistent) {
+
+		ArrayList<Element> alist = new ArrayList<Element>(args.length);
 		for (Element arg : args) {
-			list.add(arg);
+			alist.add(arg);
 		}
+		setChildren(alist, persistent);
 	}
 
 	private ListResource(List<Element> childrenList) {
@@ -67,11 +112,13 @@ public class ListResource extends Resource {
 		// with something from another machine configuration tree that is
 		// frozen. Consequently, this cloning shouldn't need to be synchronized.
 		try {
-			list = new ArrayList<Element>(childrenList.size());
+			ArrayList<Element> alist = new ArrayList<Element>(
+					childrenList.size());
 			for (Element element : childrenList) {
 				Element clone = element.duplicate();
-				list.add(clone);
+				alist.add(clone);
 			}
+			setChildren(alist, false);
 		} catch (StackOverflowError e) {
 			throw new EvaluationException(
 					"stack overflow; check for circular data structure");
@@ -80,23 +127,38 @@ public class ListResource extends Resource {
 
 	/**
 	 * This method creates a shallow copy of the given ListResource. The
-	 * children are not cloned, but they are protected.
+	 * children are not cloned, but they are protected. A persistent vector is
+	 * shared with the copy; none of its children are owned by the new list.
 	 *
 	 * @param source
 	 *            ListResource to copy
 	 */
 	protected ListResource(ListResource source) {
-		ArrayList<Element> alist = new ArrayList<Element>(source.list.size());
-		for (Element e : source.list) {
-			alist.add(e.protect());
+		if (source.list instanceof PersistentVector) {
+
+			// The children are now shared with the copy, so neither may modify
+			// them in place any longer.
+			source.generation = null;
+			list = source.list;
+
+		} else {
+			ArrayList<Element> alist = new ArrayList<Element>(
+					source.list.size());
+			for (Element e : source.list) {
+				alist.add(e.protect());
+			}
+			alist.trimToSize();
+			setChildren(alist, false);
 		}
-		alist.trimToSize();
-		list = alist;
 	}
 
 	@Override
 	public Element duplicate() {
-		return new ListResource(list);
+		if (list instanceof PersistentVector) {
+			return new ListResource(this);
+		} else {
+			return new ListResource(list);
+		}
 	}
 
 	@Override
@@ -115,6 +177,9 @@ public class ListResource extends Resource {
 		} catch (IndexOutOfBoundsException ioobe) {
 			// OK, just return a null value.
 		}
+		if (list instanceof PersistentVector) {
+			value = unshared(value, generation);
+		}
 		return value;
 	}
 
@@ -158,18 +223,18 @@ public class ListResource extends Resource {
 			if ((newValue != null) && !(newValue instanceof Null)) {
 				if (index >= size) {
 					for (int i = 0; i < index - size; i++) {
-						list.add(Undef.VALUE);
+						add(Undef.VALUE);
 					}
-					list.add(newValue);
+					add(newValue);
 				} else {
-					oldValue = list.set(index, newValue);
+					oldValue = set(index, newValue);
 					if (oldValue != null) {
 						oldValue.checkValidReplacement(newValue);
 					}
 				}
 			} else {
 				try {
-					oldValue = list.remove(index);
+					oldValue = remove(index);
 				} catch (IndexOutOfBoundsException ioobe) {
 					// Ignore this error; removing non-existant element is OK.
 				}
@@ -190,7 +255,7 @@ public class ListResource extends Resource {
 	 */
 	public void append(Element e) {
 		assert (e != null);
-		list.add(e);
+		add(e);
 	}
 
 	/**
@@ -203,7 +268,87 @@ public class ListResource extends Resource {
 	 */
 	public void prepend(Element e) {
 		assert (e != null);
-		list.add(0, e);
+		if (list instanceof PersistentVector) {
+			ArrayList<Element> alist = new ArrayList<Element>(list.size() + 1);
+			alist.add(e);
+			alist.addAll(list);
+			list = asList(PersistentVector.create(alist));
+			own(e);
+		} else {
+			list.add(0, e);
+		}
+	}
+
+	private void add(Element e) {
+		if (list instanceof PersistentVector) {
+			list = asList(((PersistentVector) list).cons(e));
+			own(e);
+		} else {
+			list.add(e);
+		}
+	}
+
+	private Element set(int index, Element e) {
+		if (list instanceof PersistentVector) {
+			PersistentVector vector = (PersistentVector) list;
+			Element oldValue = (Element) vector.nth(index);
+			list = asList(vector.assocN(index, e));
+			own(e);
+			return oldValue;
+		} else {
+			return list.set(index, e);
+		}
+	}
+
+	private Element remove(int index) {
+		if (list instanceof PersistentVector) {
+			PersistentVector vector = (PersistentVector) list;
+			Element oldValue = (Element) vector.nth(index);
+			if (index == vector.count() - 1) {
+				list = asList(vector.pop());
+			} else {
+				ArrayList<Element> alist = new ArrayList<Element>(list);
+				alist.remove(index);
+				list = asList(PersistentVector.create(alist));
+			}
+			return oldValue;
+		} else {
+			return list.remove(index);
+		}
+	}
+
+	@Override
+	public boolean isPersistent() {
+		return (list instanceof PersistentVector);
+	}
+
+	/**
+	 * Sets the children of a new list, using the given storage.
+	 */
+	private void setChildren(ArrayList<Element> children, boolean persistent) {
+		if (persistent) {
+			list = asList(PersistentVector.create(children));
+			for (Element e : children) {
+				own(e);
+			}
+		} else {
+			list = children;
+		}
+	}
+
+	/**
+	 * Marks a child added to the persistent vector as owned by this list.
+	 */
+	private void own(Element e) {
+		if (generation == null) {
+			generation = new Object();
+		}
+		claim(e, generation);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Element> asList(PersistentVector vector) {
+		return (List<Element>) vector;
 	}
 
 	@Override
@@ -213,11 +358,11 @@ public class ListResource extends Resource {
 
 	@Override
 	public Resource.Iterator iterator() {
-		return new ListResourceIterator(list, false);
+		return new ListResourceIterator(list, generation, false);
 	}
 
 	public Resource.Iterator protectedIterator() {
-		return new ListResourceIterator(list, true);
+		return new ListResourceIterator(list, generation, true);
 	}
 
 	@Override
@@ -249,6 +394,11 @@ public class ListResource extends Resource {
 		return new ProtectedListResource(this);
 	}
 
+	@Override
+	public Object getFrozenIdentity() {
+		return (list instanceof PersistentVector) ? list : this;
+	}
+
 	@Override
 	public String getTypeAsString() {
 		return "list";
@@ -305,11 +455,15 @@ public class ListResource extends Resource {
 
 		private final List<Element> backingList;
 
+		private final Object generation;
+
 		private final boolean isProtected;
 
-		public ListResourceIterator(List<Element> backingList, boolean isProtected) {
+		public ListResourceIterator(List<Element> backingList,
+				Object generation, boolean isProtected) {
 			assert (backingList != null);
 			this.backingList = backingList;
+			this.generation = generation;
 			this.isProtected = isProtected;
 		}
 
@@ -329,6 +483,8 @@ public class ListResource extends Resource {
 				Element value = backingList.get(i);
 				if (isProtected && value != null) {
 					value = value.protect();
+				} else if (backingList instanceof PersistentVector) {
+					value = unshared(value, generation);
 				}
 
 				Resource.Entry entry = new ListResourceEntry(LongProperty.getInstance(i),
@@ -58,6 +58,16 @@ public class ProtectedHashResource extends HashResource {
 		return this;
 	}
 
+	@Override
+	public boolean isPersistent() {
+		return baseHash.isPersistent();
+	}
+
+	@Override
+	public Object getFrozenIdentity() {
+		return baseHash.getFrozenIdentity();
+	}
+
 	@Override
 	public int hashCode() {
 		return baseHash.hashCode();
@@ -77,6 +77,16 @@ public class ProtectedListResource extends ListResource {
 		return this;
 	}
 
+	@Override
+	public boolean isPersistent() {
+		return baseList.isPersistent();
+	}
+
+	@Override
+	public Object getFrozenIdentity() {
+		return baseList.getFrozenIdentity();
+	}
+
 	@Override
 	public int hashCode() {
 		return baseList.hashCode();
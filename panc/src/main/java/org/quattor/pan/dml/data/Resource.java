@@ -41,6 +41,71 @@ import org.quattor.pan.utils.Term;
 abstract public class Resource extends PersistentElement implements
 		Iterable<Resource.Entry> {
 
+	/**
+	 * Generation of the persistent resource which owns this resource as a
+	 * child or null if it is not owned. A persistent resource only modifies
+	 * the children that it owns; any other child may be shared with other
+	 * resources and is returned protected, so that it is copied before being
+	 * modified.
+	 */
+	transient Object owner;
+
+	/**
+	 * Indicates whether this resource keeps its children in persistent
+	 * storage. By default, dicts are stored in a <code>TreeMap</code> and
+	 * lists in an <code>ArrayList</code>, which are copied eagerly by
+	 * <code>duplicate</code> and <code>writableCopy</code>. With persistent
+	 * storage, dicts are stored in a Clojure <code>PersistentTreeMap</code> and
+	 * lists in a <code>PersistentVector</code>. Copies then share the storage
+	 * and the children of the original, which are only copied when they are
+	 * modified. The storage is chosen when the resource is created; resources
+	 * created by this one to hold new children use the same storage.
+	 * Resources with either storage can be freely mixed.
+	 * 
+	 * @return true if the children are kept in persistent storage
+	 */
+	abstract public boolean isPersistent();
+
+	/**
+	 * Returns a child read from persistent storage. Children which are not
+	 * owned by the resource with the given generation are protected.
+	 * 
+	 * @param child
+	 *            child read from the storage; may be null
+	 * @param generation
+	 *            current generation of the parent resource; may be null
+	 * 
+	 * @return child or a protected version of it
+	 */
+	static Element unshared(Element child, Object generation) {
+		if (child instanceof Resource) {
+			Object childOwner = ((Resource) child).owner;
+			if (childOwner == null || childOwner != generation) {
+				return child.protect();
+			}
+		}
+		return child;
+	}
+
+	/**
+	 * Marks a child stored in persistent storage as owned by the resource
+	 * with the given generation, unless it is already owned by another
+	 * resource.
+	 * 
+	 * @param child
+	 *            child added to the storage
+	 * @param generation
+	 *            current generation of the parent resource; may not be null
+	 */
+	static void claim(Element child, Object generation) {
+		if (child instanceof Resource) {
+			Resource resource = (Resource) child;
+			if (resource.owner == null) {
+				resource.owner = generation;
+			}
+		}
+	}
+
 	/**
 	 * Retrieve the Element associated with the given Term (either an index or
 	 * string key).
@@ -80,6 +145,16 @@ abstract public class Resource extends PersistentElement implements
 	 */
 	abstract public int size();
 
+	/**
+	 * Returns an object whose identity stands for the contents of this
+	 * resource once it is no longer modified. Protected copies of the resource
+	 * return the same object and, if the children are kept in persistent
+	 * storage, so do the copies which share the storage.
+	 * 
+	 * @return object identifying the contents of this resource
+	 */
+	abstract public Object getFrozenIdentity();
+
 	@Override
 	public Element rget(Term[] terms, int index, boolean protect,
 			boolean lookupOnly) throws InvalidTermException {
@@ -153,9 +228,9 @@ abstract public class Resource extends PersistentElement implements
 			// new Resource.
 			if (child == null || child instanceof Undef) {
 				if (terms[index + 1].isKey()) {
-					child = new HashResource();
+					child = new HashResource(isPersistent());
 				} else {
-					child = new ListResource();
+					child = new ListResource(isPersistent());
 				}
 				put(term, child);
 			}
@@ -201,7 +276,7 @@ abstract public class Resource extends PersistentElement implements
 				if (element instanceof ListResource) {
 					result = (ListResource) element;
 				} else if (element instanceof Undef || element == null) {
-					result = new ListResource();
+					result = new ListResource(isPersistent());
 					put(term, result);
 				} else {
 					throw EvaluationException.create(
@@ -226,9 +301,9 @@ abstract public class Resource extends PersistentElement implements
 			// new Resource.
 			if (child == null || child instanceof Undef) {
 				if (terms[index + 1].isKey()) {
-					child = new HashResource();
+					child = new HashResource(isPersistent());
 				} else {
-					child = new ListResource();
+					child = new ListResource(isPersistent());
 				}
 				put(term, child);
 			}
@@ -0,0 +1,325 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml.data;
+
+import static org.quattor.pan.utils.MessageUtils.MSG_INVALID_KEY_OR_INDEX;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.quattor.pan.exceptions.CompilerError;
+import org.quattor.pan.exceptions.EvaluationException;
+import org.quattor.pan.exceptions.InvalidTermException;
+
+/**
+ * Shares identical values between machine configurations. The finished
+ * configuration trees are converted into trees in which identical subtrees
+ * and equal properties are shared (hash-consing). This reduces the memory
+ * held by the compiler when many objects include the same templates. Each
+ * compiler which shares values owns an interner, so the values and the
+ * statistics are only shared between the configurations of one run.
+ *
+ * The tables only hold weak references, so values which are no longer used by
+ * any configuration can still be garbage collected. All methods are
+ * thread-safe; the tables are split into independently locked stripes to
+ * reduce contention between the compiler threads.
+ *
+ * The shared subtrees are used by several configurations and so must never be
+ * modified. They are only reachable through the protected root of a finished
+ * configuration.
+ *
+ * @author loomis
+ *
+ */
+public final class ValueInterner {
+
+	private static final int STRIPES = 32;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	private final AtomicLong propertyLookups = new AtomicLong();
+
+	private final AtomicLong propertyHits = new AtomicLong();
+
+	private final AtomicLong resourceLookups = new AtomicLong();
+
+	private final AtomicLong resourceHits = new AtomicLong();
+
+	public ValueInterner() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Returns a tree equal to the given one in which all of the resources and
+	 * properties are shared instances. The given tree is not modified.
+	 *
+	 * The returned tree must not be modified; callers should only hand out a
+	 * protected version of it.
+	 *
+	 * @param root
+	 *            root of a finished configuration tree
+	 *
+	 * @return equal tree built from shared instances
+	 */
+	public Element internTree(Element root) {
+		if (root != null) {
+			try {
+				return canonical(root);
+			} catch (StackOverflowError e) {
+				throw new EvaluationException(
+						"stack overflow; check for circular data structure");
+			}
+		} else {
+			return root;
+		}
+	}
+
+	/**
+	 * Returns the number of property lookups made by this interner.
+	 *
+	 * @return number of property lookups
+	 */
+	public long getPropertyLookups() {
+		return propertyLookups.get();
+	}
+
+	/**
+	 * Returns the number of property lookups which returned an existing
+	 * instance.
+	 *
+	 * @return number of property hits
+	 */
+	public long getPropertyHits() {
+		return propertyHits.get();
+	}
+
+	/**
+	 * Returns the number of resource (dict or list) lookups made by this
+	 * interner.
+	 *
+	 * @return number of resource lookups
+	 */
+	public long getResourceLookups() {
+		return resourceLookups.get();
+	}
+
+	/**
+	 * Returns the number of resource lookups which returned an existing
+	 * subtree.
+	 *
+	 * @return number of resource hits
+	 */
+	public long getResourceHits() {
+		return resourceHits.get();
+	}
+
+	/**
+	 * Returns the shared instance for the element. The children of the
+	 * resources are converted first, so that two resources are equal if they
+	 * have the same keys and identical children. This avoids comparing (and
+	 * hashing) the complete subtrees at each level.
+	 */
+	private Element canonical(Element element) {
+
+		if (element instanceof HashResource) {
+
+			Map<String, Element> source = ((HashResource) element)
+					.getBackingMap();
+			HashResource copy = new HashResource(
+					((HashResource) element).isPersistent());
+			int hash = 0;
+			try {
+				for (Map.Entry<String, Element> entry : source.entrySet()) {
+					Element child = canonical(entry.getValue());
+					copy.put(StringProperty.getInstance(entry.getKey()), child);
+					hash += entry.getKey().hashCode() ^ childHash(child);
+				}
+			} catch (InvalidTermException ite) {
+				// This should never happen because the keys are taken
+				// directly from an existing dict.
+				throw CompilerError.create(MSG_INVALID_KEY_OR_INDEX);
+			}
+			return lookup(copy, hash, resourceLookups, resourceHits);
+
+		} else if (element instanceof ListResource) {
+
+			List<Element> source = ((ListResource) element).getBackingList();
+			Element[] children = new Element[source.size()];
+			int hash = 1;
+			int i = 0;
+			for (Element value : source) {
+				Element child = canonical(value);
+				children[i++] = child;
+				hash = 31 * hash + childHash(child);
+			}
+			return lookup(new ListResource(children,
+					((ListResource) element).isPersistent()), hash,
+					resourceLookups, resourceHits);
+
+		} else if (element instanceof Property) {
+			return lookup(element, element.hashCode(), propertyLookups,
+					propertyHits);
+
+		} else {
+			return element;
+		}
+	}
+
+	private static int childHash(Element child) {
+		return (child instanceof Resource) ? System.identityHashCode(child)
+				: child.hashCode();
+	}
+
+	/**
+	 * Determines if the two elements are equivalent. Children of resources
+	 * are compared by identity, except for simple values which may not have
+	 * been shared.
+	 */
+	private static boolean equivalent(Element a, Element b) {
+
+		if (a.getClass() != b.getClass()) {
+			return false;
+		}
+
+		if (a instanceof HashResource) {
+			Map<String, Element> ma = ((HashResource) a).getBackingMap();
+			Map<String, Element> mb = ((HashResource) b).getBackingMap();
+			if (ma.size() != mb.size()) {
+				return false;
+			}
+			Iterator<Map.Entry<String, Element>> ia = ma.entrySet().iterator();
+			Iterator<Map.Entry<String, Element>> ib = mb.entrySet().iterator();
+			while (ia.hasNext()) {
+				Map.Entry<String, Element> ea = ia.next();
+				Map.Entry<String, Element> eb = ib.next();
+				if (!ea.getKey().equals(eb.getKey())
+						|| !same(ea.getValue(), eb.getValue())) {
+					return false;
+				}
+			}
+			return true;
+
+		} else if (a instanceof ListResource) {
+			List<Element> la = ((ListResource) a).getBackingList();
+			List<Element> lb = ((ListResource) b).getBackingList();
+			if (la.size() != lb.size()) {
+				return false;
+			}
+			Iterator<Element> ia = la.iterator();
+			Iterator<Element> ib = lb.iterator();
+			while (ia.hasNext()) {
+				if (!same(ia.next(), ib.next())) {
+					return false;
+				}
+			}
+			return true;
+
+		} else {
+			return a.equals(b);
+		}
+	}
+
+	private static boolean same(Element a, Element b) {
+		if (a == b) {
+			return true;
+		} else if (a instanceof Resource || b instanceof Resource) {
+			return false;
+		} else {
+			return a.getClass() == b.getClass() && a.equals(b);
+		}
+	}
+
+	private Element lookup(Element value, int hash, AtomicLong lookups,
+			AtomicLong hits) {
+
+		lookups.incrementAndGet();
+
+		int h = hash ^ (hash >>> 16);
+		Element shared = stripes[h & (STRIPES - 1)].intern(value, hash);
+		if (shared != value) {
+			hits.incrementAndGet();
+		}
+		return shared;
+	}
+
+	/**
+	 * Weak reference to a shared value which remembers the hash of the value
+	 * so that the entry can be removed once the value has been collected.
+	 */
+	private static final class Ref extends WeakReference<Element> {
+
+		final int hash;
+
+		Ref(Element value, int hash, ReferenceQueue<Element> queue) {
+			super(value, queue);
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * One independently locked part of the table.
+	 */
+	private static final class Stripe {
+
+		private final ReferenceQueue<Element> queue = new ReferenceQueue<Element>();
+
+		private final Map<Integer, List<Ref>> buckets = new HashMap<Integer, List<Ref>>();
+
+		synchronized Element intern(Element value, int hash) {
+
+			expunge();
+
+			List<Ref> bucket = buckets.get(hash);
+			if (bucket == null) {
+				bucket = new ArrayList<Ref>(1);
+				buckets.put(hash, bucket);
+			} else {
+				for (Ref ref : bucket) {
+					Element shared = ref.get();
+					if (shared != null && equivalent(shared, value)) {
+						return shared;
+					}
+				}
+			}
+			bucket.add(new Ref(value, hash, queue));
+			return value;
+		}
+
+		private void expunge() {
+			Ref ref;
+			while ((ref = (Ref) queue.poll()) != null) {
+				List<Ref> bucket = buckets.get(ref.hash);
+				if (bucket != null) {
+					bucket.remove(ref);
+					if (bucket.isEmpty()) {
+						buckets.remove(ref.hash);
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -98,7 +98,7 @@ final public class FileContents extends BuiltInFunction {
         SourceFile srcFile = context.lookupFile(relativeFileName);
 
         if (!srcFile.isAbsent()) {
-            if (srcFile.getPath().isDirectory()) {
+            if (srcFile.isDirectory()) {
                 throw EvaluationException.create(sourceRange,
                         MSG_DIR_NOT_ALLOWED, name);
             }
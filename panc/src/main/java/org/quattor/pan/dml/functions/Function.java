@@ -23,6 +23,7 @@ package org.quattor.pan.dml.functions;
 import java.util.logging.Level;
 
 import org.quattor.pan.dml.AbstractOperation;
+import org.quattor.pan.dml.CompiledFunction;
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.ListResource;
@@ -45,12 +46,20 @@ final public class Function extends AbstractOperation {
 
 	private String name = null;
 
+	// The value of the FUNCTION variable and the log message do not change
+	// between calls, so they are only created once.
+	private final StringProperty functionName;
+
+	private final String logMessage;
+
 	public Function(SourceRange sourceRange, String name,
 			Operation... operations) {
 		super(sourceRange, operations);
 
 		assert (name != null);
 		this.name = name;
+		this.functionName = StringProperty.getInstance(name);
+		this.logMessage = "FUNCTION " + name;
 	}
 
 	@Override
@@ -65,24 +74,29 @@ final public class Function extends AbstractOperation {
 
 		// Create the args array for the function call.
 		int nargs = ops.length;
-		ListResource argv = new ListResource();
+		ListResource argv = new ListResource(context.usePersistentStorage());
 		for (int i = 0; i < nargs; i++) {
 			argv.put(i, ops[i].execute(context));
 		}
 
 		// Save the old local variables. This will also create and install a new
-		// hash with the ARGV and ARGC variables set.
-		LocalVariableMap oldLocalVariables = context
-				.createLocalVariableMap(argv);
+		// hash with the ARGV and ARGC variables set. Compiled functions keep
+		// their local variables in slots.
+		LocalVariableMap oldLocalVariables = null;
+		if (fd.dml instanceof CompiledFunction) {
+			oldLocalVariables = context.createLocalVariableMap(argv,
+					((CompiledFunction) fd.dml).getLayout());
+		} else {
+			oldLocalVariables = context.createLocalVariableMap(argv);
+		}
 
 		// Replace the FUNCTION global variable.
 		GlobalVariable oldFunctionVariable = context.replaceGlobalVariable(
-				"FUNCTION", StringProperty.getInstance(name), true);
+				"FUNCTION", functionName, true);
 
 		// Push the template that defined the function onto the stack. Most
 		// calls/includes are logged at the INFO level. We log at the CONFIG
 		// level to allow function calls to be excluded.
-		String logMessage = "FUNCTION " + name;
 		context
 				.pushTemplate(fd.template, sourceRange, Level.CONFIG,
 						logMessage);
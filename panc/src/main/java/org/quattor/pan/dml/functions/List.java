@@ -47,7 +47,8 @@ final public class List extends BuiltInFunction {
 
 	@Override
 	public Element execute(Context context) {
-		return new ListResource(calculateArgs(context));
+		return new ListResource(calculateArgs(context),
+				context.usePersistentStorage());
 	}
 
 }
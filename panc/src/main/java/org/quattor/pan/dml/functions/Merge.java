@@ -78,7 +78,7 @@ final public class Merge extends BuiltInFunction {
 			try {
 
 				// Create the result.
-				HashResource dictResult = new HashResource();
+				HashResource dictResult = new HashResource(context.usePersistentStorage());
 				result = dictResult;
 
 				// Copy the first dict as the basis.
@@ -112,7 +112,7 @@ final public class Merge extends BuiltInFunction {
 			try {
 
 				// Create the result.
-				ListResource listResult = new ListResource();
+				ListResource listResult = new ListResource(context.usePersistentStorage());
 				result = listResult;
 
 				// Copy the first list as the basis.
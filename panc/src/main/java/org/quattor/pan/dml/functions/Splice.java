@@ -207,7 +207,7 @@ final public class Splice extends BuiltInFunction {
 
 			// Iterate over all of the items in the source list. Copy them into
 			// the result as appropriate.
-			ListResource rlist = new ListResource();
+			ListResource rlist = new ListResource(context.usePersistentStorage());
 			result = rlist;
 
 			// Copy the starting entries into the result.
@@ -73,10 +73,12 @@ final public class Traceback extends BuiltInFunction {
 		// avoid it being optimized away.
 		throwExceptionIfCompileTimeContext(context);
 
-		// Calculate the result and print the traceback.
+		// Calculate the result and print the traceback. The output is specific
+		// to the object, so it must not be printed from a shared build prefix.
 		Element result = ops[0].execute(context);
 		try {
 			StringProperty sp = (StringProperty) result;
+			context.checkObjectIndependence();
 			System.err.println(sp.getValue());
 			context.printTraceback(getSourceRange());
 		} catch (ClassCastException cce) {
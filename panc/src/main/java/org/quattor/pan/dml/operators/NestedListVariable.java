@@ -83,13 +83,13 @@ public class NestedListVariable extends ListVariable {
 			}
 
 			// Ok. Create an empty list and a local variable with this name.
-			result = new ListResource();
+			result = new ListResource(context.usePersistentStorage());
 			context.setLocalVariable(identifier, result);
 
 		} else if ((result instanceof Undef) || (result instanceof Null)) {
 
 			// Create an empty list and set the local variable to this value.
-			result = new ListResource();
+			result = new ListResource(context.usePersistentStorage());
 			context.setLocalVariable(identifier, result);
 
 		} else if (result.isProtected()) {
@@ -84,7 +84,7 @@ final public class SelfSimpleListVariable extends SimpleListVariable {
 		} else if ((result instanceof Undef) || (result instanceof Null)) {
 
 			// Create an empty list and a local variable with this name.
-			result = new ListResource();
+			result = new ListResource(context.usePersistentStorage());
 			context.resetSelf(result);
 
 		} else if (result.isProtected()) {
@@ -123,9 +123,9 @@ public class SetSelf extends SetValue {
 
 				Term term = terms[0];
 				if (term.isKey()) {
-					self = new HashResource();
+					self = new HashResource(context.usePersistentStorage());
 				} else {
-					self = new ListResource();
+					self = new ListResource(context.usePersistentStorage());
 				}
 				context.resetSelf(self);
 
@@ -177,6 +177,10 @@ public class SetValue extends AbstractOperation {
 		return dupResult;
 	}
 
+	public String getIdentifier() {
+		return identifier;
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + "(" + identifier + ","
@@ -0,0 +1,90 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml.operators;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.exceptions.EvaluationException;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.Context;
+import org.quattor.pan.ttemplate.LocalVariableMap;
+
+/**
+ * Assigns a value to a simple local variable through its slot in the local
+ * variable map. This is generated by the function compiler for assignments
+ * without any indexes. If the current local variable map does not use the
+ * expected layout or a global variable of the same name exists, the
+ * assignment is done by name exactly as for a normal assignment.
+ *
+ * @author loomis
+ *
+ */
+public class SlotSetValue extends SetValue {
+
+	private final LocalVariableMap.Layout layout;
+
+	private final int slot;
+
+	/**
+	 * Creates a slot-based assignment for the given variable. The original
+	 * assignment may not have any indexes.
+	 *
+	 * @param setValue
+	 *            assignment to replace
+	 * @param layout
+	 *            layout of the local variable map of the function
+	 * @param slot
+	 *            index of the variable in the layout
+	 *
+	 * @throws SyntaxException
+	 *             if the variable name is not valid
+	 */
+	public SlotSetValue(SetValue setValue, LocalVariableMap.Layout layout,
+			int slot) throws SyntaxException {
+		super(setValue.getSourceRange(), setValue.identifier);
+		assert (setValue.getOperations().length == 0);
+		assert (layout != null);
+		assert (setValue.identifier.equals(layout.getName(slot)));
+		this.layout = layout;
+		this.slot = slot;
+	}
+
+	@Override
+	public Element execute(Context context, Element result) {
+
+		LocalVariableMap frame = context.getLocalVariableMap();
+		if (frame.getLayout() != layout
+				|| context.containsGlobalVariable(identifier)) {
+			return super.execute(context, result);
+		}
+
+		// Protected values must be duplicated, see SetValue.
+		Element dupResult = result;
+		if (result != null && result.isProtected()) {
+			dupResult = result.duplicate();
+		}
+
+		try {
+			frame.put(slot, dupResult);
+		} catch (EvaluationException ee) {
+			throw ee.addExceptionInfo(sourceRange, context);
+		}
+
+		return dupResult;
+	}
+
+}
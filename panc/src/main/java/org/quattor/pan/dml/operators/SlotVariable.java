@@ -0,0 +1,77 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml.operators;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.ttemplate.Context;
+import org.quattor.pan.ttemplate.LocalVariableMap;
+
+/**
+ * Looks up a simple local variable through its slot in the local variable
+ * map. This is generated by the function compiler for variables that are
+ * assigned within a function body. If the current local variable map does not
+ * use the expected layout or the variable is not set, the lookup is done by
+ * name exactly as for a simple variable.
+ *
+ * @author loomis
+ *
+ */
+public class SlotVariable extends SimpleVariable {
+
+	private final LocalVariableMap.Layout layout;
+
+	private final int slot;
+
+	/**
+	 * Creates a slot-based lookup for the given variable.
+	 *
+	 * @param variable
+	 *            simple variable to replace
+	 * @param layout
+	 *            layout of the local variable map of the function
+	 * @param slot
+	 *            index of the variable in the layout
+	 */
+	public SlotVariable(SimpleVariable variable, LocalVariableMap.Layout layout,
+			int slot) {
+		super(variable.getSourceRange(), variable.getIdentifier(),
+				variable.lookupOnly);
+		assert (layout != null);
+		assert (variable.getIdentifier().equals(layout.getName(slot)));
+		this.layout = layout;
+		this.slot = slot;
+	}
+
+	@Override
+	public Element execute(Context context) {
+
+		LocalVariableMap frame = context.getLocalVariableMap();
+		if (frame.getLayout() == layout) {
+			Element result = frame.get(slot);
+			if (result != null) {
+				return result;
+			}
+		}
+
+		// Either another map is used or the variable isn't set locally. Fall
+		// back to the normal lookup, which also handles global variables and
+		// errors.
+		return super.execute(context);
+	}
+
+}
@@ -23,6 +23,7 @@ package org.quattor.pan.output;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URI;
@@ -66,14 +67,108 @@ public abstract class AbstractFormatter implements Formatter {
 		}
 	}
 
+	/**
+	 * Opens the stream for the given output file. Subclasses which compress
+	 * their output wrap the returned stream.
+	 * 
+	 * @param file
+	 *            output file
+	 * 
+	 * @return stream for the output file
+	 * 
+	 * @throws Exception
+	 *             if the file cannot be opened
+	 */
+	protected OutputStream getOutputStream(File file) throws Exception {
+		return new FileOutputStream(file);
+	}
+
 	protected PrintWriter getPrintWriter(File file) throws Exception {
-        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        return new PrintWriter(new OutputStreamWriter(getOutputStream(file), "UTF-8"));
+	}
+
+	/**
+	 * Opens the given output file and creates the handler which writes the
+	 * result to it. The default implementation uses the writer returned by
+	 * <code>getPrintWriter</code>; subclasses may write to the underlying
+	 * stream directly instead.
+	 * 
+	 * @param result
+	 *            result to write
+	 * @param file
+	 *            output file
+	 * 
+	 * @return handler and the output to close when the traversal is finished
+	 * 
+	 * @throws Exception
+	 *             if the file cannot be opened or the handler created
+	 */
+	protected Output open(FinalResult result, File file) throws Exception {
+		PrintWriter pw = getPrintWriter(file);
+		try {
+			return new Output(createHandler(result, pw), pw);
+		} catch (Exception e) {
+			closeReliably(pw);
+			throw e;
+		}
 	}
 
-	protected abstract void write(FinalResult result, PrintWriter ps)
-			throws Exception;
+	/**
+	 * Writes the result to the given writer. The default implementation
+	 * traverses the configuration tree, passing the events to the handler
+	 * returned by <code>createHandler</code>.
+	 * 
+	 * @param result
+	 *            result to write
+	 * @param ps
+	 *            writer for the output file
+	 * 
+	 * @throws Exception
+	 *             if the output cannot be written
+	 */
+	protected void write(FinalResult result, PrintWriter ps) throws Exception {
+		MultiFormatWriter.walk(result.getRoot(), createHandler(result, ps));
+	}
+
+	/**
+	 * Creates a handler which writes the given result to the writer from the
+	 * events of a traversal of the configuration tree. This allows the output
+	 * of several formatters to be generated with a single traversal.
+	 * 
+	 * @param result
+	 *            result to write
+	 * @param ps
+	 *            writer for the output file
+	 * 
+	 * @return handler writing the output
+	 * 
+	 * @throws Exception
+	 *             if the handler cannot be created
+	 */
+	protected abstract ElementHandler createHandler(FinalResult result,
+			PrintWriter ps) throws Exception;
+
+	/**
+	 * An open output file along with the handler writing to it.
+	 */
+	protected static class Output {
+
+		public final ElementHandler handler;
+
+		private final Closeable closeable;
+
+		public Output(ElementHandler handler, Closeable closeable) {
+			this.handler = handler;
+			this.closeable = closeable;
+		}
+
+		public void close() {
+			closeReliably(closeable);
+		}
+
+	}
 
-	private static void closeReliably(Closeable closeable) {
+	protected static void closeReliably(Closeable closeable) {
 		if (closeable != null) {
 			try {
 				closeable.close();
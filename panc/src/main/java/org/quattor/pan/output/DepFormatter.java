@@ -41,12 +41,29 @@ public class DepFormatter extends AbstractFormatter {
 		return instance;
 	}
 
+	/**
+	 * The dependencies do not depend on the configuration tree, so they are
+	 * written directly without traversing it.
+	 */
+	@Override
 	protected void write(FinalResult result, PrintWriter ps) throws Exception {
+		writeDependencies(result, ps);
+	}
+
+	protected ElementHandler createHandler(final FinalResult result,
+			final PrintWriter ps) throws Exception {
+		return new NullFormatter.NullHandler() {
+			@Override
+			public void endDocument() {
+				writeDependencies(result, ps);
+			}
+		};
+	}
 
+	private static void writeDependencies(FinalResult result, PrintWriter ps) {
 		for (SourceFile s : result.getDependencies()) {
 			ps.println(s.toString());
 		}
-
 	}
 
 }
@@ -21,11 +21,11 @@
 package org.quattor.pan.output;
 
 import java.io.PrintWriter;
+import java.util.LinkedList;
 
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.Property;
 import org.quattor.pan.dml.data.Resource;
-import org.quattor.pan.dml.data.StringProperty;
 import org.quattor.pan.tasks.FinalResult;
 
 /**
@@ -47,65 +47,71 @@ public class DotFormatter extends AbstractFormatter {
 		return instance;
 	}
 
-	protected void write(FinalResult result, PrintWriter ps) throws Exception {
+	protected ElementHandler createHandler(FinalResult result, PrintWriter ps)
+			throws Exception {
+		return new DotHandler(ps);
+	}
 
-		Element root = result.getRoot();
-		String rootName = "profile";
+	/**
+	 * Writes a node for each element and an edge from each element to its
+	 * parent. The paths of the enclosing resources are kept on a stack.
+	 */
+	private class DotHandler implements ElementHandler {
 
-		writeHeader(rootName, ps);
-		writeRoot(rootName, root, ps);
-		writeFooter(ps);
-	}
+		private final PrintWriter ps;
 
-	private void writeRoot(String myName, Element node, PrintWriter ps) {
+		private final String rootName = "profile";
 
-		String tagName = node.getTypeAsString();
+		private final LinkedList<String> paths = new LinkedList<String>();
 
-		// Normally the tag name will just be the type of the element. However,
-		// for links we need to be careful.
-		if (node instanceof StringProperty && !"string".equals(tagName)) {
-			tagName = "string";
+		public DotHandler(PrintWriter ps) {
+			this.ps = ps;
 		}
 
-		// Fix the label for the root element.
-		String myPath = "/" + myName;
-		ps.append("\"" + myPath + "\" [ label = \"" + myName + "\"]\n");
-
-		// The root must be a resource. If it isn't do nothing.
-		if (node instanceof Resource) {
+		public void startDocument() {
+			writeHeader(rootName, ps);
+		}
 
-			// Iterate over all children of the hash, setting the name attribute
-			// for each one.
-			Resource resource = (Resource) node;
-			for (Resource.Entry entry : resource) {
-				String nameChild = entry.getKey().toString();
-				writeChild(myPath, nameChild, entry.getValue(), ps);
-			}
+		public void endDocument() {
+			writeFooter(ps);
 		}
 
-	}
+		public void startResource(Property key, Resource resource) {
+
+			String myPath;
 
-	private void writeChild(String parentPath, String myName, Element node,
-			PrintWriter ps) {
+			if (key == null) {
+				myPath = writeRoot();
+			} else {
+				String myName = key.toString();
+				String parentPath = paths.getFirst();
+				myPath = parentPath + "/" + myName;
 
-		String type = node.getTypeAsString();
+				ps.append("\"" + myPath + "\" [ label = \"" + myName
+						+ "\" ]\n");
+				ps.append("\"" + parentPath + "\" -> \"" + myPath + "\"\n");
+			}
 
-		String myPath = parentPath + "/" + myName;
+			paths.addFirst(myPath);
+		}
 
-		if (node instanceof Resource) {
+		public void endResource(Property key, Resource resource) {
+			paths.removeFirst();
+		}
 
-			ps.append("\"" + myPath + "\" [ label = \"" + myName + "\" ]\n");
-			ps.append("\"" + parentPath + "\" -> \"" + myPath + "\"\n");
+		public void leaf(Property key, Element node) {
 
-			// Iterate over all children of the hash, setting the name attribute
-			// for each one.
-			Resource resource = (Resource) node;
-			for (Resource.Entry entry : resource) {
-				String nameChild = entry.getKey().toString();
-				writeChild(myPath, nameChild, entry.getValue(), ps);
+			// Only the label is written for a root which isn't a resource.
+			if (key == null) {
+				writeRoot();
+				return;
 			}
 
-		} else {
+			String myName = key.toString();
+			String parentPath = paths.getFirst();
+			String myPath = parentPath + "/" + myName;
+
+			String type = node.getTypeAsString();
 
 			String s = ((Property) node).toString();
 			String quote = ("string".equals(type)) ? "'" : "";
@@ -116,6 +122,15 @@ public class DotFormatter extends AbstractFormatter {
 			ps.append("\"" + parentPath + "\" -> \"" + myPath + "\"\n");
 		}
 
+		/**
+		 * Fix the label for the root element.
+		 */
+		private String writeRoot() {
+			String myPath = "/" + rootName;
+			ps.append("\"" + myPath + "\" [ label = \"" + rootName + "\"]\n");
+			return myPath;
+		}
+
 	}
 
 	private void writeHeader(String rootName, PrintWriter ps) {
@@ -0,0 +1,61 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
+
+/**
+ * Receives the events generated by a traversal of a configuration tree. The
+ * events for the children of a resource are delivered between the start and
+ * end events of the resource itself, in the resource's iteration order.
+ * 
+ * The key passed with each event is the key of the element within its parent:
+ * a <code>StringProperty</code> for children of a hash, a
+ * <code>LongProperty</code> for children of a list, and null for the root
+ * element.
+ * 
+ * @author loomis
+ * 
+ */
+public interface ElementHandler {
+
+	public void startDocument() throws Exception;
+
+	public void startResource(Property key, Resource resource)
+			throws Exception;
+
+	public void endResource(Property key, Resource resource) throws Exception;
+
+	/**
+	 * Called for every element of the tree which is not a resource.
+	 * 
+	 * @param key
+	 *            key of the element within its parent
+	 * @param element
+	 *            the element itself
+	 * 
+	 * @throws Exception
+	 *             if the output cannot be written
+	 */
+	public void leaf(Property key, Element element) throws Exception;
+
+	public void endDocument() throws Exception;
+
+}
@@ -25,6 +25,8 @@ public class FormatterUtils {
 				PanFormatter.getInstance(), PanGzipFormatter.getInstance(),
 				XmlFormatter.getInstance(), XmlGzipFormatter.getInstance(),
 				JsonFormatter.getInstance(), JsonGzipFormatter.getInstance(),
+				JsonCompactFormatter.getInstance(),
+				JsonCompactGzipFormatter.getInstance(),
                 NullFormatter.getInstance()};
 
 		// Insert the values, letting the instances choose their key values.
@@ -0,0 +1,45 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+
+ $HeadURL: https://svn.lal.in2p3.fr/LCG/QWG/panc/trunk/src/org/quattor/pan/output/PanFormatter.java $
+ $Id: PanFormatter.java 3597 2008-08-17 09:08:57Z loomis $
+ */
+
+
+package org.quattor.pan.output;
+
+/**
+ * Writes the configuration as JSON without any whitespace between the tokens.
+ * The content is the same as that of the <code>json</code> format, but the
+ * files are noticeably smaller and faster to write and parse.
+ */
+public class JsonCompactFormatter extends JsonFormatter {
+
+	private static final JsonCompactFormatter instance = new JsonCompactFormatter();
+
+	private JsonCompactFormatter() {
+		super("json", "json-compact", false);
+	}
+
+	protected JsonCompactFormatter(String suffix, String key) {
+		super(suffix, key, false);
+	}
+
+	public static JsonCompactFormatter getInstance() {
+		return instance;
+	}
+
+}
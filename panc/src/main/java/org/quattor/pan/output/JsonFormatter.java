@@ -20,31 +20,60 @@
 
 package org.quattor.pan.output;
 
+import java.io.File;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.URI;
 
 import org.quattor.pan.tasks.FinalResult;
-import org.quattor.pan.utils.JsonUtils;
 
 public class JsonFormatter extends AbstractFormatter {
 
 	private static final JsonFormatter instance = new JsonFormatter();
 
+	private final boolean pretty;
+
 	private JsonFormatter() {
-		super("json", "json");
+		this("json", "json", true);
 	}
 
 	protected JsonFormatter(String suffix, String key) {
+		this(suffix, key, true);
+	}
+
+	protected JsonFormatter(String suffix, String key, boolean pretty) {
 		super(suffix, key);
+		this.pretty = pretty;
 	}
 
 	public static JsonFormatter getInstance() {
 		return instance;
 	}
 
-	protected void write(FinalResult result, PrintWriter ps) throws Exception {
-		JsonUtils json = JsonUtils.getInstance();
-		json.toJson(result.getRoot(), ps);
-		ps.close();
+	@Override
+	public void write(FinalResult result, URI outputURI) throws Exception {
+
+		Output output = open(result, new File(outputURI));
+		try {
+			MultiFormatWriter.walk(result.getRoot(), output.handler);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * The JSON output is encoded directly onto the output stream rather than
+	 * going through a <code>PrintWriter</code>.
+	 */
+	@Override
+	protected Output open(FinalResult result, File file) throws Exception {
+		OutputStream os = getOutputStream(file);
+		return new Output(new JsonStreamWriter(os, pretty), os);
+	}
+
+	protected ElementHandler createHandler(FinalResult result, PrintWriter ps)
+			throws Exception {
+		return new JsonStreamWriter(ps, pretty);
 	}
 
 }
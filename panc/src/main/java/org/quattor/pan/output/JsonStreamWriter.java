@@ -0,0 +1,238 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import static org.quattor.pan.utils.MessageUtils.MSG_FILE_BUG_REPORT;
+import static org.quattor.pan.utils.MessageUtils.MSG_INVALID_JSON_UNDEF;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import org.quattor.pan.dml.data.BooleanProperty;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.dml.data.Null;
+import org.quattor.pan.dml.data.NumberProperty;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.dml.data.Undef;
+import org.quattor.pan.exceptions.CompilerError;
+import org.quattor.pan.exceptions.EvaluationException;
+
+/**
+ * Writes a configuration tree as JSON from the events of a traversal. Strings
+ * are escaped directly into a reusable character buffer which is encoded as
+ * UTF-8 when writing to an <code>OutputStream</code>.
+ * 
+ * In pretty mode, the output is identical to that of Gson with pretty printing
+ * enabled (and the default HTML-safe escaping), which was used previously. In
+ * compact mode, no whitespace is written at all. As with Gson, hash entries
+ * with a null value are omitted.
+ * 
+ * @author loomis
+ * 
+ */
+public class JsonStreamWriter implements ElementHandler {
+
+	private static final String INDENT = "  ";
+
+	/**
+	 * Escape sequences for the ASCII characters which must be escaped. Null
+	 * entries indicate characters which are written as is.
+	 */
+	private static final String[] REPLACEMENTS = new String[128];
+
+	static {
+		for (int i = 0; i < 0x20; i++) {
+			REPLACEMENTS[i] = String.format("\\u%04x", i);
+		}
+		REPLACEMENTS['"'] = "\\\"";
+		REPLACEMENTS['\\'] = "\\\\";
+		REPLACEMENTS['\t'] = "\\t";
+		REPLACEMENTS['\b'] = "\\b";
+		REPLACEMENTS['\n'] = "\\n";
+		REPLACEMENTS['\r'] = "\\r";
+		REPLACEMENTS['\f'] = "\\f";
+
+		// These are escaped to make the output safe for embedding in HTML.
+		REPLACEMENTS['<'] = "\\u003c";
+		REPLACEMENTS['>'] = "\\u003e";
+		REPLACEMENTS['&'] = "\\u0026";
+		REPLACEMENTS['='] = "\\u003d";
+		REPLACEMENTS['\''] = "\\u0027";
+	}
+
+	private final OutputBuffer out;
+
+	private final boolean pretty;
+
+	/**
+	 * Flags indicating whether each of the open resources already contains a
+	 * value. The depth is the number of open resources.
+	 */
+	private boolean[] nonEmpty = new boolean[32];
+
+	private int depth = 0;
+
+	/**
+	 * Creates a writer which encodes its output as UTF-8 on the given stream.
+	 * 
+	 * @param os
+	 *            stream for the output
+	 * @param pretty
+	 *            true for indented output, false for compact output
+	 */
+	public JsonStreamWriter(OutputStream os, boolean pretty) {
+		this.out = new OutputBuffer(os);
+		this.pretty = pretty;
+	}
+
+	/**
+	 * Creates a writer which passes its output to the given writer.
+	 * 
+	 * @param writer
+	 *            writer for the output
+	 * @param pretty
+	 *            true for indented output, false for compact output
+	 */
+	public JsonStreamWriter(Writer writer, boolean pretty) {
+		this.out = new OutputBuffer(writer);
+		this.pretty = pretty;
+	}
+
+	public void startDocument() {
+	}
+
+	public void endDocument() throws IOException {
+		out.flush();
+	}
+
+	public void startResource(Property key, Resource resource)
+			throws IOException {
+		beforeValue(key);
+		out.write((resource instanceof HashResource) ? '{' : '[');
+
+		if (depth == nonEmpty.length) {
+			boolean[] grown = new boolean[2 * depth];
+			System.arraycopy(nonEmpty, 0, grown, 0, depth);
+			nonEmpty = grown;
+		}
+		nonEmpty[depth++] = false;
+	}
+
+	public void endResource(Property key, Resource resource)
+			throws IOException {
+		depth--;
+		if (nonEmpty[depth]) {
+			newline();
+		}
+		out.write((resource instanceof HashResource) ? '}' : ']');
+	}
+
+	public void leaf(Property key, Element element) throws IOException {
+
+		if (element instanceof Null) {
+
+			// Null values are dropped from hashes.
+			if (!(key instanceof StringProperty)) {
+				beforeValue(key);
+				out.write("null");
+			}
+
+		} else if (element instanceof Undef) {
+			throw EvaluationException.create(MSG_INVALID_JSON_UNDEF);
+
+		} else if (element instanceof BooleanProperty
+				|| element instanceof NumberProperty) {
+			beforeValue(key);
+			out.write(((Property) element).getValue().toString());
+
+		} else if (element instanceof Property) {
+			beforeValue(key);
+			writeString(((Property) element).getValue().toString());
+
+		} else {
+			throw CompilerError.create(MSG_FILE_BUG_REPORT);
+		}
+	}
+
+	/**
+	 * Writes the separator, line break, and name (for children of a hash)
+	 * which precede a value.
+	 */
+	private void beforeValue(Property key) throws IOException {
+		if (depth > 0) {
+			if (nonEmpty[depth - 1]) {
+				out.write(',');
+			} else {
+				nonEmpty[depth - 1] = true;
+			}
+			newline();
+
+			if (key instanceof StringProperty) {
+				writeString(key.toString());
+				out.write(':');
+				if (pretty) {
+					out.write(' ');
+				}
+			}
+		}
+	}
+
+	private void newline() throws IOException {
+		if (pretty) {
+			out.write('\n');
+			for (int i = 0; i < depth; i++) {
+				out.write(INDENT);
+			}
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+
+		out.write('"');
+
+		int last = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			String replacement;
+			if (c < 128) {
+				replacement = REPLACEMENTS[c];
+				if (replacement == null) {
+					continue;
+				}
+			} else if (c == '\u2028') {
+				replacement = "\\u2028";
+			} else if (c == '\u2029') {
+				replacement = "\\u2029";
+			} else {
+				continue;
+			}
+			out.write(s, last, i);
+			out.write(replacement);
+			last = i + 1;
+		}
+		out.write(s, last, length);
+
+		out.write('"');
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.tasks.FinalResult;
+
+/**
+ * Writes the output files for several formatters with a single traversal of
+ * the configuration tree. The events of the traversal are passed to the
+ * handlers of all of the formatters, each of which writes to its own file.
+ * 
+ * A failure in one of the formatters does not affect the others. The handler
+ * of the failing formatter receives no further events, the remaining files
+ * are completed, and the first exception is thrown once all of the files have
+ * been closed.
+ * 
+ * @author loomis
+ * 
+ */
+public class MultiFormatWriter {
+
+	private final List<AbstractFormatter> formatters = new ArrayList<AbstractFormatter>();
+
+	private final List<File> files = new ArrayList<File>();
+
+	/**
+	 * Indicates whether the given formatter can take part in a combined write.
+	 * 
+	 * @param formatter
+	 *            formatter to check
+	 * 
+	 * @return true if the formatter can be added to a writer
+	 */
+	public static boolean supports(Formatter formatter) {
+		return (formatter instanceof AbstractFormatter);
+	}
+
+	/**
+	 * Adds an output file to be written by the given formatter.
+	 * 
+	 * @param formatter
+	 *            formatter to use; must be supported
+	 * @param outputURI
+	 *            absolute URI of the output file
+	 */
+	public void add(Formatter formatter, URI outputURI) {
+		assert (supports(formatter));
+		formatters.add((AbstractFormatter) formatter);
+		files.add(new File(outputURI));
+	}
+
+	/**
+	 * Writes all of the output files for the given result.
+	 * 
+	 * @param result
+	 *            result to write
+	 * 
+	 * @throws Exception
+	 *             the first exception thrown by any of the formatters
+	 */
+	public void write(FinalResult result) throws Exception {
+
+		int size = formatters.size();
+		AbstractFormatter.Output[] outputs = new AbstractFormatter.Output[size];
+		ElementHandler[] handlers = new ElementHandler[size];
+
+		Exception failure = null;
+		try {
+
+			for (int i = 0; i < size; i++) {
+				try {
+					outputs[i] = formatters.get(i).open(result, files.get(i));
+					handlers[i] = outputs[i].handler;
+				} catch (Exception e) {
+					failure = (failure == null) ? e : failure;
+				}
+			}
+
+			Fanout fanout = new Fanout(handlers);
+			walk(result.getRoot(), fanout);
+			failure = (failure == null) ? fanout.failure : failure;
+
+		} finally {
+			for (AbstractFormatter.Output output : outputs) {
+				if (output != null) {
+					output.close();
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Traverses the tree with the given root, passing the events to the
+	 * handler.
+	 * 
+	 * @param root
+	 *            root of the configuration tree
+	 * @param handler
+	 *            handler receiving the events
+	 * 
+	 * @throws Exception
+	 *             any exception thrown by the handler
+	 */
+	public static void walk(Element root, ElementHandler handler)
+			throws Exception {
+		handler.startDocument();
+		walk(null, root, handler);
+		handler.endDocument();
+	}
+
+	private static void walk(Property key, Element node,
+			ElementHandler handler) throws Exception {
+
+		if (node instanceof Resource) {
+			Resource resource = (Resource) node;
+			handler.startResource(key, resource);
+			for (Resource.Entry entry : resource) {
+				walk(entry.getKey(), entry.getValue(), handler);
+			}
+			handler.endResource(key, resource);
+		} else {
+			handler.leaf(key, node);
+		}
+	}
+
+	/**
+	 * Passes each event to all of the handlers which have not yet failed. A
+	 * handler which throws an exception is dropped.
+	 */
+	private static class Fanout implements ElementHandler {
+
+		private final ElementHandler[] handlers;
+
+		private Exception failure = null;
+
+		public Fanout(ElementHandler[] handlers) {
+			this.handlers = handlers;
+		}
+
+		private void failed(int i, Exception e) {
+			handlers[i] = null;
+			failure = (failure == null) ? e : failure;
+		}
+
+		public void startDocument() {
+			for (int i = 0; i < handlers.length; i++) {
+				if (handlers[i] != null) {
+					try {
+						handlers[i].startDocument();
+					} catch (Exception e) {
+						failed(i, e);
+					}
+				}
+			}
+		}
+
+		public void startResource(Property key, Resource resource) {
+			for (int i = 0; i < handlers.length; i++) {
+				if (handlers[i] != null) {
+					try {
+						handlers[i].startResource(key, resource);
+					} catch (Exception e) {
+						failed(i, e);
+					}
+				}
+			}
+		}
+
+		public void endResource(Property key, Resource resource) {
+			for (int i = 0; i < handlers.length; i++) {
+				if (handlers[i] != null) {
+					try {
+						handlers[i].endResource(key, resource);
+					} catch (Exception e) {
+						failed(i, e);
+					}
+				}
+			}
+		}
+
+		public void leaf(Property key, Element element) {
+			for (int i = 0; i < handlers.length; i++) {
+				if (handlers[i] != null) {
+					try {
+						handlers[i].leaf(key, element);
+					} catch (Exception e) {
+						failed(i, e);
+					}
+				}
+			}
+		}
+
+		public void endDocument() {
+			for (int i = 0; i < handlers.length; i++) {
+				if (handlers[i] != null) {
+					try {
+						handlers[i].endDocument();
+					} catch (Exception e) {
+						failed(i, e);
+					}
+				}
+			}
+		}
+
+	}
+
+}
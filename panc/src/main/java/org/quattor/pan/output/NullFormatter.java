@@ -16,6 +16,9 @@
 
 package org.quattor.pan.output;
 
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
 import org.quattor.pan.tasks.FinalResult;
 
 import java.io.PrintWriter;
@@ -36,8 +39,35 @@ public class NullFormatter extends AbstractFormatter {
         return instance;
     }
 
+    @Override
     protected void write(FinalResult result, PrintWriter ps) throws Exception {
         // no-op: null writer creates empty output file
     }
 
+    protected ElementHandler createHandler(FinalResult result, PrintWriter ps) throws Exception {
+        return new NullHandler();
+    }
+
+    /**
+     * Handler which ignores all events.
+     */
+    static class NullHandler implements ElementHandler {
+
+        public void startDocument() throws Exception {
+        }
+
+        public void startResource(Property key, Resource resource) throws Exception {
+        }
+
+        public void endResource(Property key, Resource resource) throws Exception {
+        }
+
+        public void leaf(Property key, Element element) throws Exception {
+        }
+
+        public void endDocument() throws Exception {
+        }
+
+    }
+
 }
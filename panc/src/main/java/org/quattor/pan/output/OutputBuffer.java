@@ -0,0 +1,206 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Collects the characters written by the streaming formatters in a reusable
+ * buffer. When writing to an <code>OutputStream</code>, full buffers are
+ * encoded directly as UTF-8 into a reusable byte array; otherwise they are
+ * passed to the given <code>Writer</code> in large blocks. This avoids the
+ * per-call overhead of the <code>PrintWriter</code> and encoder chain.
+ * 
+ * @author loomis
+ * 
+ */
+final class OutputBuffer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream os;
+
+	private final Writer writer;
+
+	private final char[] buffer = new char[BUFFER_SIZE];
+
+	private int count = 0;
+
+	private byte[] bytes = null;
+
+	/**
+	 * A high surrogate at the end of the buffer which will be encoded along
+	 * with the first character of the next block.
+	 */
+	private char pendingSurrogate = 0;
+
+	public OutputBuffer(OutputStream os) {
+		this.os = os;
+		this.writer = null;
+	}
+
+	public OutputBuffer(Writer writer) {
+		this.os = null;
+		this.writer = writer;
+	}
+
+	public void write(char c) throws IOException {
+		if (count == BUFFER_SIZE) {
+			drain();
+		}
+		buffer[count++] = c;
+	}
+
+	public void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	/**
+	 * Writes the characters of the string from start (inclusive) to end
+	 * (exclusive).
+	 */
+	public void write(String s, int start, int end) throws IOException {
+		while (start < end) {
+			if (count == BUFFER_SIZE) {
+				drain();
+			}
+			int n = Math.min(end - start, BUFFER_SIZE - count);
+			s.getChars(start, start + n, buffer, count);
+			count += n;
+			start += n;
+		}
+	}
+
+	/**
+	 * Writes the characters of the array from start (inclusive) to end
+	 * (exclusive).
+	 */
+	public void write(char[] chars, int start, int end) throws IOException {
+		while (start < end) {
+			if (count == BUFFER_SIZE) {
+				drain();
+			}
+			int n = Math.min(end - start, BUFFER_SIZE - count);
+			System.arraycopy(chars, start, buffer, count, n);
+			count += n;
+			start += n;
+		}
+	}
+
+	/**
+	 * Writes any pending output to the underlying stream or writer and flushes
+	 * it. This must only be called at the end of the output, as a high
+	 * surrogate still waiting for its pair is then written as '?'.
+	 */
+	public void flush() throws IOException {
+		drain();
+		if (os != null) {
+			if (pendingSurrogate != 0) {
+				os.write('?');
+				pendingSurrogate = 0;
+			}
+			os.flush();
+		} else {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Passes the contents of the buffer to the underlying stream or writer.
+	 */
+	private void drain() throws IOException {
+		if (os != null) {
+			encode();
+		} else {
+			writer.write(buffer, 0, count);
+		}
+		count = 0;
+	}
+
+	/**
+	 * Encodes the contents of the buffer as UTF-8 and writes the bytes to the
+	 * stream. Unpaired surrogates are replaced by '?', as is done by the
+	 * standard encoder.
+	 */
+	private void encode() throws IOException {
+
+		if (bytes == null) {
+			bytes = new byte[4 * BUFFER_SIZE + 4];
+		}
+
+		int n = 0;
+		int i = 0;
+
+		if (pendingSurrogate != 0) {
+			if (count > 0) {
+				n = encodeSurrogate(pendingSurrogate, buffer[0], n);
+				i = (Character.isLowSurrogate(buffer[0])) ? 1 : 0;
+				pendingSurrogate = 0;
+			} else {
+				return;
+			}
+		}
+
+		for (; i < count; i++) {
+			char c = buffer[i];
+			if (c < 0x80) {
+				bytes[n++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[n++] = (byte) (0xc0 | (c >> 6));
+				bytes[n++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c)) {
+				if (i + 1 < count) {
+					n = encodeSurrogate(c, buffer[i + 1], n);
+					if (Character.isLowSurrogate(buffer[i + 1])) {
+						i++;
+					}
+				} else {
+					pendingSurrogate = c;
+				}
+			} else if (Character.isLowSurrogate(c)) {
+				bytes[n++] = (byte) '?';
+			} else {
+				bytes[n++] = (byte) (0xe0 | (c >> 12));
+				bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				bytes[n++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+
+		os.write(bytes, 0, n);
+	}
+
+	/**
+	 * Encodes a surrogate pair or, if the second character is not a low
+	 * surrogate, the replacement for the unpaired high surrogate.
+	 */
+	private int encodeSurrogate(char high, char low, int n) {
+		if (Character.isLowSurrogate(low)) {
+			int cp = Character.toCodePoint(high, low);
+			bytes[n++] = (byte) (0xf0 | (cp >> 18));
+			bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+			bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+			bytes[n++] = (byte) (0x80 | (cp & 0x3f));
+		} else {
+			bytes[n++] = (byte) '?';
+		}
+		return n;
+	}
+
+}
@@ -20,34 +20,17 @@
 
 package org.quattor.pan.output;
 
-import static org.quattor.pan.utils.MessageUtils.MSG_UNEXPECTED_EXCEPTION_WHILE_WRITING_OUTPUT;
-
+import java.io.File;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.nio.charset.Charset;
-
-import javax.xml.XMLConstants;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
-
-import org.quattor.pan.dml.data.Element;
-import org.quattor.pan.dml.data.HashResource;
-import org.quattor.pan.dml.data.ListResource;
-import org.quattor.pan.dml.data.Property;
-import org.quattor.pan.dml.data.Resource;
-import org.quattor.pan.dml.data.StringProperty;
-import org.quattor.pan.exceptions.CompilerError;
+import java.net.URI;
+
 import org.quattor.pan.tasks.FinalResult;
-import org.quattor.pan.utils.Base64;
-import org.quattor.pan.utils.XmlUtils;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
 
 public class PanFormatter extends AbstractFormatter {
 
 	private static final PanFormatter instance = new PanFormatter();
 
-	private static final String PAN_NS = XMLConstants.NULL_NS_URI;
-
 	private PanFormatter() {
 		super("xml", "pan");
 	}
@@ -60,110 +43,30 @@ public class PanFormatter extends AbstractFormatter {
 		return instance;
 	}
 
-	protected void write(FinalResult result, PrintWriter ps) throws Exception {
-
-		Element root = result.getRoot();
-		String rootName = "profile";
+	@Override
+	public void write(FinalResult result, URI outputURI) throws Exception {
 
+		Output output = open(result, new File(outputURI));
 		try {
-
-			TransformerHandler handler = XmlUtils.getSaxTransformerHandler();
-
-			// Ok, feed SAX events to the output stream.
-			handler.setResult(new StreamResult(ps));
-
-			// Create an list of attributes which can be reused on a "per-call"
-			// basis. This allows the class to remain a singleton.
-			AttributesImpl atts = new AttributesImpl();
-
-			// Begin the document and start the root element.
-			handler.startDocument();
-
-			// Add the attributes for the root element.
-			atts.addAttribute(PAN_NS, null, "format", "CDATA", "pan");
-			atts.addAttribute(PAN_NS, null, "name", "CDATA", rootName);
-
-			// Process children recursively.
-			writeChild(handler, atts, ps, root);
-
-			// Close the document. This will flush and close the underlying
-			// stream.
-			handler.endDocument();
-
-		} catch (SAXException se) {
-			Error error = CompilerError
-					.create(MSG_UNEXPECTED_EXCEPTION_WHILE_WRITING_OUTPUT);
-			error.initCause(se);
-			throw error;
+			MultiFormatWriter.walk(result.getRoot(), output.handler);
+		} finally {
+			output.close();
 		}
 	}
 
-	private void writeChild(TransformerHandler handler, AttributesImpl atts,
-			PrintWriter ps, Element node) throws SAXException {
-
-		String tagName = node.getTypeAsString();
-		String stringContents = null;
-
-		if (node instanceof StringProperty) {
-
-			// Normally the tag name will just be the type of the element.
-			// However, for links we need to be careful.
-			if (!"string".equals(tagName)) {
-				atts.addAttribute(PAN_NS, null, "type", "CDATA", tagName);
-				tagName = "string";
-			}
-
-			// Check to see if the string contents need to be encoded.
-			String s = ((Property) node).toString();
-			if (XMLFormatterUtils.isValidXMLString(s)) {
-				stringContents = s;
-			} else {
-				stringContents = Base64.encodeBytes(s.getBytes(Charset.forName("UTF-8")));
-				atts.addAttribute(PAN_NS, null, "encoding", "CDATA", "base64");
-			}
-
-		}
-
-		// Start the element. The name attribute must be passed in by the
-		// parent. Any additional attributes can also be passed in.
-		handler.startElement(PAN_NS, null, tagName, atts);
-
-		// Clear the attribute structure for reuse.
-		atts.clear();
-
-		if (node instanceof HashResource) {
-
-			// Iterate over all children of the hash, setting the name attribute
-			// for each one.
-			HashResource hash = (HashResource) node;
-			for (Resource.Entry entry : hash) {
-				String name = entry.getKey().toString();
-				atts.addAttribute(PAN_NS, null, "name", "CDATA", name);
-				writeChild(handler, atts, ps, entry.getValue());
-			}
-
-		} else if (node instanceof ListResource) {
-
-			// Iterate over all children of the list. Children of lists are
-			// anonymous; do not set name attribute.
-			ListResource list = (ListResource) node;
-			for (Resource.Entry entry : list) {
-				writeChild(handler, atts, ps, entry.getValue());
-			}
-
-		} else if (node instanceof StringProperty) {
-
-			handler.characters(stringContents.toCharArray(), 0,
-					stringContents.length());
-
-		} else if (node instanceof Property) {
-
-			String s = ((Property) node).toString();
-			handler.characters(s.toCharArray(), 0, s.length());
-		}
+	/**
+	 * The XML output is encoded directly onto the output stream rather than
+	 * going through a <code>PrintWriter</code>.
+	 */
+	@Override
+	protected Output open(FinalResult result, File file) throws Exception {
+		OutputStream os = getOutputStream(file);
+		return new Output(new PanStreamWriter(os), os);
+	}
 
-		// Finish the element.
-		handler.endElement(PAN_NS, null, tagName);
+	protected ElementHandler createHandler(FinalResult result, PrintWriter ps)
+			throws Exception {
+		return new PanStreamWriter(ps);
 	}
 
 }
@@ -23,7 +23,6 @@ package org.quattor.pan.output;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.util.zip.GZIPOutputStream;
 
 public class PanGzipFormatter extends PanFormatter {
@@ -39,10 +38,8 @@ public class PanGzipFormatter extends PanFormatter {
 	}
 
 	@Override
-	protected PrintWriter getPrintWriter(File file) throws Exception {
-		OutputStream os = new FileOutputStream(file);
-		OutputStream gzip = new GZIPOutputStream(os);
-		return new PrintWriter(gzip);
+	protected OutputStream getOutputStream(File file) throws Exception {
+		return new GZIPOutputStream(new FileOutputStream(file));
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
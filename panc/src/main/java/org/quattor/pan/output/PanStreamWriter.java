@@ -0,0 +1,348 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.utils.Base64;
+
+/**
+ * Writes a configuration tree in the pan XML format from the events of a
+ * traversal. The XML is generated directly into a reusable character buffer,
+ * which is encoded as UTF-8 when writing to an <code>OutputStream</code>.
+ * 
+ * The output is identical to that produced previously by feeding SAX events
+ * through the JDK's identity transformer with indentation enabled: the same
+ * indentation, line separator, escapes, and character references are used.
+ * String values are checked for characters which are not allowed in XML in
+ * the same pass that escapes them; strings containing such characters are
+ * written as base64-encoded UTF-8.
+ * 
+ * @author loomis
+ * 
+ */
+public class PanStreamWriter implements ElementHandler {
+
+	private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+	private static final String INDENT = "    ";
+
+	private static final String LINE_SEPARATOR = System
+			.getProperty("line.separator");
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final OutputBuffer out;
+
+	/**
+	 * Escaped contents of the current leaf. The array is reused for all of
+	 * the leaves and grows as needed.
+	 */
+	private char[] text = new char[256];
+
+	private int textLength = 0;
+
+	private int depth = 0;
+
+	/**
+	 * Flag indicating that the start tag of the innermost resource has not
+	 * yet been closed, i.e. that the resource has no children so far.
+	 */
+	private boolean startTagOpen = false;
+
+	/**
+	 * Creates a writer which encodes its output as UTF-8 on the given stream.
+	 * 
+	 * @param os
+	 *            stream for the output
+	 */
+	public PanStreamWriter(OutputStream os) {
+		this.out = new OutputBuffer(os);
+	}
+
+	/**
+	 * Creates a writer which passes its output to the given writer.
+	 * 
+	 * @param writer
+	 *            writer for the output
+	 */
+	public PanStreamWriter(Writer writer) {
+		this.out = new OutputBuffer(writer);
+	}
+
+	public void startDocument() throws IOException {
+		out.write(XML_DECLARATION);
+	}
+
+	public void endDocument() throws IOException {
+		out.write(LINE_SEPARATOR);
+		out.flush();
+	}
+
+	public void startResource(Property key, Resource resource)
+			throws IOException {
+		startElement(resource.getTypeAsString());
+		writeNameAttributes(key);
+		startTagOpen = true;
+		depth++;
+	}
+
+	public void endResource(Property key, Resource resource)
+			throws IOException {
+		depth--;
+		if (startTagOpen) {
+			out.write("/>");
+			startTagOpen = false;
+		} else {
+			newline();
+			out.write("</");
+			out.write(resource.getTypeAsString());
+			out.write('>');
+		}
+	}
+
+	public void leaf(Property key, Element node) throws IOException {
+
+		String tagName = node.getTypeAsString();
+		String type = null;
+		boolean base64 = false;
+
+		textLength = 0;
+
+		if (node instanceof StringProperty) {
+
+			// Normally the tag name will just be the type of the element.
+			// However, for links we need to be careful.
+			if (!"string".equals(tagName)) {
+				type = tagName;
+				tagName = "string";
+			}
+
+			// Strings with characters which cannot appear in XML are encoded.
+			String s = ((Property) node).toString();
+			if (!escapeText(s)) {
+				textLength = 0;
+				escapeText(Base64.encodeBytes(s.getBytes(UTF8)));
+				base64 = true;
+			}
+
+		} else if (node instanceof Property) {
+			escapeText(((Property) node).toString());
+		}
+
+		startElement(tagName);
+		writeNameAttributes(key);
+		if (type != null) {
+			writeAttribute("type", type);
+		}
+		if (base64) {
+			writeAttribute("encoding", "base64");
+		}
+
+		if (textLength == 0) {
+			out.write("/>");
+		} else {
+			out.write('>');
+			out.write(text, 0, textLength);
+			out.write("</");
+			out.write(tagName);
+			out.write('>');
+		}
+	}
+
+	/**
+	 * Closes the start tag of the parent, if necessary, and writes the
+	 * beginning of a start tag on a new, indented line. The root element
+	 * follows the XML declaration directly.
+	 */
+	private void startElement(String tagName) throws IOException {
+		if (startTagOpen) {
+			out.write('>');
+			startTagOpen = false;
+		}
+		if (depth > 0) {
+			newline();
+		}
+		out.write('<');
+		out.write(tagName);
+	}
+
+	/**
+	 * Writes the attributes for the root element or the name attribute for
+	 * children of a hash. Children of lists are anonymous.
+	 */
+	private void writeNameAttributes(Property key) throws IOException {
+		if (key == null) {
+			writeAttribute("format", "pan");
+			writeAttribute("name", "profile");
+		} else if (key instanceof StringProperty) {
+			writeAttribute("name", key.toString());
+		}
+	}
+
+	private void newline() throws IOException {
+		out.write(LINE_SEPARATOR);
+		for (int i = 0; i < depth; i++) {
+			out.write(INDENT);
+		}
+	}
+
+	private void writeAttribute(String name, String value) throws IOException {
+
+		out.write(' ');
+		out.write(name);
+		out.write("=\"");
+
+		int last = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			String replacement;
+			switch (c) {
+			case '"':
+				replacement = "&quot;";
+				break;
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			default:
+				if (c < 0x20) {
+					replacement = "&#" + (int) c + ";";
+				} else if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(value.charAt(i + 1))) {
+					out.write(value, last, i);
+					out.write("&#" + value.codePointAt(i) + ";");
+					last = i + 2;
+					i++;
+					continue;
+				} else {
+					continue;
+				}
+			}
+			out.write(value, last, i);
+			out.write(replacement);
+			last = i + 1;
+		}
+		out.write(value, last, length);
+
+		out.write('"');
+	}
+
+	/**
+	 * Escapes the given string into the text buffer, appending to its current
+	 * contents. Returns false as soon as a character is found which is not
+	 * allowed in an XML document; the contents of the text buffer are then
+	 * undefined.
+	 */
+	private boolean escapeText(String s) {
+
+		int length = s.length();
+		ensureTextCapacity(textLength + length);
+
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+
+			if (c >= 0x20 && c < 0x7f) {
+				switch (c) {
+				case '<':
+					appendText("&lt;");
+					break;
+				case '>':
+					appendText("&gt;");
+					break;
+				case '&':
+					appendText("&amp;");
+					break;
+				default:
+					appendText(c);
+				}
+
+			} else if (c == '\n') {
+				appendText(LINE_SEPARATOR);
+
+			} else if (c == '\t') {
+				appendText(c);
+
+			} else if (c == '\r' || (c >= 0x7f && c <= 0x9f)) {
+				appendCharacterReference(c);
+
+			} else if (c < 0x20) {
+				return false;
+
+			} else if (Character.isHighSurrogate(c)) {
+				if (i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					appendCharacterReference(s.codePointAt(i));
+					i++;
+				} else {
+					return false;
+				}
+
+			} else if (Character.isLowSurrogate(c) || c == 0xfffe
+					|| c == 0xffff) {
+				return false;
+
+			} else {
+				appendText(c);
+			}
+		}
+
+		return true;
+	}
+
+	private void appendCharacterReference(int codepoint) {
+		appendText("&#");
+		appendText(Integer.toString(codepoint));
+		appendText(";");
+	}
+
+	private void appendText(char c) {
+		if (textLength == text.length) {
+			ensureTextCapacity(textLength + 1);
+		}
+		text[textLength++] = c;
+	}
+
+	private void appendText(String s) {
+		int length = s.length();
+		ensureTextCapacity(textLength + length);
+		s.getChars(0, length, text, textLength);
+		textLength += length;
+	}
+
+	private void ensureTextCapacity(int capacity) {
+		if (capacity > text.length) {
+			char[] grown = new char[Math.max(capacity, 2 * text.length)];
+			System.arraycopy(text, 0, grown, 0, textLength);
+			text = grown;
+		}
+	}
+
+}
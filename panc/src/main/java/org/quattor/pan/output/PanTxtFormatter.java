@@ -44,6 +44,21 @@ abstract public class PanTxtFormatter extends AbstractFormatter {
 	 */
 	public abstract void write(Element root, String rootName, PrintWriter ps);
 
+	/**
+	 * Creates a handler which writes the tree using the <code>writeBegin</code>,
+	 * <code>writeEnd</code>, and <code>writeProperties</code> methods.
+	 * 
+	 * @param ps
+	 *            the PrintWriter
+	 * @param rootName
+	 *            name of the root element
+	 * 
+	 * @return handler writing the tree
+	 */
+	protected ElementHandler createHandler(PrintWriter ps, String rootName) {
+		return new TxtHandler(ps, rootName);
+	}
+
 	/**
 	 * Reads each child.
 	 * 
@@ -147,4 +162,51 @@ abstract public class PanTxtFormatter extends AbstractFormatter {
 		String tab = buf.toString();
 		return tab;
 	}
+
+	/**
+	 * Writes the traversal events, keeping track of the level of each element
+	 * in the tree.
+	 */
+	private class TxtHandler implements ElementHandler {
+
+		private final PrintWriter ps;
+
+		private final String rootName;
+
+		private int level = 0;
+
+		public TxtHandler(PrintWriter ps, String rootName) {
+			this.ps = ps;
+			this.rootName = rootName;
+		}
+
+		public void startDocument() {
+		}
+
+		public void endDocument() {
+		}
+
+		public void startResource(Property key, Resource resource) {
+			writeBegin(ps, tabMaker(level), name(key), level,
+					resource.getTypeAsString());
+			level++;
+		}
+
+		public void endResource(Property key, Resource resource) {
+			level--;
+			writeEnd(ps, tabMaker(level), resource.getTypeAsString());
+		}
+
+		public void leaf(Property key, Element element) {
+			Property elem = (Property) element;
+			writeProperties(ps, tabMaker(level), name(key),
+					element.getTypeAsString(), elem.toString());
+		}
+
+		private String name(Property key) {
+			return (key != null) ? key.toString() : rootName;
+		}
+
+	}
+
 }
@@ -37,8 +37,9 @@ public class TxtFormatter extends PanTxtFormatter {
 		return instance;
 	}
 
-	public void write(FinalResult result, PrintWriter ps) throws Exception {
-		write(result.getRoot(), "profile", ps);
+	protected ElementHandler createHandler(FinalResult result, PrintWriter ps)
+			throws Exception {
+		return createHandler(ps, "profile");
 	}
 
 	@Override
@@ -28,6 +28,8 @@ public class ASTTemplate extends SimpleNode {
 
 	private String identifier = null;
 
+	private boolean deprecations = false;
+
 	public ASTTemplate(int id) {
 		super(id);
 	}
@@ -74,6 +76,19 @@ public class ASTTemplate extends SimpleNode {
 		return identifier;
 	}
 
+	/**
+	 * Records whether the parser found deprecated syntax in the template.
+	 * The deprecation messages are only written while the template is
+	 * parsed.
+	 */
+	public void setDeprecations(boolean deprecations) {
+		this.deprecations = deprecations;
+	}
+
+	public boolean hasDeprecations() {
+		return deprecations;
+	}
+
 	@Override
 	public String toString() {
 		String s = type.toString() + " template";
@@ -22,6 +22,7 @@ package org.quattor.pan.parser;
 
 import org.quattor.pan.dml.AbstractOperation;
 import org.quattor.pan.dml.DML;
+import org.quattor.pan.dml.FunctionCompiler;
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.Null;
@@ -286,7 +287,8 @@ public class PanParserAstUtils {
         }
     }
 
-    static public Template convertAstToTemplate(File file, ASTTemplate ast) throws SyntaxException {
+    static public Template convertAstToTemplate(File file, ASTTemplate ast, boolean compileFunctions)
+            throws SyntaxException {
 
         // Create a list containing all of the statements.
         LinkedList<Statement> statements = new LinkedList<Statement>();
@@ -329,7 +331,7 @@ public class PanParserAstUtils {
                     statements.add(convertAstToTypeStatement(file.getAbsolutePath(), snode));
                     break;
                 case FUNCTION:
-                    statements.add(convertAstToFunctionStatement(snode));
+                    statements.add(convertAstToFunctionStatement(snode, compileFunctions));
                     break;
                 case INCLUDE:
                     Statement stmt = convertAstToIncludeStatement(snode);
@@ -462,7 +464,8 @@ public class PanParserAstUtils {
         return new TypeStatement(ast.getSourceRange(), tname, fullType);
     }
 
-    static private Statement convertAstToFunctionStatement(ASTStatement ast) throws SyntaxException {
+    static private Statement convertAstToFunctionStatement(ASTStatement ast, boolean compileFunctions)
+            throws SyntaxException {
 
         // Sanity check.
         assert (ast.getStatementType() == StatementType.FUNCTION);
@@ -472,9 +475,13 @@ public class PanParserAstUtils {
         assert (fname != null);
         assert (ast.jjtGetNumChildren() == 1);
 
-        // Create the assignment statement.
+        // Create the assignment statement. If enabled, the local variables of
+        // the function body are resolved to slots here, once per template.
         ASTOperation child = (ASTOperation) ast.jjtGetChild(0);
         Operation dml = astToDml(child, true);
+        if (compileFunctions) {
+            dml = FunctionCompiler.compile(dml);
+        }
         return new FunctionStatement(ast.getSourceRange(), fname, dml);
     }
 
@@ -0,0 +1,309 @@
+package org.quattor.pan.repository;
+
+import static org.quattor.pan.utils.MessageUtils.MSG_CANNOT_OPEN_SOURCE_ARCHIVE;
+import static org.quattor.pan.utils.MessageUtils.MSG_NON_ABSOLUTE_PATH_IN_SOURCE_ARCHIVES;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.quattor.pan.exceptions.ConfigurationException;
+
+/**
+ * A repository which reads the templates and text files directly from zip (or
+ * jar) archives, without extracting them. The archives take the place of the
+ * include directories: their root is searched like an include directory, in
+ * the order in which the archives are given. The entries are located through
+ * the central directory of the archive, which is read once when the archive
+ * is opened.
+ *
+ * The files returned by the lookups have the path of the archive followed by
+ * the name of the entry, for example <code>/srv/templates.zip/site/base.pan</code>.
+ * These paths do not exist on the file system; the contents are read through
+ * the repository. As they are unique, they identify the entries in the
+ * compiled template caches and in the dependency files. As they have no
+ * modification time, the dependency files record the CRC and size of the
+ * entries, taken from the central directory, instead.
+ *
+ * @author loomis
+ *
+ */
+public class ArchiveSourceRepositoryImpl extends FileSystemSourceRepository {
+
+    private final List<File> archiveFiles;
+
+    private volatile List<ZipFile> archives;
+
+    public ArchiveSourceRepositoryImpl(List<File> archiveFiles)
+            throws ConfigurationException {
+
+        for (File f : archiveFiles) {
+            if (!f.isAbsolute()) {
+                throw ConfigurationException.create(
+                        MSG_NON_ABSOLUTE_PATH_IN_SOURCE_ARCHIVES, f.toString());
+            }
+        }
+
+        this.archiveFiles = Collections
+                .unmodifiableList(new ArrayList<File>(archiveFiles));
+        this.archives = open(this.archiveFiles);
+    }
+
+    /**
+     * Creates a repository for the archives given by the
+     * <code>sourceArchive</code> parameters.
+     */
+    public static SourceRepository create(ParameterList parameters)
+            throws ConfigurationException {
+
+        List<File> archiveFiles = new ArrayList<File>();
+        for (Parameter parameter : parameters) {
+            if ("sourceArchive".equals(parameter.getKey())) {
+                archiveFiles.add(new File(parameter.getValue()));
+            }
+        }
+
+        return new ArchiveSourceRepositoryImpl(archiveFiles);
+    }
+
+    /**
+     * Returns the archive files read by this repository.
+     *
+     * @return unmodifiable list of the absolute paths of the archives
+     */
+    public List<File> getArchiveFiles() {
+        return archiveFiles;
+    }
+
+    /**
+     * Clears the lookup caches and reopens the archives, so that the current
+     * versions of the archive files are used.
+     */
+    @Override
+    public void refresh() {
+
+        List<ZipFile> old = archives;
+        try {
+            archives = open(archiveFiles);
+        } catch (ConfigurationException ce) {
+            throw new RuntimeException(ce.getMessage());
+        }
+        super.refresh();
+
+        // Streams which are still being read from the old archives are
+        // closed as well; refresh must only be called between builds.
+        close(old);
+    }
+
+    @Override
+    public InputStream getInputStream(File path) throws IOException {
+
+        List<ZipFile> zips = archives;
+        for (int i = 0; i < archiveFiles.size(); i++) {
+            String entryName = getEntryName(archiveFiles.get(i), path);
+            if (entryName != null) {
+                ZipFile zip = zips.get(i);
+                ZipEntry entry = zip.getEntry(entryName);
+                if (entry != null && !entry.isDirectory()) {
+                    return zip.getInputStream(entry);
+                }
+            }
+        }
+
+        throw new FileNotFoundException(path.toString());
+    }
+
+    /**
+     * Returns the checksum of the entry with the given path, made of the CRC
+     * and the size of the entry in the central directory. The checksum
+     * changes whenever the contents of the entry change. Returns null if
+     * the path is not an entry of the archives.
+     *
+     * @param path
+     *            path of the entry, as returned by the lookups
+     *
+     * @return checksum of the entry or null if there is no such entry
+     */
+    @Override
+    public String getChecksum(File path) {
+
+        List<ZipFile> zips = archives;
+        for (int i = 0; i < archiveFiles.size(); i++) {
+            String entryName = getEntryName(archiveFiles.get(i), path);
+            if (entryName != null) {
+                ZipEntry entry = zips.get(i).getEntry(entryName);
+                if (entry != null && !entry.isDirectory()) {
+                    return String.format("%08x:%d", entry.getCrc(),
+                            entry.getSize());
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public File lookupSource(String name) {
+        return lookupSource(name, emptyRelativePaths);
+    }
+
+    @Override
+    public File lookupSource(String name, List<String> loadpath) {
+
+        List<ZipFile> zips = archives;
+        for (int i = 0; i < zips.size(); i++) {
+            for (String rpath : loadpath) {
+                for (String suffix : sourceFileExtensions) {
+                    File file = lookup(i, zips.get(i), rpath, name + suffix);
+                    if (file != null) {
+                        return file;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public File lookupText(String name) {
+        return lookupText(name, emptyRelativePaths);
+    }
+
+    @Override
+    public File lookupText(String name, List<String> loadpath) {
+
+        List<ZipFile> zips = archives;
+        for (int i = 0; i < zips.size(); i++) {
+            for (String rpath : loadpath) {
+                File file = lookup(i, zips.get(i), rpath, name);
+                if (file != null) {
+                    return file;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    protected SourceFile createPanSourceFile(String name, File file) {
+        return createSourceFile(name, true, file);
+    }
+
+    @Override
+    protected SourceFile createTxtSourceFile(String name, File file) {
+        return createSourceFile(name, false, file);
+    }
+
+    private SourceFile createSourceFile(String name, boolean isSource,
+            File file) {
+        if (file != null) {
+            return new SourceFile(name, isSource, file, this,
+                    getChecksum(file));
+        } else {
+            return new SourceFile(name, isSource, null);
+        }
+    }
+
+    /**
+     * Returns the path of the entry for the given relative path and name or
+     * null if the archive does not contain a file with this name.
+     */
+    private File lookup(int index, ZipFile zip, String rpath, String name) {
+
+        String entryName = normalize(rpath + "/" + name);
+        if (entryName == null) {
+            return null;
+        }
+
+        ZipEntry entry = zip.getEntry(entryName);
+        if (entry == null || entry.isDirectory()) {
+            return null;
+        }
+
+        return new File(archiveFiles.get(index), entryName.replace('/',
+                File.separatorChar));
+    }
+
+    /**
+     * Returns the name of the entry within the given archive for the given
+     * path or null if the path is not within the archive.
+     */
+    private static String getEntryName(File archiveFile, File path) {
+
+        String prefix = archiveFile.getPath() + File.separator;
+        String p = path.getPath();
+        if (p.startsWith(prefix)) {
+            return p.substring(prefix.length()).replace(File.separatorChar,
+                    '/');
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Normalizes the given name to an entry name, removing empty and '.'
+     * components and resolving '..'. Returns null if the name leaves the root
+     * of the archive.
+     */
+    private static String normalize(String name) {
+
+        LinkedList<String> components = new LinkedList<String>();
+        for (String c : name.replace(File.separatorChar, '/').split("/")) {
+            if ("".equals(c) || ".".equals(c)) {
+                continue;
+            } else if ("..".equals(c)) {
+                if (components.isEmpty()) {
+                    return null;
+                }
+                components.removeLast();
+            } else {
+                components.add(c);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String c : components) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static List<ZipFile> open(List<File> archiveFiles)
+            throws ConfigurationException {
+
+        List<ZipFile> zips = new ArrayList<ZipFile>();
+        for (File f : archiveFiles) {
+            try {
+                zips.add(new ZipFile(f));
+            } catch (IOException ioe) {
+                close(zips);
+                throw ConfigurationException.create(
+                        MSG_CANNOT_OPEN_SOURCE_ARCHIVE, f.toString(),
+                        ioe.getMessage());
+            }
+        }
+        return Collections.unmodifiableList(zips);
+    }
+
+    private static void close(List<ZipFile> zips) {
+        for (ZipFile zip : zips) {
+            try {
+                zip.close();
+            } catch (IOException consumed) {
+            }
+        }
+    }
+
+}
@@ -4,6 +4,9 @@ import static org.quattor.pan.utils.MessageUtils.MSG_NON_ABSOLUTE_PATH_IN_INCLUD
 import static org.quattor.pan.utils.MessageUtils.MSG_NON_DIRECTORY_IN_INCLUDE_DIRS;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.concurrent.ConcurrentHashMap;
@@ -46,8 +49,8 @@ abstract public class FileSystemSourceRepository implements SourceRepository {
     //  2 threads will get the same result,
     //  so it's not an issue if they add the file
     // No static Map, due to eg include directories
-    protected Map<String, SourceFile> retrievePanCacheLoadpath = new ConcurrentHashMap<String, SourceFile>(50000);
-    protected Map<String, SourceFile> retrieveTxtCacheLoadpath = new ConcurrentHashMap<String, SourceFile>(1000);
+    protected Map<LookupKey, SourceFile> retrievePanCacheLoadpath = new ConcurrentHashMap<LookupKey, SourceFile>(50000);
+    protected Map<LookupKey, SourceFile> retrieveTxtCacheLoadpath = new ConcurrentHashMap<LookupKey, SourceFile>(1000);
 
     protected FileSystemSourceRepository() {
     }
@@ -66,6 +69,13 @@ abstract public class FileSystemSourceRepository implements SourceRepository {
             }
         }
 
+        // Answer the lookups from an index of the include directories
+        // instead of probing the file system if requested.
+        if (Boolean.parseBoolean(parameters.getValue("indexSources"))) {
+            return new IndexedFileSystemSourceRepositoryImpl(
+                    includeDirectories);
+        }
+
         return new FileSystemSourceRepositoryImpl(
                 includeDirectories);
     }
@@ -86,13 +96,13 @@ abstract public class FileSystemSourceRepository implements SourceRepository {
     // Optimised due to lots of calls and slow lookupSource
     public SourceFile retrievePanSource(String name, List<String> loadpath) {
 
-        String cacheKey = name + ((String) " ") + String.join(":", loadpath);
+        LookupKey cacheKey = new LookupKey(name, loadpath);
 
         SourceFile cachedResult = retrievePanCacheLoadpath.get(cacheKey);
         if (cachedResult == null) {
             File file = lookupSource(name, loadpath);
             cachedResult = createPanSourceFile(name, file);
-            retrievePanCacheLoadpath.put(cacheKey, cachedResult);
+            retrievePanCacheLoadpath.put(cacheKey.copy(), cachedResult);
         }
         return cachedResult;
     }
@@ -103,22 +113,49 @@ abstract public class FileSystemSourceRepository implements SourceRepository {
     }
 
     public SourceFile retrieveTxtSource(String name, List<String> loadpath) {
-        String cacheKey = name + ((String) " ") + String.join(":", loadpath);
+        LookupKey cacheKey = new LookupKey(name, loadpath);
 
         SourceFile cachedResult = retrieveTxtCacheLoadpath.get(cacheKey);
         if (cachedResult == null) {
             File file = lookupText(name, loadpath);
             cachedResult = createTxtSourceFile(name, file);
-            retrieveTxtCacheLoadpath.put(cacheKey, cachedResult);
+            retrieveTxtCacheLoadpath.put(cacheKey.copy(), cachedResult);
         }
         return cachedResult;
     }
 
-    private SourceFile createPanSourceFile(String name, File file) {
+    /**
+     * Clears the results of earlier lookups. Subclasses which keep more
+     * information about the sources must extend this method.
+     */
+    public void refresh() {
+        retrievePanCacheLoadpath.clear();
+        retrieveTxtCacheLoadpath.clear();
+    }
+
+    public InputStream getInputStream(File path) throws IOException {
+        return new FileInputStream(path);
+    }
+
+    /**
+     * Plain files are checked through their modification time, so no
+     * checksum is given. Subclasses whose files are not plain files must
+     * override this method.
+     */
+    public String getChecksum(File path) {
+        return null;
+    }
+
+    /**
+     * Creates the source file for a template. Subclasses whose files are not
+     * plain files must override this method and the next one, so that the
+     * contents of the source files are read through the repository.
+     */
+    protected SourceFile createPanSourceFile(String name, File file) {
         return new SourceFile(name, true, file);
     }
 
-    private SourceFile createTxtSourceFile(String name, File file) {
+    protected SourceFile createTxtSourceFile(String name, File file) {
         return new SourceFile(name, false, file);
     }
 
@@ -157,4 +194,50 @@ abstract public class FileSystemSourceRepository implements SourceRepository {
         return Collections.unmodifiableList(dirs);
     }
 
+    /**
+     * Key of the lookup caches. The load path is compared element by element,
+     * so no string needs to be built for each lookup.
+     */
+    protected static final class LookupKey {
+
+        private final String name;
+
+        private final List<String> loadpath;
+
+        private final int hashCode;
+
+        public LookupKey(String name, List<String> loadpath) {
+            this.name = name;
+            this.loadpath = loadpath;
+            this.hashCode = 31 * name.hashCode() + loadpath.hashCode();
+        }
+
+        /**
+         * Returns a key which does not share the load path with the caller,
+         * so that it can be kept in a cache.
+         */
+        public LookupKey copy() {
+            return new LookupKey(name, new ArrayList<String>(loadpath));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (o instanceof LookupKey) {
+                LookupKey other = (LookupKey) o;
+                return hashCode == other.hashCode && name.equals(other.name)
+                        && loadpath.equals(other.loadpath);
+            } else {
+                return false;
+            }
+        }
+
+    }
+
 }
@@ -15,6 +15,36 @@ public class FileSystemSourceRepositoryImpl extends
         this.includeDirectories = validateAndCopyIncludeDirectories(includeDirectories);
     }
 
+    /**
+     * Returns the include directories searched by this repository.
+     *
+     * @return unmodifiable list of the include directories
+     */
+    public List<File> getIncludeDirectories() {
+        return includeDirectories;
+    }
+
+    /**
+     * Checks whether a candidate file for a lookup exists. The candidate is
+     * the file with the given name relative to the include directory and to
+     * the relative path of the load path.
+     *
+     * @param index
+     *            index of the include directory
+     * @param rpath
+     *            relative path from the load path
+     * @param name
+     *            name of the file, using '/' as separator
+     * @param candidate
+     *            candidate file
+     *
+     * @return true if the candidate file exists
+     */
+    protected boolean exists(int index, String rpath, String name,
+            File candidate) {
+        return candidate.exists();
+    }
+
     // Override to benefit from caching
     @Override
     public SourceFile retrievePanSource(String name) {
@@ -41,13 +71,13 @@ public class FileSystemSourceRepositoryImpl extends
 
         String localName = FileUtils.localizeFilename(name);
 
-        for (File d : includeDirectories) {
+        for (int i = 0; i < includeDirectories.size(); i++) {
             for (String rpath : loadpath) {
 
-                File dir = new File(d, rpath);
+                File dir = new File(includeDirectories.get(i), rpath);
 
                 File sourceFile = new File(dir, localName);
-                if (sourceFile.exists()) {
+                if (exists(i, rpath, name, sourceFile)) {
                     return sourceFile;
                 }
 
@@ -72,15 +102,15 @@ public class FileSystemSourceRepositoryImpl extends
 
         String localName = FileUtils.localizeFilename(name);
 
-        for (File d : includeDirectories) {
+        for (int i = 0; i < includeDirectories.size(); i++) {
             for (String rpath : loadpath) {
 
-                File dir = new File(d, rpath);
+                File dir = new File(includeDirectories.get(i), rpath);
 
                 for (String suffix : sourceFileExtensions) {
 
                     File sourceFile = new File(dir, localName + suffix);
-                    if (sourceFile.exists()) {
+                    if (exists(i, rpath, name + suffix, sourceFile)) {
                         return sourceFile;
                     }
                 }
@@ -0,0 +1,226 @@
+package org.quattor.pan.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A file system repository which answers the lookups from an index of the
+ * include directories instead of checking the existence of each candidate
+ * file. The include directories are walked once (in parallel) when the
+ * repository is created and again each time <code>refresh</code> is called.
+ * Files created or deleted in between are not seen.
+ *
+ * The returned files are the same as those of the unindexed repository. If a
+ * directory could not be read completely or if a name leaves the include
+ * directory, the existence of the candidate file is checked directly.
+ * Dangling symbolic links are left out of the index.
+ *
+ * @author loomis
+ *
+ */
+public class IndexedFileSystemSourceRepositoryImpl extends
+        FileSystemSourceRepositoryImpl {
+
+    private volatile Node[] roots;
+
+    public IndexedFileSystemSourceRepositoryImpl(List<File> includeDirectories) {
+        super(includeDirectories);
+        roots = scan(getIncludeDirectories());
+    }
+
+    /**
+     * Clears the lookup caches and walks the include directories again.
+     */
+    @Override
+    public void refresh() {
+        roots = scan(getIncludeDirectories());
+        super.refresh();
+    }
+
+    @Override
+    protected boolean exists(int index, String rpath, String name,
+            File candidate) {
+
+        Node node = roots[index];
+        if (node == null) {
+            return candidate.exists();
+        }
+
+        // Descend through the components of the relative path and the name.
+        // The components are kept on a stack so that '..' can be handled.
+        List<Node> stack = new ArrayList<Node>();
+        stack.add(node);
+        for (String path : new String[] { rpath, name }) {
+            for (String component : path.replace(File.separatorChar, '/')
+                    .split("/")) {
+
+                if ("".equals(component) || ".".equals(component)) {
+                    continue;
+                } else if ("..".equals(component)) {
+                    if (stack.size() == 1) {
+                        return candidate.exists();
+                    }
+                    stack.remove(stack.size() - 1);
+                    node = stack.get(stack.size() - 1);
+                    continue;
+                }
+
+                if (!node.complete) {
+                    return candidate.exists();
+                } else if (node.children == null) {
+                    return false;
+                }
+
+                node = node.children.get(component);
+                if (node == null) {
+                    return false;
+                }
+                stack.add(node);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Walks all of the include directories in parallel and returns the root
+     * nodes of their indices. The root is null for any directory which could
+     * not be walked.
+     */
+    private static Node[] scan(List<File> includeDirectories) {
+
+        int nthreads = Math.min(includeDirectories.size(), Runtime
+                .getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(
+                nthreads, 1));
+
+        try {
+            List<Future<Node>> futures = new ArrayList<Future<Node>>();
+            for (final File d : includeDirectories) {
+                futures.add(executor.submit(new Callable<Node>() {
+                    public Node call() throws IOException {
+                        return scan(d.toPath());
+                    }
+                }));
+            }
+
+            Node[] nodes = new Node[futures.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                try {
+                    nodes[i] = futures.get(i).get();
+                } catch (ExecutionException consumed) {
+                    nodes[i] = null;
+                } catch (InterruptedException consumed) {
+                    Thread.currentThread().interrupt();
+                    nodes[i] = null;
+                }
+            }
+            return nodes;
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Walks a single include directory, following symbolic links.
+     */
+    private static Node scan(final Path root) throws IOException {
+
+        final Node rootNode = new Node();
+        rootNode.children = new HashMap<String, Node>();
+
+        final Map<Path, Node> directories = new HashMap<Path, Node>();
+        directories.put(root, rootNode);
+
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir,
+                            BasicFileAttributes attrs) {
+                        if (!dir.equals(root)) {
+                            Node node = add(dir);
+                            node.children = new HashMap<String, Node>();
+                            directories.put(dir, node);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) {
+                        // As links are followed, only dangling links are
+                        // reported as links. They do not exist for the
+                        // unindexed lookups either.
+                        if (!attrs.isSymbolicLink()) {
+                            add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file,
+                            IOException exc) {
+                        // Lookups below an entry which cannot be read (or
+                        // a link loop) are checked against the file system.
+                        Node node = (file.equals(root)) ? rootNode
+                                : add(file);
+                        node.complete = false;
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir,
+                            IOException exc) {
+                        if (exc != null) {
+                            directories.get(dir).complete = false;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    private Node add(Path path) {
+                        Node parent = directories.get(path.getParent());
+                        String name = path.getFileName().toString();
+                        Node node = parent.children.get(name);
+                        if (node == null) {
+                            node = new Node();
+                            parent.children.put(name, node);
+                        }
+                        return node;
+                    }
+
+                });
+
+        return rootNode;
+    }
+
+    /**
+     * Entry of the index. Files have no children. The index is not modified
+     * once it has been built.
+     */
+    private static final class Node {
+
+        Map<String, Node> children = null;
+
+        boolean complete = true;
+
+    }
+
+}
@@ -33,6 +33,25 @@ public class ParameterList implements Iterable<Parameter> {
 		append(parameter);
 	}
 
+	/**
+	 * Returns the value of the last parameter with the given name or null if
+	 * no such parameter exists. Later values override earlier ones.
+	 * 
+	 * @param name
+	 *            name of the parameter to look up
+	 * 
+	 * @return value of the named parameter or null
+	 */
+	public String getValue(String name) {
+		String value = null;
+		for (Parameter parameter : parameters) {
+			if (parameter.getKey().equals(name)) {
+				value = parameter.getValue();
+			}
+		}
+		return value;
+	}
+
 	public Iterator<Parameter> iterator() {
 		return Collections.unmodifiableList(parameters).iterator();
 	}
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.zip.GZIPInputStream;
@@ -24,7 +25,7 @@ import org.quattor.pan.ttemplate.Template;
 import org.quattor.pan.utils.MessageUtils;
 
 @Immutable
-public class SourceFile implements Comparable<SourceFile> {
+public class SourceFile implements Comparable<SourceFile>, Serializable {
 
     private final String name;
 
@@ -34,11 +35,36 @@ public class SourceFile implements Comparable<SourceFile> {
 
     private final File path;
 
+    // Repository reading the contents of the file or null if the path is a
+    // plain file. This is not kept when the source file is serialized with a
+    // compiled template; the contents are never read from such a copy.
+    private final transient SourceRepository repository;
+
+    // Checksum identifying the version of the contents or null if changes
+    // are detected from the modification time of the path.
+    private final String checksum;
+
     public SourceFile(String name, boolean isSource, File path)
             throws IllegalArgumentException {
+        this(name, isSource, path, null, null);
+    }
+
+    /**
+     * Creates a source file whose contents are read through the given
+     * repository. The path must still be absolute, but it does not need to
+     * exist on the file system; this allows repositories to provide files
+     * from other locations, like the entries of an archive. As these paths
+     * have no modification time, the repository can give a checksum of the
+     * contents instead; it is written to the dependency files.
+     */
+    public SourceFile(String name, boolean isSource, File path,
+            SourceRepository repository, String checksum)
+            throws IllegalArgumentException {
 
         this.name = name;
         this.path = path;
+        this.repository = repository;
+        this.checksum = checksum;
 
         if (isSource) {
 
@@ -85,12 +111,28 @@ public class SourceFile implements Comparable<SourceFile> {
         return path;
     }
 
+    public String getChecksum() {
+        return checksum;
+    }
+
     public boolean isAbsent() {
         return type.isAbsent();
     }
 
     public InputStream getInputStream() throws IOException {
-        return new FileInputStream(path);
+        if (repository != null) {
+            return repository.getInputStream(path);
+        } else {
+            return new FileInputStream(path);
+        }
+    }
+
+    /**
+     * Indicates whether this is a directory. This is only possible for plain
+     * files.
+     */
+    public boolean isDirectory() {
+        return (repository == null) && (path != null) && path.isDirectory();
     }
 
     public Reader getReader(String compression) throws IOException {
@@ -158,6 +200,17 @@ public class SourceFile implements Comparable<SourceFile> {
     @Override
     public String toString() {
         String uri = (location != null) ? location.toURI().toASCIIString() : "";
+
+        // The location is resolved against the name when the dependency is
+        // read back, so it must end with a slash even if it is not a
+        // directory, like the root of a source archive.
+        if (location != null && !uri.endsWith("/")) {
+            uri = uri + "/";
+        }
+
+        if (checksum != null) {
+            return String.format("%s %s %s %s", name, type, uri, checksum);
+        }
         return String.format("%s %s %s", name, type, uri);
     }
 
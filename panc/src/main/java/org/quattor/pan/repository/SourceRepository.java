@@ -1,5 +1,9 @@
 package org.quattor.pan.repository;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 public interface SourceRepository {
@@ -12,4 +16,42 @@ public interface SourceRepository {
 
 	public SourceFile retrieveTxtSource(String fullname, List<String> loadpath);
 
+	/**
+	 * Discards any information about the sources which the repository may
+	 * have kept from earlier lookups, so that files created or deleted since
+	 * then are seen by later lookups. Long-running users of a repository must
+	 * call this when the sources have changed.
+	 */
+	public void refresh();
+
+	/**
+	 * Opens a source file found by this repository. The path is the one of a
+	 * <code>SourceFile</code> returned by a lookup; it does not necessarily
+	 * name a file which exists on the file system.
+	 *
+	 * @param path
+	 *            absolute path of the source file
+	 *
+	 * @return stream with the contents of the source file
+	 *
+	 * @throws FileNotFoundException
+	 *             if the source file does not exist or cannot be read
+	 * @throws IOException
+	 *             if the source file cannot be opened
+	 */
+	public InputStream getInputStream(File path) throws IOException;
+
+	/**
+	 * Returns a checksum identifying the current contents of a source file
+	 * found by this repository, for paths which have no meaningful
+	 * modification time.
+	 *
+	 * @param path
+	 *            absolute path of the source file
+	 *
+	 * @return checksum of the contents or null if changes are detected from
+	 *         the modification time of the path
+	 */
+	public String getChecksum(File path);
+
 }
@@ -10,6 +10,12 @@ public class SourceRepositoryFactory {
 	public static SourceRepository create(ParameterList parameters)
 			throws ConfigurationException {
 
+		// Templates are read from archives instead of the include directories
+		// if any archive is given.
+		if (parameters != null && parameters.getValue("sourceArchive") != null) {
+			return ArchiveSourceRepositoryImpl.create(parameters);
+		}
+
 		return FileSystemSourceRepository.getInstance(parameters);
 	}
 
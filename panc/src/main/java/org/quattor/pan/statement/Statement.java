@@ -20,21 +20,13 @@
 
 package org.quattor.pan.statement;
 
-import clojure.lang.AFn;
-import clojure.lang.IObj;
-import clojure.lang.IPersistentMap;
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.Element;
-import org.quattor.pan.exceptions.CompilerError;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.ttemplate.Context;
 import org.quattor.pan.ttemplate.SourceRange;
 
-import java.util.concurrent.atomic.AtomicReference;
-
-import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
-
 /**
  * Provides the superclass of all declarative statements in the pan
  * configuration language. All declarative pan statements operate on the Context
@@ -52,13 +44,11 @@ import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
  * @author loomis
  *
  */
-abstract public class Statement extends AFn implements Operation {
+abstract public class Statement implements Operation {
 
 	private final SourceRange sourceRange;
 
-    private final AtomicReference<IPersistentMap> metadataRef = new AtomicReference<IPersistentMap>();
-
-    /**
+	/**
 	 * The base constructor for Statement takes a SourceRange object which
 	 * indicates the location of the statement within the source file. All
 	 * subclasses must call this constructor as part of their constructors.
@@ -71,23 +61,6 @@ abstract public class Statement extends AFn implements Operation {
 		this.sourceRange = sourceRange;
 	}
 
-    @Override
-    public IPersistentMap meta() {
-        return metadataRef.get();
-    }
-
-    public IObj withMeta(IPersistentMap iPersistentMap) {
-        metadataRef.set(iPersistentMap);
-        return this;
-    }
-
-    public Object invoke(Object o1) {
-        try {
-            return execute((Context) o1);
-        } catch (ClassCastException ex) {
-            throw CompilerError.create(MSG_OPERATION_WITHOUT_CONTEXT);
-        }
-    }
 	/**
 	 * Retrieve the source location for this Statement.
 	 *
@@ -63,6 +63,15 @@ public class StaticIncludeStatement extends IncludeStatement {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the name of the included template.
+	 *
+	 * @return name of the included template
+	 */
+	public String getName() {
+		return name;
+	}
+
 	@Override
 	public Element execute(Context context) {
 		executeWithNamedTemplate(context, name);
@@ -29,9 +29,13 @@ import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.quattor.pan.BuildSchedule;
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.CompilerProfiler;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.cache.CompileCache;
+import org.quattor.pan.cache.PrefixCache;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.Undef;
 import org.quattor.pan.exceptions.EvaluationException;
@@ -113,21 +117,65 @@ public class BuildTask extends Task<BuildResult> {
 
 			// Log the beginning of the build phase.
 			taskLogger.log(Level.FINER, "START_BUILD", objectName);
+			long start = System.nanoTime();
 
 			// For inclusion logging, also add the object template itself.
 			callLogger.log(Level.INFO, "ENTER", new Object[] { "OBJECT",
 					objectName });
 
-			Context context = new BuildContext(compiler, template);
+			// Start from the state after the leading includes if these are
+			// shared with other object templates. This is not done if the
+			// includes are logged, as they would only be logged once.
+			PrefixResult prefix = null;
+			if (compiler.options.snapshotPrefixes
+					&& !callLogger.isLoggable(Level.INFO)) {
+				PrefixCache pcache = compiler.getPrefixCache();
+				prefix = pcache.lookup(template);
+			}
+
+			BuildContext context;
+			int first;
+			if (prefix != null) {
+				context = new BuildContext(prefix.getContext(), template);
+				first = prefix.getLength();
+			} else {
+				context = new BuildContext(compiler, template);
+				first = 0;
+			}
+
+			// The profile of the object is kept by the context, so that the
+			// validation phases are recorded with the build.
+			CompilerProfiler profiler = compiler.getProfiler();
+			if (profiler != null) {
+				context.setProfile(profiler.createProfile(objectName));
+			}
 
 			// Run through the building and validation phases of processing.
-			execute(context, objectName);
-			setDefaults(context, objectName);
+			ObjectProfile profile = context.getProfile();
+			int mark = (profile != null) ? profile.enter("BUILD", objectName) : 0;
+			try {
+				execute(context, objectName, first);
+				setDefaults(context, objectName);
+			} finally {
+				if (profile != null) {
+					profile.exitTo(mark);
+				}
+			}
 
 			// The build has been successful. Turn off the object dependency
 			// checking for validation phases.
 			context.turnOffObjectDependencyChecking();
 
+			// Record the cost of this build, without the time spent on the
+			// other objects, for the ordering of the next run.
+			BuildSchedule schedule = compiler.getBuildSchedule();
+			if (schedule != null) {
+				long cost = System.nanoTime() - start
+						- context.getExternalWaitTime();
+				schedule.record(objectName, tplFile, cost / 1000000L,
+						context.getObjectDependencies());
+			}
+
 			// For inclusion logging, log also when the build phase ends.
 			callLogger.log(Level.INFO, "EXIT", new Object[] { "OBJECT",
 					objectName });
@@ -142,17 +190,21 @@ public class BuildTask extends Task<BuildResult> {
 		}
 
 		/**
-		 * Execute the object template and any included templates.
+		 * Execute the object template and any included templates, starting
+		 * with the given statement. If statements are skipped, the context
+		 * already contains the state after running them.
 		 */
-		private void execute(Context context, String objectName) {
+		private void execute(Context context, String objectName, int first) {
 
 			// Log the beginning of the build phase.
 			taskLogger.log(Level.FINER, "START_EXECUTE", objectName);
 
 			try {
-				context.setObjectAndLoadpath();
+				if (first == 0) {
+					context.setObjectAndLoadpath();
+				}
 				context.setCurrentTemplate(context.getObjectTemplate());
-				context.getObjectTemplate().execute(context, true);
+				context.getObjectTemplate().execute(context, first);
 			} catch (EvaluationException ee) {
 				throw ee.addExceptionInfo(null,
 						context.getCurrentTemplate().source, null);
@@ -20,17 +20,23 @@
 
 package org.quattor.pan.tasks;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.file.Files;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerSession;
 import org.quattor.pan.CompilerLogging.LoggingType;
 import org.quattor.pan.cache.CompileCache.PostCompileProcessor;
+import org.quattor.pan.cache.TemplateStore;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.exceptions.SystemException;
@@ -38,6 +44,7 @@ import org.quattor.pan.parser.PanParser;
 import org.quattor.pan.parser.ASTTemplate;
 import org.quattor.pan.parser.PanParserAstUtils;
 import org.quattor.pan.parser.ParseException;
+import org.quattor.pan.repository.SourceRepository;
 import org.quattor.pan.ttemplate.Template;
 
 /**
@@ -55,8 +62,15 @@ public class CompileTask extends Task<CompileResult> {
     public CompileTask(String tplfile,
             PostCompileProcessor postCompileProcessor,
             CompilerOptions compilerOptions) {
+        this(tplfile, postCompileProcessor, compilerOptions, null, null);
+    }
+
+    public CompileTask(String tplfile,
+            PostCompileProcessor postCompileProcessor,
+            CompilerOptions compilerOptions, TemplateStore templateStore,
+            CompilerSession session) {
         super(TaskResult.ResultType.COMPILED, tplfile, new CallImpl(tplfile,
-                postCompileProcessor, compilerOptions));
+                postCompileProcessor, compilerOptions, templateStore, session));
     }
 
     /**
@@ -75,9 +89,20 @@ public class CompileTask extends Task<CompileResult> {
 
         private final CompilerOptions compilerOptions;
 
+        private final TemplateStore templateStore;
+
+        private final CompilerSession session;
+
         public CallImpl(String tplpath,
                 PostCompileProcessor postCompileProcessor,
                 CompilerOptions compilerOptions) {
+            this(tplpath, postCompileProcessor, compilerOptions, null, null);
+        }
+
+        public CallImpl(String tplpath,
+                PostCompileProcessor postCompileProcessor,
+                CompilerOptions compilerOptions, TemplateStore templateStore,
+                CompilerSession session) {
 
             File tplfile = new File(tplpath);
 
@@ -90,6 +115,8 @@ public class CompileTask extends Task<CompileResult> {
             this.tplfile = tplfile;
             this.postCompileProcessor = postCompileProcessor;
             this.compilerOptions = compilerOptions;
+            this.templateStore = templateStore;
+            this.session = session;
         }
 
         public CompileResult call() throws Exception {
@@ -100,9 +127,43 @@ public class CompileTask extends Task<CompileResult> {
                 taskLogger.log(Level.FINER, "START_COMPILE", tplfile
                         .getAbsolutePath());
 
-                ASTTemplate ast = compile(tplfile, compilerOptions);
-                Template template = PanParserAstUtils.convertAstToTemplate(
-                        tplfile, ast);
+                ASTTemplate ast = null;
+                Template template = null;
+
+                // Reuse the template if an earlier compiler in the same session
+                // has already compiled it.
+                if (session != null) {
+                    template = session.getTemplate(tplfile);
+                }
+
+                // Reuse a previously compiled template if the file's contents
+                // have not changed since it was stored.
+                byte[] contents = null;
+                byte[] digest = null;
+                if (template == null && templateStore != null) {
+                    contents = readContents(tplfile,
+                            compilerOptions.sourceRepository);
+                    digest = TemplateStore.digest(contents);
+                    template = templateStore.load(tplfile, digest);
+                }
+
+                if (template == null) {
+                    ast = compile(tplfile, contents, compilerOptions);
+                    template = PanParserAstUtils.convertAstToTemplate(tplfile,
+                            ast, (compilerOptions != null)
+                                    && compilerOptions.compileFunctions);
+
+                    // Templates with deprecated syntax are not stored, as
+                    // their deprecation messages are only written when they
+                    // are parsed.
+                    if (templateStore != null && !ast.hasDeprecations()) {
+                        templateStore.store(tplfile, digest, template);
+                    }
+                }
+
+                if (session != null) {
+                    session.putTemplate(tplfile, template);
+                }
 
                 // Either the load or compilation was successful or an exception
                 // was thrown. Hence, we should always have a non-null template
@@ -145,24 +206,53 @@ public class CompileTask extends Task<CompileResult> {
          */
         public static ASTTemplate compile(File tplfile,
                 CompilerOptions compilerOptions) throws Exception {
+            return compile(tplfile, null, compilerOptions);
+        }
+
+        /**
+         * Run the compilation on contents which have already been read from
+         * the template file.
+         *
+         * @param tplfile
+         *            file to compile
+         * @param contents
+         *            contents of the file; if null, the file is read
+         * @param compilerOptions
+         *            compiler options to use for compilation
+         * @throws ParseException
+         *             for low-level parsing errors
+         * @throws SyntaxException
+         *             for files which parse correctly but contain higher-level
+         *             syntax errors
+         * @throws SystemException
+         *             for IO exceptions or unexpected system exceptions; the
+         *             cause is the underlying exception
+         *
+         */
+        public static ASTTemplate compile(File tplfile, byte[] contents,
+                CompilerOptions compilerOptions) throws Exception {
 
             ASTTemplate ast = null;
 
-            // Ensure that the file can actually be read.
-            if (!tplfile.canRead()) {
-                throw new SystemException("template file cannot be read",
-                        tplfile);
+            // Read the file through the source repository, as its templates
+            // are not necessarily plain files.
+            if (contents == null) {
+                contents = readContents(tplfile,
+                        (compilerOptions != null) ? compilerOptions.sourceRepository
+                                : null);
             }
 
             // Parse the input file and generate a Template object.
             Reader reader = null;
             try {
-                reader = new InputStreamReader(new FileInputStream(tplfile), "UTF-8");
+                InputStream is = new ByteArrayInputStream(contents);
+                reader = new InputStreamReader(is, "UTF-8");
 
                 PanParser parser = new PanParser(reader);
                 parser.setFile(tplfile);
                 parser.setCompilerOptions(compilerOptions);
                 ast = parser.ttemplate();
+                ast.setDeprecations(parser.foundDeprecations());
 
             } catch (ParseException pe) {
                 pe.file = tplfile;
@@ -193,6 +283,59 @@ public class CompileTask extends Task<CompileResult> {
 
             return ast;
         }
+
+        /**
+         * Reads the complete contents of the template file. The file is read
+         * through the given repository if it is not null.
+         *
+         * @param tplfile
+         *            file to read
+         * @param repository
+         *            repository which found the file; may be null
+         * @throws SystemException
+         *             if the file cannot be read
+         *
+         * @return raw bytes of the file
+         */
+        private static byte[] readContents(File tplfile,
+                SourceRepository repository) throws SystemException {
+
+            if (repository == null && !tplfile.canRead()) {
+                throw new SystemException("template file cannot be read",
+                        tplfile);
+            }
+
+            InputStream is = null;
+            try {
+                if (repository == null) {
+                    return Files.readAllBytes(tplfile.toPath());
+                }
+
+                is = repository.getInputStream(tplfile);
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = is.read(buffer)) >= 0) {
+                    os.write(buffer, 0, count);
+                }
+                return os.toByteArray();
+
+            } catch (FileNotFoundException fnfe) {
+                throw new SystemException("template file cannot be read",
+                        tplfile);
+            } catch (java.io.IOException ioe) {
+                SystemException se = new SystemException("IO error", tplfile);
+                se.initCause(ioe);
+                throw se;
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (java.io.IOException consumed) {
+                    }
+                }
+            }
+        }
     }
 
 }
@@ -21,19 +21,21 @@
 package org.quattor.pan.tasks;
 
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
 
 import org.quattor.pan.Compiler;
+import org.quattor.pan.cache.FinalCache;
 import org.quattor.pan.cache.Valid2Cache;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.repository.SourceFile;
 
 /**
- * Encapsulates the results of the second validation phase.
+ * Encapsulates the final result for an object: the validated configuration
+ * and the complete set of source files on which it depends, including those
+ * of any referenced objects.
  * 
  * @author loomis
  * 
@@ -49,7 +51,7 @@ public class FinalResult extends TaskResult {
 	Set<SourceFile> dependencies;
 
 	public FinalResult(Compiler compiler, Valid2Result result) {
-		super(ResultType.VALID2);
+		super(ResultType.FINAL);
 
 		this.root = result.getRoot();
 		this.timestamp = result.timestamp;
@@ -57,6 +59,21 @@ public class FinalResult extends TaskResult {
 		this.dependencies = resolveAllDependencies(compiler);
 	}
 
+	private FinalResult(FinalResult result) {
+		super(ResultType.FINAL);
+
+		this.root = null;
+		this.timestamp = result.timestamp;
+		this.objectName = result.objectName;
+		this.dependencies = result.dependencies;
+	}
+
+	/**
+	 * Returns the root of the validated configuration or null if this result
+	 * has been summarized.
+	 * 
+	 * @return root element or null
+	 */
 	public Element getRoot() {
 		return root;
 	}
@@ -72,8 +89,9 @@ public class FinalResult extends TaskResult {
 		// Allowing the compiler to be null allows for testing.
 		if (compiler != null) {
 			Valid2Cache v2cache = compiler.getValid2Cache();
+			FinalCache fcache = compiler.getFinalCache();
 
-			List<String> processed = new LinkedList<String>();
+			Set<String> processed = new HashSet<String>();
 			Stack<String> unprocessed = new Stack<String>();
 			unprocessed.push(objectName);
 
@@ -83,15 +101,24 @@ public class FinalResult extends TaskResult {
 
 				// Only do something if the object template hasn't already been
 				// processed.
-				if (!processed.contains(objectToProcess)) {
-					processed.add(objectToProcess);
+				if (processed.add(objectToProcess)) {
+
+					// If the final result of the other object is already
+					// available, it contains all of that object's dependencies,
+					// so there is no need to follow its object dependencies.
+					FinalResult other = fcache
+							.getFinishedResult(objectToProcess);
 
-					Valid2Result result = (Valid2Result) v2cache
-							.waitForResult(objectToProcess);
+					if (other != null) {
+						allDependencies.addAll(other.getDependencies());
+					} else {
+						Valid2Result result = (Valid2Result) v2cache
+								.waitForResult(objectToProcess);
 
-					allDependencies.addAll(result.getDependencies());
+						allDependencies.addAll(result.getDependencies());
 
-					unprocessed.addAll(result.getObjectDependencies());
+						unprocessed.addAll(result.getObjectDependencies());
+					}
 				}
 
 			}
@@ -100,4 +127,14 @@ public class FinalResult extends TaskResult {
 		return Collections.unmodifiableSet(allDependencies);
 	}
 
+	/**
+	 * Returns a result containing only the object name, timestamp, and the
+	 * dependencies. The configuration tree is not referenced by the summary.
+	 * 
+	 * @return summary of this result
+	 */
+	public FinalResult summarize() {
+		return (root != null) ? new FinalResult(this) : this;
+	}
+
 }
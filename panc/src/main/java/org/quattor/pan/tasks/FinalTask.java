@@ -0,0 +1,98 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.tasks;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerSession;
+import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.cache.Valid2Cache;
+import org.quattor.pan.repository.SourceFile;
+
+/**
+ * Wraps the <code>FinalCallable</code> as a <code>Task</code>. This wrapping
+ * is done to make sure that the <code>FinalCallable</code> is fully
+ * constructed before passing it to the <code>FutureTask</code>.
+ * 
+ * @author loomis
+ * 
+ */
+public class FinalTask extends Task<FinalResult> {
+
+	private static final Logger taskLogger = LoggingType.TASK.logger();
+
+	public FinalTask(Compiler compiler, String objectName) {
+		super(TaskResult.ResultType.FINAL, objectName, new CallImpl(compiler,
+				objectName));
+	}
+
+	/**
+	 * Creates the final result for an object from its validated configuration.
+	 * This calculates the complete set of dependencies once, so that they can
+	 * be shared by all of the output files written for the object.
+	 * 
+	 * @author loomis
+	 * 
+	 */
+	private static class CallImpl implements Callable<FinalResult> {
+
+		private final Compiler compiler;
+
+		private final String objectName;
+
+		public CallImpl(Compiler compiler, String objectName) {
+			this.compiler = compiler;
+			this.objectName = objectName;
+		}
+
+		public FinalResult call() throws Exception {
+
+			Valid2Cache v2cache = compiler.getValid2Cache();
+
+			// Now actually retrieve the object's root, waiting if the result
+			// isn't yet available.
+			Valid2Result result = (Valid2Result) v2cache
+					.waitForResult(objectName);
+
+			taskLogger.log(Level.FINER, "START_FINAL", objectName);
+
+			FinalResult finalResult = new FinalResult(compiler, result);
+
+			// Let the session know which files the object depends on, so that
+			// it can tell whether the object must be built again by later runs.
+			CompilerSession session = compiler.getSession();
+			if (session != null) {
+				for (SourceFile sourceFile : finalResult.getDependencies()) {
+					if (objectName.equals(sourceFile.getName())
+							&& !sourceFile.isAbsent()) {
+						session.recordDependencies(sourceFile.getPath(),
+								finalResult.getDependencies());
+					}
+				}
+			}
+
+			taskLogger.log(Level.FINER, "END_FINAL", objectName);
+
+			return finalResult;
+		}
+
+	}
+}
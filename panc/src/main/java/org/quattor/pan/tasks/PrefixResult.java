@@ -0,0 +1,65 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.tasks;
+
+import org.quattor.pan.ttemplate.BuildContext;
+
+/**
+ * Encapsulates the state of a build after running a build prefix, that is the
+ * leading includes shared by several object templates. The context is null if
+ * the prefix cannot be reused for other objects, either because it depends on
+ * the object being built or because it failed.
+ * 
+ * @author loomis
+ * 
+ */
+public class PrefixResult extends TaskResult {
+
+	private final BuildContext context;
+
+	private final int length;
+
+	public PrefixResult(BuildContext context, int length) {
+		super(ResultType.PREFIX);
+
+		this.context = context;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the context which ran the prefix or null if the prefix cannot be
+	 * reused. The context must not be modified; builds are started from a copy
+	 * of it.
+	 * 
+	 * @return context which ran the prefix or null
+	 */
+	public BuildContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Returns the number of statements of the object template which are
+	 * covered by the prefix.
+	 * 
+	 * @return number of statements in the prefix
+	 */
+	public int getLength() {
+		return length;
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.tasks;
+
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.exceptions.EvaluationException;
+import org.quattor.pan.ttemplate.BuildContext;
+import org.quattor.pan.ttemplate.Template;
+
+/**
+ * Wraps the <code>PrefixCallable</code> as a <code>Task</code>. This wrapping
+ * is done to make sure that the <code>PrefixCallable</code> is fully
+ * constructed before passing it to the <code>FutureTask</code>.
+ * 
+ * @author loomis
+ * 
+ */
+public class PrefixTask extends Task<PrefixResult> {
+
+	private static final Logger taskLogger = LoggingType.TASK.logger();
+
+	public PrefixTask(Compiler compiler, String key, Template prefix,
+			int length) {
+		super(TaskResult.ResultType.PREFIX, key, new CallImpl(compiler,
+				prefix, length));
+	}
+
+	/**
+	 * Runs a build prefix in a new context. The prefix is given as an object
+	 * template containing only the shared leading includes. If the prefix
+	 * depends on the object being built or fails, the result does not contain
+	 * a context; the objects are then built from the beginning, which also
+	 * reports any error against the correct object.
+	 * 
+	 * @author loomis
+	 * 
+	 */
+	private static class CallImpl implements Callable<PrefixResult> {
+
+		private final Compiler compiler;
+
+		private final Template prefix;
+
+		private final int length;
+
+		public CallImpl(Compiler compiler, Template prefix, int length) {
+			this.compiler = compiler;
+			this.prefix = prefix;
+			this.length = length;
+		}
+
+		public PrefixResult call() throws Exception {
+
+			taskLogger.log(Level.FINER, "START_PREFIX", prefix.name);
+
+			BuildContext context = new BuildContext(compiler, prefix);
+
+			try {
+				context.setObjectAndLoadpath();
+				context.setCurrentTemplate(prefix);
+				context.startBuildPrefix();
+				prefix.execute(context, true);
+			} catch (EvaluationException consumed) {
+				context = null;
+			}
+
+			if (context != null && context.isObjectDependent()) {
+				context = null;
+			}
+
+			taskLogger.log(Level.FINER, "END_PREFIX", prefix.name);
+
+			return new PrefixResult(context, length);
+		}
+
+	}
+}
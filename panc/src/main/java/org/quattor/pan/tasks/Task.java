@@ -23,6 +23,8 @@ package org.quattor.pan.tasks;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
 
+import org.quattor.pan.CompilerTelemetry;
+
 /**
  * Superclass of all <code>Task</code> objects that requires all subclasses to
  * define the its executor type (queue).
@@ -36,17 +38,75 @@ public abstract class Task<T extends TaskResult> extends FutureTask<T> {
 
 	public final String info;
 
+	private volatile CompilerTelemetry telemetry = null;
+
+	private volatile long queuedTime = 0L;
+
 	public Task(TaskResult.ResultType executorType, String info,
 			Callable<T> callable) {
+		this(executorType, info, new MonitoredCallable<T>(callable));
+	}
+
+	private Task(TaskResult.ResultType executorType, String info,
+			MonitoredCallable<T> callable) {
 		super(callable);
+		callable.task = this;
 		this.resultType = executorType;
 		this.info = info;
 	}
 
+	/**
+	 * Reports the run of this task to the given telemetry. If the task is
+	 * queued, the time it waits in the queue is reported as well.
+	 * 
+	 * @param telemetry
+	 *            telemetry collecting the timings of the tasks
+	 * @param queued
+	 *            true if the task is being put on an executor queue
+	 */
+	public void monitor(CompilerTelemetry telemetry, boolean queued) {
+		this.telemetry = telemetry;
+		if (queued) {
+			queuedTime = System.nanoTime();
+		}
+	}
+
 	@Override
 	public String toString() {
 		return this.getClass().getSimpleName() + "(" + resultType + ", "
 				+ Thread.currentThread().getId() + ", " + info + ")";
 	}
 
+	/**
+	 * Times the call of the wrapped callable for the telemetry of the task.
+	 * The callable of a <code>FutureTask</code> is called at most once, even
+	 * if the task is run by several threads.
+	 */
+	private static class MonitoredCallable<T> implements Callable<T> {
+
+		private final Callable<T> callable;
+
+		private volatile Task<?> task;
+
+		public MonitoredCallable(Callable<T> callable) {
+			this.callable = callable;
+		}
+
+		public T call() throws Exception {
+
+			CompilerTelemetry telemetry = task.telemetry;
+			if (telemetry == null) {
+				return callable.call();
+			}
+
+			long start = System.nanoTime();
+			try {
+				return callable.call();
+			} finally {
+				telemetry.taskFinished(task, task.queuedTime, start,
+						System.nanoTime());
+			}
+		}
+	}
+
 }
@@ -20,6 +20,10 @@
 
 package org.quattor.pan.tasks;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.ttemplate.Context;
 
@@ -33,14 +37,45 @@ public class Valid1Result extends TaskResult {
 
 	private final Context context;
 
+	private final Set<String> objectDependencies;
+
 	public Valid1Result(Element root, Context context) {
 		super(ResultType.VALID1);
 
 		this.context = context;
+		this.objectDependencies = context.getObjectDependencies();
+	}
+
+	private Valid1Result(Set<String> objectDependencies) {
+		super(ResultType.VALID1);
+
+		this.context = null;
+		this.objectDependencies = Collections
+				.unmodifiableSet(new TreeSet<String>(objectDependencies));
 	}
 
+	/**
+	 * Returns the context of the validated object or null if this result has
+	 * been summarized.
+	 * 
+	 * @return object context or null
+	 */
 	public Context getObjectContext() {
 		return context;
 	}
 
+	public Set<String> getObjectDependencies() {
+		return objectDependencies;
+	}
+
+	/**
+	 * Returns a result containing only the object dependencies. The context
+	 * (and hence the configuration tree) is not referenced by the summary.
+	 * 
+	 * @return summary of this result
+	 */
+	public Valid1Result summarize() {
+		return (context != null) ? new Valid1Result(objectDependencies) : this;
+	}
+
 }
@@ -31,6 +31,7 @@ import java.util.logging.Logger;
 
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.cache.BuildCache;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.ElementUtils;
@@ -90,7 +91,15 @@ public class Valid1Task extends Task<Valid1Result> {
 			taskLogger.log(Level.FINER, "START_VALID1", objectName);
 
 			// Run through the building and validation phases of processing.
-			validate(objectName, context);
+			ObjectProfile profile = context.getProfile();
+			int mark = (profile != null) ? profile.enter("VALID1", objectName) : 0;
+			try {
+				validate(objectName, context);
+			} finally {
+				if (profile != null) {
+					profile.exitTo(mark);
+				}
+			}
 
 			// Log the end of the build phase.
 			taskLogger.log(Level.FINER, "END_VALID1", objectName);
@@ -98,7 +107,14 @@ public class Valid1Task extends Task<Valid1Result> {
 			// Return the actual result. Always protect the final root value.
 			// This will force any values coming out of the finished
 			// configuration to be protected as well.
-			return new Valid1Result(context.getRoot().protect(), context);
+			Valid1Result valid1Result = new Valid1Result(context.getRoot()
+					.protect(), context);
+
+			// The build context is now held by the validation result; drop it
+			// from the build cache.
+			compiler.getReferenceTracker().finishedValid1(objectName);
+
+			return valid1Result;
 		}
 
 		/**
@@ -60,6 +60,22 @@ public class Valid2Result extends TaskResult {
 		timestamp = (new Date()).getTime();
 	}
 
+	private Valid2Result(Valid2Result result) {
+		super(ResultType.VALID2);
+
+		this.root = null;
+		this.objectName = result.objectName;
+		this.objectDependencies = result.objectDependencies;
+		this.dependencies = result.dependencies;
+		this.timestamp = result.timestamp;
+	}
+
+	/**
+	 * Returns the root of the validated configuration or null if this result
+	 * has been summarized.
+	 * 
+	 * @return root element or null
+	 */
 	public Element getRoot() {
 		return root;
 	}
@@ -72,4 +88,14 @@ public class Valid2Result extends TaskResult {
 		return dependencies;
 	}
 
+	/**
+	 * Returns a result containing only the object name, timestamp, and the
+	 * dependencies. The configuration tree is not referenced by the summary.
+	 * 
+	 * @return summary of this result
+	 */
+	public Valid2Result summarize() {
+		return (root != null) ? new Valid2Result(this) : this;
+	}
+
 }
@@ -31,7 +31,10 @@ import java.util.logging.Logger;
 
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging.LoggingType;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.cache.Valid1Cache;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.ValueInterner;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.ValidationException;
 import org.quattor.pan.ttemplate.Context;
@@ -87,16 +90,47 @@ public class Valid2Task extends Task<Valid2Result> {
 			taskLogger.log(Level.FINER, "START_VALID2", objectName);
 
 			// Run through the second stage of validation.
-			validate(context);
+			ObjectProfile profile = context.getProfile();
+			int mark = (profile != null) ? profile.enter("VALID2", objectName) : 0;
+			try {
+				validate(context);
+			} finally {
+				if (profile != null) {
+					profile.exitTo(mark);
+				}
+			}
 
 			// Log the end of the build phase.
 			taskLogger.log(Level.FINER, "END_VALID2", objectName);
 
 			// Return the actual result. Always protect the final root value.
 			// This will force any values coming out of the finished
-			// configuration to be protected as well.
-			return new Valid2Result(objectName, context.getRoot().protect(),
+			// configuration to be protected as well. If enabled, identical
+			// subtrees are shared with the other finished configurations.
+			Element root = context.getRoot();
+			ValueInterner interner = context.getValueInterner();
+			if (interner != null) {
+				root = interner.internTree(root);
+			}
+			root = root.protect();
+			Valid2Result valid2Result = new Valid2Result(objectName, root,
 					context.getObjectDependencies(), context.getDependencies());
+
+			// When the tree has been interned, the original copy must not
+			// stay reachable from the caches. References from other objects
+			// are served from the shared tree instead and the context kept by
+			// the first validation phase is dropped.
+			if (interner != null) {
+				compiler.getBuildCache().replace(objectName,
+						new BuildResult(root, null));
+				compiler.getValid1Cache().compact(objectName);
+			}
+
+			// The context is no longer needed; keep only a summary of the
+			// first validation result.
+			compiler.getReferenceTracker().finishedValid2(objectName);
+
+			return valid2Result;
 		}
 
 		/**
@@ -133,11 +167,9 @@ public class Valid2Task extends Task<Valid2Result> {
 						Valid1Cache cache = compiler.getValid1Cache();
 						Valid1Result result = cache
 								.waitForResult(currentObject);
-						Context otherContext = result.getObjectContext();
 
 						// Add in the object's dependencies and mark as checked.
-						queuedObjects.addAll(otherContext
-								.getObjectDependencies());
+						queuedObjects.addAll(result.getObjectDependencies());
 						checkedObjects.add(currentObject);
 					}
 				}
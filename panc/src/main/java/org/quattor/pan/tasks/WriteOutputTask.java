@@ -22,15 +22,19 @@ package org.quattor.pan.tasks;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging.LoggingType;
-import org.quattor.pan.cache.Valid2Cache;
+import org.quattor.pan.cache.FinalCache;
 import org.quattor.pan.output.Formatter;
 import org.quattor.pan.output.FormatterUtils;
+import org.quattor.pan.output.MultiFormatWriter;
 
 /**
  * Wraps the <code>WriteXmlTask</code> as a <code>Task</code>. This wrapping is
@@ -46,7 +50,28 @@ public class WriteOutputTask extends Task<TaskResult> {
 
 	public WriteOutputTask(Formatter formatter, Compiler compiler,
 			String objectName, File outputDirectory) {
-		super(TaskResult.ResultType.XML, objectName, new CallImpl(formatter,
+		this(Collections.singletonList(formatter), compiler, objectName,
+				outputDirectory);
+	}
+
+	/**
+	 * Creates a task which writes the output files for several formatters.
+	 * The configuration tree is traversed only once for all of them; see
+	 * <code>MultiFormatWriter</code>. All of the formatters must be supported
+	 * by that class if more than one is given.
+	 * 
+	 * @param formatters
+	 *            formatters for the output files to write
+	 * @param compiler
+	 *            compiler containing the object's results
+	 * @param objectName
+	 *            name of the object to write
+	 * @param outputDirectory
+	 *            directory for the output files
+	 */
+	public WriteOutputTask(List<Formatter> formatters, Compiler compiler,
+			String objectName, File outputDirectory) {
+		super(TaskResult.ResultType.XML, objectName, new CallImpl(formatters,
 				compiler, objectName, outputDirectory));
 	}
 
@@ -60,7 +85,7 @@ public class WriteOutputTask extends Task<TaskResult> {
 	 */
 	private static class CallImpl implements Callable<TaskResult> {
 
-		private final Formatter formatter;
+		private final List<Formatter> formatters;
 
 		private final Compiler compiler;
 
@@ -68,12 +93,12 @@ public class WriteOutputTask extends Task<TaskResult> {
 
 		private final File outputDirectory;
 
-		public CallImpl(Formatter formatter, Compiler compiler,
+		public CallImpl(List<Formatter> formatters, Compiler compiler,
 				String objectName, File outputDirectory) {
 
-			assert (formatter != null);
+			assert (formatters != null && formatters.size() > 0);
 
-			this.formatter = formatter;
+			this.formatters = new ArrayList<Formatter>(formatters);
 
 			this.compiler = compiler;
 			this.objectName = objectName;
@@ -82,32 +107,49 @@ public class WriteOutputTask extends Task<TaskResult> {
 
 		public TaskResult call() throws Exception {
 
-			Valid2Cache v2cache = compiler.getValid2Cache();
-
-			// Now actually retrieve the other object's root, waiting if the
-			// result isn't yet available.
-			Valid2Result result = (Valid2Result) v2cache
-					.waitForResult(objectName);
-
-			// FIXME: This should be done as another stage to avoid calculating
-			// the dependencies every time a new type of output file is written.
-			FinalResult finalResult = new FinalResult(compiler, result);
-
-			// Mark the beginning of writing XML file.
-			taskLogger.log(Level.FINER, "START_XMLFILE", objectName);
-
-			URI resultURI = formatter.getResultURI(result.objectName);
-			URI absoluteURI = outputDirectory.toURI().resolve(resultURI);
-			File absolutePath = new File(absoluteURI);
-
-			FormatterUtils.createParentDirectories(absolutePath);
-
-			formatter.write(finalResult, absoluteURI);
-
-			FormatterUtils.setOutputTimestamp(absolutePath, result.timestamp);
-
-			// Mark the end of writing XML file.
-			taskLogger.log(Level.FINER, "END_XMLFILE", objectName);
+			try {
+				FinalCache fcache = compiler.getFinalCache();
+
+				// Now actually retrieve the object's final result, waiting if
+				// the result isn't yet available. This is shared by all of the
+				// output files for the object.
+				FinalResult result = fcache.waitForResult(objectName);
+
+				// Mark the beginning of writing XML file.
+				taskLogger.log(Level.FINER, "START_XMLFILE", objectName);
+
+				List<URI> absoluteURIs = new ArrayList<URI>();
+				for (Formatter formatter : formatters) {
+					URI resultURI = formatter.getResultURI(result.objectName);
+					URI absoluteURI = outputDirectory.toURI()
+							.resolve(resultURI);
+					absoluteURIs.add(absoluteURI);
+
+					FormatterUtils.createParentDirectories(new File(
+							absoluteURI));
+				}
+
+				if (formatters.size() == 1) {
+					formatters.get(0).write(result, absoluteURIs.get(0));
+				} else {
+					MultiFormatWriter writer = new MultiFormatWriter();
+					for (int i = 0; i < formatters.size(); i++) {
+						writer.add(formatters.get(i), absoluteURIs.get(i));
+					}
+					writer.write(result);
+				}
+
+				for (URI absoluteURI : absoluteURIs) {
+					FormatterUtils.setOutputTimestamp(new File(absoluteURI),
+							result.timestamp);
+				}
+
+				// Mark the end of writing XML file.
+				taskLogger.log(Level.FINER, "END_XMLFILE", objectName);
+			} finally {
+				// Drop this task's reference to the object's results.
+				compiler.getReferenceTracker().release(objectName);
+			}
 
 			return new TaskResult(TaskResult.ResultType.XML);
 		}
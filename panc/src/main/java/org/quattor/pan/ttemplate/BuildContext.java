@@ -46,6 +46,7 @@ import java.util.logging.Logger;
 import org.quattor.pan.Compiler;
 import org.quattor.pan.CompilerLogging.LoggingType;
 import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.cache.BuildCache;
 import org.quattor.pan.cache.CompileCache;
 import org.quattor.pan.dml.Operation;
@@ -56,6 +57,7 @@ import org.quattor.pan.dml.data.ListResource;
 import org.quattor.pan.dml.data.Resource;
 import org.quattor.pan.dml.data.StringProperty;
 import org.quattor.pan.dml.data.Undef;
+import org.quattor.pan.dml.data.ValueInterner;
 import org.quattor.pan.exceptions.CompilerError;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.InvalidTermException;
@@ -68,6 +70,7 @@ import org.quattor.pan.tasks.BuildResult;
 import org.quattor.pan.tasks.CompileResult;
 import org.quattor.pan.ttemplate.Template.TemplateType;
 import org.quattor.pan.type.FullType;
+import org.quattor.pan.type.ValidationCache;
 import org.quattor.pan.utils.FinalFlags;
 import org.quattor.pan.utils.FunctionDefinition;
 import org.quattor.pan.utils.GlobalVariable;
@@ -89,6 +92,8 @@ public class BuildContext implements Context {
 
 	private static final String TPL_VAR = "TEMPLATE";
 
+	private static final String OBJECT_VAR = "OBJECT";
+
 	// Logger to trace template inclusion.
 	private static final Logger callLogger = LoggingType.CALL.logger();
 
@@ -108,6 +113,8 @@ public class BuildContext implements Context {
 
 	private LocalVariableMap localVariables;
 
+	private final LocalVariableMapPool localVariablePool = new LocalVariableMapPool();
+
 	private final Stack<SourceLocation> templates;
 
 	private Template currentTemplate;
@@ -124,8 +131,26 @@ public class BuildContext implements Context {
 
 	private boolean checkObjectDependencies;
 
+	/**
+	 * Set if this context runs a build prefix, that is the leading includes
+	 * shared by several object templates. The result of a prefix may only be
+	 * reused for other objects if it does not depend on the object being built.
+	 */
+	private boolean buildingPrefix = false;
+
+	/**
+	 * Set if the build prefix run in this context depends on the object.
+	 */
+	private boolean objectDependent = false;
+
 	public final CompilerOptions.DeprecationWarnings deprecationWarnings;
 
+	/**
+	 * Whether the dicts and lists created in this context use persistent
+	 * storage.
+	 */
+	private final boolean persistentStorage;
+
 	private static final Template emptyTemplate;
 
 	static {
@@ -157,11 +182,27 @@ public class BuildContext implements Context {
 	 */
 	private Set<String> objectDependencies;
 
+	/**
+	 * Time (in nanoseconds) spent waiting for the results of other objects.
+	 */
+	private long externalWaitTime = 0L;
+
+	/**
+	 * Profile recording the calls made while building and validating the
+	 * object or null if the calls are not profiled.
+	 */
+	private ObjectProfile profile = null;
+
+	/**
+	 * Scope of the validation cache for this object; created when first used.
+	 */
+	private ValidationCache.Scope validationScope = null;
+
 	/**
 	 * Constructs a new Context object intended for testing.
 	 */
 	public BuildContext() {
-		this(null, emptyTemplate);
+		this((Compiler) null, emptyTemplate);
 	}
 
 	/**
@@ -183,13 +224,15 @@ public class BuildContext implements Context {
 		// compiler will be null for compile-time DML evaluations.
 		if (compiler != null) {
 			this.deprecationWarnings = compiler.options.deprecationWarnings;
+			this.persistentStorage = compiler.options.persistentResources;
 		} else {
 			this.deprecationWarnings = CompilerOptions.DeprecationWarnings.OFF;
+			this.persistentStorage = false;
 		}
 
 		// Set the root to the rootElement compiler option.
 		if (compiler != null) {
-			root = (HashResource) compiler.options.rootElement.duplicate();
+			root = createRoot(compiler.options.rootElement, persistentStorage);
 		} else {
 			root = new HashResource();
 		}
@@ -233,6 +276,109 @@ public class BuildContext implements Context {
 		relativeLoadpaths.add("");
 	}
 
+	/**
+	 * Constructs a new context for the given object template which starts from
+	 * the state reached by another context after running a build prefix. The
+	 * other context must no longer be modified. The configuration tree and the
+	 * values of the global variables are shared with it: both are protected,
+	 * so that any modification in this context copies the modified parts
+	 * first. All other state is copied.
+	 * 
+	 * @param prefix
+	 *            context which ran the build prefix
+	 * @param objectTemplate
+	 *            An "object" Template to construct
+	 */
+	public BuildContext(BuildContext prefix, Template objectTemplate) {
+
+		assert (objectTemplate != null);
+		assert (objectTemplate.type == TemplateType.OBJECT);
+
+		this.compiler = prefix.compiler;
+		this.deprecationWarnings = prefix.deprecationWarnings;
+		this.persistentStorage = prefix.persistentStorage;
+
+		root = (HashResource) prefix.root.protect().writableCopy();
+
+		functions = new FunctionMap(prefix.functions);
+		types = new TypeMap(prefix.types);
+		flags = new FinalFlags(prefix.flags);
+
+		bindings = new TreeMap<Path, List<FullType>>();
+		for (Map.Entry<Path, List<FullType>> entry : prefix.bindings
+				.entrySet()) {
+			bindings.put(entry.getKey(),
+					new LinkedList<FullType>(entry.getValue()));
+		}
+
+		globalVariables = new HashMap<String, GlobalVariable>();
+		for (Map.Entry<String, GlobalVariable> entry : prefix.globalVariables
+				.entrySet()) {
+			GlobalVariable variable = entry.getValue();
+			globalVariables.put(entry.getKey(),
+					new GlobalVariable(variable.getFinalFlag(), variable
+							.getValue().writableCopy()));
+		}
+
+		templates = new Stack<SourceLocation>();
+		localVariables = new LocalVariableMap();
+		iteratorMap = new IteratorMap();
+		self = null;
+
+		// The prefix cannot have included another object template, so the
+		// only object dependency is the object itself.
+		dependencies = new HashMap<String, Template>(prefix.dependencies);
+		dependencies.remove(prefix.objectTemplate.name);
+		otherDependencies = new TreeSet<SourceFile>(prefix.otherDependencies);
+		objectDependencies = new TreeSet<String>();
+
+		this.objectTemplate = objectTemplate;
+		dependencies.put(objectTemplate.name, objectTemplate);
+		objectDependencies.add(objectTemplate.name);
+
+		this.checkObjectDependencies = true;
+
+		relativeLoadpaths = new LinkedList<String>(prefix.relativeLoadpaths);
+
+		// The object variable is the only one which refers to the object.
+		StringProperty sname = StringProperty.getInstance(objectTemplate.name);
+		globalVariables.put(OBJECT_VAR, new GlobalVariable(true, sname));
+	}
+
+	/**
+	 * Indicates that this context runs a build prefix. From now on, anything
+	 * which depends on the identity of the object being built (the OBJECT
+	 * variable, the object name, references to other objects, or output of the
+	 * traceback and deprecation messages) marks the prefix as object dependent
+	 * and throws an exception.
+	 */
+	public void startBuildPrefix() {
+		buildingPrefix = true;
+	}
+
+	/**
+	 * Indicates whether the build prefix run in this context depends on the
+	 * object being built. Such a prefix cannot be reused for other objects.
+	 * 
+	 * @return true if the build prefix depends on the object
+	 */
+	public boolean isObjectDependent() {
+		return objectDependent;
+	}
+
+	/**
+	 * Called for any use of the identity of the object. Within a build prefix,
+	 * this marks the prefix as object dependent and aborts its execution. The
+	 * flag is kept even if the exception is caught by the caller.
+	 */
+	public void checkObjectIndependence() {
+		if (buildingPrefix) {
+			objectDependent = true;
+			throw new EvaluationException(
+					"build prefix depends on the object being built");
+		}
+	}
+
 	/**
 	 * Returns the object Template which is the basis of this ObjectContext.
 	 */
@@ -270,10 +416,32 @@ public class BuildContext implements Context {
 	 */
 	public HashResource createRelativeRoot() {
 		HashResource oldRelativeRoot = relativeRoot;
-		relativeRoot = new HashResource();
+		relativeRoot = new HashResource(persistentStorage);
 		return oldRelativeRoot;
 	}
 
+	/**
+	 * Returns a copy of the root element using the given storage for the
+	 * configuration tree.
+	 */
+	private static HashResource createRoot(HashResource rootElement,
+			boolean persistent) {
+
+		if (rootElement.isPersistent() == persistent) {
+			return (HashResource) rootElement.duplicate();
+		}
+
+		HashResource copy = new HashResource(persistent);
+		try {
+			for (Term term : rootElement.keySet()) {
+				copy.put(term, rootElement.get(term).duplicate());
+			}
+		} catch (InvalidTermException consumed) {
+			// The keys come from the root element, so are valid.
+		}
+		return copy;
+	}
+
 	/**
 	 * Returns an unmodifiable copy of the dependencies.
 	 */
@@ -300,6 +468,51 @@ public class BuildContext implements Context {
 		return Collections.unmodifiableSet(objectDependencies);
 	}
 
+	/**
+	 * Returns the time (in nanoseconds) spent by this context waiting for the
+	 * results of other objects, including the time spent building them inline.
+	 */
+	public long getExternalWaitTime() {
+		return externalWaitTime;
+	}
+
+	public ObjectProfile getProfile() {
+		return profile;
+	}
+
+	public boolean usePersistentStorage() {
+		return persistentStorage;
+	}
+
+	public ValidationCache.Scope getValidationScope() {
+
+		// The contents of the elements can only be identified once the build
+		// has finished; types validated during the build (for example with
+		// is_valid) are not cached.
+		if (checkObjectDependencies) {
+			return null;
+		}
+
+		if (validationScope == null && compiler != null) {
+			ValidationCache cache = compiler.getValidationCache();
+			if (cache != null) {
+				validationScope = cache.createScope(this);
+			}
+		}
+		return validationScope;
+	}
+
+	public ValueInterner getValueInterner() {
+		return (compiler != null) ? compiler.getValueInterner() : null;
+	}
+
+	/**
+	 * Sets the profile recording the calls made within this context.
+	 */
+	public void setProfile(ObjectProfile profile) {
+		this.profile = profile;
+	}
+
 	/**
 	 * Turn off the object dependency checking. This should only be turned off
 	 * after the build phase is complete.
@@ -430,12 +643,27 @@ public class BuildContext implements Context {
 	}
 
 	public LocalVariableMap createLocalVariableMap(ListResource argv) {
+		return createLocalVariableMap(argv, null);
+	}
+
+	public LocalVariableMap createLocalVariableMap(ListResource argv,
+			LocalVariableMap.Layout layout) {
 		LocalVariableMap oldMap = localVariables;
-		localVariables = new LocalVariableMap(argv);
+		localVariables = localVariablePool.acquire(argv, layout);
 		return oldMap;
 	}
 
+	public LocalVariableMap getLocalVariableMap() {
+		return localVariables;
+	}
+
 	public void restoreLocalVariableMap(LocalVariableMap localVariableHolder) {
+
+		// The current map is no longer referenced once the previous one has
+		// been restored, so it can be reused for the next call.
+		if (localVariables != localVariableHolder) {
+			localVariablePool.release(localVariables);
+		}
 		this.localVariables = localVariableHolder;
 	}
 
@@ -456,11 +684,12 @@ public class BuildContext implements Context {
 
 		StringProperty sname = StringProperty.getInstance(objectTemplate.name);
 
-		setGlobalVariable("OBJECT", sname, true);
+		setGlobalVariable(OBJECT_VAR, sname, true);
 		setGlobalVariable("LOADPATH", new ListResource(), false);
 	}
 
 	public String getObjectName() {
+		checkObjectIndependence();
 		return (objectTemplate != null) ? objectTemplate.name : "unknown";
 	}
 
@@ -695,11 +924,17 @@ public class BuildContext implements Context {
 	 * modified.
 	 */
 	public Element getGlobalVariable(String name) {
+		if (buildingPrefix && OBJECT_VAR.equals(name)) {
+			checkObjectIndependence();
+		}
 		GlobalVariable gvar = globalVariables.get(name);
 		return (gvar != null) ? gvar.getValue() : null;
 	}
 
 	public GlobalVariable retrieveGlobalVariable(String name) {
+		if (buildingPrefix && OBJECT_VAR.equals(name)) {
+			checkObjectIndependence();
+		}
 		GlobalVariable variable = globalVariables.get(name);
 		if (variable == null) {
 			variable = new GlobalVariable(false, Undef.VALUE);
@@ -708,6 +943,10 @@ public class BuildContext implements Context {
 		return variable;
 	}
 
+	public boolean containsGlobalVariable(String name) {
+		return globalVariables.containsKey(name);
+	}
+
 	public void pushTemplate(Template template, SourceRange sourceRange,
 			Level logLevel, String logMessage) {
 
@@ -716,9 +955,16 @@ public class BuildContext implements Context {
 		templates.push(location);
 		currentTemplate = template;
 
-		// Log what template we're entering.
-		callLogger.log(logLevel, "ENTER", new Object[] { logMessage,
-				currentTemplate.name, currentTemplate.source });
+		if (profile != null) {
+			profile.enter(logMessage, template.name);
+		}
+
+		// Log what template we're entering. The parameters are only created
+		// if the message will actually be logged.
+		if (callLogger.isLoggable(logLevel)) {
+			callLogger.log(logLevel, "ENTER", new Object[] { logMessage,
+					currentTemplate.name, currentTemplate.source });
+		}
 
 		// Check to see that the call limit has not been exceeded.
 		if (templates.size() > this.getCallLimit()) {
@@ -732,14 +978,21 @@ public class BuildContext implements Context {
 	public void popTemplate(Level logLevel, String logMessage) {
 
 		// Log what template we're leaving.
-		callLogger.log(logLevel, "EXIT", new Object[] { logMessage,
-				currentTemplate.name });
+		if (callLogger.isLoggable(logLevel)) {
+			callLogger.log(logLevel, "EXIT", new Object[] { logMessage,
+					currentTemplate.name });
+		}
+
+		if (profile != null) {
+			profile.exit();
+		}
 
 		SourceLocation location = templates.pop();
 		currentTemplate = location.template;
 	}
 
 	public void printTraceback(SourceRange sourceRange) {
+		checkObjectIndependence();
 		System.err.println(getTraceback(sourceRange));
 	}
 
@@ -838,6 +1091,10 @@ public class BuildContext implements Context {
 
 		case EXTERNAL:
 
+			// A build prefix must not wait for another object; that object
+			// may itself be waiting for the same prefix.
+			checkObjectIndependence();
+
 			// This is an external path. Check the authority.
 			String myObject = objectTemplate.name;
 			String externalObject = path.getAuthority();
@@ -899,10 +1156,19 @@ public class BuildContext implements Context {
 					bcache.setDependency(myObject, externalObject);
 				}
 
+				// Hold the external object's results until this object has
+				// been evicted from the caches.
+				compiler.getReferenceTracker().retain(myObject, externalObject);
+
 				// Wait for the result and set the node to the external object's
 				// root element.
-				BuildResult result = (BuildResult) bcache
-						.waitForResult(externalObject);
+				long waitStart = System.nanoTime();
+				BuildResult result;
+				try {
+					result = (BuildResult) bcache.waitForResult(externalObject);
+				} finally {
+					externalWaitTime += System.nanoTime() - waitStart;
+				}
 				node = result.getRoot();
 
 			}
@@ -1284,9 +1550,9 @@ public class BuildContext implements Context {
 
 				Term term = terms[0];
 				if (term.isKey()) {
-					var = new HashResource();
+					var = new HashResource(persistentStorage);
 				} else {
-					var = new ListResource();
+					var = new ListResource(persistentStorage);
 				}
 				setLocalVariable(name, var);
 
@@ -1381,6 +1647,10 @@ public class BuildContext implements Context {
 	}
 
 	public CompilerOptions.DeprecationWarnings getDeprecationWarnings() {
+
+		// Deprecation messages are printed for each object; they must not be
+		// printed only once for a shared build prefix.
+		checkObjectIndependence();
 		return deprecationWarnings;
 	}
 
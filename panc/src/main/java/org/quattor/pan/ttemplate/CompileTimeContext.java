@@ -34,6 +34,7 @@ import java.util.logging.Logger;
 
 import org.quattor.pan.CompilerLogging.LoggingType;
 import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.BooleanProperty;
 import org.quattor.pan.dml.data.Element;
@@ -42,6 +43,7 @@ import org.quattor.pan.dml.data.ListResource;
 import org.quattor.pan.dml.data.Resource;
 import org.quattor.pan.dml.data.StringProperty;
 import org.quattor.pan.dml.data.Undef;
+import org.quattor.pan.dml.data.ValueInterner;
 import org.quattor.pan.exceptions.CompilerError;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.InvalidTermException;
@@ -51,6 +53,7 @@ import org.quattor.pan.exceptions.ValidationException;
 import org.quattor.pan.repository.SourceFile;
 import org.quattor.pan.ttemplate.Template.TemplateType;
 import org.quattor.pan.type.FullType;
+import org.quattor.pan.type.ValidationCache;
 import org.quattor.pan.utils.FunctionDefinition;
 import org.quattor.pan.utils.GlobalVariable;
 import org.quattor.pan.utils.MessageUtils;
@@ -76,6 +79,8 @@ public class CompileTimeContext implements Context {
 
 	private LocalVariableMap localVariables;
 
+	private final LocalVariableMapPool localVariablePool = new LocalVariableMapPool();
+
 	private final Stack<SourceLocation> templates;
 
 	private Template currentTemplate;
@@ -177,6 +182,35 @@ public class CompileTimeContext implements Context {
 		return null;
 	}
 
+	/**
+	 * Compile-time evaluation is never profiled.
+	 */
+	public ObjectProfile getProfile() {
+		return null;
+	}
+
+	/**
+	 * Values computed at compile time are kept with the compiled template, so
+	 * they always use the default storage.
+	 */
+	public boolean usePersistentStorage() {
+		return false;
+	}
+
+	/**
+	 * Validations are never cached at compile time.
+	 */
+	public ValidationCache.Scope getValidationScope() {
+		return null;
+	}
+
+	/**
+	 * Values are never shared at compile time.
+	 */
+	public ValueInterner getValueInterner() {
+		return null;
+	}
+
 	/**
 	 * Turn off the object dependency checking. This should only be turned off
 	 * after the build phase is complete.
@@ -222,12 +256,27 @@ public class CompileTimeContext implements Context {
 	}
 
 	public LocalVariableMap createLocalVariableMap(ListResource argv) {
+		return createLocalVariableMap(argv, null);
+	}
+
+	public LocalVariableMap createLocalVariableMap(ListResource argv,
+			LocalVariableMap.Layout layout) {
 		LocalVariableMap oldMap = localVariables;
-		localVariables = new LocalVariableMap(argv);
+		localVariables = localVariablePool.acquire(argv, layout);
 		return oldMap;
 	}
 
+	public LocalVariableMap getLocalVariableMap() {
+		return localVariables;
+	}
+
 	public void restoreLocalVariableMap(LocalVariableMap localVariableHolder) {
+
+		// The current map is no longer referenced once the previous one has
+		// been restored, so it can be reused for the next call.
+		if (localVariables != localVariableHolder) {
+			localVariablePool.release(localVariables);
+		}
 		this.localVariables = localVariableHolder;
 	}
 
@@ -447,6 +496,11 @@ public class CompileTimeContext implements Context {
 		return null;
 	}
 
+	public boolean containsGlobalVariable(String name) {
+		// There are no global variables at compile time.
+		return false;
+	}
+
 	public void pushTemplate(Template template, SourceRange sourceRange,
 			Level logLevel, String logMessage) {
 
@@ -455,9 +509,12 @@ public class CompileTimeContext implements Context {
 		templates.push(location);
 		currentTemplate = template;
 
-		// Log what template we're entering.
-		callLogger.log(logLevel, "ENTER", new Object[] { logMessage,
-				currentTemplate.name });
+		// Log what template we're entering. The parameters are only created
+		// if the message will actually be logged.
+		if (callLogger.isLoggable(logLevel)) {
+			callLogger.log(logLevel, "ENTER", new Object[] { logMessage,
+					currentTemplate.name });
+		}
 
 		// Check to see that the call limit has not been exceeded.
 		if (templates.size() > this.getCallLimit()) {
@@ -471,8 +528,10 @@ public class CompileTimeContext implements Context {
 	public void popTemplate(Level logLevel, String logMessage) {
 
 		// Log what template we're leaving.
-		callLogger.log(logLevel, "EXIT", new Object[] { logMessage,
-				currentTemplate.name });
+		if (callLogger.isLoggable(logLevel)) {
+			callLogger.log(logLevel, "EXIT", new Object[] { logMessage,
+					currentTemplate.name });
+		}
 
 		SourceLocation location = templates.pop();
 		currentTemplate = location.template;
@@ -482,6 +541,9 @@ public class CompileTimeContext implements Context {
 		System.err.println(getTraceback(sourceRange));
 	}
 
+	public void checkObjectIndependence() {
+	}
+
 	public String getTraceback(SourceRange sourceRange) {
 
 		SourceLocation[] locations = templates
@@ -26,16 +26,19 @@ import java.util.Set;
 import java.util.logging.Level;
 
 import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.HashResource;
 import org.quattor.pan.dml.data.ListResource;
 import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.dml.data.ValueInterner;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.InvalidTermException;
 import org.quattor.pan.exceptions.ValidationException;
 import org.quattor.pan.repository.SourceFile;
 import org.quattor.pan.type.FullType;
+import org.quattor.pan.type.ValidationCache;
 import org.quattor.pan.utils.FunctionDefinition;
 import org.quattor.pan.utils.GlobalVariable;
 import org.quattor.pan.utils.Path;
@@ -93,6 +96,31 @@ public interface Context {
 	 */
 	public Set<String> getObjectDependencies();
 
+	/**
+	 * Returns the profile recording the calls made within this context or null
+	 * if the calls are not profiled.
+	 */
+	public ObjectProfile getProfile();
+
+	/**
+	 * Returns the scope used to skip the validation of elements which have
+	 * already been found valid or null if validations are not cached.
+	 */
+	public ValidationCache.Scope getValidationScope();
+
+	/**
+	 * Returns the interner used to share identical values between the
+	 * finished configurations or null if values are not shared.
+	 */
+	public ValueInterner getValueInterner();
+
+	/**
+	 * Indicates whether the dicts and lists created within this context keep
+	 * their children in persistent storage (see
+	 * <code>Resource.isPersistent</code>).
+	 */
+	public boolean usePersistentStorage();
+
 	/**
 	 * Turn off the object dependency checking. This should only be turned off
 	 * after the build phase is complete.
@@ -123,6 +151,19 @@ public interface Context {
 
 	public LocalVariableMap createLocalVariableMap(ListResource argv);
 
+	/**
+	 * Installs a new local variable map which keeps the variables of the given
+	 * layout in slots. The previous map is returned so that it can be
+	 * restored.
+	 */
+	public LocalVariableMap createLocalVariableMap(ListResource argv,
+			LocalVariableMap.Layout layout);
+
+	/**
+	 * Returns the current local variable map.
+	 */
+	public LocalVariableMap getLocalVariableMap();
+
 	public void restoreLocalVariableMap(LocalVariableMap localVariableHolder);
 
 	public IteratorMap createIteratorMap();
@@ -292,6 +333,12 @@ public interface Context {
 
 	public GlobalVariable retrieveGlobalVariable(String name);
 
+	/**
+	 * Indicates whether a global variable with the given name exists. Local
+	 * variables may not have the same name as a global variable.
+	 */
+	public boolean containsGlobalVariable(String name);
+
 	public void pushTemplate(Template template, SourceRange sourceRange,
 			Level logLevel, String logMessage);
 
@@ -299,6 +346,13 @@ public interface Context {
 
 	public void printTraceback(SourceRange sourceRange);
 
+	/**
+	 * Must be called before any output or other use of the identity of the
+	 * object being built. Within a shared build prefix, this marks the prefix
+	 * as object dependent and throws an exception.
+	 */
+	public void checkObjectIndependence();
+
 	public String getTraceback(SourceRange sourceRange);
 
 	public void setCurrentTemplate(Template template);
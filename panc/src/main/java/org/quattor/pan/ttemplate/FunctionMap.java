@@ -12,7 +12,25 @@ import org.quattor.pan.utils.MessageUtils;
 
 public class FunctionMap {
 
-	private final Map<String, FunctionDefinition> functions = new HashMap<String, FunctionDefinition>();
+	private final Map<String, FunctionDefinition> functions;
+
+	/**
+	 * Creates an empty function map.
+	 */
+	public FunctionMap() {
+		functions = new HashMap<String, FunctionDefinition>();
+	}
+
+	/**
+	 * Creates a function map containing the same definitions as the given one.
+	 * The definitions themselves are immutable and are shared.
+	 * 
+	 * @param source
+	 *            function map to copy
+	 */
+	public FunctionMap(FunctionMap source) {
+		functions = new HashMap<String, FunctionDefinition>(source.functions);
+	}
 
 	/**
 	 * Return the function definition associated with the given name or null if
@@ -1,5 +1,8 @@
 package org.quattor.pan.ttemplate;
 
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -9,52 +12,141 @@ import org.quattor.pan.dml.data.LongProperty;
 
 /**
  * This class contains a map intended to hold the definition of local variables.
- * 
+ *
+ * If a layout is given, the variables named in the layout are kept in an array
+ * and can also be accessed directly through their slot index. All other
+ * variables are kept in a map. Both kinds of variables are visible through the
+ * name-based methods.
+ *
  * @author loomis
- * 
+ *
  */
 public class LocalVariableMap {
 
-	private final Map<String, Element> map;
+	private Map<String, Element> map;
+
+	private Layout layout;
+
+	private Element[] slots;
 
 	/**
 	 * Create an instance that contains no local variable mappings initially.
 	 */
 	public LocalVariableMap() {
 		map = new TreeMap<String, Element>();
+		layout = null;
+		slots = null;
 	}
 
 	/**
 	 * Create an instance that contains mappings for the variables ARGV and
 	 * ARGC. This is typical of a function call initialization. If this is
 	 * called with a null argument, then ARGV and ARGC are not set.
-	 * 
+	 *
 	 * @param argv
 	 *            ListResource to use to set ARGV and ARGC variables
 	 */
 	public LocalVariableMap(ListResource argv) {
-		this();
+		this(argv, null);
+	}
+
+	/**
+	 * Create an instance that keeps the variables of the given layout in
+	 * slots. The variables ARGV and ARGC are set if the argument list is not
+	 * null.
+	 *
+	 * @param argv
+	 *            ListResource to use to set ARGV and ARGC variables
+	 * @param layout
+	 *            layout of the slots; may be null
+	 */
+	public LocalVariableMap(ListResource argv, Layout layout) {
+		initialize(argv, layout);
+	}
+
+	/**
+	 * Reinitializes a released map so that it can be used for another call.
+	 * The slot array is reused if it is large enough for the new layout.
+	 *
+	 * @param argv
+	 *            ListResource to use to set ARGV and ARGC variables
+	 * @param layout
+	 *            layout of the slots; may be null
+	 */
+	void initialize(ListResource argv, Layout layout) {
+
+		this.layout = layout;
+		if (layout != null) {
+			if (slots == null || slots.length < layout.size()) {
+				slots = new Element[layout.size()];
+			}
+		} else if (map == null) {
+			map = new TreeMap<String, Element>();
+		}
 
 		if (argv != null) {
 			LongProperty size = LongProperty.getInstance(argv.size());
-			map.put("ARGV", argv);
-			map.put("ARGC", size);
+			put("ARGV", argv);
+			put("ARGC", size);
+		}
+
+	}
+
+	/**
+	 * Removes all of the variables from this map, so that the map does not
+	 * keep any values alive while it is waiting to be reused.
+	 */
+	void clear() {
+		if (slots != null) {
+			Arrays.fill(slots, null);
+		}
+		if (map != null) {
+			map.clear();
 		}
+		layout = null;
+	}
 
+	/**
+	 * Returns the layout used for the slots of this map or null if the map
+	 * does not contain any slots.
+	 *
+	 * @return layout of the slots or null
+	 */
+	public Layout getLayout() {
+		return layout;
 	}
 
 	/**
 	 * Lookup the value associated with the given variable name. If the name
 	 * isn't defined, then null is returned.
-	 * 
+	 *
 	 * @param name
 	 *            variable name to lookup
-	 * 
+	 *
 	 * @return Element associated with the given name or null if it doesn't
 	 *         exist
 	 */
 	public Element get(String name) {
-		return map.get(name);
+		if (layout != null) {
+			int slot = layout.indexOf(name);
+			if (slot >= 0) {
+				return slots[slot];
+			}
+		}
+		return (map != null) ? map.get(name) : null;
+	}
+
+	/**
+	 * Lookup the value in the given slot. The slot must come from the layout
+	 * of this map. If the variable isn't defined, then null is returned.
+	 *
+	 * @param slot
+	 *            index of the slot in the layout
+	 *
+	 * @return Element in the given slot or null if it doesn't exist
+	 */
+	public Element get(int slot) {
+		return slots[slot];
 	}
 
 	/**
@@ -62,30 +154,40 @@ public class LocalVariableMap {
 	 * the variable is undefined. If an old value existed, then this method will
 	 * check that the new value is a valid replacement for the old one. If not,
 	 * an exception will be thrown.
-	 * 
+	 *
 	 * @param name
 	 *            variable name to assign value to
 	 * @param value
 	 *            Element to assign to the given variable name; variable is
 	 *            removed if the value is null
-	 * 
+	 *
 	 * @return old value of the named variable or null if it wasn't defined
 	 */
 	public Element put(String name, Element value) {
 
 		assert (name != null);
 
+		if (layout != null) {
+			int slot = layout.indexOf(name);
+			if (slot >= 0) {
+				return put(slot, value);
+			}
+		}
+
 		Element oldValue = null;
 
 		if (value != null) {
 
 			// Set the value and ensure that the replacement can be done.
+			if (map == null) {
+				map = new TreeMap<String, Element>();
+			}
 			oldValue = map.put(name, value);
 			if (oldValue != null) {
 				oldValue.checkValidReplacement(value);
 			}
 
-		} else {
+		} else if (map != null) {
 
 			// Remove the referenced variable.
 			oldValue = map.remove(name);
@@ -94,4 +196,95 @@ public class LocalVariableMap {
 		return oldValue;
 	}
 
+	/**
+	 * Assign the value to the given slot. The slot must come from the layout
+	 * of this map. The same checks are done as for the name-based method.
+	 *
+	 * @param slot
+	 *            index of the slot in the layout
+	 * @param value
+	 *            Element to assign to the slot; variable is removed if the
+	 *            value is null
+	 *
+	 * @return old value of the variable or null if it wasn't defined
+	 */
+	public Element put(int slot, Element value) {
+
+		Element oldValue = slots[slot];
+		slots[slot] = value;
+
+		if (value != null && oldValue != null) {
+			oldValue.checkValidReplacement(value);
+		}
+
+		return oldValue;
+	}
+
+	/**
+	 * Associates local variable names with slot indexes. A layout is computed
+	 * once for a function body; it is immutable and can be shared between
+	 * threads.
+	 *
+	 * @author loomis
+	 *
+	 */
+	public static final class Layout implements Serializable {
+
+		private final String[] names;
+
+		private final HashMap<String, Integer> index;
+
+		/**
+		 * Create a layout with one slot for each of the given names. The
+		 * names must be unique.
+		 *
+		 * @param names
+		 *            names of the variables kept in slots
+		 */
+		public Layout(String... names) {
+			this.names = names.clone();
+			index = new HashMap<String, Integer>();
+			for (int i = 0; i < names.length; i++) {
+				index.put(names[i], Integer.valueOf(i));
+			}
+			assert (index.size() == names.length);
+		}
+
+		/**
+		 * Returns the slot index of the given variable or -1 if the variable
+		 * is not part of this layout.
+		 *
+		 * @param name
+		 *            variable name
+		 *
+		 * @return slot index or -1
+		 */
+		public int indexOf(String name) {
+			Integer slot = index.get(name);
+			return (slot != null) ? slot.intValue() : -1;
+		}
+
+		/**
+		 * Returns the number of slots in this layout.
+		 *
+		 * @return number of slots
+		 */
+		public int size() {
+			return names.length;
+		}
+
+		/**
+		 * Returns the name of the variable in the given slot.
+		 *
+		 * @param slot
+		 *            index of the slot
+		 *
+		 * @return name of the variable
+		 */
+		public String getName(int slot) {
+			return names[slot];
+		}
+
+	}
+
 }
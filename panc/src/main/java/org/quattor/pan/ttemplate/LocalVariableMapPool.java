@@ -0,0 +1,60 @@
+package org.quattor.pan.ttemplate;
+
+import java.util.ArrayDeque;
+
+import org.quattor.pan.dml.data.ListResource;
+
+/**
+ * Keeps released local variable maps so that they can be reused for later
+ * function calls and DML blocks. Each context has its own pool. A context is
+ * only used by one thread at a time, so the pool is not synchronized.
+ *
+ * Maps are cleared when they are released. Only a limited number of maps are
+ * kept; this is enough to cover the usual depth of nested function calls.
+ *
+ * @author loomis
+ *
+ */
+final class LocalVariableMapPool {
+
+	private static final int MAX_POOLED_MAPS = 64;
+
+	private final ArrayDeque<LocalVariableMap> maps = new ArrayDeque<LocalVariableMap>();
+
+	/**
+	 * Returns an initialized map, reusing a released one if possible.
+	 *
+	 * @param argv
+	 *            ListResource to use to set ARGV and ARGC variables; may be
+	 *            null
+	 * @param layout
+	 *            layout of the slots; may be null
+	 *
+	 * @return initialized local variable map
+	 */
+	public LocalVariableMap acquire(ListResource argv,
+			LocalVariableMap.Layout layout) {
+		LocalVariableMap map = maps.pollFirst();
+		if (map == null) {
+			return new LocalVariableMap(argv, layout);
+		} else {
+			map.initialize(argv, layout);
+			return map;
+		}
+	}
+
+	/**
+	 * Clears the given map and keeps it for reuse. The map must not be used by
+	 * the caller afterwards.
+	 *
+	 * @param map
+	 *            map to release; may be null
+	 */
+	public void release(LocalVariableMap map) {
+		if (map != null && maps.size() < MAX_POOLED_MAPS) {
+			map.clear();
+			maps.addFirst(map);
+		}
+	}
+
+}
@@ -20,6 +20,8 @@
 
 package org.quattor.pan.ttemplate;
 
+import java.io.Serializable;
+
 /**
  * Defines a range of characters within a source pan template that is used to
  * provide detailed error messages.
@@ -27,7 +29,7 @@ package org.quattor.pan.ttemplate;
  * @author loomis
  * 
  */
-public class SourceRange {
+public class SourceRange implements Serializable {
 
 	private final int beginLine;
 
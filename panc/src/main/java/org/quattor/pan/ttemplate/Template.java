@@ -36,7 +36,9 @@ import static org.quattor.pan.utils.MessageUtils.MSG_OPERATION_WITHOUT_CONTEXT;
 import static org.quattor.pan.utils.MessageUtils.MSG_TEMPLATE_CONTAINS_NON_STATIC_STATEMENTS;
 
 import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -54,6 +56,7 @@ import org.quattor.pan.statement.BindStatement;
 import org.quattor.pan.statement.FunctionStatement;
 import org.quattor.pan.statement.IncludeStatement;
 import org.quattor.pan.statement.Statement;
+import org.quattor.pan.statement.StaticIncludeStatement;
 import org.quattor.pan.statement.TypeStatement;
 import org.quattor.pan.statement.VariableStatement;
 
@@ -67,7 +70,7 @@ import org.quattor.pan.statement.VariableStatement;
  * @author loomis
  *
  */
-public class Template extends AFn implements IObj {
+public class Template extends AFn implements IObj, Serializable {
 
     private final AtomicReference<IPersistentMap> metadataRef = new AtomicReference<IPersistentMap>();
 
@@ -415,6 +418,22 @@ public class Template extends AFn implements IObj {
         return null;
 	}
 
+	/**
+	 * Execute the static statements of this template, skipping the given
+	 * number of leading statements. This is used to continue a build from a
+	 * snapshot of a prefix of the template (see <code>getPrefix</code>).
+	 *
+	 * @param context
+	 *            context for the evaluation of the template
+	 * @param first
+	 *            index of the first statement to execute
+	 */
+	public void execute(Context context, int first) {
+		for (int i = first; i < staticStatements.length; i++) {
+			staticStatements[i].execute(context);
+		}
+	}
+
 	/**
 	 * Determine whether a particular include combination is legal.
 	 *
@@ -430,6 +449,62 @@ public class Template extends AFn implements IObj {
 		return allowedIncludes[includeeType.ordinal()][includedType.ordinal()];
 	}
 
+	/**
+	 * Returns the names of the templates included by this template with a
+	 * constant name. These are known without executing the template and can be
+	 * compiled ahead of time.
+	 *
+	 * @return names of the statically included templates in the order of the
+	 *         include statements
+	 */
+	public List<String> getStaticIncludes() {
+		List<String> names = new ArrayList<String>();
+		for (Statement s : staticStatements) {
+			if (s instanceof StaticIncludeStatement) {
+				names.add(((StaticIncludeStatement) s).getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the names of the templates included with a constant name by the
+	 * statements at the very beginning of this template, stopping at the first
+	 * statement which is not such an include.
+	 *
+	 * @return names of the leading statically included templates
+	 */
+	public List<String> getLeadingStaticIncludes() {
+		List<String> names = new ArrayList<String>();
+		for (Statement s : staticStatements) {
+			if (s instanceof StaticIncludeStatement) {
+				names.add(((StaticIncludeStatement) s).getName());
+			} else {
+				break;
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Returns a template of the same type and name containing only the given
+	 * number of leading statements of this template.
+	 *
+	 * @param length
+	 *            number of statements to keep
+	 *
+	 * @return template with the leading statements of this one
+	 *
+	 * @throws SyntaxException
+	 *             if the shortened template is not valid
+	 */
+	public Template getPrefix(int length) throws SyntaxException {
+		assert (length >= 0 && length <= staticStatements.length);
+		List<Statement> statements = Arrays.asList(staticStatements).subList(
+				0, length);
+		return new Template(source, null, type, name, statements);
+	}
+
 	/**
 	 * Check that the internal template name matches the expected template name.
 	 *
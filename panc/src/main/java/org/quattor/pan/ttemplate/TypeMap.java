@@ -27,6 +27,17 @@ public class TypeMap {
 
 	}
 
+	/**
+	 * Creates a type map containing the same definitions as the given one. The
+	 * types themselves are immutable and are shared.
+	 * 
+	 * @param source
+	 *            type map to copy
+	 */
+	public TypeMap(TypeMap source) {
+		types = new HashMap<String, FullType>(source.types);
+	}
+
 	/**
 	 * Return the type associated with the given name or null if it doesn't
 	 * exist. It will always return null if the argument is null.
@@ -23,6 +23,10 @@ package org.quattor.pan.type;
 import static org.quattor.pan.utils.MessageUtils.MSG_NONEXISTANT_REFERENCED_TYPE;
 import static org.quattor.pan.utils.MessageUtils.MSG_NONEXISTANT_TYPE;
 
+import java.util.List;
+import java.util.Set;
+
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.exceptions.CompilerError;
 import org.quattor.pan.exceptions.EvaluationException;
@@ -109,6 +113,9 @@ public class AliasType extends BaseType {
 
 		FullType type = context.getFullType(identifier);
 
+		ObjectProfile profile = context.getProfile();
+		int mark = (profile != null) ? profile.enter("TYPE", identifier) : 0;
+
 		try {
 			type.validate(context, self);
 
@@ -123,10 +130,22 @@ public class AliasType extends BaseType {
 		} catch (NullPointerException npe) {
 			npe.printStackTrace();
 			throw CompilerError.create(MSG_NONEXISTANT_TYPE, identifier);
+
+		} finally {
+			if (profile != null) {
+				profile.exitTo(mark);
+			}
 		}
         return null;
 	}
 
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+		FullType type = context.getFullType(identifier);
+		return type != null && type.collectTypes(context, types, visited);
+	}
+
 	@Override
 	public void verifySubtypesDefined(TypeMap types) {
 		if (types.get(identifier) == null) {
@@ -11,6 +11,7 @@ import org.quattor.pan.ttemplate.SourceRange;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.quattor.pan.utils.MessageUtils.MSG_INVALID_CHOICE_TYPE;
 
@@ -52,6 +53,12 @@ public class ChoiceType extends AdvancedType {
         return null;
     }
 
+    @Override
+    boolean collectTypes(Context context, List<FullType> types, Set<FullType> visited) {
+        FullType type = context.getFullType(identifier);
+        return type != null && type.collectTypes(context, types, visited);
+    }
+
     @Override
     public Element setDefaults(Context context, Element self) throws EvaluationException {
         // ChoiceType itself can't have a default value. The FullType containing the ChoiceType might.
@@ -20,6 +20,10 @@
 
 package org.quattor.pan.type;
 
+import java.util.List;
+import java.util.Set;
+
+import org.quattor.pan.ttemplate.Context;
 import org.quattor.pan.ttemplate.SourceRange;
 import org.quattor.pan.ttemplate.TypeMap;
 import org.quattor.pan.utils.Range;
@@ -52,4 +56,10 @@ public abstract class CompositeType extends BaseType {
 		baseType.verifySubtypesDefined(types);
 	}
 
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+		return baseType.collectTypes(context, types, visited);
+	}
+
 }
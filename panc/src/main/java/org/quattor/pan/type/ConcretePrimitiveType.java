@@ -22,6 +22,9 @@ package org.quattor.pan.type;
 
 import static org.quattor.pan.utils.MessageUtils.MSG_MISMATCHED_TYPES;
 
+import java.util.List;
+import java.util.Set;
+
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.Property;
 import org.quattor.pan.exceptions.ValidationException;
@@ -50,6 +53,12 @@ public class ConcretePrimitiveType extends PrimitiveType {
 		this.elementType = elementType;
 	}
 
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+		return true;
+	}
+
 	@Override
 	public Object validate(final Context context, final Element self)
 			throws ValidationException {
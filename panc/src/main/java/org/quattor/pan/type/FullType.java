@@ -23,14 +23,19 @@ package org.quattor.pan.type;
 import static org.quattor.pan.utils.MessageUtils.MSG_NONEXISTANT_ELEMENT;
 import static org.quattor.pan.utils.MessageUtils.MSG_USER_VALIDATION_FAILED;
 
+import java.util.List;
+import java.util.Set;
+
 import org.quattor.pan.dml.Operation;
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
 import org.quattor.pan.exceptions.EvaluationException;
 import org.quattor.pan.exceptions.ValidationException;
 import org.quattor.pan.ttemplate.Context;
 import org.quattor.pan.ttemplate.SourceRange;
 import org.quattor.pan.ttemplate.TypeMap;
+import org.quattor.pan.type.ValidationCache.Scope;
 
 /**
  * Represents a complete type specification in the pan language, which can have
@@ -91,6 +96,14 @@ public class FullType extends Type {
 			throw ValidationException.create(MSG_NONEXISTANT_ELEMENT);
 		}
 
+		// Skip dicts and lists which have already been found valid against
+		// this type. Properties are cheaper to validate than to look up.
+		Scope scope = (self instanceof Resource) ? context
+				.getValidationScope() : null;
+		if (scope != null && scope.isValid(this, (Resource) self)) {
+			return null;
+		}
+
 		// First allow the base type to validate the element.
 		baseType.validate(context, self);
 
@@ -105,6 +118,10 @@ public class FullType extends Type {
 				throw ve;
 			}
 		}
+
+		if (scope != null) {
+			scope.setValid(this, (Resource) self);
+		}
         return null;
 	}
 
@@ -162,6 +179,23 @@ public class FullType extends Type {
 		baseType.verifySubtypesDefined(types);
 	}
 
+	/**
+	 * The validation block may depend on anything in the context, so a type
+	 * with a validation block cannot be cached.
+	 */
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+
+		if (dml != null) {
+			return false;
+		}
+
+		types.add(this);
+		return !visited.add(this)
+				|| baseType.collectTypes(context, types, visited);
+	}
+
 	public BaseType getBaseType() {
 		return baseType;
 	}
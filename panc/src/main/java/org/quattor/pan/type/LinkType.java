@@ -26,6 +26,9 @@ import static org.quattor.pan.utils.MessageUtils.MSG_LINK_ELEMENT_FAILED_VALIDAT
 import static org.quattor.pan.utils.MessageUtils.MSG_NONEXISTANT_LINK_ELEMENT;
 import static org.quattor.pan.utils.MessageUtils.MSG_PATH_EVAL_ERROR;
 
+import java.util.List;
+import java.util.Set;
+
 import org.quattor.pan.dml.data.Element;
 import org.quattor.pan.dml.data.StringProperty;
 import org.quattor.pan.exceptions.EvaluationException;
@@ -112,6 +115,16 @@ public class LinkType extends CompositeType {
 		return null;
 	}
 
+	/**
+	 * The validation depends on the element referenced by the link, so it
+	 * cannot be cached.
+	 */
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+		return false;
+	}
+
 	@Override
 	public Object validate(final Context context, final Element self)
 			throws ValidationException {
@@ -31,6 +31,7 @@ import java.lang.reflect.Array;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 
 import org.quattor.pan.dml.data.Element;
@@ -351,6 +352,33 @@ public class RecordType extends BaseType {
 		}
 	}
 
+	@Override
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+
+		for (String s : includes) {
+			FullType fullType = context.getFullType(s);
+			if (fullType == null
+					|| !fullType.collectTypes(context, types, visited)) {
+				return false;
+			}
+		}
+
+		for (FullType fullType : reqTypes) {
+			if (!fullType.collectTypes(context, types, visited)) {
+				return false;
+			}
+		}
+
+		for (FullType fullType : optTypes) {
+			if (!fullType.collectTypes(context, types, visited)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	@Override
 	public Object validate(final Context context, final Element self)
 			throws ValidationException {
@@ -34,6 +34,9 @@ import org.quattor.pan.ttemplate.Context;
 import org.quattor.pan.ttemplate.SourceRange;
 import org.quattor.pan.ttemplate.TypeMap;
 
+import java.io.Serializable;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -42,7 +45,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * @author loomis
  *
  */
-public abstract class Type extends AFn implements IObj {
+public abstract class Type extends AFn implements IObj, Serializable {
 
     private final AtomicReference<IPersistentMap> metadataRef = new AtomicReference<IPersistentMap>();
 
@@ -132,6 +135,29 @@ public abstract class Type extends AFn implements IObj {
 		throw ValidationException.create(MSG_CANNOT_INCLUDE_TYPE);
 	}
 
+	/**
+	 * Adds the type definitions used to validate an element against this type
+	 * to the given list, resolving the referenced types in the given context.
+	 * The definitions already visited are added again but not descended into.
+	 * The default implementation returns false, indicating that the result of
+	 * the validation may depend on more than the element, so that it cannot be
+	 * cached.
+	 *
+	 * @param context
+	 *            context in which the referenced types are resolved
+	 * @param types
+	 *            list of the type definitions used
+	 * @param visited
+	 *            type definitions already visited
+	 *
+	 * @return true if the validation only depends on the element and the
+	 *         collected type definitions
+	 */
+	boolean collectTypes(Context context, List<FullType> types,
+			Set<FullType> visited) {
+		return false;
+	}
+
 	/**
 	 * This method will recursively set the default values on the given element.
 	 * Note that self cannot be null. If the current element is null, then use
@@ -0,0 +1,292 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.type;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.ttemplate.Context;
+
+/**
+ * Remembers which dicts and lists have been found valid against which types
+ * during a compiler run, so that subtrees shared by several objects (or bound
+ * to several types within an object) are only validated once.
+ *
+ * A type can only be cached if the result of the validation depends on
+ * nothing but the element. Types with a <code>with</code> validation block,
+ * which may refer to any part of the configuration, global variables or the
+ * object name, and link types are never cached; nor is any type which uses
+ * them. As type names are resolved in each object, the key of a type is the
+ * list of all of the type definitions used to validate an element, resolved
+ * in the object being validated. The key of an element is the identity of its
+ * contents (see <code>Resource.getFrozenIdentity</code>), which is only valid
+ * once the element can no longer be modified; the cache must therefore only
+ * be used once the objects have been built. The elements are weakly
+ * referenced, so that the cache does not keep the configurations alive.
+ *
+ * Only successful validations are recorded.
+ *
+ * @author loomis
+ *
+ */
+public class ValidationCache {
+
+	/**
+	 * Marks types which cannot be cached in the memo of a scope.
+	 */
+	private static final Signature UNCACHEABLE = new Signature(
+			new FullType[0]);
+
+	private final ConcurrentHashMap<Signature, Signature> signatures = new ConcurrentHashMap<Signature, Signature>();
+
+	private final Set<Key> valid = Collections
+			.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates the scope used to validate the elements of one object. The
+	 * scope must only be used by one thread at a time.
+	 *
+	 * @param context
+	 *            context in which the type names are resolved
+	 *
+	 * @return new scope
+	 */
+	public Scope createScope(Context context) {
+		return new Scope(context);
+	}
+
+	/**
+	 * Returns the number of validations which were skipped because the
+	 * element had already been found valid.
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of validations of elements against cacheable types
+	 * which had to be done.
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the shared instance of the given signature, so that signatures
+	 * can be compared by identity in the keys.
+	 */
+	private Signature intern(Signature signature) {
+		Signature previous = signatures.putIfAbsent(signature, signature);
+		return (previous != null) ? previous : signature;
+	}
+
+	/**
+	 * Removes the entries of the elements which have been garbage collected.
+	 */
+	private void expunge() {
+		Reference<?> ref;
+		while ((ref = queue.poll()) != null) {
+			valid.remove(ref);
+		}
+	}
+
+	/**
+	 * Looks up and records the validations of the elements of one object. The
+	 * signatures of the types are computed once per object.
+	 */
+	public class Scope {
+
+		private final Context context;
+
+		private final Map<FullType, Signature> memo = new IdentityHashMap<FullType, Signature>();
+
+		private Scope(Context context) {
+			this.context = context;
+		}
+
+		/**
+		 * Indicates whether the element has already been found valid against
+		 * the type, with the same definitions of the referenced types.
+		 *
+		 * @param type
+		 *            type to validate against
+		 * @param self
+		 *            element to validate
+		 *
+		 * @return true if the validation can be skipped
+		 */
+		public boolean isValid(FullType type, Resource self) {
+
+			Signature signature = getSignature(type);
+			if (signature == null) {
+				return false;
+			}
+
+			if (valid.contains(new Key(signature, self.getFrozenIdentity(),
+					null))) {
+				hits.incrementAndGet();
+				return true;
+			} else {
+				misses.incrementAndGet();
+				return false;
+			}
+		}
+
+		/**
+		 * Records that the element is valid against the type. Nothing is
+		 * recorded if the type cannot be cached.
+		 *
+		 * @param type
+		 *            type the element was validated against
+		 * @param self
+		 *            valid element
+		 */
+		public void setValid(FullType type, Resource self) {
+
+			Signature signature = getSignature(type);
+			if (signature != null) {
+				expunge();
+				valid.add(new Key(signature, self.getFrozenIdentity(), queue));
+			}
+		}
+
+		/**
+		 * Returns the signature of the type or null if it cannot be cached.
+		 */
+		private Signature getSignature(FullType type) {
+
+			Signature signature = memo.get(type);
+			if (signature == null) {
+				List<FullType> types = new ArrayList<FullType>();
+				Set<FullType> visited = Collections
+						.newSetFromMap(new IdentityHashMap<FullType, Boolean>());
+				if (type.collectTypes(context, types, visited)) {
+					signature = intern(new Signature(
+							types.toArray(new FullType[types.size()])));
+				} else {
+					signature = UNCACHEABLE;
+				}
+				memo.put(type, signature);
+			}
+
+			return (signature != UNCACHEABLE) ? signature : null;
+		}
+
+	}
+
+	/**
+	 * The type definitions used to validate an element, in the order in which
+	 * they are used. Type definitions are compared by identity.
+	 */
+	private static final class Signature {
+
+		private final FullType[] types;
+
+		private final int hashcode;
+
+		Signature(FullType[] types) {
+			this.types = types;
+			int h = 1;
+			for (FullType type : types) {
+				h = 31 * h + System.identityHashCode(type);
+			}
+			this.hashcode = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Signature) {
+				FullType[] other = ((Signature) o).types;
+				if (other.length != types.length) {
+					return false;
+				}
+				for (int i = 0; i < types.length; i++) {
+					if (types[i] != other[i]) {
+						return false;
+					}
+				}
+				return true;
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * An element validated against an interned signature. The element is
+	 * weakly referenced; a cleared key is only equal to itself.
+	 */
+	private static final class Key extends WeakReference<Object> {
+
+		private final Signature signature;
+
+		private final int hashcode;
+
+		Key(Signature signature, Object identity, ReferenceQueue<Object> queue) {
+			super(identity, queue);
+			this.signature = signature;
+			this.hashcode = 31 * System.identityHashCode(signature)
+					+ System.identityHashCode(identity);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			} else if (o instanceof Key) {
+				Key other = (Key) o;
+				Object identity = get();
+				return signature == other.signature && identity != null
+						&& identity == other.get();
+			} else {
+				return false;
+			}
+		}
+	}
+
+}
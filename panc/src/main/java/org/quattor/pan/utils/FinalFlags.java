@@ -22,6 +22,7 @@ package org.quattor.pan.utils;
 
 import static org.quattor.pan.utils.MessageUtils.MSG_ATTEMPT_TO_REPLACE_EXISTING_NODE;
 
+import java.util.Map;
 import java.util.TreeMap;
 
 import org.quattor.pan.exceptions.CompilerError;
@@ -45,6 +46,17 @@ public class FinalFlags {
 		root = new Node();
 	}
 
+	/**
+	 * Create a copy of the given FinalFlags object. Later changes to either
+	 * object are not visible in the other.
+	 * 
+	 * @param source
+	 *            FinalFlags object to copy
+	 */
+	public FinalFlags(FinalFlags source) {
+		root = new Node(source.root);
+	}
+
 	/**
 	 * Determine if the given path is marked as final. The path is final if the
 	 * path or any parent is marked as final or the full path has descendants
@@ -168,6 +180,20 @@ public class FinalFlags {
 			map = new TreeMap<Term, Node>();
 		}
 
+		/**
+		 * Create a deep copy of the given node and its descendants.
+		 * 
+		 * @param source
+		 *            Node to copy
+		 */
+		public Node(Node source) {
+			flag = source.flag;
+			map = new TreeMap<Term, Node>();
+			for (Map.Entry<Term, Node> entry : source.map.entrySet()) {
+				map.put(entry.getKey(), new Node(entry.getValue()));
+			}
+		}
+
 		/**
 		 * Determine if this node is marked as final.
 		 * 
@@ -348,6 +348,10 @@ public class MessageUtils {
 
     public final static String MSG_NON_DIRECTORY_IN_INCLUDE_DIRS = "MSG_NON_DIRECTORY_IN_INCLUDE_DIRS";
 
+    public final static String MSG_NON_ABSOLUTE_PATH_IN_SOURCE_ARCHIVES = "MSG_NON_ABSOLUTE_PATH_IN_SOURCE_ARCHIVES";
+
+    public final static String MSG_CANNOT_OPEN_SOURCE_ARCHIVE = "MSG_CANNOT_OPEN_SOURCE_ARCHIVE";
+
     public final static String MSG_MIN_RANGE_VALUE_CANNOT_BE_NEGATIVE = "MSG_MIN_RANGE_VALUE_CANNOT_BE_NEGATIVE";
 
     public final static String MSG_MIN_MUST_BE_LESS_OR_EQUAL_TO_MAX = "MSG_MIN_MUST_BE_LESS_OR_EQUAL_TO_MAX";
@@ -440,6 +444,12 @@ public class MessageUtils {
 
     public final static String MSG_STATISTICS_TEMPLATE = "MSG_STATISTICS_TEMPLATE";
 
+    public final static String MSG_STATISTICS_DEDUPLICATION = "MSG_STATISTICS_DEDUPLICATION";
+
+    public final static String MSG_STATISTICS_PREFETCH = "MSG_STATISTICS_PREFETCH";
+
+    public final static String MSG_STATISTICS_VALIDATION_CACHE = "MSG_STATISTICS_VALIDATION_CACHE";
+
     public final static String MSG_DUPLICATE_FUNCTION = "MSG_DUPLICATE_FUNCTION";
 
     public final static String MSG_DUPLICATE_TYPE = "MSG_DUPLICATE_TYPE";
@@ -27,6 +27,7 @@ import static org.quattor.pan.utils.MessageUtils.MSG_PATH_INVALID_BRACES;
 import static org.quattor.pan.utils.MessageUtils.MSG_PATH_INVALID_FIRST_TERM;
 import static org.quattor.pan.utils.MessageUtils.MSG_PATH_MISSING_TERM;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -46,7 +47,7 @@ import org.quattor.pan.ttemplate.Template;
  * @author loomis
  *
  */
-public class Path implements Comparable<Path> {
+public class Path implements Comparable<Path>, Serializable {
 
     /**
      * An enumeration containing the three different types of paths. Note that
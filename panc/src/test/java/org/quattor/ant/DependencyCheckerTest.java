@@ -26,12 +26,27 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.tools.ant.BuildException;
 import org.junit.Test;
 import org.quattor.ant.DependencyChecker.DependencyInfo;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.exceptions.ConfigurationException;
+import org.quattor.pan.output.PanFormatter;
+import org.quattor.pan.repository.ArchiveSourceRepositoryImpl;
 import org.quattor.pan.repository.SourceType;
 
 public class DependencyCheckerTest {
@@ -170,4 +185,148 @@ public class DependencyCheckerTest {
         assertEquals(fullfile, info.file);
     }
 
+    @Test
+    public void checkOutdatedFiltering() throws IOException {
+
+        File root = Files.createTempDirectory("dependency-checker").toFile();
+        File srcdir = new File(root, "src");
+        File outdir = new File(root, "out");
+        srcdir.mkdir();
+        outdir.mkdir();
+
+        long sourceTime = 1000000000000L;
+        long outputTime = sourceTime + 10000L;
+
+        File common = writeFile(new File(srcdir, "common.pan"),
+                "template common;", sourceTime);
+
+        List<File> objectFiles = new ArrayList<File>();
+        for (int i = 0; i < 50; i++) {
+            String name = "node" + i;
+            File tpl = writeFile(new File(srcdir, name + ".pan"),
+                    "object template " + name + "; include 'common';",
+                    sourceTime);
+            objectFiles.add(tpl);
+
+            String uri = srcdir.toURI().toString();
+            writeFile(new File(outdir, name + ".xml"), "", outputTime);
+            writeFile(new File(outdir, name + ".dep"), name + " PAN " + uri
+                    + "\ncommon PAN " + uri + "\n", outputTime);
+        }
+
+        // Two of the objects are missing their output.
+        new File(outdir, "node3.xml").delete();
+        new File(outdir, "node41.dep").delete();
+
+        Set<Formatter> formatters = new HashSet<Formatter>();
+        formatters.add(PanFormatter.getInstance());
+
+        List<File> dirs = Arrays.asList(srcdir);
+
+        DependencyChecker checker = new DependencyChecker(dirs, outdir,
+                formatters, null, 4);
+        List<File> outdated = checker.filterForOutdatedFiles(objectFiles);
+        assertEquals(Arrays.asList(objectFiles.get(3), objectFiles.get(41)),
+                outdated);
+
+        // Modifying the shared template makes all of the objects outdated.
+        common.setLastModified(outputTime + 10000L);
+
+        checker = new DependencyChecker(dirs, outdir, formatters, null, 4);
+        outdated = checker.filterForOutdatedFiles(objectFiles);
+        assertEquals(objectFiles, outdated);
+    }
+
+    @Test
+    public void checkArchiveEntryChanges() throws Exception {
+
+        File root = Files.createTempDirectory("dependency-checker").toFile();
+        File srcdir = new File(root, "src");
+        File outdir = new File(root, "out");
+        srcdir.mkdir();
+        outdir.mkdir();
+
+        File archive = new File(root, "templates.zip");
+        writeArchive(archive, "common", "template common;", "site/gone",
+                "template site/gone;");
+
+        long outputTime = 1000000000000L;
+
+        // Each object depends on one entry which is changed, added, or
+        // deleted below; the last one depends on an unchanged entry.
+        String[] objects = { "changed", "added", "deleted", "unchanged" };
+        ArchiveSourceRepositoryImpl repository = openArchive(archive);
+        String[] dependencies = {
+                repository.retrievePanSource("common").toString(),
+                repository.retrievePanSource("site/extra").toString(),
+                repository.retrievePanSource("site/gone").toString(),
+                repository.retrieveTxtSource("data/fixed.txt").toString() };
+
+        List<File> objectFiles = new ArrayList<File>();
+        for (int i = 0; i < objects.length; i++) {
+            String name = objects[i];
+            objectFiles.add(writeFile(new File(srcdir, name + ".pan"),
+                    "object template " + name + ";", outputTime));
+            writeFile(new File(outdir, name + ".xml"), "", outputTime);
+            writeFile(new File(outdir, name + ".dep"), dependencies[i]
+                    + "\n", outputTime);
+        }
+
+        Set<Formatter> formatters = new HashSet<Formatter>();
+        formatters.add(PanFormatter.getInstance());
+
+        List<File> dirs = Arrays.asList(srcdir);
+
+        DependencyChecker checker = new DependencyChecker(dirs, outdir,
+                formatters, null, 4, repository);
+        assertEquals(new ArrayList<File>(),
+                checker.filterForOutdatedFiles(objectFiles));
+
+        // The modification time of the archive plays no role; only the
+        // entries are compared.
+        writeArchive(archive, "common", "template common; # changed",
+                "site/extra", "template site/extra;");
+        archive.setLastModified(outputTime - 10000L);
+
+        checker = new DependencyChecker(dirs, outdir, formatters, null, 4,
+                openArchive(archive));
+        assertEquals(objectFiles.subList(0, 3),
+                checker.filterForOutdatedFiles(objectFiles));
+    }
+
+    private static ArchiveSourceRepositoryImpl openArchive(File archive)
+            throws ConfigurationException {
+        return new ArchiveSourceRepositoryImpl(Arrays.asList(archive));
+    }
+
+    private static void writeArchive(File archive, String... templates)
+            throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(
+                archive));
+        try {
+            for (int i = 0; i < templates.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(templates[i] + ".pan"));
+                zos.write(templates[i + 1].getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("data/fixed.txt"));
+            zos.write("fixed".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    private static File writeFile(File file, String contents, long time)
+            throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+        file.setLastModified(time);
+        return file;
+    }
+
 }
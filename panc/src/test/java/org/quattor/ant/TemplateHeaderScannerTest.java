@@ -0,0 +1,69 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class TemplateHeaderScannerTest {
+
+    private static String scan(String header) throws IOException {
+        return TemplateHeaderScanner.scanTemplateName(new StringReader(header));
+    }
+
+    @Test
+    public void simpleHeaders() throws IOException {
+        assertEquals("alpha", scan("object template alpha;"));
+        assertEquals("alpha", scan("template alpha;"));
+        assertEquals("alpha", scan("structure template alpha;"));
+        assertEquals("alpha", scan("declaration template alpha;"));
+        assertEquals("alpha", scan("unique template alpha;"));
+    }
+
+    @Test
+    public void namespacedHeaders() throws IOException {
+        assertEquals("a/b-c/d.e+f_1", scan("object template a/b-c/d.e+f_1;"));
+    }
+
+    @Test
+    public void headersWithCommentsAndAnnotations() throws IOException {
+        assertEquals("alpha", scan("# comment ;\n\n\t object template alpha ; '/a' = 1;"));
+        assertEquals("alpha", scan("@{ object template beta; }\nobject template alpha;"));
+        assertEquals("alpha", scan("@desc (text) @ name [text] object template alpha;"));
+        assertEquals("alpha", scan("object # comment\n template\n@{x}\nalpha # comment\n;"));
+    }
+
+    @Test
+    public void ambiguousHeaders() throws IOException {
+        assertNull(scan(""));
+        assertNull(scan("object template alpha"));
+        assertNull(scan("object template ;"));
+        assertNull(scan("object template 'alpha';"));
+        assertNull(scan("objecttemplate alpha;"));
+        assertNull(scan("object object template alpha;"));
+        assertNull(scan("variable x = 1; object template alpha;"));
+        assertNull(scan("@{ unterminated object template alpha;"));
+        assertNull(scan("object template alpha beta;"));
+    }
+
+}
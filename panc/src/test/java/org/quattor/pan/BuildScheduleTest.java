@@ -0,0 +1,118 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BuildScheduleTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            BuildScheduleTest.class.getSimpleName());
+
+    private static File scheduleFile(String name) {
+        tmpdir.mkdirs();
+        File file = new File(tmpdir, name);
+        file.delete();
+        return file;
+    }
+
+    private static List<String> deps(String... names) {
+        return Arrays.asList(names);
+    }
+
+    @Test
+    public void emptyScheduleKeepsFileOrder() throws IOException {
+
+        BuildSchedule schedule = new BuildSchedule(scheduleFile("empty.txt"));
+
+        List<File> files = new ArrayList<File>();
+        files.add(new File("/b.pan"));
+        files.add(new File("/a.pan"));
+        Collections.sort(files, schedule.fileComparator());
+
+        assertEquals(new File("/a.pan"), files.get(0));
+        assertEquals(0L, schedule.getLevel("a"));
+    }
+
+    @Test
+    public void recordIsSavedAndReloaded() throws IOException {
+
+        File file = scheduleFile("record.txt");
+
+        BuildSchedule schedule = new BuildSchedule(file);
+        schedule.record("head", new File("/head.pan"), 10L, deps("head"));
+        schedule.record("node1", new File("/node1.pan"), 5L, deps("head"));
+        schedule.record("node2", new File("/node2.pan"), 5L, deps("head"));
+        schedule.record("single", new File("/single.pan"), 12L, deps());
+        schedule.save();
+
+        schedule = new BuildSchedule(file);
+
+        // The head is waited for by the nodes, so its chain is the longest.
+        assertEquals(15L, schedule.getLevel("head"));
+        assertEquals(2, schedule.getReferences("head"));
+        assertEquals(5L, schedule.getLevel("node1"));
+        assertEquals(12L, schedule.getLevel("single"));
+
+        List<File> files = new ArrayList<File>();
+        files.add(new File("/node1.pan"));
+        files.add(new File("/single.pan"));
+        files.add(new File("/head.pan"));
+        files.add(new File("/new.pan"));
+        Collections.sort(files, schedule.fileComparator());
+
+        assertEquals(new File("/head.pan"), files.get(0));
+        assertEquals(new File("/single.pan"), files.get(1));
+
+        // Unknown objects are given the average cost.
+        assertEquals(8L, schedule.getLevel("unknown"));
+    }
+
+    @Test
+    public void previousEntriesAreKept() throws IOException {
+
+        File file = scheduleFile("merge.txt");
+
+        BuildSchedule schedule = new BuildSchedule(file);
+        schedule.record("a", new File("/a.pan"), 3L, deps());
+        schedule.record("b", new File("/b.pan"), 4L, deps());
+        schedule.save();
+
+        schedule = new BuildSchedule(file);
+        schedule.record("b", new File("/b.pan"), 7L, deps("a"));
+        schedule.save();
+
+        schedule = new BuildSchedule(file);
+        assertEquals(10L, schedule.getLevel("a"));
+        assertEquals(7L, schedule.getLevel("b"));
+        assertTrue(schedule.getReferences("a") == 1);
+    }
+
+}
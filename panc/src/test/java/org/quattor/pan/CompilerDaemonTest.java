@@ -0,0 +1,68 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class CompilerDaemonTest {
+
+    private static CompilerDaemon createDaemon(File root) throws IOException {
+        File include = new File(root, "include");
+        File profiles = new File(root, "profiles");
+        include.mkdir();
+        profiles.mkdir();
+        return new CompilerDaemon(CompilerOptions.createCheckSyntaxOptions(CompilerOptions.DeprecationWarnings.OFF),
+                Arrays.asList(include), Arrays.asList(profiles), new File(root, "token"));
+    }
+
+    @Test
+    public void tokenIsPrivate() throws IOException {
+        File root = Files.createTempDirectory("compiler-daemon").toFile();
+        createDaemon(root);
+
+        File token = new File(root, "token");
+        assertEquals(64, new String(Files.readAllBytes(token.toPath()), "UTF-8").length());
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(token.toPath())));
+    }
+
+    @Test
+    public void templatesOutsideDirectoriesAreRejected() throws IOException {
+        File root = Files.createTempDirectory("compiler-daemon").toFile();
+        CompilerDaemon daemon = createDaemon(root);
+
+        for (String name : new String[] { "other/node.pan", "profiles/../node.pan", "../node.pan" }) {
+            try {
+                daemon.build(Collections.singletonList(new File(root, name)));
+                throw new AssertionError("template accepted: " + name);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains("outside"));
+            }
+        }
+    }
+
+}
@@ -21,6 +21,8 @@
 package org.quattor.pan;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -38,6 +40,7 @@ import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.output.DepFormatter;
 import org.quattor.pan.output.Formatter;
 import org.quattor.pan.output.PanFormatter;
+import org.quattor.pan.repository.ParameterList;
 
 public class CompilerOptionsTest {
 
@@ -205,6 +208,94 @@ public class CompilerOptionsTest {
                 CompilerOptions.DeprecationWarnings.ON, null, null, null, 0);
     }
 
+    private static CompilerOptions defaultOptions() throws SyntaxException {
+        return optionsWith(null, null);
+    }
+
+    /**
+     * Creates options without formatters or directories, with the given
+     * parameter set if the key is not null.
+     */
+    private static CompilerOptions optionsWith(String key, String value)
+            throws SyntaxException {
+        ParameterList parameters = new ParameterList();
+        if (key != null) {
+            parameters.append(key, value);
+        }
+        return new CompilerOptions(null, null, 1000, 50,
+                new HashSet<Formatter>(), null, new LinkedList<File>(),
+                CompilerOptions.DeprecationWarnings.ON, null, null, null, 0,
+                parameters);
+    }
+
+    @Test
+    public void checkEvictResultsParameter() throws SyntaxException {
+        assertFalse(defaultOptions().evictResults);
+        assertTrue(optionsWith("evictResults", "true").evictResults);
+    }
+
+    @Test
+    public void checkPersistentResourcesParameter() throws SyntaxException {
+        assertFalse(defaultOptions().persistentResources);
+        assertTrue(optionsWith("persistentResources", "true").persistentResources);
+    }
+
+    @Test
+    public void checkDeduplicateValuesParameter() throws SyntaxException {
+        assertFalse(defaultOptions().deduplicateValues);
+        assertTrue(optionsWith("deduplicateValues", "true").deduplicateValues);
+    }
+
+    @Test
+    public void checkCompileFunctionsParameter() throws SyntaxException {
+        assertFalse(defaultOptions().compileFunctions);
+        assertTrue(optionsWith("compileFunctions", "true").compileFunctions);
+    }
+
+    @Test
+    public void checkPrefetchIncludesParameter() throws SyntaxException {
+        assertFalse(defaultOptions().prefetchIncludes);
+        assertTrue(optionsWith("prefetchIncludes", "true").prefetchIncludes);
+    }
+
+    @Test
+    public void checkSnapshotPrefixesParameter() throws SyntaxException {
+        assertFalse(defaultOptions().snapshotPrefixes);
+        assertTrue(optionsWith("snapshotPrefixes", "true").snapshotPrefixes);
+    }
+
+    @Test
+    public void checkBuildScheduleFileParameter() throws SyntaxException {
+        assertNull(defaultOptions().buildScheduleFile);
+        assertEquals(new File("schedule.txt").getAbsoluteFile(),
+                optionsWith("buildScheduleFile", "schedule.txt").buildScheduleFile);
+    }
+
+    @Test
+    public void checkTelemetryParameters() throws SyntaxException {
+        assertFalse(defaultOptions().telemetryReport);
+        assertEquals(100, defaultOptions().telemetryInterval);
+        assertTrue(optionsWith("telemetryReport", "true").telemetryReport);
+        assertEquals(250, optionsWith("telemetryInterval", "250").telemetryInterval);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkInvalidTelemetryInterval() throws SyntaxException {
+        optionsWith("telemetryInterval", "0");
+    }
+
+    @Test
+    public void checkProfileParameter() throws SyntaxException {
+        assertFalse(defaultOptions().profile);
+        assertTrue(optionsWith("profile", "true").profile);
+    }
+
+    @Test
+    public void checkCacheValidationParameter() throws SyntaxException {
+        assertFalse(defaultOptions().cacheValidation);
+        assertTrue(optionsWith("cacheValidation", "true").cacheValidation);
+    }
+
     @Test
     public void checkNullAndEmptyInputForRootElement() throws SyntaxException {
         String[] inputs = new String[] { null, "", " ", "\t" };
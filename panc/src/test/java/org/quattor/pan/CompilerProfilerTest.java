@@ -0,0 +1,163 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.junit.Test;
+import org.quattor.pan.CompilerProfiler.ObjectProfile;
+import org.quattor.pan.utils.StringUtils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class CompilerProfilerTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            CompilerProfilerTest.class.getSimpleName());
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file),
+                "UTF-8");
+        try {
+            return StringUtils.readCompletely(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException consumed) {
+        }
+    }
+
+    @Test
+    public void framesAreAggregatedAndReported() throws Exception {
+
+        CompilerProfiler profiler = new CompilerProfiler();
+        ObjectProfile profile = profiler.createProfile("node1");
+
+        profile.enter("BUILD", "node1");
+        for (int i = 0; i < 2; i++) {
+            profile.enter("UNIQUE", "site/base");
+            profile.enter("FUNCTION f", "site/functions");
+            sleep(2);
+            profile.exit();
+            profile.exit();
+        }
+        profile.enter("TYPE", "my_type");
+        sleep(2);
+        profile.exit();
+        profile.exit();
+
+        tmpdir.mkdirs();
+        profiler.writeReport(tmpdir);
+
+        // Both includes are folded into the same stack.
+        String folded = read(new File(tmpdir, CompilerProfiler.FOLDED_REPORT));
+        int count = 0;
+        for (String line : folded.split("\n")) {
+            if (line.startsWith("BUILD node1;UNIQUE site/base;FUNCTION f (site/functions) ")) {
+                count++;
+            }
+        }
+        assertEquals(1, count);
+        assertTrue(folded.contains("BUILD node1;TYPE my_type "));
+
+        // Each frame lasting longer than a millisecond is a trace event.
+        String trace = read(new File(tmpdir, CompilerProfiler.TRACE_REPORT));
+        JsonArray events = new JsonParser().parse(trace).getAsJsonObject()
+                .getAsJsonArray("traceEvents");
+        assertEquals(6, events.size());
+        JsonObject event = events.get(0).getAsJsonObject();
+        assertEquals("X", event.get("ph").getAsString());
+        assertEquals("FUNCTION", event.get("cat").getAsString());
+        assertEquals("node1", event.getAsJsonObject("args").get("object")
+                .getAsString());
+
+        String summary = read(new File(tmpdir, CompilerProfiler.SUMMARY_REPORT));
+        assertTrue(summary.contains("\nFUNCTION,f,2,"));
+        assertTrue(summary.contains("\nUNIQUE,site/base,2,"));
+        assertTrue(summary.contains("\nBUILD,node1,1,"));
+    }
+
+    @Test
+    public void recursiveCallsAreCountedOnce() throws Exception {
+
+        CompilerProfiler profiler = new CompilerProfiler();
+        ObjectProfile profile = profiler.createProfile("node1");
+
+        profile.enter("FUNCTION f", "tpl");
+        profile.enter("FUNCTION f", "tpl");
+        sleep(5);
+        profile.exit();
+        profile.exit();
+
+        tmpdir.mkdirs();
+        profiler.writeReport(tmpdir);
+
+        String summary = read(new File(tmpdir, CompilerProfiler.SUMMARY_REPORT));
+        String[] fields = summary.split("\n")[1].split(",");
+        assertEquals("FUNCTION", fields[0]);
+        assertEquals("2", fields[2]);
+
+        // The total must not include the inner call twice; with nothing
+        // else called, it is the sum of the self times.
+        assertEquals(fields[4], fields[3]);
+        assertTrue(Long.parseLong(fields[3]) >= 5000L);
+    }
+
+    @Test
+    public void framesLeftOpenAreClosed() throws Exception {
+
+        CompilerProfiler profiler = new CompilerProfiler();
+        ObjectProfile profile = profiler.createProfile("node1");
+
+        int mark = profile.enter("VALID1", "node1");
+        profile.enter("TYPE", "t1");
+        profile.enter("FUNCTION g", "tpl");
+        profile.exitTo(mark);
+
+        // Exiting again has no effect.
+        profile.exit();
+
+        profile.enter("VALID2", "node1");
+        profile.exit();
+
+        tmpdir.mkdirs();
+        profiler.writeReport(tmpdir);
+
+        String summary = read(new File(tmpdir, CompilerProfiler.SUMMARY_REPORT));
+        assertTrue(summary.contains("\nFUNCTION,g,1,"));
+        assertTrue(summary.contains("\nTYPE,t1,1,"));
+        assertTrue(summary.contains("\nVALID2,node1,1,"));
+    }
+
+}
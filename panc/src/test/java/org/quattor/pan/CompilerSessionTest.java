@@ -0,0 +1,200 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.repository.ParameterList;
+import org.quattor.pan.repository.SourceFile;
+import org.quattor.pan.ttemplate.Template;
+
+public class CompilerSessionTest {
+
+    private static CompilerSession createSession() {
+        return new CompilerSession(CompilerOptions
+                .createCheckSyntaxOptions(CompilerOptions.DeprecationWarnings.OFF));
+    }
+
+    @Test
+    public void unknownTemplateReturnsNull() {
+        CompilerSession session = createSession();
+        assertNull(session.getTemplate(new File("/tmp/alpha.pan")));
+        assertEquals(0, session.getTemplateCount());
+    }
+
+    @Test
+    public void templatesAreShared() throws SyntaxException {
+        CompilerSession session = createSession();
+        File tplfile = new File("/tmp/alpha.pan");
+        Template template = new Template("alpha");
+
+        session.putTemplate(tplfile, template);
+
+        assertSame(template, session.getTemplate(tplfile));
+        assertEquals(1, session.getTemplateCount());
+    }
+
+    @Test
+    public void firstTemplateIsKept() throws SyntaxException {
+        CompilerSession session = createSession();
+        File tplfile = new File("/tmp/alpha.pan");
+        Template first = new Template("alpha");
+
+        session.putTemplate(tplfile, first);
+        session.putTemplate(tplfile, new Template("alpha"));
+
+        assertSame(first, session.getTemplate(tplfile));
+    }
+
+    @Test
+    public void compilerKnowsItsSession() {
+        CompilerSession session = createSession();
+        Compiler compiler = new Compiler(session.options, null, null, session);
+        assertSame(session, compiler.getSession());
+    }
+
+    private static CompilerSession createRecordedSession() {
+        CompilerSession session = createSession();
+        session.recordDependencies(new File("/tmp/profiles/alpha.pan"), Arrays.asList(
+                new SourceFile("profiles/alpha", true, new File("/tmp/profiles/alpha.pan")),
+                new SourceFile("common/beta", true, new File("/tmp/common/beta.pan")),
+                new SourceFile("site/gamma", true, null)));
+        return session;
+    }
+
+    @Test
+    public void recordedObjectsAreUpToDate() {
+        CompilerSession session = createRecordedSession();
+        assertTrue(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+        assertFalse(session.isUpToDate(new File("/tmp/profiles/delta.pan")));
+
+        session.forget(new File("/tmp/profiles/alpha.pan"));
+        assertFalse(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+    }
+
+    @Test
+    public void changedDependencyInvalidatesObject() throws SyntaxException {
+        CompilerSession session = createRecordedSession();
+        File tplfile = new File("/tmp/common/beta.pan");
+        session.putTemplate(tplfile, new Template("common/beta"));
+
+        assertEquals(0, session.invalidate(new File("/tmp/common/other.pan")));
+        assertTrue(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+
+        assertEquals(1, session.invalidate(tplfile));
+        assertFalse(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+        assertNull(session.getTemplate(tplfile));
+    }
+
+    @Test
+    public void modifiedDependencyIsNoticed() throws IOException {
+        File root = Files.createTempDirectory("compiler-session").toFile();
+        File objectFile = new File(root, "alpha.pan");
+        File common = new File(root, "beta.pan");
+        Files.write(objectFile.toPath(), "object template alpha;".getBytes("UTF-8"));
+        Files.write(common.toPath(), "template beta;".getBytes("UTF-8"));
+        common.setLastModified(1000000000000L);
+
+        CompilerSession session = createSession();
+        session.recordDependencies(objectFile, Arrays.asList(
+                new SourceFile("alpha", true, objectFile),
+                new SourceFile("beta", true, common)));
+        assertTrue(session.isUpToDate(objectFile));
+
+        // The change was not passed to invalidate.
+        common.setLastModified(1000000010000L);
+        assertFalse(session.isUpToDate(objectFile));
+    }
+
+    private static void writeArchive(File archive, String contents) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zos.putNextEntry(new ZipEntry("beta.pan"));
+            zos.write(contents.getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    @Test
+    public void modifiedArchiveEntryIsNoticed() throws IOException, SyntaxException {
+        File root = Files.createTempDirectory("compiler-session").toFile();
+        File objectFile = new File(root, "alpha.pan");
+        File archive = new File(root, "templates.zip");
+        Files.write(objectFile.toPath(), "object template alpha;".getBytes("UTF-8"));
+        writeArchive(archive, "template beta;");
+
+        ParameterList parameters = new ParameterList();
+        parameters.append("sourceArchive", archive.getAbsolutePath());
+        CompilerOptions options = new CompilerOptions(null, null, 1000, 50, new HashSet<Formatter>(), null,
+                new LinkedList<File>(), CompilerOptions.DeprecationWarnings.OFF, null, null, null, 0, parameters);
+
+        CompilerSession session = new CompilerSession(options);
+        session.recordDependencies(objectFile, Arrays.asList(
+                new SourceFile("alpha", true, objectFile),
+                options.sourceRepository.retrievePanSource("beta")));
+        assertTrue(session.isUpToDate(objectFile));
+
+        // The entries of the archive all have the modification time of a
+        // missing file, so only the checksum shows the change.
+        writeArchive(archive, "template beta; '/x' = 1;");
+        options.sourceRepository.refresh();
+        assertFalse(session.isUpToDate(objectFile));
+    }
+
+    @Test
+    public void invalidatedArchiveDropsEntries() throws SyntaxException {
+        CompilerSession session = createSession();
+        File entry = new File("/tmp/templates.zip/common/beta.pan");
+        session.putTemplate(entry, new Template("common/beta"));
+        session.recordDependencies(new File("/tmp/profiles/alpha.pan"), Arrays.asList(
+                new SourceFile("profiles/alpha", true, new File("/tmp/profiles/alpha.pan")),
+                new SourceFile("common/beta", true, entry)));
+
+        assertEquals(0, session.invalidate(new File("/tmp/templates")));
+        assertEquals(1, session.invalidate(new File("/tmp/templates.zip")));
+        assertFalse(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+        assertNull(session.getTemplate(entry));
+    }
+
+    @Test
+    public void createdTemplateInvalidatesObject() {
+        CompilerSession session = createRecordedSession();
+        assertEquals(1, session.invalidate(new File("/tmp/include/site/gamma.pan")));
+        assertFalse(session.isUpToDate(new File("/tmp/profiles/alpha.pan")));
+    }
+
+}
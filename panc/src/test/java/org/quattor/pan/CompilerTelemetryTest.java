@@ -0,0 +1,132 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+import org.quattor.pan.tasks.Task;
+import org.quattor.pan.tasks.TaskResult;
+import org.quattor.pan.utils.StringUtils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class CompilerTelemetryTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            CompilerTelemetryTest.class.getSimpleName());
+
+    private static Task<TaskResult> createTask(TaskResult.ResultType type,
+            String info) {
+        return new Task<TaskResult>(type, info, new Callable<TaskResult>() {
+            public TaskResult call() {
+                return new TaskResult(TaskResult.ResultType.BUILD);
+            }
+        }) {
+        };
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file),
+                "UTF-8");
+        try {
+            return StringUtils.readCompletely(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void tasksAreTimedAndReported() throws Exception {
+
+        CompilerTelemetry telemetry = new CompilerTelemetry(
+                new CompilerStatistics(), 10, true);
+
+        Task<TaskResult> build = createTask(TaskResult.ResultType.BUILD,
+                "node1");
+        telemetry.monitor(build, false);
+        build.run();
+
+        Task<TaskResult> xml = createTask(TaskResult.ResultType.XML, "node1");
+        telemetry.monitor(xml, true);
+        xml.run();
+
+        // A second run of the same task does not call it again.
+        xml.run();
+
+        telemetry.stop();
+
+        tmpdir.mkdirs();
+        telemetry.writeReport(tmpdir, 42L);
+
+        JsonObject report = new JsonParser().parse(
+                read(new File(tmpdir, CompilerTelemetry.JSON_REPORT)))
+                .getAsJsonObject();
+        assertEquals(42L, report.get("buildTime").getAsLong());
+
+        JsonObject stages = report.getAsJsonObject("stages");
+        assertEquals(1L, stages.getAsJsonObject("build").get("tasks")
+                .getAsLong());
+        assertEquals(0L, stages.getAsJsonObject("build").get("queuedTasks")
+                .getAsLong());
+        assertEquals(1L, stages.getAsJsonObject("xml").get("tasks")
+                .getAsLong());
+        assertEquals(1L, stages.getAsJsonObject("xml").get("queuedTasks")
+                .getAsLong());
+
+        assertTrue(report.getAsJsonObject("objects").has("node1"));
+
+        String csv = read(new File(tmpdir, CompilerTelemetry.CSV_REPORT));
+        assertTrue(csv.startsWith("time,heapUsed,allocated,gcCount,gcTime,"));
+        assertTrue(csv.split("\n").length >= 2);
+    }
+
+    @Test
+    public void tasksAreNotMonitoredWithoutReport() throws Exception {
+
+        CompilerTelemetry telemetry = new CompilerTelemetry(
+                new CompilerStatistics(), 10, false);
+
+        Task<TaskResult> build = createTask(TaskResult.ResultType.BUILD,
+                "node1");
+        telemetry.monitor(build, true);
+        build.run();
+        telemetry.stop();
+
+        tmpdir.mkdirs();
+        telemetry.writeReport(tmpdir, 0L);
+
+        JsonObject report = new JsonParser().parse(
+                read(new File(tmpdir, CompilerTelemetry.JSON_REPORT)))
+                .getAsJsonObject();
+        assertEquals(0L, report.getAsJsonObject("stages")
+                .getAsJsonObject("build").get("tasks").getAsLong());
+    }
+
+}
@@ -54,6 +54,7 @@ import org.quattor.pan.output.DepFormatter;
 import org.quattor.pan.output.Formatter;
 import org.quattor.pan.output.FormatterComparator;
 import org.quattor.pan.output.PanFormatter;
+import org.quattor.pan.repository.ParameterList;
 import org.quattor.pan.utils.TestUtils;
 import org.xml.sax.InputSource;
 
@@ -63,15 +64,29 @@ public class JavaCompilerTest {
 
 	protected Compiler getDefaultCompiler(File tplfile, File dir,
 			Formatter formatter) throws SyntaxException {
+		return getDefaultCompiler(tplfile, dir, formatter, null);
+	}
+
+	/**
+	 * Creates the default compiler with the given boolean option (see
+	 * <code>CompilerOptions</code>) turned on, unless it is null.
+	 */
+	protected Compiler getDefaultCompiler(File tplfile, File dir,
+			Formatter formatter, String mode) throws SyntaxException {
 		List<File> path = new LinkedList<File>();
 		path.add(dir);
 		Set<Formatter> formatters = new TreeSet<Formatter>(
 				FormatterComparator.getInstance());
 		formatters.add(formatter);
 		formatters.add(DepFormatter.getInstance());
+		ParameterList parameters = new ParameterList();
+		if (mode != null) {
+			parameters.append(mode, "true");
+		}
 		CompilerOptions options = new CompilerOptions(null, null, 100, 50,
 				formatters, getTmpdir(), path,
-				CompilerOptions.DeprecationWarnings.ON, null, null, null, 0);
+				CompilerOptions.DeprecationWarnings.ON, null, null, null, 0,
+				parameters);
 		List<File> tplfiles = new LinkedList<File>();
 		tplfiles.add(tplfile);
 		return new Compiler(options, new LinkedList<String>(), tplfiles);
@@ -187,6 +202,44 @@ public class JavaCompilerTest {
 
 	@Test
 	public void javaFunctionalTests() throws SyntaxException {
+		runFunctionalTests(null);
+	}
+
+	@Test
+	public void javaFunctionalTestsWithPersistentResources()
+			throws SyntaxException {
+		runFunctionalTests("persistentResources");
+	}
+
+	@Test
+	public void javaFunctionalTestsWithDeduplicateValues()
+			throws SyntaxException {
+		runFunctionalTests("deduplicateValues");
+	}
+
+	@Test
+	public void javaFunctionalTestsWithCompileFunctions()
+			throws SyntaxException {
+		runFunctionalTests("compileFunctions");
+	}
+
+	@Test
+	public void javaFunctionalTestsWithSnapshotPrefixes()
+			throws SyntaxException {
+		runFunctionalTests("snapshotPrefixes");
+	}
+
+	@Test
+	public void javaFunctionalTestsWithCacheValidation()
+			throws SyntaxException {
+		runFunctionalTests("cacheValidation");
+	}
+
+	/**
+	 * Runs all of the functionality tests with the given boolean option
+	 * turned on, unless it is null.
+	 */
+	private void runFunctionalTests(String mode) throws SyntaxException {
 
 		// Locate the directory with the functionality tests and extract all of
 		// the children.
@@ -220,7 +273,7 @@ public class JavaCompilerTest {
 				// Run an individual test and collect any errors that arise.
 				if (tpl != null) {
 					if (tpl.exists()) {
-						String message = invokeTest(rootdir, tpl, true);
+						String message = invokeTest(rootdir, tpl, true, mode);
 						if (message != null) {
 							errors.add(tpl.getName() + ": " + message);
 						}
@@ -237,6 +290,9 @@ public class JavaCompilerTest {
 		// If the error list isn't empty, then fail.
 		if (errors.size() > 0) {
 			StringBuilder sb = new StringBuilder();
+			if (mode != null) {
+				sb.append("with " + mode + ":\n");
+			}
 			for (String message : errors) {
 				sb.append(message);
 				sb.append("\n");
@@ -323,6 +379,15 @@ public class JavaCompilerTest {
 	 */
 	protected String invokeTest(File rootdir, File objtpl,
 			boolean defaultCompiler) throws SyntaxException {
+		return invokeTest(rootdir, objtpl, defaultCompiler, null);
+	}
+
+	/**
+	 * Invoke a single test as above, with the given boolean option of the
+	 * default compiler turned on unless it is null.
+	 */
+	protected String invokeTest(File rootdir, File objtpl,
+			boolean defaultCompiler, String mode) throws SyntaxException {
 
 		// Create the name of the output XML file from the template name.
 		String fname = objtpl.getName();
@@ -347,8 +412,8 @@ public class JavaCompilerTest {
 
 		// Compile the given template and collect any errors.
 		Compiler compiler = defaultCompiler ? getDefaultCompiler(objtpl,
-				rootdir, formatter) : getRootElementCompiler(objtpl, rootdir,
-				formatter);
+				rootdir, formatter, mode) : getRootElementCompiler(objtpl,
+				rootdir, formatter);
 		Set<Throwable> exceptions = compiler.process().getErrors();
 
 		if (expectation instanceof TestUtils.ExceptionChecker) {
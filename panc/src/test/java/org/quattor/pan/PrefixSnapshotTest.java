@@ -0,0 +1,189 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.output.FormatterComparator;
+import org.quattor.pan.output.PanFormatter;
+import org.quattor.pan.repository.ParameterList;
+
+/**
+ * Builds several objects starting with the same includes with and without
+ * prefix snapshots and checks that the generated profiles are identical.
+ */
+public class PrefixSnapshotTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            PrefixSnapshotTest.class.getSimpleName());
+
+    private final static String[] OBJECTS = { "node1", "node2", "node3" };
+
+    private static void write(File dir, String name, String... lines)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        File file = new File(dir, name + ".pan");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+    }
+
+    /**
+     * Writes the object templates, which all start by including common/base
+     * and the given template, and the common templates.
+     */
+    private static File writeTemplates(String test, String second)
+            throws IOException {
+
+        File dir = new File(new File(tmpdir, test), "templates");
+
+        // Defines global variables and paths which the objects modify.
+        write(dir, "common/base",
+                "unique template common/base;",
+                "variable PACKAGES ?= list('kernel');",
+                "variable CONFIG = dict('site', 'example', 'nested', dict('a', 1));",
+                "'/software/packages' = PACKAGES;",
+                "'/shared/list' = list('base');",
+                "'/shared/dict' = dict('site', 'example');");
+
+        write(dir, "common/independent",
+                "unique template common/independent;",
+                "'/site/name' = 'example';");
+
+        write(dir, "common/modify",
+                "unique template common/modify;",
+                "variable PACKAGES = append(PACKAGES, 'extra');",
+                "variable CONFIG = merge(CONFIG, dict('extra', true));",
+                "'/shared/list' = append('extra');",
+                "'/shared/dict/extra' = true;");
+
+        write(dir, "common/object",
+                "unique template common/object;",
+                "'/system/hostname' = OBJECT;");
+
+        write(dir, "common/other",
+                "unique template common/other;",
+                "'/system/peer' = value('//other/system/name');");
+
+        write(dir, "other",
+                "object template other;",
+                "'/system/name' = 'other';");
+
+        for (String name : OBJECTS) {
+            write(dir, name,
+                    "object template " + name + ";",
+                    "include 'common/base';",
+                    "include '" + second + "';",
+                    "variable PACKAGES = append(PACKAGES, OBJECT);",
+                    "variable CONFIG = merge(CONFIG, dict(OBJECT, true));",
+                    "'/software/packages' = PACKAGES;",
+                    "'/config' = CONFIG;",
+                    "'/shared/list' = append(OBJECT);",
+                    "'/shared/dict/owner' = OBJECT;",
+                    "'/system/name' = OBJECT;");
+        }
+
+        return dir;
+    }
+
+    private static void compile(File dir, File outputDirectory,
+            boolean snapshotPrefixes) throws Exception {
+
+        List<File> path = new LinkedList<File>();
+        path.add(dir);
+
+        Set<Formatter> formatters = new TreeSet<Formatter>(
+                FormatterComparator.getInstance());
+        formatters.add(PanFormatter.getInstance());
+
+        ParameterList parameters = new ParameterList();
+        parameters.append("snapshotPrefixes",
+                Boolean.toString(snapshotPrefixes));
+
+        outputDirectory.mkdirs();
+        CompilerOptions options = new CompilerOptions(null, null, 100, 50,
+                formatters, outputDirectory, path,
+                CompilerOptions.DeprecationWarnings.OFF, null, null, null, 0,
+                parameters);
+
+        List<File> tplfiles = new LinkedList<File>();
+        for (String name : OBJECTS) {
+            tplfiles.add(new File(dir, name + ".pan"));
+        }
+        tplfiles.add(new File(dir, "other.pan"));
+
+        CompilerResults results = Compiler.run(options,
+                new LinkedList<String>(), tplfiles);
+        assertEquals(results.formatErrors(), 0, results.getErrors().size());
+    }
+
+    private static String read(File dir, String name) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, name + ".xml")
+                .toPath()), "UTF-8");
+    }
+
+    private static void assertSameOutput(String test, String second)
+            throws Exception {
+
+        File dir = writeTemplates(test, second);
+        File plain = new File(dir.getParentFile(), "plain");
+        File snapshot = new File(dir.getParentFile(), "snapshot");
+
+        compile(dir, plain, false);
+        compile(dir, snapshot, true);
+
+        for (String name : OBJECTS) {
+            assertEquals(name, read(plain, name), read(snapshot, name));
+        }
+    }
+
+    @Test
+    public void independentPrefixGivesSameOutput() throws Exception {
+        assertSameOutput("independent", "common/independent");
+    }
+
+    @Test
+    public void prefixModifyingGlobalsGivesSameOutput() throws Exception {
+        assertSameOutput("modify", "common/modify");
+    }
+
+    @Test
+    public void prefixReadingObjectGivesSameOutput() throws Exception {
+        assertSameOutput("object", "common/object");
+    }
+
+    @Test
+    public void prefixReadingOtherObjectGivesSameOutput() throws Exception {
+        assertSameOutput("other", "common/other");
+    }
+
+}
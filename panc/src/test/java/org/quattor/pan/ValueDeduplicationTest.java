@@ -0,0 +1,139 @@
+/*
+ Copyright (c) 2007 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+
+package org.quattor.pan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.output.Formatter;
+import org.quattor.pan.output.FormatterComparator;
+import org.quattor.pan.output.PanFormatter;
+import org.quattor.pan.repository.ParameterList;
+import org.quattor.pan.tasks.BuildResult;
+import org.quattor.pan.utils.Term;
+import org.quattor.pan.utils.TermFactory;
+
+/**
+ * Builds two objects with identical subtrees with value deduplication enabled
+ * and checks that the roots kept in the build cache share them.
+ */
+public class ValueDeduplicationTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            ValueDeduplicationTest.class.getSimpleName());
+
+    private final static String[] OBJECTS = { "node1", "node2" };
+
+    private static void write(File dir, String name, String... lines)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        File file = new File(dir, name + ".pan");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+    }
+
+    private static Element get(Element root, String... keys) throws Exception {
+        Term[] terms = new Term[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            terms[i] = TermFactory.create(keys[i]);
+        }
+        return root.rget(terms, 0, false, false);
+    }
+
+    @Test
+    public void cachedRootsShareSubtrees() throws Exception {
+
+        File dir = new File(tmpdir, "templates");
+        for (String name : OBJECTS) {
+            write(dir, name,
+                    "object template " + name + ";",
+                    "'/system/hostname' = OBJECT;",
+                    "'/software/packages' = dict('kernel', dict('version', '2.6.32'));",
+                    "'/software/components/ntpd/servers' = list('ntp1', 'ntp2');");
+        }
+
+        List<File> path = new LinkedList<File>();
+        path.add(dir);
+
+        Set<Formatter> formatters = new TreeSet<Formatter>(
+                FormatterComparator.getInstance());
+        formatters.add(PanFormatter.getInstance());
+
+        ParameterList parameters = new ParameterList();
+        parameters.append("deduplicateValues", "true");
+
+        File outputDirectory = new File(tmpdir, "output");
+        outputDirectory.mkdirs();
+        CompilerOptions options = new CompilerOptions(null, null, 100, 50,
+                formatters, outputDirectory, path,
+                CompilerOptions.DeprecationWarnings.OFF, null, null, null, 0,
+                parameters);
+
+        List<File> tplfiles = new LinkedList<File>();
+        for (String name : OBJECTS) {
+            tplfiles.add(new File(dir, name + ".pan"));
+        }
+
+        Compiler compiler = new Compiler(options, new LinkedList<String>(),
+                tplfiles);
+        CompilerResults results = compiler.process();
+        assertEquals(results.formatErrors(), 0, results.getErrors().size());
+
+        BuildResult first = compiler.getBuildCache().getFinishedResult("node1");
+        BuildResult second = compiler.getBuildCache()
+                .getFinishedResult("node2");
+
+        // Only the shared roots are kept; the build contexts are gone.
+        assertNull(first.getObjectContext());
+        assertNull(second.getObjectContext());
+
+        // Protected views are created on each access, so compare the
+        // underlying contents.
+        Resource packages1 = (Resource) get(first.getRoot(), "software",
+                "packages");
+        Resource packages2 = (Resource) get(second.getRoot(), "software",
+                "packages");
+        assertTrue(packages1.getFrozenIdentity() == packages2
+                .getFrozenIdentity());
+
+        Resource servers1 = (Resource) get(first.getRoot(), "software",
+                "components", "ntpd", "servers");
+        Resource servers2 = (Resource) get(second.getRoot(), "software",
+                "components", "ntpd", "servers");
+        assertTrue(servers1.getFrozenIdentity() == servers2
+                .getFrozenIdentity());
+    }
+
+}
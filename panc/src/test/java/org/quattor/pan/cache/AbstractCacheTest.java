@@ -0,0 +1,109 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.tasks.BuildResult;
+import org.quattor.pan.tasks.Task;
+import org.quattor.pan.tasks.TaskResult;
+
+public class AbstractCacheTest {
+
+    private static Compiler createCompiler() {
+        CompilerOptions options = CompilerOptions
+                .createCheckSyntaxOptions(CompilerOptions.DeprecationWarnings.OFF);
+        return new Compiler(options, null, null);
+    }
+
+    /**
+     * Cache which creates tasks returning a fixed result and which summarizes
+     * results by creating a new result with the same root.
+     */
+    private static class TestCache extends AbstractCache<BuildResult> {
+
+        public TestCache(Compiler compiler) {
+            super(compiler, 10);
+        }
+
+        @Override
+        protected Task<BuildResult> createTask(String key) {
+            return new Task<BuildResult>(TaskResult.ResultType.BUILD, key,
+                    new Callable<BuildResult>() {
+                        public BuildResult call() {
+                            return new BuildResult(new HashResource(), null);
+                        }
+                    }) {
+            };
+        }
+
+        @Override
+        protected BuildResult summarize(BuildResult result) {
+            return new BuildResult(result.getRoot(), null);
+        }
+
+        @Override
+        protected TaskResult.ResultType getExecutorQueueType() {
+            return TaskResult.ResultType.BUILD;
+        }
+    }
+
+    @Test
+    public void compactReplacesFinishedResult() throws Exception {
+        TestCache cache = new TestCache(createCompiler());
+
+        BuildResult result = cache.waitForResult("alpha");
+        cache.compact("alpha");
+        BuildResult summary = cache.retrieve("alpha").get();
+
+        assertTrue(result != summary);
+        assertSame(result.getRoot(), summary.getRoot());
+    }
+
+    @Test
+    public void removeDropsFinishedEntry() {
+        TestCache cache = new TestCache(createCompiler());
+
+        cache.waitForResult("alpha");
+        assertNotNull(cache.retrieve("alpha"));
+
+        cache.remove("alpha");
+        assertNull(cache.retrieve("alpha"));
+    }
+
+    @Test
+    public void finishedResultDoesNotCreateTask() {
+        TestCache cache = new TestCache(createCompiler());
+
+        assertNull(cache.getFinishedResult("alpha"));
+        assertNull(cache.retrieve("alpha"));
+
+        BuildResult result = cache.waitForResult("alpha");
+        assertSame(result, cache.getFinishedResult("alpha"));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.quattor.pan.Compiler;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.exceptions.EvaluationException;
+
+public class BuildCacheTest {
+
+    private static BuildCache createCache() {
+        CompilerOptions options = CompilerOptions
+                .createCheckSyntaxOptions(CompilerOptions.DeprecationWarnings.OFF);
+        return new BuildCache(new Compiler(options, null, null));
+    }
+
+    @Test
+    public void chainIsAccepted() {
+        BuildCache cache = createCache();
+        cache.setDependency("a", "b");
+        cache.setDependency("b", "c");
+        cache.setDependency("c", "d");
+    }
+
+    @Test
+    public void cycleIsDetected() {
+        BuildCache cache = createCache();
+        cache.setDependency("a", "b");
+        cache.setDependency("b", "c");
+        try {
+            cache.setDependency("c", "a");
+            fail("cycle not detected");
+        } catch (EvaluationException ee) {
+            assertTrue(ee.getMessage().contains("c -> a -> b -> c"));
+        }
+    }
+
+    @Test
+    public void previousDependencyIsRestored() {
+        BuildCache cache = createCache();
+        cache.setDependency("a", "b");
+        cache.setDependency("c", "d");
+        try {
+            cache.setDependency("b", "a");
+            fail("cycle not detected");
+        } catch (EvaluationException consumed) {
+        }
+
+        // The rejected dependency must not remain in the map, otherwise this
+        // would be reported as a cycle.
+        cache.setDependency("c", "b");
+    }
+
+    @Test
+    public void concurrentCycleIsDetected() throws Exception {
+
+        for (int i = 0; i < 100; i++) {
+
+            final BuildCache cache = createCache();
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            final AtomicInteger failures = new AtomicInteger(0);
+
+            Thread[] threads = new Thread[2];
+            for (int j = 0; j < 2; j++) {
+                final String from = (j == 0) ? "a" : "b";
+                final String to = (j == 0) ? "b" : "a";
+                threads[j] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            cache.setDependency(from, to);
+                        } catch (EvaluationException ee) {
+                            failures.incrementAndGet();
+                        } catch (Exception consumed) {
+                        }
+                    }
+                };
+                threads[j].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            assertTrue(failures.get() >= 1);
+        }
+    }
+
+}
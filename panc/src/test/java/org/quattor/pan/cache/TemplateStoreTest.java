@@ -0,0 +1,117 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.quattor.pan.CompilerOptions;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.Template;
+
+public class TemplateStoreTest {
+
+    @Rule
+    public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private TemplateStore createStore(CompilerOptions.DeprecationWarnings warnings) {
+        CompilerOptions options = CompilerOptions
+                .createCheckSyntaxOptions(warnings);
+        return new TemplateStore(tmpDir.getRoot(), options);
+    }
+
+    @Test
+    public void checkDigestDependsOnContents() {
+        byte[] d1 = TemplateStore.digest("object template alpha;".getBytes());
+        byte[] d2 = TemplateStore.digest("object template beta;".getBytes());
+        assertFalse(Arrays.equals(d1, d2));
+        assertTrue(Arrays.equals(d1,
+                TemplateStore.digest("object template alpha;".getBytes())));
+    }
+
+    @Test
+    public void missingEntryReturnsNull() {
+        TemplateStore store = createStore(CompilerOptions.DeprecationWarnings.OFF);
+        File tplfile = new File(tmpDir.getRoot(), "alpha.pan");
+        assertNull(store.load(tplfile, TemplateStore.digest(new byte[0])));
+    }
+
+    @Test
+    public void storedTemplateIsReloaded() throws SyntaxException {
+        TemplateStore store = createStore(CompilerOptions.DeprecationWarnings.OFF);
+        File tplfile = new File(tmpDir.getRoot(), "alpha.pan");
+        byte[] digest = TemplateStore.digest("object template alpha;".getBytes());
+
+        store.store(tplfile, digest, new Template("alpha"));
+
+        Template template = store.load(tplfile, digest);
+        assertNotNull(template);
+        assertEquals("alpha", template.name);
+        assertEquals(Template.TemplateType.OBJECT, template.type);
+    }
+
+    @Test
+    public void changedContentsAreNotReused() throws SyntaxException {
+        TemplateStore store = createStore(CompilerOptions.DeprecationWarnings.OFF);
+        File tplfile = new File(tmpDir.getRoot(), "alpha.pan");
+        byte[] digest = TemplateStore.digest("object template alpha;".getBytes());
+
+        store.store(tplfile, digest, new Template("alpha"));
+
+        byte[] newDigest = TemplateStore.digest("object template alpha;\n"
+                .getBytes());
+        assertNull(store.load(tplfile, newDigest));
+    }
+
+    @Test
+    public void changedOptionsAreNotReused() throws SyntaxException {
+        File tplfile = new File(tmpDir.getRoot(), "alpha.pan");
+        byte[] digest = TemplateStore.digest("object template alpha;".getBytes());
+
+        createStore(CompilerOptions.DeprecationWarnings.OFF).store(tplfile,
+                digest, new Template("alpha"));
+
+        TemplateStore store = createStore(CompilerOptions.DeprecationWarnings.FATAL);
+        assertNull(store.load(tplfile, digest));
+    }
+
+    @Test
+    public void corruptEntryIsIgnored() throws Exception {
+        TemplateStore store = createStore(CompilerOptions.DeprecationWarnings.OFF);
+        File tplfile = new File(tmpDir.getRoot(), "alpha.pan");
+        byte[] digest = TemplateStore.digest(new byte[0]);
+
+        File entry = store.entryFile(tplfile);
+        FileOutputStream os = new FileOutputStream(entry);
+        os.write(new byte[] { 1, 2, 3 });
+        os.close();
+
+        assertNull(store.load(tplfile, digest));
+    }
+
+}
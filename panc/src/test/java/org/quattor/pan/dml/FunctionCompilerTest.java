@@ -0,0 +1,130 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.ListResource;
+import org.quattor.pan.dml.data.LongProperty;
+import org.quattor.pan.dml.operators.Add;
+import org.quattor.pan.dml.operators.Assign;
+import org.quattor.pan.dml.operators.SetValue;
+import org.quattor.pan.dml.operators.SimpleVariable;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.CompileTimeContext;
+import org.quattor.pan.ttemplate.Context;
+import org.quattor.pan.ttemplate.LocalVariableMap;
+
+public class FunctionCompilerTest {
+
+	private static Operation variable(String name) {
+		return new SimpleVariable(null, name, false);
+	}
+
+	private static Operation assign(String name, Operation value)
+			throws SyntaxException {
+		return new Assign(null, value, SetValue.getInstance(null, name));
+	}
+
+	// x = 1; x = x + ARGC; y = x; y;
+	private static DML createBody() throws SyntaxException {
+		return DML.getUnoptimizedInstance(null,
+				assign("x", LongProperty.getInstance(1L)),
+				assign("x", Add.newOperation(null, variable("x"),
+						variable("ARGC"))), assign("y", variable("x")),
+				variable("y"));
+	}
+
+	private static ListResource createArgv() {
+		ListResource argv = new ListResource();
+		argv.append(LongProperty.getInstance(10L));
+		argv.append(LongProperty.getInstance(20L));
+		return argv;
+	}
+
+	@Test
+	public void missingBodyIsUnchanged() {
+		assertNull(FunctionCompiler.compile(null));
+	}
+
+	@Test
+	public void localVariablesUseSlots() throws SyntaxException {
+
+		DML body = createBody();
+		Operation compiled = FunctionCompiler.compile(body);
+		assertTrue(compiled instanceof CompiledFunction);
+
+		LocalVariableMap.Layout layout = ((CompiledFunction) compiled)
+				.getLayout();
+		assertEquals(4, layout.size());
+		assertTrue(layout.indexOf("ARGV") >= 0);
+		assertTrue(layout.indexOf("ARGC") >= 0);
+		assertTrue(layout.indexOf("x") >= 0);
+		assertTrue(layout.indexOf("y") >= 0);
+
+		// The original body is not modified.
+		assertTrue(body.ops[3].getClass() == SimpleVariable.class);
+
+		Context context = new CompileTimeContext();
+		context.createLocalVariableMap(createArgv(), layout);
+		Element result = compiled.execute(context);
+		assertEquals(LongProperty.getInstance(3L), result);
+
+		// The slots are also visible by name.
+		LocalVariableMap frame = context.getLocalVariableMap();
+		assertEquals(LongProperty.getInstance(3L), frame.get("x"));
+		assertEquals(LongProperty.getInstance(3L),
+				frame.get(layout.indexOf("y")));
+		assertNull(frame.get("z"));
+	}
+
+	@Test
+	public void compiledBodyRunsWithoutSlots() throws SyntaxException {
+
+		Operation compiled = FunctionCompiler.compile(createBody());
+
+		// A local variable map without the layout falls back to the lookup
+		// of the variables by name.
+		Context context = new CompileTimeContext();
+		context.createLocalVariableMap(createArgv());
+		Element result = compiled.execute(context);
+		assertEquals(LongProperty.getInstance(3L), result);
+		assertEquals(LongProperty.getInstance(3L), context.getLocalVariable("y"));
+	}
+
+	@Test
+	public void compiledAndInterpretedResultsAgree() throws SyntaxException {
+
+		DML body = createBody();
+
+		Context context = new CompileTimeContext();
+		context.createLocalVariableMap(createArgv());
+		Element expected = body.execute(context);
+
+		CompiledFunction compiled = (CompiledFunction) FunctionCompiler
+				.compile(body);
+		context = new CompileTimeContext();
+		context.createLocalVariableMap(createArgv(), compiled.getLayout());
+		assertEquals(expected, compiled.execute(context));
+	}
+
+}
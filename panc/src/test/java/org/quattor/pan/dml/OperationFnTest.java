@@ -0,0 +1,54 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.LongProperty;
+import org.quattor.pan.exceptions.CompilerError;
+import org.quattor.pan.ttemplate.CompileTimeContext;
+
+public class OperationFnTest {
+
+	@Test
+	public void invokeExecutesOperation() {
+		LongProperty value = LongProperty.getInstance(42L);
+		OperationFn fn = new OperationFn(value);
+		assertTrue(fn.getOperation() == value);
+		assertTrue(fn.invoke(new CompileTimeContext()) == value);
+	}
+
+	@Test(expected = CompilerError.class)
+	public void invokeWithoutContextFails() {
+		new OperationFn(LongProperty.getInstance(42L)).invoke("not a context");
+	}
+
+	@Test
+	public void metadataIsKeptByAdapter() {
+		LongProperty value = LongProperty.getInstance(42L);
+		OperationFn fn = new OperationFn(value);
+		assertNull(fn.meta());
+
+		OperationFn other = (OperationFn) fn.withMeta(null);
+		assertTrue(other != fn);
+		assertTrue(other.getOperation() == value);
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.utils.Term;
+import org.quattor.pan.utils.TermFactory;
+
+public class PersistentResourceTest {
+
+	private static Term[] path(Object... terms) {
+		Term[] result = new Term[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			if (terms[i] instanceof String) {
+				result[i] = TermFactory.create((String) terms[i]);
+			} else {
+				result[i] = TermFactory.create(((Number) terms[i]).longValue());
+			}
+		}
+		return result;
+	}
+
+	private static Element rget(Resource resource, Term[] terms)
+			throws InvalidTermException {
+		return resource.rget(terms, 0, false, false);
+	}
+
+	private static List<String> keys(Resource resource) {
+		List<String> keys = new ArrayList<String>();
+		for (Resource.Entry entry : resource) {
+			keys.add(entry.getKey().toString());
+		}
+		return keys;
+	}
+
+	@Test
+	public void testKeysAreSorted() throws InvalidTermException {
+
+		HashResource dict = new HashResource(true);
+		for (String key : new String[] { "delta", "alpha", "charlie", "bravo" }) {
+			dict.put(TermFactory.create(key), StringProperty.getInstance(key));
+		}
+		dict.put(TermFactory.create("charlie"), Null.getInstance());
+
+		List<String> expected = new ArrayList<String>();
+		expected.add("alpha");
+		expected.add("bravo");
+		expected.add("delta");
+		assertEquals(expected, keys(dict));
+		assertEquals(3, dict.size());
+	}
+
+	@Test
+	public void testDuplicateIsIndependent() throws InvalidTermException {
+
+		HashResource dict = new HashResource(true);
+		dict.rput(path("a", "b"), 0, LongProperty.getInstance(1L));
+		dict.rput(path("a", "c"), 0, LongProperty.getInstance(2L));
+
+		HashResource copy = (HashResource) dict.duplicate();
+
+		// Modifying a nested child of either resource must not be visible in
+		// the other.
+		copy.rput(path("a", "b"), 0, LongProperty.getInstance(10L));
+		dict.rput(path("a", "c"), 0, LongProperty.getInstance(20L));
+
+		assertEquals(LongProperty.getInstance(1L), rget(dict, path("a", "b")));
+		assertEquals(LongProperty.getInstance(20L), rget(dict, path("a", "c")));
+		assertEquals(LongProperty.getInstance(10L), rget(copy, path("a", "b")));
+		assertEquals(LongProperty.getInstance(2L), rget(copy, path("a", "c")));
+	}
+
+	@Test
+	public void testOwnedChildrenAreModifiedInPlace()
+			throws InvalidTermException {
+
+		HashResource dict = new HashResource(true);
+		dict.rput(path("a", "b"), 0, LongProperty.getInstance(1L));
+		Element child = dict.get(TermFactory.create("a"));
+		assertFalse(child.isProtected());
+
+		dict.duplicate();
+
+		// After a copy, the children are shared and must be protected.
+		child = dict.get(TermFactory.create("a"));
+		assertTrue(child.isProtected());
+
+		// Writing through the path replaces the shared child once.
+		dict.rput(path("a", "b"), 0, LongProperty.getInstance(2L));
+		child = dict.get(TermFactory.create("a"));
+		assertFalse(child.isProtected());
+	}
+
+	@Test
+	public void testWritableCopy() throws InvalidTermException {
+
+		HashResource dict = new HashResource(true);
+		dict.rput(path("a", 0), 0, LongProperty.getInstance(1L));
+		HashResource copy = (HashResource) dict.protect().writableCopy();
+
+		copy.rput(path("a", 0), 0, LongProperty.getInstance(2L));
+		copy.put(TermFactory.create("b"), LongProperty.getInstance(3L));
+
+		assertEquals(LongProperty.getInstance(1L), rget(dict, path("a", 0)));
+		assertNull(dict.get(TermFactory.create("b")));
+		assertEquals(LongProperty.getInstance(2L), rget(copy, path("a", 0)));
+	}
+
+	@Test
+	public void testEqualityAcrossStorage() throws InvalidTermException {
+
+		HashResource persistent = new HashResource(true);
+		persistent.rput(path("a", 1), 0, LongProperty.getInstance(1L));
+
+		HashResource eager = new HashResource();
+		eager.rput(path("a", 1), 0, LongProperty.getInstance(1L));
+
+		assertTrue(persistent.equals(eager));
+		assertTrue(eager.equals(persistent));
+		assertEquals(eager.hashCode(), persistent.hashCode());
+
+		// Copies and created children keep the storage of their parent.
+		assertTrue(eager.duplicate().equals(persistent));
+		assertFalse(((Resource) eager.duplicate()).isPersistent());
+		assertTrue(((Resource) persistent.duplicate()).isPersistent());
+		assertTrue(((Resource) persistent.get(TermFactory.create("a")))
+				.isPersistent());
+		assertFalse(((Resource) eager.get(TermFactory.create("a")))
+				.isPersistent());
+	}
+
+	@Test
+	public void testListOperations() throws InvalidTermException {
+
+		ListResource list = new ListResource(true);
+		list.append(LongProperty.getInstance(1L));
+		list.append(LongProperty.getInstance(2L));
+		list.prepend(LongProperty.getInstance(0L));
+
+		// Padding with undef.
+		list.put(TermFactory.create(5L), LongProperty.getInstance(5L));
+		assertEquals(6, list.size());
+		assertTrue(list.get(TermFactory.create(4L)) instanceof Undef);
+
+		// Removing the last and a middle element.
+		list.put(TermFactory.create(5L), Null.getInstance());
+		list.put(TermFactory.create(1L), Null.getInstance());
+		assertEquals(4, list.size());
+		assertEquals(LongProperty.getInstance(0L),
+				list.get(TermFactory.create(0L)));
+		assertEquals(LongProperty.getInstance(2L),
+				list.get(TermFactory.create(1L)));
+
+		// Removing a nonexistent element is ignored.
+		list.put(TermFactory.create(10L), Null.getInstance());
+		assertEquals(4, list.size());
+
+		ListResource copy = (ListResource) list.duplicate();
+		copy.put(TermFactory.create(0L), LongProperty.getInstance(100L));
+		assertEquals(LongProperty.getInstance(0L),
+				list.get(TermFactory.create(0L)));
+		assertEquals(LongProperty.getInstance(100L),
+				copy.get(TermFactory.create(0L)));
+	}
+
+	@Test
+	public void testNestedListCopies() throws InvalidTermException {
+
+		ListResource list = new ListResource(true);
+		list.rput(path(0, "a"), 0, LongProperty.getInstance(1L));
+
+		ListResource copy = (ListResource) list.duplicate();
+		copy.rput(path(0, "a"), 0, LongProperty.getInstance(2L));
+
+		assertEquals(LongProperty.getInstance(1L), rget(list, path(0, "a")));
+		assertEquals(LongProperty.getInstance(2L), rget(copy, path(0, "a")));
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.dml.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.utils.Term;
+import org.quattor.pan.utils.TermFactory;
+
+public class ValueInternerTest {
+
+	private static Term[] path(String... keys) {
+		Term[] terms = new Term[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			terms[i] = TermFactory.create(keys[i]);
+		}
+		return terms;
+	}
+
+	private static HashResource createTree(String hostname)
+			throws InvalidTermException {
+
+		HashResource root = new HashResource();
+		root.rput(path("system", "network", "hostname"), 0,
+				StringProperty.getInstance(hostname));
+		root.rput(path("software", "packages", "kernel", "version"), 0,
+				StringProperty.getInstance("2.6.32"));
+		root.rput(path("software", "packages", "kernel", "size"), 0,
+				LongProperty.getInstance(1024L));
+
+		ListResource servers = new ListResource();
+		servers.append(StringProperty.getInstance("ntp1.example.org"));
+		servers.append(StringProperty.getInstance("ntp2.example.org"));
+		root.rput(path("software", "components", "ntpd"), 0, servers);
+
+		return root;
+	}
+
+	private static Element get(Element root, String... keys)
+			throws InvalidTermException {
+		return root.rget(path(keys), 0, false, false);
+	}
+
+	@Test
+	public void propertiesAreShared() throws InvalidTermException {
+
+		ValueInterner interner = new ValueInterner();
+
+		HashResource tree = new HashResource();
+		tree.put(TermFactory.create("a"), StringProperty.getInstance("enabled"));
+		tree.put(TermFactory.create("b"), StringProperty.getInstance("enabled"));
+		tree.put(TermFactory.create("c"), LongProperty.getInstance(1L));
+		tree.put(TermFactory.create("d"), DoubleProperty.getInstance(1.0));
+
+		Element shared = interner.internTree(tree);
+		assertTrue(get(shared, "a") == get(shared, "b"));
+
+		// Different types with the same printed value must not be mixed.
+		assertFalse((Object) get(shared, "c") == get(shared, "d"));
+
+		assertEquals(4, interner.getPropertyLookups());
+		assertEquals(1, interner.getPropertyHits());
+	}
+
+	@Test
+	public void identicalSubtreesAreShared() throws InvalidTermException {
+
+		HashResource tree1 = createTree("node1.example.org");
+		HashResource tree2 = createTree("node2.example.org");
+
+		ValueInterner interner = new ValueInterner();
+		Element shared1 = interner.internTree(tree1);
+		Element shared2 = interner.internTree(tree2);
+
+		// The converted trees are equal to, but distinct from, the originals.
+		assertTrue(shared1 != tree1);
+		assertEquals(tree1, shared1);
+		assertEquals(tree2, shared2);
+
+		// The common subtrees are shared; the differing ones are not.
+		assertTrue(get(shared1, "software") == get(shared2, "software"));
+		assertFalse(get(shared1, "system") == get(shared2, "system"));
+		assertTrue(get(shared1, "software", "components", "ntpd") == get(
+				shared2, "software", "components", "ntpd"));
+
+		assertTrue(interner.getResourceLookups() > 0);
+		assertTrue(interner.getResourceHits() > 0);
+	}
+
+	@Test
+	public void identicalTreesAreShared() throws InvalidTermException {
+		ValueInterner interner = new ValueInterner();
+		HashResource tree1 = createTree("node1.example.org");
+		HashResource tree2 = createTree("node1.example.org");
+		assertTrue(interner.internTree(tree1) == interner.internTree(tree2));
+	}
+
+	@Test
+	public void interningIsLimitedToOneInterner() throws InvalidTermException {
+
+		ValueInterner interner1 = new ValueInterner();
+		ValueInterner interner2 = new ValueInterner();
+
+		Element shared1 = interner1.internTree(createTree("node1.example.org"));
+		Element shared2 = interner2.internTree(createTree("node1.example.org"));
+		assertFalse(shared1 == shared2);
+
+		// Each interner only counts its own lookups.
+		assertEquals(0, interner2.getResourceHits());
+		assertEquals(interner1.getResourceLookups(), interner2
+				.getResourceLookups());
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.BooleanProperty;
+import org.quattor.pan.dml.data.DoubleProperty;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.dml.data.ListResource;
+import org.quattor.pan.dml.data.LongProperty;
+import org.quattor.pan.dml.data.Null;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.dml.data.Undef;
+import org.quattor.pan.exceptions.EvaluationException;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.utils.TermFactory;
+
+public class JsonStreamWriterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static String toJson(Element root, boolean pretty)
+			throws Exception {
+		StringWriter sw = new StringWriter();
+		MultiFormatWriter.walk(root, new JsonStreamWriter(sw, pretty));
+		return sw.toString();
+	}
+
+	private static byte[] toJsonBytes(Element root, boolean pretty)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		MultiFormatWriter.walk(root, new JsonStreamWriter(os, pretty));
+		return os.toByteArray();
+	}
+
+	private static HashResource createTree() throws InvalidTermException {
+
+		HashResource root = new HashResource();
+		root.put(TermFactory.create("a"), LongProperty.getInstance(-1L));
+		root.put(TermFactory.create("b"), DoubleProperty.getInstance(0.5));
+		root.put(TermFactory.create("c"), BooleanProperty.FALSE);
+		root.put(TermFactory.create("d"), Null.getInstance());
+
+		ListResource list = new ListResource();
+		list.append(StringProperty.getInstance("x"));
+		list.append(Null.getInstance());
+		list.append(new HashResource());
+		list.append(new ListResource());
+		root.put(TermFactory.create("e"), list);
+
+		return root;
+	}
+
+	@Test
+	public void checkPrettyOutput() throws Exception {
+		String expected = "{\n  \"a\": -1,\n  \"b\": 0.5,\n  \"c\": false,\n"
+				+ "  \"e\": [\n    \"x\",\n    null,\n    {},\n    []\n  ]\n}";
+		assertEquals(expected, toJson(createTree(), true));
+	}
+
+	@Test
+	public void checkCompactOutput() throws Exception {
+		String expected = "{\"a\":-1,\"b\":0.5,\"c\":false,\"e\":[\"x\",null,{},[]]}";
+		assertEquals(expected, toJson(createTree(), false));
+	}
+
+	@Test
+	public void checkEscapes() throws Exception {
+		Element value = StringProperty
+				.getInstance("\"\\/\t\b\n\r\f\u0001<>&='\u2028\u2029\u00e9");
+		String expected = "\"\\\"\\\\/\\t\\b\\n\\r\\f\\u0001"
+				+ "\\u003c\\u003e\\u0026\\u003d\\u0027\\u2028\\u2029\u00e9\"";
+		assertEquals(expected, toJson(value, false));
+	}
+
+	@Test
+	public void checkUtf8Encoding() throws Exception {
+
+		// Long enough to cross the internal buffer boundaries at several
+		// offsets, including in the middle of surrogate pairs.
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 30000; i++) {
+			switch (i % 5) {
+			case 0:
+				sb.append("\ud83d\ude00");
+				break;
+			case 1:
+				sb.append('\u00e9');
+				break;
+			case 2:
+				sb.append('\u20ac');
+				break;
+			case 3:
+				sb.append('\ud800');
+				break;
+			default:
+				sb.append('a');
+				break;
+			}
+		}
+		ListResource list = new ListResource();
+		list.append(StringProperty.getInstance(sb.toString()));
+		list.append(StringProperty.getInstance("a" + sb.toString()));
+
+		String json = toJson(list, true);
+		assertArrayEquals(json.getBytes(UTF8), toJsonBytes(list, true));
+	}
+
+	@Test(expected = EvaluationException.class)
+	public void undefIsInvalid() throws Exception {
+		toJson(Undef.VALUE, true);
+	}
+
+}
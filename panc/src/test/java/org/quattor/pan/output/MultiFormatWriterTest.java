@@ -0,0 +1,94 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.BooleanProperty;
+import org.quattor.pan.dml.data.DoubleProperty;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.dml.data.ListResource;
+import org.quattor.pan.dml.data.LongProperty;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.tasks.FinalResult;
+import org.quattor.pan.tasks.Valid2Result;
+import org.quattor.pan.utils.TermFactory;
+
+public class MultiFormatWriterTest {
+
+	private static Formatter[] formatters = new Formatter[] {
+			PanFormatter.getInstance(), JsonFormatter.getInstance(),
+			DotFormatter.getInstance(), TxtFormatter.getInstance(),
+			DepFormatter.getInstance(), NullFormatter.getInstance() };
+
+	private static FinalResult createResult() throws InvalidTermException {
+
+		HashResource root = new HashResource();
+		root.put(TermFactory.create("a"), StringProperty.getInstance("<&>"));
+		root.put(TermFactory.create("b"), StringProperty.getInstance("\u0000"));
+		root.put(TermFactory.create("c"), BooleanProperty.TRUE);
+		root.put(TermFactory.create("d"), DoubleProperty.getInstance(1.5));
+
+		ListResource list = new ListResource();
+		list.append(LongProperty.getInstance(1L));
+		list.append(new HashResource());
+		list.append(new ListResource());
+		root.put(TermFactory.create("e"), list);
+
+		Valid2Result v2result = new Valid2Result("dummy", root.protect(),
+				null, null);
+		return new FinalResult(null, v2result);
+	}
+
+	@Test
+	public void checkIdenticalOutput() throws Exception {
+
+		FinalResult result = createResult();
+
+		File single = Files.createTempDirectory("single").toFile();
+		File multi = Files.createTempDirectory("multi").toFile();
+
+		MultiFormatWriter writer = new MultiFormatWriter();
+		for (Formatter formatter : formatters) {
+			assertTrue(MultiFormatWriter.supports(formatter));
+			formatter.write(result, new File(single, formatter.getFormatKey())
+					.toURI());
+			writer.add(formatter, new File(multi, formatter.getFormatKey())
+					.toURI());
+		}
+		writer.write(result);
+
+		for (Formatter formatter : formatters) {
+			String name = formatter.getFormatKey();
+			assertArrayEquals(readFile(new File(single, name)),
+					readFile(new File(multi, name)));
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		return Files.readAllBytes(file.toPath());
+	}
+
+}
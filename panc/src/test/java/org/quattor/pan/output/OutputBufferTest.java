@@ -0,0 +1,56 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+public class OutputBufferTest {
+
+	private static String encode(String s) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		OutputBuffer out = new OutputBuffer(os);
+		out.write(s);
+		out.flush();
+		return os.toString("UTF-8");
+	}
+
+	@Test
+	public void unpairedHighSurrogateAtEndIsReplaced() throws Exception {
+		assertEquals("ab?", encode("ab\ud83d"));
+	}
+
+	@Test
+	public void surrogatePairAcrossBlocksIsKept() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 8191; i++) {
+			sb.append('a');
+		}
+		sb.append("\ud83d\ude00");
+		assertEquals(sb.toString(), encode(sb.toString()));
+
+		// The high surrogate is the last character of a full block.
+		sb.setLength(8191);
+		sb.append('\ud83d');
+		assertEquals(sb.substring(0, 8191) + "?", encode(sb.toString()));
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.output;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.BooleanProperty;
+import org.quattor.pan.dml.data.DoubleProperty;
+import org.quattor.pan.dml.data.Element;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.dml.data.ListResource;
+import org.quattor.pan.dml.data.LongProperty;
+import org.quattor.pan.dml.data.Null;
+import org.quattor.pan.dml.data.Property;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.utils.Base64;
+import org.quattor.pan.utils.TermFactory;
+import org.quattor.pan.utils.XmlUtils;
+import org.xml.sax.helpers.AttributesImpl;
+
+public class PanStreamWriterTest {
+
+	private static final String NL = System.getProperty("line.separator");
+
+	private static String toXml(Element root) throws Exception {
+		StringWriter sw = new StringWriter();
+		MultiFormatWriter.walk(root, new PanStreamWriter(sw));
+		return sw.toString();
+	}
+
+	/**
+	 * Writes the tree by feeding SAX events through the JDK's identity
+	 * transformer, as was done by earlier versions of the pan formatter.
+	 */
+	private static String toXmlWithTransformer(Element root) throws Exception {
+		StringWriter sw = new StringWriter();
+		TransformerHandler handler = XmlUtils.getSaxTransformerHandler();
+		handler.setResult(new StreamResult(sw));
+		handler.startDocument();
+		AttributesImpl atts = new AttributesImpl();
+		atts.addAttribute("", null, "format", "CDATA", "pan");
+		atts.addAttribute("", null, "name", "CDATA", "profile");
+		writeWithTransformer(handler, atts, root);
+		handler.endDocument();
+		return sw.toString();
+	}
+
+	private static void writeWithTransformer(TransformerHandler handler,
+			AttributesImpl atts, Element node) throws Exception {
+
+		String tagName = node.getTypeAsString();
+
+		if (node instanceof Resource) {
+			handler.startElement("", null, tagName, atts);
+			for (Resource.Entry entry : (Resource) node) {
+				AttributesImpl childAtts = new AttributesImpl();
+				if (entry.getKey() instanceof StringProperty) {
+					childAtts.addAttribute("", null, "name", "CDATA", entry
+							.getKey().toString());
+				}
+				writeWithTransformer(handler, childAtts, entry.getValue());
+			}
+			handler.endElement("", null, tagName);
+			return;
+		}
+
+		String contents = null;
+		if (node instanceof StringProperty) {
+			contents = node.toString();
+			if (!XMLFormatterUtils.isValidXMLString(contents)) {
+				contents = Base64.encodeBytes(contents.getBytes(Charset
+						.forName("UTF-8")));
+				atts.addAttribute("", null, "encoding", "CDATA", "base64");
+			}
+		} else if (node instanceof Property) {
+			contents = node.toString();
+		}
+
+		handler.startElement("", null, tagName, atts);
+		if (contents != null) {
+			handler.characters(contents.toCharArray(), 0, contents.length());
+		}
+		handler.endElement("", null, tagName);
+	}
+
+	private static HashResource createTree() throws InvalidTermException {
+
+		HashResource root = new HashResource();
+		root.put(TermFactory.create("a"), LongProperty.getInstance(-1L));
+		root.put(TermFactory.create("b"), DoubleProperty.getInstance(0.5));
+		root.put(TermFactory.create("c"), BooleanProperty.TRUE);
+		root.put(TermFactory.create("d"), StringProperty.getInstance(""));
+
+		ListResource list = new ListResource();
+		list.append(StringProperty.getInstance("x"));
+		list.append(Null.getInstance());
+		list.append(new HashResource());
+		list.append(new ListResource());
+		root.put(TermFactory.create("e"), list);
+
+		return root;
+	}
+
+	@Test
+	public void checkOutput() throws Exception {
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<nlist format=\"pan\" name=\"profile\">" + NL
+				+ "    <long name=\"a\">-1</long>" + NL
+				+ "    <double name=\"b\">0.5</double>" + NL
+				+ "    <boolean name=\"c\">true</boolean>" + NL
+				+ "    <string name=\"d\"/>" + NL
+				+ "    <list name=\"e\">" + NL
+				+ "        <string>x</string>" + NL
+				+ "        <null/>" + NL
+				+ "        <nlist/>" + NL
+				+ "        <list/>" + NL
+				+ "    </list>" + NL
+				+ "</nlist>" + NL;
+		assertEquals(expected, toXml(createTree()));
+	}
+
+	@Test
+	public void checkEscapes() throws Exception {
+
+		HashResource root = new HashResource();
+		root.put(TermFactory.create("s"), StringProperty
+				.getInstance("<a> & \"b\" 'c'\r\n\t\u0085\u00e9\ud83d\ude00"));
+		root.put(TermFactory.create("invalid"), StringProperty
+				.getInstance("\u0000x"));
+		root.put(StringProperty.getInstance("k\"&<>\t\n\r\ud83d\ude00"),
+				BooleanProperty.FALSE);
+
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<nlist format=\"pan\" name=\"profile\">" + NL
+				+ "    <string name=\"invalid\" encoding=\"base64\">AHg=</string>"
+				+ NL
+				+ "    <boolean name=\"k&quot;&amp;&lt;&gt;&#9;&#10;&#13;&#128512;\">false</boolean>"
+				+ NL + "    <string name=\"s\">&lt;a&gt; &amp; \"b\" 'c'&#13;"
+				+ NL + "\t&#133;\u00e9&#128512;</string>" + NL + "</nlist>"
+				+ NL;
+		assertEquals(expected, toXml(root));
+	}
+
+	@Test
+	public void checkIdenticalToTransformer() throws Exception {
+
+		HashResource root = createTree();
+		root.put(TermFactory.create("s"), StringProperty
+				.getInstance("<a> & \"b\" 'c'\r\n\t\u0085\u00e9\ud83d\ude00"));
+		root.put(TermFactory.create("invalid"), StringProperty
+				.getInstance("\u0000x\ud800"));
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append((i % 3 == 0) ? "\ud83d\ude00" : "a&");
+		}
+		root.put(TermFactory.create("long"),
+				StringProperty.getInstance(sb.toString()));
+		sb.append('\u0001');
+		root.put(TermFactory.create("longinvalid"),
+				StringProperty.getInstance(sb.toString()));
+
+		assertEquals(toXmlWithTransformer(root), toXml(root));
+	}
+
+}
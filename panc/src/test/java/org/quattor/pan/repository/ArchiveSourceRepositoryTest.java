@@ -0,0 +1,127 @@
+package org.quattor.pan.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.quattor.pan.utils.TestUtils.getTmpdir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.quattor.pan.exceptions.ConfigurationException;
+import org.quattor.pan.utils.StringUtils;
+
+public class ArchiveSourceRepositoryTest {
+
+    private final static File tmpdir = new File(getTmpdir(),
+            ArchiveSourceRepositoryTest.class.getSimpleName());
+
+    private final static File archive = new File(tmpdir, "templates.zip");
+
+    @BeforeClass
+    public static void createArchive() throws IOException {
+
+        tmpdir.mkdirs();
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(
+                archive));
+        try {
+            addEntry(zos, "alpha.pan", "template alpha;");
+            addEntry(zos, "site/", null);
+            addEntry(zos, "site/beta.pan", "template beta;");
+            addEntry(zos, "site/data.txt", "some data");
+        } finally {
+            zos.close();
+        }
+    }
+
+    private static void addEntry(ZipOutputStream zos, String name,
+            String contents) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        if (contents != null) {
+            zos.write(contents.getBytes("UTF-8"));
+        }
+        zos.closeEntry();
+    }
+
+    private static SourceRepository createRepository()
+            throws ConfigurationException {
+        ParameterList parameters = new ParameterList();
+        parameters.append("sourceArchive", archive.getAbsolutePath());
+        return SourceRepositoryFactory.create(parameters);
+    }
+
+    private static String read(SourceFile source) throws IOException {
+        Reader reader = source.getReader(null);
+        try {
+            return StringUtils.readCompletely(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void checkCorrectClass() throws ConfigurationException {
+        assertTrue(createRepository() instanceof ArchiveSourceRepositoryImpl);
+    }
+
+    @Test
+    public void templatesAreReadFromArchive() throws Exception {
+
+        SourceRepository repository = createRepository();
+
+        SourceFile source = repository.retrievePanSource("alpha");
+        assertFalse(source.isAbsent());
+        assertEquals(new File(archive, "alpha.pan"), source.getPath());
+        assertEquals("template alpha;", read(source));
+
+        assertTrue(repository.retrievePanSource("beta").isAbsent());
+        assertTrue(repository.retrievePanSource("site").isAbsent());
+    }
+
+    @Test
+    public void loadpathIsUsed() throws Exception {
+
+        SourceRepository repository = createRepository();
+        List<String> loadpath = Arrays.asList("", "site/");
+
+        SourceFile source = repository.retrievePanSource("beta", loadpath);
+        assertEquals(new File(archive, "site" + File.separator + "beta.pan"),
+                source.getPath());
+        assertEquals("template beta;", read(source));
+
+        source = repository.retrieveTxtSource("data.txt", loadpath);
+        assertFalse(source.isDirectory());
+        assertEquals("some data", read(source));
+
+        assertTrue(repository.retrievePanSource("beta",
+                Arrays.asList("../site")).isAbsent());
+    }
+
+    @Test
+    public void contentsAreReadThroughRepository() throws Exception {
+
+        SourceRepository repository = createRepository();
+
+        File path = repository.retrievePanSource("alpha").getPath();
+        assertFalse(path.exists());
+        assertTrue(repository.getInputStream(path) != null);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void missingArchiveIsReported() throws ConfigurationException {
+        ParameterList parameters = new ParameterList();
+        parameters.append("sourceArchive",
+                new File(tmpdir, "missing.zip").getAbsolutePath());
+        SourceRepositoryFactory.create(parameters);
+    }
+
+}
@@ -30,6 +30,9 @@ import static org.quattor.pan.utils.TestUtils.touch;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -128,6 +131,99 @@ public class FileSystemSourceRepositoryTest {
         assertTrue(repository instanceof FileSystemSourceRepositoryImpl);
     }
 
+    @Test
+    public void checkIndexedClass() {
+        ParameterList parameters = getParameters();
+        parameters.append("indexSources", "true");
+
+        SourceRepository repository;
+        repository = FileSystemSourceRepository.getInstance(parameters);
+
+        assertTrue(repository instanceof IndexedFileSystemSourceRepositoryImpl);
+    }
+
+    @Test
+    public void checkIndexedLookupsMatchNormalLookups() throws IOException {
+
+        touch(new File(SourceDirectory.INCLUDE1.asDirectory(tmpdir), "sub"),
+                "11.pan");
+        touch(new File(SourceDirectory.INCLUDE2.asDirectory(tmpdir), "sub"),
+                "1.pan");
+
+        SourceRepository normal = FileSystemSourceRepository
+                .getInstance(getParameters());
+
+        ParameterList parameters = getParameters();
+        parameters.append("indexSources", "true");
+        SourceRepository indexed = FileSystemSourceRepository
+                .getInstance(parameters);
+
+        List<String> loadpath = Arrays.asList("", "sub", "../INCLUDE2");
+
+        for (int i = 0; i <= SourceDirectory.getLimit(); i++) {
+            for (String name : new String[] { Integer.toBinaryString(i),
+                    "sub/" + Integer.toBinaryString(i), "D0", "D1", "missing" }) {
+
+                assertEquals(normal.retrievePanSource(name),
+                        indexed.retrievePanSource(name));
+                assertEquals(normal.retrievePanSource(name, loadpath),
+                        indexed.retrievePanSource(name, loadpath));
+                assertEquals(normal.retrieveTxtSource(name + ".pan"),
+                        indexed.retrieveTxtSource(name + ".pan"));
+            }
+        }
+    }
+
+    @Test
+    public void checkIndexedRefresh() throws IOException {
+
+        ParameterList parameters = getParameters();
+        parameters.append("indexSources", "true");
+        SourceRepository repository = FileSystemSourceRepository
+                .getInstance(parameters);
+
+        File directory = SourceDirectory.INCLUDE2.asDirectory(tmpdir);
+        File created = new File(directory, "created.pan");
+        created.delete();
+
+        assertTrue(repository.retrievePanSource("created").isAbsent());
+
+        touch(directory, "created.pan");
+        assertTrue(repository.retrievePanSource("created").isAbsent());
+
+        repository.refresh();
+        assertEquals(created, repository.retrievePanSource("created")
+                .getPath());
+
+        created.delete();
+    }
+
+    @Test
+    public void checkIndexedDanglingLinkIsIgnored() throws IOException {
+
+        File link = new File(SourceDirectory.INCLUDE1.asDirectory(tmpdir),
+                "dangling.pan");
+        File target = new File(SourceDirectory.INCLUDE2.asDirectory(tmpdir),
+                "dangling.pan");
+        link.delete();
+        touch(SourceDirectory.INCLUDE2.asDirectory(tmpdir), "dangling.pan");
+        Files.createSymbolicLink(link.toPath(),
+                new File(tmpdir, "missing.pan").toPath());
+
+        try {
+            ParameterList parameters = getParameters();
+            parameters.append("indexSources", "true");
+            SourceRepository repository = FileSystemSourceRepository
+                    .getInstance(parameters);
+
+            assertEquals(target, repository.retrievePanSource("dangling")
+                    .getPath());
+        } finally {
+            link.delete();
+            target.delete();
+        }
+    }
+
     @Test
     public void checkNormalPanLookupOrder() throws IOException {
 
@@ -2,6 +2,7 @@ package org.quattor.pan.repository;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
@@ -54,6 +55,18 @@ public class ParameterListTest {
 		assertArrayEquals(values, testValues);
 	}
 
+	@Test
+	public void getValueReturnsLastValue() {
+		ParameterList list = new ParameterList();
+		list.append("OK", "first");
+		list.append("OTHER", "other");
+		list.append("OK", "second");
+
+		assertEquals("second", list.getValue("OK"));
+		assertEquals("other", list.getValue("OTHER"));
+		assertNull(list.getValue("MISSING"));
+	}
+
 	@Test(expected = UnsupportedOperationException.class)
 	public void iteratorDoesNotSupportRemove() {
 		ParameterList list = new ParameterList();
@@ -20,11 +20,20 @@
 
 package org.quattor.pan.statement;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
+import org.quattor.pan.dml.data.StringProperty;
 import org.quattor.pan.exceptions.SyntaxException;
 import org.quattor.pan.ttemplate.Context;
+import org.quattor.pan.ttemplate.SourceRange;
+import org.quattor.pan.ttemplate.Template;
+import org.quattor.pan.ttemplate.Template.TemplateType;
 
 public class StaticIncludeStatementTest extends StatementTestUtils {
 
@@ -45,4 +54,45 @@ public class StaticIncludeStatementTest extends StatementTestUtils {
 		runExpectingException("sis2", "include {'trailing-slash/'};");
 	}
 
+	@Test
+	public void staticIncludesAreListedByTemplate() throws Exception {
+
+		SourceRange sourceRange = new SourceRange(1, 1, 1, 10);
+
+		List<Statement> statements = new ArrayList<Statement>();
+		statements.add(new StaticIncludeStatement(sourceRange, "alpha"));
+		statements.add(new ComputedIncludeStatement(sourceRange,
+				StringProperty.getInstance("delta")));
+		statements.add(new StaticIncludeStatement(sourceRange, "beta/gamma"));
+
+		Template template = new Template(null, null, TemplateType.ORDINARY,
+				"sis3", statements);
+
+		assertEquals(Arrays.asList("alpha", "beta/gamma"),
+				template.getStaticIncludes());
+	}
+
+	@Test
+	public void leadingStaticIncludesFormPrefix() throws Exception {
+
+		SourceRange sourceRange = new SourceRange(1, 1, 1, 10);
+
+		List<Statement> statements = new ArrayList<Statement>();
+		statements.add(new StaticIncludeStatement(sourceRange, "alpha"));
+		statements.add(new StaticIncludeStatement(sourceRange, "beta"));
+		statements.add(new ComputedIncludeStatement(sourceRange,
+				StringProperty.getInstance("delta")));
+		statements.add(new StaticIncludeStatement(sourceRange, "gamma"));
+
+		Template template = new Template(null, null, TemplateType.OBJECT,
+				"sis4", statements);
+
+		assertEquals(Arrays.asList("alpha", "beta"),
+				template.getLeadingStaticIncludes());
+
+		Template prefix = template.getPrefix(2);
+		assertEquals("sis4", prefix.name);
+		assertEquals(Arrays.asList("alpha", "beta"), prefix.getStaticIncludes());
+	}
+
 }
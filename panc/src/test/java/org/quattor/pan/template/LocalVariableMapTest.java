@@ -20,6 +20,9 @@
 
 package org.quattor.pan.ttemplate;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -123,4 +126,64 @@ public class LocalVariableMapTest {
 		// string.) This should throw an exception.
 		map.put("x", value2);
 	}
+
+	@Test
+	public void checkSlotsAreVisibleByName() {
+
+		LocalVariableMap.Layout layout = new LocalVariableMap.Layout("ARGV",
+				"ARGC", "x");
+		ListResource argv = new ListResource();
+		argv.append(LongProperty.getInstance(1L));
+
+		LocalVariableMap map = new LocalVariableMap(argv, layout);
+		assertTrue(map.get("ARGV") == argv);
+		assertEquals(LongProperty.getInstance(1L),
+				map.get(layout.indexOf("ARGC")));
+
+		map.put(layout.indexOf("x"), LongProperty.getInstance(2L));
+		assertEquals(LongProperty.getInstance(2L), map.get("x"));
+
+		// Variables outside of the layout are kept by name.
+		map.put("y", LongProperty.getInstance(3L));
+		assertEquals(LongProperty.getInstance(3L), map.get("y"));
+		assertEquals(-1, layout.indexOf("y"));
+
+		map.put("x", null);
+		assertNull(map.get(layout.indexOf("x")));
+	}
+
+	@Test(expected = EvaluationException.class)
+	public void checkInvalidSlotAssignment() {
+		LocalVariableMap.Layout layout = new LocalVariableMap.Layout("x");
+		LocalVariableMap map = new LocalVariableMap(null, layout);
+		map.put(0, LongProperty.getInstance(1L));
+		map.put(0, StringProperty.getInstance("bad"));
+	}
+
+	@Test
+	public void checkReleasedMapsAreReused() {
+
+		Context context = new CompileTimeContext();
+
+		LocalVariableMap outer = context.createLocalVariableMap(null);
+		LocalVariableMap first = context.getLocalVariableMap();
+		context.setLocalVariable("x", LongProperty.getInstance(1L));
+		context.restoreLocalVariableMap(outer);
+		assertTrue(context.getLocalVariableMap() == outer);
+
+		// The released map is reused, but none of its values are visible.
+		LocalVariableMap.Layout layout = new LocalVariableMap.Layout("x");
+		context.createLocalVariableMap(null, layout);
+		LocalVariableMap second = context.getLocalVariableMap();
+		assertTrue(second == first);
+		assertTrue(second.getLayout() == layout);
+		assertNull(context.getLocalVariable("x"));
+
+		// Nested maps are distinct.
+		LocalVariableMap saved = context.createLocalVariableMap(null);
+		assertTrue(saved == second);
+		assertFalse(context.getLocalVariableMap() == second);
+		context.restoreLocalVariableMap(saved);
+		context.restoreLocalVariableMap(outer);
+	}
 }
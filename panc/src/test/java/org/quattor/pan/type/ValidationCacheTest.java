@@ -0,0 +1,183 @@
+/*
+ Copyright (c) 2006 Charles A. Loomis, Jr, Cedric Duprilot, and
+ Centre National de la Recherche Scientifique (CNRS).
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package org.quattor.pan.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.quattor.pan.dml.data.BooleanProperty;
+import org.quattor.pan.dml.data.HashResource;
+import org.quattor.pan.dml.data.Resource;
+import org.quattor.pan.dml.data.StringProperty;
+import org.quattor.pan.exceptions.InvalidTermException;
+import org.quattor.pan.exceptions.SyntaxException;
+import org.quattor.pan.ttemplate.BuildContext;
+import org.quattor.pan.utils.Term;
+import org.quattor.pan.utils.TermFactory;
+
+public class ValidationCacheTest {
+
+	private static FullType createRecordType(String field, FullType fieldType)
+			throws SyntaxException {
+
+		TreeMap<Term, FullType> reqFields = new TreeMap<Term, FullType>();
+		reqFields.put(TermFactory.create(field), fieldType);
+
+		return new FullType(new RecordType(null, null, false, null,
+				new LinkedList<String>(), reqFields,
+				new TreeMap<Term, FullType>()));
+	}
+
+	private static FullType createAliasType(String identifier) {
+		return new FullType(new AliasType(null, null, identifier, null));
+	}
+
+	private static HashResource createRecord(String field, String value)
+			throws SyntaxException, InvalidTermException {
+		HashResource record = new HashResource();
+		record.put(TermFactory.create(field), StringProperty.getInstance(value));
+		return record;
+	}
+
+	@Test
+	public void validElementsAreRemembered() throws Exception {
+
+		ValidationCache cache = new ValidationCache();
+		ValidationCache.Scope scope = cache.createScope(new BuildContext());
+
+		FullType type = createRecordType("alpha", createAliasType("string"));
+		HashResource record = createRecord("alpha", "ok");
+
+		assertFalse(scope.isValid(type, record));
+		scope.setValid(type, record);
+
+		// Protected copies have the same contents.
+		assertTrue(scope.isValid(type, record));
+		assertTrue(scope.isValid(type, (Resource) record.protect()));
+
+		// Equal elements which do not share their contents are validated
+		// again.
+		assertFalse(scope.isValid(type, createRecord("alpha", "ok")));
+
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void copiesSharingStorageAreRemembered() throws Exception {
+
+		ValidationCache cache = new ValidationCache();
+		ValidationCache.Scope scope = cache.createScope(new BuildContext());
+
+		FullType type = createRecordType("alpha", createAliasType("string"));
+		HashResource record = new HashResource(true);
+		record.put(TermFactory.create("alpha"), StringProperty
+				.getInstance("ok"));
+		HashResource copy = (HashResource) record.duplicate();
+
+		scope.setValid(type, record);
+		assertTrue(scope.isValid(type, copy));
+
+		// A modified copy no longer shares the contents.
+		copy.put(TermFactory.create("alpha"), StringProperty
+				.getInstance("changed"));
+		assertFalse(scope.isValid(type, copy));
+	}
+
+	@Test
+	public void typesAreResolvedInEachObject() throws Exception {
+
+		ValidationCache cache = new ValidationCache();
+
+		FullType type = createRecordType("alpha", createAliasType("my_type"));
+		HashResource record = createRecord("alpha", "ok");
+
+		BuildContext c1 = new BuildContext();
+		c1.setFullType("my_type", createAliasType("string"), null, null);
+		ValidationCache.Scope s1 = cache.createScope(c1);
+
+		BuildContext c2 = new BuildContext();
+		c2.setFullType("my_type", createAliasType("long"), null, null);
+		ValidationCache.Scope s2 = cache.createScope(c2);
+
+		s1.setValid(type, record);
+		assertTrue(s1.isValid(type, record));
+		assertFalse(s2.isValid(type, record));
+
+		// Undefined types are never cached.
+		ValidationCache.Scope s3 = cache.createScope(new BuildContext());
+		s3.setValid(type, record);
+		assertFalse(s3.isValid(type, record));
+	}
+
+	@Test
+	public void contextDependentTypesAreNotCached() throws Exception {
+
+		ValidationCache cache = new ValidationCache();
+		ValidationCache.Scope scope = cache.createScope(new BuildContext());
+
+		// A validation block may use anything in the configuration.
+		FullType with = new FullType(null, null, new AliasType(null, null,
+				"string", null), null, BooleanProperty.TRUE);
+		FullType type = createRecordType("alpha", with);
+		HashResource record = createRecord("alpha", "ok");
+
+		scope.setValid(type, record);
+		assertFalse(scope.isValid(type, record));
+
+		// The validation of a link depends on the linked element.
+		FullType link = new FullType(new LinkType(null, null, new AliasType(
+				null, null, "string", null)));
+		type = createRecordType("alpha", link);
+
+		scope.setValid(type, record);
+		assertFalse(scope.isValid(type, record));
+
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+	}
+
+	@Test
+	public void sharedTypesAreCached() throws Exception {
+
+		BuildContext context = new BuildContext();
+		context.setFullType("my_string", createAliasType("string"), null, null);
+
+		TreeMap<Term, FullType> reqFields = new TreeMap<Term, FullType>();
+		reqFields.put(TermFactory.create("alpha"), createAliasType("my_string"));
+		reqFields.put(TermFactory.create("beta"), createAliasType("my_string"));
+		FullType type = new FullType(new RecordType(null, null, false, null,
+				new LinkedList<String>(), reqFields,
+				new TreeMap<Term, FullType>()));
+
+		ValidationCache cache = new ValidationCache();
+		ValidationCache.Scope scope = cache.createScope(context);
+
+		HashResource record = createRecord("alpha", "a");
+		record.put(TermFactory.create("beta"), StringProperty.getInstance("b"));
+
+		scope.setValid(type, record);
+		assertTrue(scope.isValid(type, record));
+	}
+
+}